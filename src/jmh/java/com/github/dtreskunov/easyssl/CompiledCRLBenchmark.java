@@ -0,0 +1,76 @@
+package com.github.dtreskunov.easyssl;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares loading a DER-encoded CRL into a {@link RevocationIndex} by way of the provider's {@link X509CRL} with
+ * compiling it directly into a {@link CompiledCRL}. Both include verifying the signature.
+ * <p>
+ * Run with {@code gradle jmh -PjmhArgs='CompiledCRLBenchmark -prof gc'} to see allocation rates as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class CompiledCRLBenchmark {
+    private static final X500Principal ISSUER = new X500Principal("CN=benchmark issuer");
+
+    @Param({"10000", "100000", "1000000"})
+    public int entries;
+
+    private byte[] encoded;
+    private X509Certificate issuer;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        KeyPair keys = TestCertificates.generateKeyPair();
+        SecureRandom random = new SecureRandom();
+        List<BigInteger> serials = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            serials.add(new BigInteger(128, random));
+        }
+        encoded = TestCertificates.generateCRL(keys, ISSUER, serials).getEncoded();
+        issuer = TestCertificates.issue(keys, ISSUER, BigInteger.ONE);
+    }
+
+    @Benchmark
+    public RevocationIndex provider() throws Exception {
+        X509CRL crl = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(new ByteArrayInputStream(encoded));
+        crl.verify(issuer.getPublicKey());
+        return RevocationIndex.of(crl);
+    }
+
+    @Benchmark
+    public RevocationIndex compiled() throws Exception {
+        CompiledCRL crl = CompiledCRL.parse(encoded);
+        crl.verify(Collections.singletonList(issuer));
+        return crl.getIndex();
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.dtreskunov.easyssl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+
+/**
+ * Measures mutually authenticated handshakes between two {@link SSLEngine}s created from {@link EasySslHelper}s'
+ * {@link SSLContext}s, exchanging records in memory. With {@code session=full}, every handshake is a full one. With
+ * {@code session=resumed}, the client offers the session of its previous handshake, as it would when reconnecting.
+ * {@code serverKey} is the kind of key the server signs its handshakes with: ECDSA P-256 or RSA-2048.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandshakeBenchmark {
+    @Param({"TLSv1.2", "TLSv1.3"})
+    public String protocol;
+
+    @Param({"full", "resumed"})
+    public String session;
+
+    @Param({"EC", "RSA"})
+    public String serverKey;
+
+    private EasySslHelper server;
+    private EasySslHelper client;
+    private ByteBuffer clientToServer;
+    private ByteBuffer serverToClient;
+    private ByteBuffer application;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        server = helper(serverKey.equals("RSA") ? "localhost1_rsa" : "localhost1");
+        client = helper("localhost2");
+        SSLSession prototype = server.getSSLContext().createSSLEngine().getSession();
+        // large enough for a whole flight of records
+        clientToServer = ByteBuffer.allocate(4 * prototype.getPacketBufferSize());
+        serverToClient = ByteBuffer.allocate(4 * prototype.getPacketBufferSize());
+        application = ByteBuffer.allocate(prototype.getApplicationBufferSize());
+    }
+
+    private static EasySslHelper helper(String name) throws Exception {
+        EasySslProperties config = new EasySslProperties();
+        config.setCaCertificate(Arrays.asList(new ClassPathResource("ssl/cacerts.pem")));
+        config.setCertificateRevocationList(new ClassPathResource("ssl/ca/crl.pem"));
+        config.setCertificate(new ClassPathResource("ssl/" + name + "/cert_chain.pem"));
+        config.setKey(new ClassPathResource("ssl/" + name + "/key.pem"));
+        config.setKeyPassword("localhost-password");
+        return new EasySslHelper(config);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        server.close();
+        client.close();
+    }
+
+    @Benchmark
+    public SSLSession handshake() throws Exception {
+        // the client only looks for a session to resume if it knows the peer's host and port
+        SSLEngine clientEngine = session.equals("resumed")
+            ? client.getSSLContext().createSSLEngine("localhost", 443)
+            : client.getSSLContext().createSSLEngine();
+        clientEngine.setUseClientMode(true);
+        clientEngine.setEnabledProtocols(new String[] {protocol});
+        SSLEngine serverEngine = server.getSSLContext().createSSLEngine();
+        serverEngine.setUseClientMode(false);
+        serverEngine.setNeedClientAuth(true);
+        serverEngine.setEnabledProtocols(new String[] {protocol});
+
+        clientToServer.clear();
+        serverToClient.clear();
+        clientEngine.beginHandshake();
+        serverEngine.beginHandshake();
+        boolean progress = true;
+        while (progress) {
+            progress = step(clientEngine, serverToClient, clientToServer) | step(serverEngine, clientToServer, serverToClient);
+        }
+        if (clientEngine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING
+                || serverEngine.getHandshakeStatus() != HandshakeStatus.NOT_HANDSHAKING) {
+            throw new IllegalStateException("Handshake did not complete");
+        }
+        return clientEngine.getSession();
+    }
+
+    /**
+     * Advances the engine's handshake as far as it can go with the records received so far. Records that arrive after
+     * the handshake (e.g. TLS 1.3 session tickets) are read as well.
+     *
+     * @return whether anything was done
+     */
+    private boolean step(SSLEngine engine, ByteBuffer in, ByteBuffer out) throws SSLException {
+        boolean progress = false;
+        while (true) {
+            SSLEngineResult result;
+            switch (engine.getHandshakeStatus()) {
+            case NEED_TASK:
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                progress = true;
+                continue;
+            case NEED_WRAP:
+                application.clear();
+                result = engine.wrap(application.flip(), out);
+                break;
+            case NEED_UNWRAP:
+            case NEED_UNWRAP_AGAIN:
+            case NOT_HANDSHAKING:
+            case FINISHED:
+                if (in.position() == 0) {
+                    return progress;
+                }
+                in.flip();
+                application.clear();
+                result = engine.unwrap(in, application);
+                in.compact();
+                break;
+            default:
+                throw new IllegalStateException(engine.getHandshakeStatus().toString());
+            }
+            if (result.getStatus() != SSLEngineResult.Status.OK) {
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                    return progress;
+                }
+                throw new IllegalStateException(result.toString());
+            }
+            progress = true;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.dtreskunov.easyssl;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Measures how many times {@link EasySslHelper}'s getters can be read while it is being reloaded. With
+ * {@code reloads=continuous}, a background thread keeps swapping the key and certificate between two identities and
+ * reloading them, so that new material is published all the time; {@code reloads=none} is the baseline. Since readers
+ * never wait on a reload, reads should scale with the number of cores - compare e.g. {@code -t 1} with {@code -t 4}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(Threads.MAX)
+public class MaterialReadBenchmark {
+    @Param({"none", "continuous"})
+    public String reloads;
+
+    private Path dir;
+    private EasySslHelper helper;
+    private Thread reloader;
+    private volatile boolean reloading;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        byte[][][] sets = {
+            {read("ssl/localhost1/cert_chain.pem"), read("ssl/localhost1/key.pem")},
+            {read("ssl/localhost2/cert_chain.pem"), read("ssl/localhost2/key.pem")},
+        };
+        dir = Files.createTempDirectory("easyssl-benchmark");
+        write(sets[0]);
+
+        EasySslProperties config = new EasySslProperties();
+        config.setCaCertificate(Arrays.asList(new ClassPathResource("ssl/ca/cert.pem")));
+        config.setCertificateRevocationList(new ClassPathResource("ssl/ca/crl.pem"));
+        config.setCertificate(new FileSystemResource(dir.resolve("cert.pem")));
+        config.setKey(new FileSystemResource(dir.resolve("key.pem")));
+        config.setKeyPassword("localhost-password");
+        helper = new EasySslHelper(config);
+
+        if (reloads.equals("continuous")) {
+            reloading = true;
+            reloader = new Thread(() -> {
+                for (int next = 1; reloading; next = 1 - next) {
+                    try {
+                        write(sets[next]);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                    helper.reinitialize();
+                }
+            }, "reloader");
+            reloader.start();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        reloading = false;
+        if (reloader != null) {
+            reloader.join();
+        }
+        helper.close();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    private void write(byte[][] set) throws Exception {
+        Files.write(dir.resolve("cert.pem"), set[0]);
+        Files.write(dir.resolve("key.pem"), set[1]);
+    }
+
+    private static byte[] read(String path) throws Exception {
+        return StreamUtils.copyToByteArray(new ClassPathResource(path).getInputStream());
+    }
+
+    @Benchmark
+    public void readEverything(Blackhole blackhole) {
+        blackhole.consume(helper.getSSLContext());
+        blackhole.consume(helper.getKeyStore());
+        blackhole.consume(helper.getTrustStore());
+        blackhole.consume(helper.getCACertificates());
+        blackhole.consume(helper.getCertificateChain());
+        blackhole.consume(helper.getPrivateKey());
+        blackhole.consume(helper.getTrustManager());
+    }
+}
@@ -0,0 +1,132 @@
+package com.github.dtreskunov.easyssl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Compares Netty's JDK and OpenSSL providers, with the server's context built by {@link EasySslNettyCustomizer} and the
+ * client's from another {@link EasySslHelper}'s material, using the same provider. {@code handshake} measures full,
+ * mutually authenticated handshakes between two engines, exchanging records in memory. {@code transfer} measures
+ * encrypting {@code payload} bytes on the server and decrypting them on the client, over an established session.
+ * <p>
+ * The OpenSSL runs need netty-tcnative for this platform, which the test classpath includes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NettyProviderBenchmark {
+    @Param({"JDK", "OPENSSL"})
+    public String provider;
+
+    @Param({"EC", "RSA"})
+    public String serverKey;
+
+    @Param({"16384"})
+    public int payload;
+
+    private EasySslHelper server;
+    private EasySslHelper client;
+    private SslContext serverContext;
+    private SslContext clientContext;
+    private SSLEngine serverEngine;
+    private SSLEngine clientEngine;
+    private ByteBuffer plaintext;
+    private ByteBuffer records;
+    private ByteBuffer received;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        SslProvider sslProvider = SslProvider.valueOf(provider);
+        if (sslProvider == SslProvider.OPENSSL) {
+            OpenSsl.ensureAvailability();
+        }
+        EasySslProperties serverConfig = TestHandshakes.properties(serverKey.equals("RSA") ? "localhost1_rsa" : "localhost1");
+        serverConfig.setNettyOpenSslEnabled(sslProvider == SslProvider.OPENSSL);
+        server = new EasySslHelper(serverConfig);
+        serverContext = new EasySslNettyCustomizer(serverConfig, server, new HandshakeStatistics(),
+                EasySslHelper.getSslProperties(serverConfig, null), false).getSslContext();
+        client = new EasySslHelper(TestHandshakes.properties("localhost2"));
+        clientContext = SslContextBuilder.forClient()
+            .sslProvider(sslProvider)
+            .keyManager(client.getMaterial().getKeyMaterial().getKeyManager())
+            .trustManager(client.getTrustManager())
+            .build();
+
+        serverEngine = serverContext.newEngine(ByteBufAllocator.DEFAULT);
+        clientEngine = clientContext.newEngine(ByteBufAllocator.DEFAULT);
+        TestHandshakes.handshake(serverEngine, clientEngine);
+        plaintext = ByteBuffer.allocate(payload);
+        records = ByteBuffer.allocate(payload + 4 * serverEngine.getSession().getPacketBufferSize());
+        received = ByteBuffer.allocate(payload + 4 * clientEngine.getSession().getApplicationBufferSize());
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        ReferenceCountUtil.release(serverEngine);
+        ReferenceCountUtil.release(clientEngine);
+        server.close();
+        client.close();
+    }
+
+    @Benchmark
+    public Object handshake() throws Exception {
+        SSLEngine serverEngine = serverContext.newEngine(ByteBufAllocator.DEFAULT);
+        SSLEngine clientEngine = clientContext.newEngine(ByteBufAllocator.DEFAULT);
+        try {
+            return TestHandshakes.handshake(serverEngine, clientEngine);
+        } finally {
+            // OpenSSL's engines hold native memory until they are released
+            ReferenceCountUtil.release(serverEngine);
+            ReferenceCountUtil.release(clientEngine);
+        }
+    }
+
+    @Benchmark
+    public int transfer() throws SSLException {
+        plaintext.clear();
+        records.clear();
+        while (plaintext.hasRemaining()) {
+            check(serverEngine.wrap(plaintext, records));
+        }
+        records.flip();
+        received.clear();
+        while (records.hasRemaining()) {
+            check(clientEngine.unwrap(records, received));
+        }
+        return received.position();
+    }
+
+    private static void check(SSLEngineResult result) {
+        if (result.getStatus() != SSLEngineResult.Status.OK) {
+            throw new IllegalStateException(result.toString());
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.github.dtreskunov.easyssl;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.PrivateKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Measures parsing the PEM files EasySSL reads on every reload whose resources have changed: a certificate chain, a CA
+ * bundle, and private keys - both an encrypted OpenSSL key (as in the integration tests) and a plain PKCS#8 one.
+ * {@code largeBundle} reads a bundle of {@value #LARGE_BUNDLE_SIZE} certificates, and {@code largeBundleWithRegex} reads
+ * it the way {@link EasySslHelper} used to, for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PemBenchmark {
+    static final int LARGE_BUNDLE_SIZE = 5000;
+    private static final Pattern PEM_CERTIFICATE = Pattern.compile("-----BEGIN CERTIFICATE-----.*?-----END CERTIFICATE-----", Pattern.DOTALL);
+
+    private byte[] certificateChain;
+    private byte[] caCertificates;
+    private byte[] encryptedKey;
+    private byte[] plainKey;
+    private byte[] largeBundle;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        EasySslHelper.addBouncyCastleSecurityProvider();
+        certificateChain = read("ssl/localhost1/cert_chain.pem");
+        caCertificates = read("ssl/cacerts.pem");
+        encryptedKey = read("ssl/localhost1/key.pem");
+        plainKey = read("ssl/ECPlainPKCS8/key.pem");
+        largeBundle = TestCertificates.toPem(TestCertificates.generate(LARGE_BUNDLE_SIZE));
+    }
+
+    private static byte[] read(String path) throws Exception {
+        return StreamUtils.copyToByteArray(new ClassPathResource(path).getInputStream());
+    }
+
+    @Benchmark
+    public List<X509Certificate> certificateChain() throws Exception {
+        return EasySslHelper.readX509Certificates(certificateChain);
+    }
+
+    @Benchmark
+    public List<X509Certificate> caCertificates() throws Exception {
+        return EasySslHelper.readX509Certificates(caCertificates);
+    }
+
+    @Benchmark
+    public List<X509Certificate> largeBundle() throws Exception {
+        return EasySslHelper.readX509Certificates(largeBundle);
+    }
+
+    @Benchmark
+    public List<X509Certificate> largeBundleWithRegex() throws Exception {
+        CertificateFactory cf = CertificateFactory.getInstance("X.509");
+        Matcher matcher = PEM_CERTIFICATE.matcher(new String(largeBundle, StandardCharsets.UTF_8));
+        List<X509Certificate> certs = new ArrayList<>(1);
+        while (matcher.find()) {
+            certs.add((X509Certificate) cf.generateCertificate(new ByteArrayInputStream(matcher.group().getBytes(StandardCharsets.UTF_8))));
+        }
+        return certs;
+    }
+
+    @Benchmark
+    public PrivateKey encryptedKey() throws Exception {
+        return EasySslHelper.readPrivateKey(encryptedKey, "localhost-password");
+    }
+
+    @Benchmark
+    public PrivateKey plainKey() throws Exception {
+        return EasySslHelper.readPrivateKey(plainKey, null);
+    }
+}
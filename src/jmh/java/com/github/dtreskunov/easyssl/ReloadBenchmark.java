@@ -0,0 +1,96 @@
+package com.github.dtreskunov.easyssl;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.FileSystemUtils;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Measures {@link EasySslHelper#reinitialize()} end to end. With {@code resources=unchanged}, every reload finds the same
+ * bytes as the last one - the common case of a periodic refresh. With {@code resources=changed}, the CA certificates,
+ * key and certificate alternate between two sets before each reload, so that all of the material is rebuilt.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReloadBenchmark {
+    private static final String[] FILES = {"ca.pem", "cert.pem", "key.pem"};
+
+    @Param({"unchanged", "changed"})
+    public String resources;
+
+    private Path dir;
+    private EasySslHelper helper;
+    private byte[][][] sets;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        sets = new byte[][][] {
+            {read("ssl/cacerts.pem"), read("ssl/localhost1/cert_chain.pem"), read("ssl/localhost1/key.pem")},
+            {read("ssl/ca/cert.pem"), read("ssl/localhost2/cert_chain.pem"), read("ssl/localhost2/key.pem")},
+        };
+        dir = Files.createTempDirectory("easyssl-benchmark");
+        write(sets[0]);
+        Files.write(dir.resolve("crl.pem"), read("ssl/ca/crl.pem"));
+
+        EasySslProperties config = new EasySslProperties();
+        config.setCaCertificate(Arrays.asList(new FileSystemResource(dir.resolve("ca.pem"))));
+        config.setCertificateRevocationList(new FileSystemResource(dir.resolve("crl.pem")));
+        config.setCertificate(new FileSystemResource(dir.resolve("cert.pem")));
+        config.setKey(new FileSystemResource(dir.resolve("key.pem")));
+        config.setKeyPassword("localhost-password");
+        helper = new EasySslHelper(config);
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        helper.close();
+        FileSystemUtils.deleteRecursively(dir);
+    }
+
+    @Setup(Level.Invocation)
+    public void change() throws Exception {
+        if (resources.equals("changed")) {
+            next = 1 - next;
+            write(sets[next]);
+        }
+    }
+
+    private void write(byte[][] set) throws Exception {
+        for (int i = 0; i < FILES.length; i++) {
+            Files.write(dir.resolve(FILES[i]), set[i]);
+        }
+    }
+
+    private static byte[] read(String path) throws Exception {
+        return StreamUtils.copyToByteArray(new ClassPathResource(path).getInputStream());
+    }
+
+    @Benchmark
+    public EasySslMaterial reinitialize() {
+        helper.reinitialize();
+        return helper.getMaterial();
+    }
+}
@@ -0,0 +1,84 @@
+package com.github.dtreskunov.easyssl;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.SecureRandom;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares looking up a certificate in the provider's {@link X509CRL} with looking it up in a {@link RevocationIndex},
+ * for CRLs of various sizes. Serial numbers are random 128-bit integers, as issued by most CAs.
+ * <p>
+ * Run with {@code gradle jmh -PjmhArgs='RevocationIndexBenchmark -prof gc'} to see allocation rates as well.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RevocationIndexBenchmark {
+    private static final X500Principal ISSUER = new X500Principal("CN=benchmark issuer");
+
+    @Param({"10000", "100000", "1000000"})
+    public int entries;
+
+    private X509CRL crl;
+    private RevocationIndex index;
+    private X509Certificate revoked;
+    private X509Certificate good;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        KeyPair keys = TestCertificates.generateKeyPair();
+        SecureRandom random = new SecureRandom();
+        List<BigInteger> serials = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            serials.add(new BigInteger(128, random));
+        }
+        crl = TestCertificates.generateCRL(keys, ISSUER, serials);
+        index = RevocationIndex.of(crl);
+        revoked = TestCertificates.issue(keys, ISSUER, serials.get(entries / 2));
+        good = TestCertificates.issue(keys, ISSUER, new BigInteger(128, random));
+    }
+
+    @Benchmark
+    public X509CRLEntry crlGood() {
+        return crl.getRevokedCertificate(good);
+    }
+
+    @Benchmark
+    public X509CRLEntry crlRevoked() {
+        return crl.getRevokedCertificate(revoked);
+    }
+
+    @Benchmark
+    public int indexGood() {
+        return index.find(good);
+    }
+
+    @Benchmark
+    public int indexRevoked() {
+        return index.find(revoked);
+    }
+}
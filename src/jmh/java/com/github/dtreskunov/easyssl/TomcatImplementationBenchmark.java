@@ -0,0 +1,118 @@
+package com.github.dtreskunov.easyssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.web.server.WebServer;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * Compares the throughput of Tomcat connectors backed by JSSE and by OpenSSL, both configured by
+ * {@link EasySslTomcatCustomizer}. {@code download} fetches {@code payload} bytes over a kept-alive connection, so it
+ * measures encryption. {@code reconnect} fetches them over a new connection each time, which adds a (resumed)
+ * handshake. The client is the JDK's in both cases.
+ * <p>
+ * The OpenSSL runs need the Tomcat Native library (libtcnative) on the {@code java.library.path}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TomcatImplementationBenchmark {
+    @Param({"JSSE", "OPENSSL"})
+    public String implementation;
+
+    @Param({"16384", "1048576"})
+    public int payload;
+
+    private EasySslHelper server;
+    private EasySslHelper client;
+    private WebServer webServer;
+    private URL url;
+    private SSLSocketFactory socketFactory;
+    private final byte[] buffer = new byte[16384];
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        EasySslProperties serverConfig = TestHandshakes.properties("localhost1");
+        serverConfig.setTomcatOpenSslEnabled(implementation.equals("OPENSSL"));
+        server = new EasySslHelper(serverConfig);
+        EasySslTomcatCustomizer customizer = new EasySslTomcatCustomizer(serverConfig, server, new HandshakeStatistics());
+        if (serverConfig.isTomcatOpenSslEnabled() && customizer.getImplementation() != EasySslTomcatCustomizer.Implementation.OPENSSL) {
+            throw new IllegalStateException("OpenSSL is not available to Tomcat");
+        }
+        byte[] body = new byte[payload];
+        webServer = EasySslTomcatCustomizerTest.startServer(serverConfig, server, customizer, new HttpServlet() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.setContentLength(body.length);
+                response.getOutputStream().write(body);
+            }
+        });
+        client = new EasySslHelper(TestHandshakes.properties("localhost2"));
+        // kept-alive connections are only reused with the same socket factory
+        socketFactory = client.getSSLContext().getSocketFactory();
+        url = new URL("https://localhost:" + webServer.getPort());
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() {
+        webServer.stop();
+        server.close();
+        client.close();
+    }
+
+    @Benchmark
+    public long download() throws IOException {
+        return get(false);
+    }
+
+    @Benchmark
+    public long reconnect() throws IOException {
+        return get(true);
+    }
+
+    private long get(boolean close) throws IOException {
+        HttpsURLConnection connection = (HttpsURLConnection) url.openConnection();
+        connection.setSSLSocketFactory(socketFactory);
+        if (close) {
+            connection.setRequestProperty("Connection", "close");
+        }
+        long received = 0;
+        // reading the whole response lets the connection be kept alive
+        try (InputStream in = connection.getInputStream()) {
+            for (int n; (n = in.read(buffer)) != -1;) {
+                received += n;
+            }
+        }
+        if (received != payload) {
+            throw new IllegalStateException("Received " + received + " bytes");
+        }
+        return received;
+    }
+}
@@ -0,0 +1,95 @@
+package com.github.dtreskunov.easyssl;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509TrustManager;
+import javax.security.auth.x500.X500Principal;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the checks made on every client certificate chain during a handshake: the whole {@link ChainingTrustManager}
+ * as {@link EasySslHelper} puts it together (expiration warning, CRL, PKIX path validation), and the expiration and
+ * CRL checks on their own, for CRLs of various sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class TrustManagerBenchmark {
+    private static final X500Principal ISSUER = new X500Principal("CN=benchmark CA");
+
+    @Param({"0", "10000", "1000000"})
+    public int entries;
+
+    private X509Certificate[] chain;
+    private ChainingTrustManager chaining;
+    private CRLTrustManager crl;
+    private ExpirationCheckTrustManager expiration;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        KeyPair keys = TestCertificates.generateKeyPair();
+        SecureRandom random = new SecureRandom();
+        List<BigInteger> serials = new ArrayList<>(entries);
+        for (int i = 0; i < entries; i++) {
+            serials.add(new BigInteger(128, random));
+        }
+        chain = new X509Certificate[] {TestCertificates.issue(keys, ISSUER, new BigInteger(128, random))};
+        crl = new CRLTrustManager(TestCertificates.generateCRL(keys, ISSUER, serials));
+        expiration = new ExpirationCheckTrustManager(Duration.ofDays(30));
+
+        KeyStore trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+        trustStore.load(null, null);
+        trustStore.setCertificateEntry("ca", TestCertificates.selfSigned(keys, ISSUER));
+        TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        factory.init(trustStore);
+        List<X509TrustManager> delegates = new ArrayList<>(Arrays.asList(expiration, crl));
+        for (TrustManager trustManager: factory.getTrustManagers()) {
+            delegates.add((X509TrustManager) trustManager);
+        }
+        chaining = new ChainingTrustManager(delegates, TrustCheckRecorder.NONE);
+    }
+
+    @Benchmark
+    public X509Certificate[] chaining() throws Exception {
+        chaining.checkClientTrusted(chain, "EC");
+        return chain;
+    }
+
+    @Benchmark
+    public X509Certificate[] crl() throws Exception {
+        crl.checkClientTrusted(chain, "EC");
+        return chain;
+    }
+
+    @Benchmark
+    public X509Certificate[] expiration() throws Exception {
+        expiration.checkClientTrusted(chain, "EC");
+        return chain;
+    }
+}
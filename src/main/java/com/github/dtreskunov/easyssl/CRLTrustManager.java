@@ -5,7 +5,6 @@ import java.security.cert.CRLReason;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateRevokedException;
 import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
 import java.util.Collections;
 import java.util.Date;
@@ -20,14 +19,28 @@ import org.springframework.util.Assert;
  * Verifies chains of {@link X509Certificate X.509 certificates} against the provided {@link X509CRL Certificate Revocation List} (CRL).
  * The CRL is specified as a Spring {@link Resource}, so it can be loaded from a remote URL. The CRL is checked for
  * {@link Resource#lastModified() last modified} timestamp and is refreshed accordingly. The signature on the CRL is verified against
- * some of provided {@link PublicKey}s (there may be several CAs).
+ * some of provided {@link PublicKey}s (there may be several CAs). Lookups go through a {@link RevocationIndex} compiled from the CRL.
+ * <p>
+ * A delta CRL may be layered on top of the base CRL. It is consulted first: an entry there revokes the certificate,
+ * unless its reason is {@link CRLReason#REMOVE_FROM_CRL}, in which case the certificate is no longer revoked regardless
+ * of the base CRL (e.g. it was on hold). Otherwise the base CRL decides.
  */
 class CRLTrustManager implements X509TrustManager {
-    private final X509CRL m_crl;
+    private final RevocationIndex m_index;
+    private final RevocationIndex m_deltaIndex;
 
     CRLTrustManager(X509CRL crl) throws Exception {
-        Assert.notNull(crl, "crl may not be null");
-        m_crl = crl;
+        this(RevocationIndex.of(crl), null);
+    }
+
+    /**
+     * @param index revoked certificates of the base CRL
+     * @param deltaIndex revoked certificates of the delta CRL (may be null)
+     */
+    CRLTrustManager(RevocationIndex index, RevocationIndex deltaIndex) {
+        Assert.notNull(index, "index may not be null");
+        m_index = index;
+        m_deltaIndex = deltaIndex;
     }
 
     @Override
@@ -49,18 +62,28 @@ class CRLTrustManager implements X509TrustManager {
         if (chain == null || chain.length == 0) {
             return;
         }
-        if (m_crl == null) {
-            throw new RuntimeException("Error loading CRL");
-        }
         for (X509Certificate cert: chain) {
-            X509CRLEntry revocation  = m_crl.getRevokedCertificate(cert);
-            if (revocation != null) {
-                throw new CertificateRevokedException(
-                        Optional.ofNullable(revocation.getRevocationDate()).orElse(new Date()),
-                        Optional.ofNullable(revocation.getRevocationReason()).orElse(CRLReason.UNSPECIFIED),
-                        Optional.ofNullable(revocation.getCertificateIssuer()).orElse(m_crl.getIssuerX500Principal()),
-                        Collections.emptyMap());
+            if (m_deltaIndex != null) {
+                int revocation = m_deltaIndex.find(cert);
+                if (revocation != RevocationIndex.NOT_FOUND) {
+                    if (m_deltaIndex.getRevocationReason(revocation) == CRLReason.REMOVE_FROM_CRL) {
+                        continue;
+                    }
+                    throw revoked(m_deltaIndex, revocation);
+                }
+            }
+            int revocation = m_index.find(cert);
+            if (revocation != RevocationIndex.NOT_FOUND) {
+                throw revoked(m_index, revocation);
             }
         }
     }
+
+    private static CertificateRevokedException revoked(RevocationIndex index, int revocation) {
+        return new CertificateRevokedException(
+                Optional.ofNullable(index.getRevocationDate(revocation)).orElse(new Date()),
+                Optional.ofNullable(index.getRevocationReason(revocation)).orElse(CRLReason.UNSPECIFIED),
+                index.getCertificateIssuer(revocation),
+                Collections.emptyMap());
+    }
 }
@@ -0,0 +1,287 @@
+package com.github.dtreskunov.easyssl;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reads X.509 certificates from a stream containing any of:
+ * <ul>
+ * <li>PEM blocks, as produced by OpenSSL ({@code CERTIFICATE}, {@code X509 CERTIFICATE}, {@code TRUSTED CERTIFICATE},
+ * {@code PKCS7} or {@code CMS}), possibly concatenated and interleaved with other text and other kinds of PEM blocks
+ * (which are skipped)</li>
+ * <li>DER-encoded certificates, possibly concatenated</li>
+ * <li>a DER-encoded PKCS#7 bundle</li>
+ * </ul>
+ * PEM is scanned a line at a time and base64-decoded straight into a reusable buffer, so reading a bundle of thousands
+ * of certificates allocates little besides the certificates themselves.
+ */
+class CertificateReader {
+    private static final byte[] BEGIN = "-----BEGIN ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END = "-----END ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] DASHES = "-----".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[][] CERTIFICATE_LABELS = {
+        "CERTIFICATE".getBytes(StandardCharsets.US_ASCII),
+        "X509 CERTIFICATE".getBytes(StandardCharsets.US_ASCII),
+        "TRUSTED CERTIFICATE".getBytes(StandardCharsets.US_ASCII),
+    };
+    private static final byte[][] PKCS7_LABELS = {
+        "PKCS7".getBytes(StandardCharsets.US_ASCII),
+        "CMS".getBytes(StandardCharsets.US_ASCII),
+    };
+    private static final byte DER_SEQUENCE = 0x30;
+    private static final int[] BASE64 = new int[128];
+    static {
+        Arrays.fill(BASE64, -1);
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); i++) {
+            BASE64[alphabet.charAt(i)] = i;
+        }
+    }
+
+    private enum Block { NONE, CERTIFICATE, PKCS7, OTHER }
+
+    private final InputStream in;
+    private final CertificateFactory factory;
+    private final byte[] buffer = new byte[8192];
+    private int bufferPosition;
+    private int bufferLimit;
+    private byte[] line = new byte[128];
+    private int lineLength;
+    private byte[] der = new byte[4096];
+    private int derLength;
+
+    private CertificateReader(InputStream in) throws CertificateException {
+        this.in = in;
+        this.factory = CertificateFactory.getInstance("X.509");
+    }
+
+    static List<X509Certificate> read(byte[] bytes) throws IOException, CertificateException {
+        return read(new ByteArrayInputStream(bytes));
+    }
+
+    /**
+     * Reads all certificates from the stream. Does not close the stream.
+     */
+    static List<X509Certificate> read(InputStream in) throws IOException, CertificateException {
+        return new CertificateReader(in).read();
+    }
+
+    private List<X509Certificate> read() throws IOException, CertificateException {
+        List<X509Certificate> certificates = new ArrayList<>(1);
+        if (isDer()) {
+            InputStream unread = new SequenceInputStream(new ByteArrayInputStream(buffer, bufferPosition, bufferLimit - bufferPosition), in);
+            addAll(factory.generateCertificates(unread), certificates);
+            return certificates;
+        }
+        Block block = Block.NONE;
+        int sextets = 0;
+        int accumulator = 0;
+        while (readLine()) {
+            if (block == Block.NONE) {
+                int begin = indexOf(BEGIN);
+                if (begin >= 0) {
+                    block = getBlock(begin + BEGIN.length);
+                    derLength = 0;
+                    sextets = 0;
+                    accumulator = 0;
+                }
+            } else if (startsWith(END)) {
+                // the last quantum is short if it was padded with '='
+                if (sextets > 1) {
+                    ensureDerCapacity(2);
+                    accumulator <<= 6 * (4 - sextets);
+                    der[derLength++] = (byte) (accumulator >> 16);
+                    if (sextets == 3) {
+                        der[derLength++] = (byte) (accumulator >> 8);
+                    }
+                }
+                if (block == Block.CERTIFICATE) {
+                    certificates.add((X509Certificate) factory.generateCertificate(new ByteArrayInputStream(der, 0, derLength)));
+                } else if (block == Block.PKCS7) {
+                    addAll(factory.generateCertificates(new ByteArrayInputStream(der, 0, derLength)), certificates);
+                }
+                block = Block.NONE;
+            } else if (block != Block.OTHER && !isHeader()) {
+                for (int i = 0; i < lineLength; i++) {
+                    int c = line[i] & 0xff;
+                    if (c == '=' || isWhitespace(c)) {
+                        continue;
+                    }
+                    int value = c < BASE64.length ? BASE64[c] : -1;
+                    if (value < 0) {
+                        throw new CertificateParsingException("Invalid character in PEM block: 0x" + Integer.toHexString(c));
+                    }
+                    accumulator = (accumulator << 6) | value;
+                    if (++sextets == 4) {
+                        ensureDerCapacity(3);
+                        der[derLength++] = (byte) (accumulator >> 16);
+                        der[derLength++] = (byte) (accumulator >> 8);
+                        der[derLength++] = (byte) accumulator;
+                        sextets = 0;
+                        accumulator = 0;
+                    }
+                }
+            }
+        }
+        if (block != Block.NONE) {
+            throw new CertificateParsingException("PEM block is missing its END line");
+        }
+        return certificates;
+    }
+
+    /**
+     * @return Whether the stream starts with a DER SEQUENCE whose length takes more than one byte, as is the case for
+     * certificates and PKCS#7 bundles (and never the case for text)
+     */
+    private boolean isDer() throws IOException {
+        while (bufferLimit < 2 && fill()) {
+            // keep reading
+        }
+        if (bufferLimit < 2) {
+            return false;
+        }
+        int second = buffer[1] & 0xff;
+        return buffer[0] == DER_SEQUENCE && second >= 0x81 && second <= 0x84;
+    }
+
+    /**
+     * Appends whatever is available from the stream to {@link #buffer}, compacting it first if it's full.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean fill() throws IOException {
+        if (bufferLimit == buffer.length) {
+            System.arraycopy(buffer, bufferPosition, buffer, 0, bufferLimit - bufferPosition);
+            bufferLimit -= bufferPosition;
+            bufferPosition = 0;
+        }
+        int read = in.read(buffer, bufferLimit, buffer.length - bufferLimit);
+        if (read < 0) {
+            return false;
+        }
+        bufferLimit += read;
+        return true;
+    }
+
+    /**
+     * @param labelStart where the label starts, i.e. right after the BEGIN marker
+     */
+    private Block getBlock(int labelStart) {
+        // the label is between BEGIN and the trailing dashes
+        int end = lineLength;
+        while (end > labelStart && isWhitespace(line[end - 1] & 0xff)) {
+            end--;
+        }
+        if (end - DASHES.length < labelStart || !regionMatches(end - DASHES.length, DASHES)) {
+            return Block.OTHER;
+        }
+        int labelLength = end - DASHES.length - labelStart;
+        for (byte[] label: CERTIFICATE_LABELS) {
+            if (label.length == labelLength && regionMatches(labelStart, label)) {
+                return Block.CERTIFICATE;
+            }
+        }
+        for (byte[] label: PKCS7_LABELS) {
+            if (label.length == labelLength && regionMatches(labelStart, label)) {
+                return Block.PKCS7;
+            }
+        }
+        return Block.OTHER;
+    }
+
+    /**
+     * @return Whether the line is an RFC 1421 header such as {@code Proc-Type: 4,ENCRYPTED}
+     */
+    private boolean isHeader() {
+        for (int i = 0; i < lineLength; i++) {
+            if (line[i] == ':') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return Where {@code marker} first occurs in the line, or -1 (markers are usually, but not always, at the start of
+     * a line - e.g. a file may start with a byte order mark)
+     */
+    private int indexOf(byte[] marker) {
+        for (int i = 0; i + marker.length <= lineLength; i++) {
+            if (regionMatches(i, marker)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean startsWith(byte[] prefix) {
+        return lineLength >= prefix.length && regionMatches(0, prefix);
+    }
+
+    private boolean regionMatches(int offset, byte[] expected) {
+        for (int i = 0; i < expected.length; i++) {
+            if (line[offset + i] != expected[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next line (without its terminator) into {@link #line}.
+     *
+     * @return false at the end of the stream
+     */
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+        while (true) {
+            while (bufferPosition < bufferLimit) {
+                byte c = buffer[bufferPosition++];
+                if (c == '\n') {
+                    return true;
+                }
+                if (c != '\r') {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[lineLength++] = c;
+                }
+            }
+            bufferPosition = 0;
+            bufferLimit = 0;
+            if (!fill()) {
+                return lineLength > 0;
+            }
+        }
+    }
+
+    private void ensureDerCapacity(int extra) {
+        if (derLength + extra > der.length) {
+            der = Arrays.copyOf(der, der.length * 2);
+        }
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private static void addAll(Iterable<? extends Certificate> from, List<X509Certificate> to) throws CertificateException {
+        for (Certificate certificate: from) {
+            if (!(certificate instanceof X509Certificate)) {
+                throw new CertificateException("Expected an X.509 certificate, got " + certificate.getType());
+            }
+            to.add((X509Certificate) certificate);
+        }
+    }
+}
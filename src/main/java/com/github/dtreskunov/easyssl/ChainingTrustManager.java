@@ -12,28 +12,46 @@ import org.springframework.util.Assert;
 
 /**
  * Delegates certificate checking to 0 or more {@link X509TrustManager}s, stopping after first exception.
- * {@link #getAcceptedIssuers()} returns {@code null}.
+ * {@link #getAcceptedIssuers()} returns {@code null}. The duration and outcome of each check are passed to a
+ * {@link TrustCheckRecorder}.
  */
 class ChainingTrustManager implements X509TrustManager {
 
     private final List<X509TrustManager> delegates;
+    private final TrustCheckRecorder recorder;
 
-    public ChainingTrustManager(List<X509TrustManager> delegates) {
+    public ChainingTrustManager(List<X509TrustManager> delegates, TrustCheckRecorder recorder) {
         Assert.notNull(delegates, "delegates may not be null");
+        Assert.notNull(recorder, "recorder may not be null");
         this.delegates = new ArrayList<>(delegates);
+        this.recorder = recorder;
     }
 
     @Override
     public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-        for (X509TrustManager delegate: delegates) {
-            delegate.checkClientTrusted(chain, authType);
+        long start = System.nanoTime();
+        boolean trusted = false;
+        try {
+            for (X509TrustManager delegate: delegates) {
+                delegate.checkClientTrusted(chain, authType);
+            }
+            trusted = true;
+        } finally {
+            recorder.record("client", System.nanoTime() - start, trusted);
         }
     }
 
     @Override
     public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-        for (X509TrustManager delegate: delegates) {
-            delegate.checkServerTrusted(chain, authType);
+        long start = System.nanoTime();
+        boolean trusted = false;
+        try {
+            for (X509TrustManager delegate: delegates) {
+                delegate.checkServerTrusted(chain, authType);
+            }
+            trusted = true;
+        } finally {
+            recorder.record("server", System.nanoTime() - start, trusted);
         }
     }
 
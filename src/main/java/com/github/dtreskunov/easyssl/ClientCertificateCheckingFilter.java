@@ -10,6 +10,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.web.server.Ssl.ClientAuth;
 import org.springframework.http.HttpStatus;
+import org.springframework.util.Assert;
 import org.springframework.web.filter.GenericFilterBean;
 
 import jakarta.servlet.FilterChain;
@@ -29,27 +30,64 @@ import jakarta.servlet.http.HttpServletResponse;
  * This class is only necessary because Spring Boot doesn't (yet) expose underlying servlet containers' CRL/OCSP features -
  * see <a href="https://github.com/spring-projects/spring-boot/issues/6171">SPRING-BOOT 6171</a>. This means that connections
  * from revoked clients will still be accepted by the server, however, request handler logic won't be reached.
+ * <p>
+ * The certificate is checked against the helper's current trust manager, so a reloaded CRL takes effect right away.
+ * A chain that was found trusted is remembered for the rest of the TLS session - see {@link TrustedSessions}.
+ * {@link ReactiveClientCertificateCheckingFilter} does the same for WebFlux.
  */
 class ClientCertificateCheckingFilter extends GenericFilterBean {
 
     private static final String REQUEST_ATTRIBUTE_X509_CERTIFICATE = "jakarta.servlet.request.X509Certificate";
+    private static final String REQUEST_ATTRIBUTE_SSL_SESSION_ID = "jakarta.servlet.request.ssl_session_id";
+
     private final Logger m_log = LoggerFactory.getLogger(getClass());
-    private final X509TrustManager m_trustManager;
+    private final EasySslHelper m_helper;
+    private final TrustedSessions m_sessions = new TrustedSessions();
 
-    public ClientCertificateCheckingFilter(X509TrustManager trustManager) {
+    public ClientCertificateCheckingFilter(EasySslHelper helper) {
         super();
-        m_trustManager = trustManager;
+        Assert.notNull(helper, "helper may not be null");
+        m_helper = helper;
+    }
+
+    /**
+     * @return Number of requests whose client certificate was already found trusted earlier in the same TLS session
+     */
+    long getSessionHitCount() {
+        return m_sessions.getHitCount();
+    }
+
+    /**
+     * @return Number of requests whose client certificate had to be checked
+     */
+    long getSessionMissCount() {
+        return m_sessions.getMissCount();
     }
 
     private void checkClientCertificate(ServletRequest request) throws CertificateException {
         X509Certificate[] certChain = (X509Certificate[]) request.getAttribute(REQUEST_ATTRIBUTE_X509_CERTIFICATE);
         if (certChain == null || certChain.length == 0) {
             m_log.trace("No client certificate provided - not checking validity");
-        } else {
-            String authType = certChain[0].getPublicKey().getAlgorithm(); // should be "RSA"
-            m_trustManager.checkClientTrusted(certChain, authType);
-            m_log.trace("Request did include a trusted client certificate");
+            return;
+        }
+        EasySslMaterial.TrustMaterial trust = m_helper.getMaterial().getTrustMaterial();
+        Object sessionAttribute = request.getAttribute(REQUEST_ATTRIBUTE_SSL_SESSION_ID);
+        String sessionId = sessionAttribute == null ? null : sessionAttribute.toString();
+        if (m_sessions.isTrusted(sessionId, certChain, trust)) {
+            m_log.trace("Request included a client certificate that is trusted in this TLS session");
+            return;
+        }
+        String authType = certChain[0].getPublicKey().getAlgorithm(); // should be "RSA"
+        long start = System.nanoTime();
+        boolean trusted = false;
+        try {
+            trust.getTrustManager().checkClientTrusted(certChain, authType);
+            trusted = true;
+        } finally {
+            m_helper.getTrustCheckRecorder().record("filter", System.nanoTime() - start, trusted);
         }
+        m_log.trace("Request did include a trusted client certificate");
+        m_sessions.remember(sessionId, certChain, trust);
     }
 
     @Override
@@ -0,0 +1,553 @@
+package com.github.dtreskunov.easyssl;
+
+import java.io.ByteArrayInputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A Certificate Revocation List (RFC 5280, section 5) reduced to what is needed to check certificates against it: a
+ * {@link RevocationIndex} of the revoked serial numbers, and a few fields from the CRL itself.
+ * <p>
+ * The DER encoding is walked in place, without materializing an {@link X509CRL} and its entries, so the encoding may
+ * be a memory-mapped file. The encoding is kept only until the signature is {@link #verify(Collection) verified}, after
+ * which this object takes little more memory than its index.
+ */
+final class CompiledCRL {
+    private static final Logger LOG = LoggerFactory.getLogger(CompiledCRL.class);
+
+    private static final int SEQUENCE = 0x30;
+    private static final int INTEGER = 0x02;
+    private static final int BIT_STRING = 0x03;
+    private static final int OCTET_STRING = 0x04;
+    private static final int NULL = 0x05;
+    private static final int OID = 0x06;
+    private static final int ENUMERATED = 0x0a;
+    private static final int UTC_TIME = 0x17;
+    private static final int GENERALIZED_TIME = 0x18;
+    private static final int BOOLEAN = 0x01;
+    private static final int EXPLICIT_0 = 0xa0;
+    private static final int DIRECTORY_NAME = 0xa4;
+
+    private static final byte[] REASON_CODE = {0x55, 0x1d, 0x15};
+    private static final byte[] CERTIFICATE_ISSUER = {0x55, 0x1d, 0x1d};
+    private static final byte[] CRL_NUMBER = {0x55, 0x1d, 0x14};
+    private static final byte[] DELTA_CRL_INDICATOR = {0x55, 0x1d, 0x1b};
+
+    /** JCA names of the signature algorithms whose AlgorithmIdentifier has no parameters (or NULL ones) */
+    private static final Map<String, String> SIGNATURE_ALGORITHMS = new HashMap<>();
+    static {
+        SIGNATURE_ALGORITHMS.put("1.2.840.113549.1.1.5", "SHA1withRSA");
+        SIGNATURE_ALGORITHMS.put("1.2.840.113549.1.1.11", "SHA256withRSA");
+        SIGNATURE_ALGORITHMS.put("1.2.840.113549.1.1.12", "SHA384withRSA");
+        SIGNATURE_ALGORITHMS.put("1.2.840.113549.1.1.13", "SHA512withRSA");
+        SIGNATURE_ALGORITHMS.put("1.2.840.10045.4.1", "SHA1withECDSA");
+        SIGNATURE_ALGORITHMS.put("1.2.840.10045.4.3.2", "SHA256withECDSA");
+        SIGNATURE_ALGORITHMS.put("1.2.840.10045.4.3.3", "SHA384withECDSA");
+        SIGNATURE_ALGORITHMS.put("1.2.840.10045.4.3.4", "SHA512withECDSA");
+        SIGNATURE_ALGORITHMS.put("1.3.101.112", "Ed25519");
+        SIGNATURE_ALGORITHMS.put("1.3.101.113", "Ed448");
+    }
+
+    private final X500Principal issuer;
+    private final Date thisUpdate;
+    private final Date nextUpdate;
+    private final BigInteger crlNumber;
+    private final BigInteger baseCrlNumber;
+    private final RevocationIndex index;
+    /** JCA name of the signature algorithm, or null if it's one we can't verify incrementally */
+    private final String signatureAlgorithm;
+    private final byte[] signature;
+    /** The whole DER encoding, and the part covered by the signature - until verified */
+    private ByteBuffer encoded;
+    private ByteBuffer tbsCertList;
+    private PublicKey verifiedBy;
+
+    private CompiledCRL(X500Principal issuer, Date thisUpdate, Date nextUpdate, BigInteger crlNumber, BigInteger baseCrlNumber,
+                        RevocationIndex index, String signatureAlgorithm, byte[] signature, ByteBuffer encoded, ByteBuffer tbsCertList) {
+        this.issuer = issuer;
+        this.thisUpdate = thisUpdate;
+        this.nextUpdate = nextUpdate;
+        this.crlNumber = crlNumber;
+        this.baseCrlNumber = baseCrlNumber;
+        this.index = index;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.signature = signature;
+        this.encoded = encoded;
+        this.tbsCertList = tbsCertList;
+    }
+
+    /**
+     * @param encoded a DER-encoded CRL (which may be memory-mapped), or a PEM-encoded one
+     */
+    static CompiledCRL parse(ByteBuffer encoded) throws CRLException {
+        if (!isDer(encoded)) {
+            encoded = decodePem(encoded);
+        }
+        try {
+            return new Parser(encoded).parse();
+        } catch (IndexOutOfBoundsException e) {
+            throw new CRLException("Truncated CRL", e);
+        }
+    }
+
+    static CompiledCRL parse(byte[] encoded) throws CRLException {
+        return parse(ByteBuffer.wrap(encoded));
+    }
+
+    private static boolean isDer(ByteBuffer encoded) {
+        int start = encoded.position();
+        if (encoded.limit() - start < 2) {
+            return false;
+        }
+        int second = encoded.get(start + 1) & 0xff;
+        return (encoded.get(start) & 0xff) == SEQUENCE && second >= 0x81 && second <= 0x84;
+    }
+
+    /**
+     * Decodes the first PEM block onto the heap.
+     */
+    private static ByteBuffer decodePem(ByteBuffer pem) throws CRLException {
+        int begin = indexOf(pem, "-----BEGIN ", pem.position());
+        int bodyStart = begin < 0 ? -1 : indexOf(pem, "\n", begin);
+        int end = bodyStart < 0 ? -1 : indexOf(pem, "-----END ", bodyStart);
+        if (end < 0) {
+            throw new CRLException("Expected a DER or PEM encoded CRL");
+        }
+        ByteBuffer body = pem.duplicate();
+        body.position(bodyStart + 1).limit(end);
+        try {
+            return Base64.getMimeDecoder().decode(body);
+        } catch (IllegalArgumentException e) {
+            throw new CRLException("Invalid base64 in PEM encoded CRL", e);
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, String ascii, int from) {
+        byte[] needle = ascii.getBytes(StandardCharsets.US_ASCII);
+        outer:
+        for (int i = from; i + needle.length <= buffer.limit(); i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (buffer.get(i + j) != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Checks that the CRL is signed by one of the certificates. Once that succeeds, the encoding is no longer kept.
+     * Later calls (e.g. after the CA certificates are reloaded) only check that the key that signed the CRL is still
+     * among the certificates'.
+     *
+     * @throws SignatureException if none of the certificates' keys verify the signature
+     */
+    synchronized void verify(Collection<X509Certificate> certificates) throws GeneralSecurityException {
+        if (verifiedBy != null) {
+            for (X509Certificate certificate: certificates) {
+                if (verifiedBy.equals(certificate.getPublicKey())) {
+                    return;
+                }
+            }
+            throw new SignatureException("The key that signed the CRL is no longer among the CA certificates");
+        }
+        // try the CAs whose subject is the CRL's issuer first
+        List<X509Certificate> candidates = new ArrayList<>(certificates.size());
+        for (X509Certificate certificate: certificates) {
+            if (issuer.equals(certificate.getSubjectX500Principal())) {
+                candidates.add(0, certificate);
+            } else {
+                candidates.add(certificate);
+            }
+        }
+        X509CRL fallback = null;
+        for (X509Certificate certificate: candidates) {
+            PublicKey publicKey = certificate.getPublicKey();
+            try {
+                if (signatureAlgorithm != null) {
+                    Signature verifier = Signature.getInstance(signatureAlgorithm);
+                    verifier.initVerify(publicKey);
+                    verifier.update(tbsCertList.duplicate());
+                    if (!verifier.verify(signature)) {
+                        throw new SignatureException("Signature does not match");
+                    }
+                } else {
+                    if (fallback == null) {
+                        fallback = materialize();
+                    }
+                    fallback.verify(publicKey);
+                }
+                verifiedBy = publicKey;
+                encoded = null;
+                tbsCertList = null;
+                return;
+            } catch (GeneralSecurityException e) {
+                LOG.debug("Unable to verify CRL against public key {} due to {}", publicKey, e.toString());
+            }
+        }
+        throw new SignatureException("Unable to verify CRL against any provided public keys");
+    }
+
+    private X509CRL materialize() throws GeneralSecurityException {
+        ByteBuffer copy = encoded.duplicate();
+        byte[] bytes = new byte[copy.remaining()];
+        copy.get(bytes);
+        return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(new ByteArrayInputStream(bytes));
+    }
+
+    X500Principal getIssuer() {
+        return issuer;
+    }
+
+    Date getThisUpdate() {
+        return thisUpdate;
+    }
+
+    /**
+     * @return When the next CRL will be issued, or null if not specified
+     */
+    Date getNextUpdate() {
+        return nextUpdate;
+    }
+
+    /**
+     * @return The cRLNumber extension, or null if absent
+     */
+    BigInteger getCrlNumber() {
+        return crlNumber;
+    }
+
+    /**
+     * @return Number of the base CRL if this is a delta CRL (the deltaCRLIndicator extension), otherwise null
+     */
+    BigInteger getBaseCrlNumber() {
+        return baseCrlNumber;
+    }
+
+    RevocationIndex getIndex() {
+        return index;
+    }
+
+    /**
+     * Walks a DER encoding. Reading a TLV leaves its tag and content bounds in {@link #tag}, {@link #start} and {@link #end}.
+     */
+    private static final class Parser {
+        private final ByteBuffer der;
+        private int tag;
+        private int start;
+        private int end;
+
+        Parser(ByteBuffer der) {
+            this.der = der;
+        }
+
+        /**
+         * Reads the TLV at {@code position}, which must lie entirely before {@code limit}.
+         */
+        private void read(int position, int limit) throws CRLException {
+            if (position + 2 > limit) {
+                throw new CRLException("Truncated CRL at offset " + position);
+            }
+            tag = der.get(position) & 0xff;
+            int length = der.get(position + 1) & 0xff;
+            start = position + 2;
+            if (length > 0x7f) {
+                int octets = length & 0x7f;
+                if (octets == 0 || octets > 4) {
+                    throw new CRLException("Unsupported length encoding at offset " + position);
+                }
+                length = 0;
+                for (int i = 0; i < octets; i++) {
+                    length = (length << 8) | (der.get(start++) & 0xff);
+                }
+                if (length < 0) {
+                    throw new CRLException("Unsupported length at offset " + position);
+                }
+            }
+            end = start + length;
+            if (end > limit || end < start) {
+                throw new CRLException("Length at offset " + position + " exceeds its container");
+            }
+        }
+
+        private void read(int position, int limit, int expectedTag) throws CRLException {
+            read(position, limit);
+            if (tag != expectedTag) {
+                throw new CRLException(String.format("Expected tag 0x%02x but found 0x%02x at offset %d", expectedTag, tag, position));
+            }
+        }
+
+        private boolean contentEquals(byte[] expected) {
+            if (end - start != expected.length) {
+                return false;
+            }
+            for (int i = 0; i < expected.length; i++) {
+                if (der.get(start + i) != expected[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private byte[] bytes(int from, int to) {
+            byte[] bytes = new byte[to - from];
+            der.get(from, bytes);
+            return bytes;
+        }
+
+        private BigInteger integer() {
+            return new BigInteger(bytes(start, end));
+        }
+
+        CompiledCRL parse() throws CRLException {
+            int outerStart = der.position();
+            read(outerStart, der.limit(), SEQUENCE);
+            int outerEnd = end;
+            int tbsStart = start;
+            read(tbsStart, outerEnd, SEQUENCE);
+            int tbsEnd = end;
+
+            // TBSCertList
+            int p = start;
+            read(p, tbsEnd);
+            if (tag == INTEGER) {
+                p = end; // version
+                read(p, tbsEnd);
+            }
+            p = end; // signature, repeated below the TBSCertList
+            read(p, tbsEnd, SEQUENCE);
+            X500Principal issuer = new X500Principal(bytes(p, end));
+            p = end;
+            Date thisUpdate = new Date(time(p, tbsEnd));
+            p = end;
+            Date nextUpdate = null;
+            RevocationIndex.Builder builder = new RevocationIndex.Builder(issuer);
+            BigInteger crlNumber = null;
+            BigInteger baseCrlNumber = null;
+            if (p < tbsEnd) {
+                read(p, tbsEnd);
+                if (tag == UTC_TIME || tag == GENERALIZED_TIME) {
+                    nextUpdate = new Date(time(p, tbsEnd));
+                    p = end;
+                }
+            }
+            if (p < tbsEnd) {
+                read(p, tbsEnd);
+                if (tag == SEQUENCE) {
+                    int entriesEnd = end;
+                    p = start;
+                    X500Principal entryIssuer = null;
+                    while (p < entriesEnd) {
+                        read(p, entriesEnd, SEQUENCE);
+                        p = end;
+                        entryIssuer = entry(start, end, builder, entryIssuer);
+                    }
+                    p = entriesEnd;
+                }
+            }
+            if (p < tbsEnd) {
+                read(p, tbsEnd, EXPLICIT_0);
+                read(start, end, SEQUENCE);
+                int extensionsEnd = end;
+                for (p = start; p < extensionsEnd; ) {
+                    read(p, extensionsEnd, SEQUENCE);
+                    p = end;
+                    int extensionEnd = end;
+                    read(start, extensionEnd, OID);
+                    boolean isCrlNumber = contentEquals(CRL_NUMBER);
+                    boolean isDeltaIndicator = contentEquals(DELTA_CRL_INDICATOR);
+                    if (isCrlNumber || isDeltaIndicator) {
+                        extensionValue(end, extensionEnd);
+                        read(start, end, INTEGER);
+                        if (isCrlNumber) {
+                            crlNumber = integer();
+                        } else {
+                            baseCrlNumber = integer();
+                        }
+                    }
+                }
+            }
+
+            // signatureAlgorithm and signatureValue
+            read(tbsEnd, outerEnd, SEQUENCE);
+            int signatureAlgorithmEnd = end;
+            read(start, signatureAlgorithmEnd, OID);
+            String oid = oid(start, end);
+            boolean hasParameters = end < signatureAlgorithmEnd;
+            if (hasParameters) {
+                read(end, signatureAlgorithmEnd);
+                hasParameters = tag != NULL;
+            }
+            String signatureAlgorithm = hasParameters ? null : SIGNATURE_ALGORITHMS.get(oid);
+            if (signatureAlgorithm == null) {
+                LOG.debug("Will verify CRL signed using {} by materializing it", oid);
+            }
+            read(signatureAlgorithmEnd, outerEnd, BIT_STRING);
+            if (end - start < 1 || der.get(start) != 0) {
+                throw new CRLException("Unexpected padding in signature");
+            }
+            byte[] signature = bytes(start + 1, end);
+
+            ByteBuffer encoded = der.duplicate();
+            encoded.position(outerStart).limit(outerEnd);
+            ByteBuffer tbsCertList = der.duplicate();
+            tbsCertList.position(tbsStart).limit(tbsEnd);
+            return new CompiledCRL(issuer, thisUpdate, nextUpdate, crlNumber, baseCrlNumber, builder.build(),
+                signatureAlgorithm, signature, encoded, tbsCertList);
+        }
+
+        /**
+         * Adds a revokedCertificates entry to the index. Per RFC 5280, the certificateIssuer extension of an entry also
+         * applies to the entries following it, so the issuer is passed from one call to the next.
+         *
+         * @return issuer for the following entries (null for the CRL's issuer)
+         */
+        private X500Principal entry(int entryStart, int entryEnd, RevocationIndex.Builder builder, X500Principal issuer) throws CRLException {
+            read(entryStart, entryEnd, INTEGER);
+            int serialStart = start;
+            int serialLength = end - start;
+            long revocationDate = time(end, entryEnd);
+            int reasonCode = RevocationIndex.NO_REASON;
+            if (end < entryEnd) {
+                read(end, entryEnd, SEQUENCE);
+                int extensionsEnd = end;
+                for (int p = start; p < extensionsEnd; ) {
+                    read(p, extensionsEnd, SEQUENCE);
+                    p = end;
+                    int extensionEnd = end;
+                    read(start, extensionEnd, OID);
+                    if (contentEquals(REASON_CODE)) {
+                        extensionValue(end, extensionEnd);
+                        read(start, end, ENUMERATED);
+                        if (end - start == 1 && der.get(start) >= 0 && der.get(start) <= 10) {
+                            reasonCode = der.get(start);
+                        }
+                    } else if (contentEquals(CERTIFICATE_ISSUER)) {
+                        extensionValue(end, extensionEnd);
+                        read(start, end, SEQUENCE);
+                        int namesEnd = end;
+                        for (int q = start; q < namesEnd; q = end) {
+                            read(q, namesEnd);
+                            if (tag == DIRECTORY_NAME) {
+                                int nameStart = start;
+                                read(nameStart, end, SEQUENCE);
+                                issuer = new X500Principal(bytes(nameStart, end));
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            builder.add(issuer, der, serialStart, serialLength, revocationDate, reasonCode);
+            return issuer;
+        }
+
+        /**
+         * Positions {@link #start} and {@link #end} on the contents of the extnValue OCTET STRING, skipping the critical flag.
+         */
+        private void extensionValue(int position, int extensionEnd) throws CRLException {
+            read(position, extensionEnd);
+            if (tag == BOOLEAN) {
+                read(end, extensionEnd);
+            }
+            if (tag != OCTET_STRING) {
+                throw new CRLException("Expected extnValue at offset " + position);
+            }
+        }
+
+        private String oid(int from, int to) {
+            StringBuilder oid = new StringBuilder();
+            long value = 0;
+            for (int i = from; i < to; i++) {
+                int b = der.get(i) & 0xff;
+                value = (value << 7) | (b & 0x7f);
+                if ((b & 0x80) == 0) {
+                    if (oid.length() == 0) {
+                        int first = (int) Math.min(value / 40, 2);
+                        oid.append(first).append('.').append(value - first * 40);
+                    } else {
+                        oid.append('.').append(value);
+                    }
+                    value = 0;
+                }
+            }
+            return oid.toString();
+        }
+
+        /**
+         * Reads a UTCTime or GeneralizedTime (which DER requires to be in UTC, with no fractional seconds).
+         *
+         * @return Milliseconds since the epoch
+         */
+        private long time(int position, int limit) throws CRLException {
+            read(position, limit);
+            int p = start;
+            final int year;
+            if (tag == UTC_TIME) {
+                int yy = digits(p, 2);
+                year = yy < 50 ? 2000 + yy : 1900 + yy;
+                p += 2;
+            } else if (tag == GENERALIZED_TIME) {
+                year = digits(p, 4);
+                p += 4;
+            } else {
+                throw new CRLException(String.format("Expected a time but found tag 0x%02x at offset %d", tag, position));
+            }
+            if (end - p != 11 || der.get(end - 1) != 'Z') {
+                throw new CRLException("Unsupported time format at offset " + position);
+            }
+            int month = digits(p, 2);
+            int day = digits(p + 2, 2);
+            int hour = digits(p + 4, 2);
+            int minute = digits(p + 6, 2);
+            int second = digits(p + 8, 2);
+            return ((daysSinceEpoch(year, month, day) * 24 + hour) * 60 + minute) * 60_000L + second * 1000L;
+        }
+
+        private int digits(int position, int count) throws CRLException {
+            int value = 0;
+            for (int i = position; i < position + count; i++) {
+                int digit = der.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new CRLException("Expected a digit at offset " + i);
+                }
+                value = value * 10 + digit;
+            }
+            return value;
+        }
+
+        /**
+         * Howard Hinnant's days_from_civil
+         */
+        private static long daysSinceEpoch(int year, int month, int day) {
+            year -= month <= 2 ? 1 : 0;
+            int era = (year >= 0 ? year : year - 399) / 400;
+            int yearOfEra = year - era * 400;
+            int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+            int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+            return era * 146097L + dayOfEra - 719468;
+        }
+    }
+}
@@ -24,6 +24,7 @@ import org.springframework.core.env.MapPropertySource;
 import org.springframework.core.env.MutablePropertySources;
 import org.springframework.core.env.PropertySource;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.server.WebFilter;
 
 import jakarta.servlet.Filter;
 
@@ -31,9 +32,14 @@ import jakarta.servlet.Filter;
  * Defines Spring beans that are used for mutual SSL. They are:
  * <ol>
  * <li>{@link #easySslContext} - may be used to configure an SSL-using {@link RestTemplate}</li>
+ * <li>{@code easySslClientHttpRequestFactory} - a pooled client for {@link RestTemplate} and {@code RestClient}, if Apache HttpClient 5 is on the classpath</li>
  * <li>{@link #easySslClientCertificateCheckingFilter} - checks that client's certificate has not been revoked</li>
+ * <li>{@link #easySslReactiveClientCertificateCheckingFilter} - does the same in WebFlux apps</li>
  * <li>{@link #easySslServletContainerCustomizer} - used by Spring Boot to configure Jetty/Tomcat/Undertow to use SSL with client cert auth</li>
+ * <li>{@link #easySslNettyCustomizer} - secures Reactor Netty (WebFlux) servers, using OpenSSL if it is available</li>
  * <li>{@code local.server.protocol} - environment property injectable into managed beans using {@code @Value}</li>
+ * <li>{@code easySslMetrics} - publishes metrics, if Micrometer is on the classpath</li>
+ * <li>{@code easySslBundleRegistrar} - registers the {@code easyssl} SSL bundle with Spring Boot, keeping it up to date</li>
  * </ol>
  */
 @Configuration
@@ -75,18 +81,28 @@ public class EasySslBeans {
     @Bean
     @ConditionalOnServerCustomizationEnabled
     public Filter easySslClientCertificateCheckingFilter(EasySslHelper helper) throws Exception {
-        return new ClientCertificateCheckingFilter(helper.getTrustManager());
+        return new ClientCertificateCheckingFilter(helper);
+    }
+
+    @Bean
+    @ConditionalOnServerCustomizationEnabled
+    @ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+    public WebFilter easySslReactiveClientCertificateCheckingFilter(EasySslHelper helper, EasySslProperties config) {
+        // OCSP responders are asked over the network, which must not hold up the event loop
+        return new ReactiveClientCertificateCheckingFilter(helper, config.isOcspEnabled());
     }
 
     @Bean
     @ConditionalOnServerCustomizationEnabled
     public WebServerFactoryCustomizer<ConfigurableWebServerFactory> easySslServletContainerCustomizer(EasySslProperties config,
                                                                                                       EasySslHelper helper,
+                                                                                                      HandshakeStatistics handshakeStatistics,
                                                                                                       @Autowired(required = false) ServerProperties serverProperties) throws Exception {
         final Ssl sslProperties = EasySslHelper.getSslProperties(config, serverProperties);
-        
-        // Create a custom SSL bundle using the helper's keystore and truststore
-        SslBundle sslBundle = new EasySslBundleImpl.SslBundleImpl(helper, sslProperties);
+
+        // the container is configured once, with the material loaded at startup; see EasySslBundleImpl.SslBundlesImpl
+        SslBundle sslBundle = new EasySslBundleImpl.SslBundleImpl(helper.getMaterial(), new EasySslBundleImpl.SslOptionsImpl(sslProperties),
+                handshakeStatistics.wrap(helper.getServerSSLContext()));
 
         return factory -> {
             factory.setSslBundles(new EasySslBundleImpl.SslBundlesImpl(sslBundle));
@@ -94,18 +110,47 @@ public class EasySslBeans {
         };
     }
 
+    /**
+     * Kept apart so that the registrar (and Spring Boot's SSL auto-configuration, which calls it) are optional.
+     */
+    @Configuration
+    @ConditionalOnProperty(value = "easyssl.enabled", matchIfMissing = true)
+    @ConditionalOnClass(name = "org.springframework.boot.autoconfigure.ssl.SslBundleRegistrar")
+    static class EasySslBundleConfiguration {
+        @Bean
+        public EasySslBundleImpl.Registrar easySslBundleRegistrar(EasySslHelper helper) {
+            return new EasySslBundleImpl.Registrar(helper);
+        }
+    }
+
+    /**
+     * Kept apart so that HttpClient classes are only loaded when HttpClient is present.
+     */
+    @Configuration
+    @ConditionalOnProperty(value = "easyssl.enabled", matchIfMissing = true)
+    @ConditionalOnClass(name = "org.apache.hc.client5.http.impl.classic.HttpClients")
+    static class EasySslHttpClientConfiguration {
+        @Bean
+        public EasySslClientHttpRequestFactory easySslClientHttpRequestFactory(EasySslHelper helper, EasySslProperties config) {
+            return new EasySslClientHttpRequestFactory(helper, config);
+        }
+    }
+
+    /**
+     * Counts full and resumed TLS handshakes completed by the servlet container (or Netty).
+     */
     @Bean
     @ConditionalOnServerCustomizationEnabled
-    @ConditionalOnClass(name = "io.undertow.Undertow")
-    public EasySslUndertowCustomizer easySslUndertowCustomizer() throws Exception {
-        return new EasySslUndertowCustomizer();
+    public HandshakeStatistics easySslHandshakeStatistics() {
+        return new HandshakeStatistics();
     }
 
     @Bean
     @ConditionalOnServerCustomizationEnabled
     @ConditionalOnClass(name = "org.apache.catalina.connector.Connector")
-    public EasySslTomcatCustomizer easySslTomcatCustomizer() throws Exception {
-        return new EasySslTomcatCustomizer();
+    public EasySslTomcatCustomizer easySslTomcatCustomizer(EasySslProperties config, EasySslHelper helper,
+                                                           HandshakeStatistics handshakeStatistics) throws Exception {
+        return new EasySslTomcatCustomizer(config, helper, handshakeStatistics);
     }
 
     /**
@@ -116,8 +161,33 @@ public class EasySslBeans {
     @Bean
     @ConditionalOnServerCustomizationEnabled
     @ConditionalOnClass(name = "org.eclipse.jetty.server.Server")
-    public EasySslJettyCustomizer easySslJettyCustomizer() {
-        return new EasySslJettyCustomizer();
+    public EasySslJettyCustomizer easySslJettyCustomizer(EasySslProperties config, EasySslHelper helper,
+                                                         HandshakeStatistics handshakeStatistics) {
+        return new EasySslJettyCustomizer(config, helper, handshakeStatistics);
+    }
+
+    @Bean
+    @ConditionalOnServerCustomizationEnabled
+    @ConditionalOnClass(name = "reactor.netty.http.server.HttpServer")
+    public EasySslNettyCustomizer easySslNettyCustomizer(EasySslProperties config, EasySslHelper helper,
+                                                         HandshakeStatistics handshakeStatistics,
+                                                         @Autowired(required = false) ServerProperties serverProperties) {
+        boolean http2 = serverProperties != null && serverProperties.getHttp2() != null && serverProperties.getHttp2().isEnabled();
+        return new EasySslNettyCustomizer(config, helper, handshakeStatistics,
+                EasySslHelper.getSslProperties(config, serverProperties), http2);
+    }
+
+    /**
+     * Kept apart so that Micrometer classes are only loaded when Micrometer is present.
+     */
+    @Configuration
+    @ConditionalOnProperty(value = "easyssl.enabled", matchIfMissing = true)
+    @ConditionalOnClass(name = "io.micrometer.core.instrument.binder.MeterBinder")
+    static class EasySslMetricsConfiguration {
+        @Bean
+        public EasySslMetrics easySslMetrics(EasySslHelper helper, @Autowired(required = false) HandshakeStatistics handshakeStatistics) {
+            return new EasySslMetrics(helper, handshakeStatistics);
+        }
     }
 
     @Autowired
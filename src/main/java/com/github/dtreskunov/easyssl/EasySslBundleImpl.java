@@ -5,50 +5,88 @@ import java.util.List;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
+import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.KeyManagerFactorySpi;
+import javax.net.ssl.ManagerFactoryParameters;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.TrustManagerFactorySpi;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.ssl.SslBundleRegistrar;
 import org.springframework.boot.ssl.NoSuchSslBundleException;
 import org.springframework.boot.ssl.SslBundle;
 import org.springframework.boot.ssl.SslBundleKey;
+import org.springframework.boot.ssl.SslBundleRegistry;
 import org.springframework.boot.ssl.SslBundles;
 import org.springframework.boot.ssl.SslManagerBundle;
 import org.springframework.boot.ssl.SslOptions;
 import org.springframework.boot.ssl.SslStoreBundle;
 import org.springframework.boot.web.server.Ssl;
+import org.springframework.context.ApplicationListener;
+import org.springframework.util.Assert;
+
+import com.github.dtreskunov.easyssl.EasySslHelper.SSLContextReinitializedEvent;
 
 /**
  * Implementations of the Spring Boot SSL bundle interfaces.
  */
 final class EasySslBundleImpl {
+    private static final Logger LOG = LoggerFactory.getLogger(EasySslBundleImpl.class);
     static final String BUNDLE_NAME = "easyssl";
 
     private EasySslBundleImpl() {
         // Prevent instantiation
     }
 
+    /**
+     * The bundle for one {@link EasySslMaterial#getGeneration() generation} of the material. Its stores and managers are
+     * that generation's, built once and handed out as often as they are asked for. {@link #createSslContext()} returns
+     * the context it was given, which (being one of {@link EasySslHelper}'s) follows reloads by itself.
+     */
     static class SslBundleImpl implements SslBundle {
-        private final EasySslHelper helper;
-        private final Ssl sslProperties;
+        private final long generation;
+        private final SslStoreBundle stores;
+        private final SslManagerBundle managers;
+        private final SslOptions options;
+        private final SSLContext sslContext;
+
+        public SslBundleImpl(EasySslMaterial material, SslOptions options, SSLContext sslContext) {
+            Assert.notNull(material, "material may not be null");
+            Assert.notNull(options, "options may not be null");
+            Assert.notNull(sslContext, "sslContext may not be null");
+            this.generation = material.getGeneration();
+            this.stores = new SslStoreBundleImpl(material);
+            this.managers = new SslManagerBundleImpl(material);
+            this.options = options;
+            this.sslContext = sslContext;
+        }
 
-        public SslBundleImpl(EasySslHelper helper, Ssl sslProperties) {
-            this.helper = helper;
-            this.sslProperties = sslProperties;
+        long getGeneration() {
+            return generation;
+        }
+
+        @Override
+        public SSLContext createSslContext() {
+            return sslContext;
         }
 
         @Override
         public SslStoreBundle getStores() {
-            return new SslStoreBundleImpl(helper);
+            return stores;
         }
 
         @Override
         public SslBundleKey getKey() {
-            return new SslBundleKeyImpl();
+            return SslBundleKeyImpl.INSTANCE;
         }
 
         @Override
         public SslOptions getOptions() {
-            return new SslOptionsImpl(sslProperties);
+            return options;
         }
 
         @Override
@@ -58,20 +96,25 @@ final class EasySslBundleImpl {
 
         @Override
         public SslManagerBundle getManagers() {
-            return new SslManagerBundleImpl(helper);
+            return managers;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s(generation=%d)", getClass().getSimpleName(), generation);
         }
     }
 
     static class SslStoreBundleImpl implements SslStoreBundle {
-        private final EasySslHelper helper;
+        private final EasySslMaterial material;
 
-        public SslStoreBundleImpl(EasySslHelper helper) {
-            this.helper = helper;
+        public SslStoreBundleImpl(EasySslMaterial material) {
+            this.material = material;
         }
 
         @Override
         public KeyStore getKeyStore() {
-            return helper.getKeyStore();
+            return material.getKeyStore();
         }
 
         @Override
@@ -81,11 +124,12 @@ final class EasySslBundleImpl {
 
         @Override
         public KeyStore getTrustStore() {
-            return helper.getTrustStore();
+            return material.getTrustStore();
         }
     }
 
     static class SslBundleKeyImpl implements SslBundleKey {
+        static final SslBundleKeyImpl INSTANCE = new SslBundleKeyImpl();
 
         @Override
         public String getAlias() {
@@ -116,36 +160,80 @@ final class EasySslBundleImpl {
         }
     }
 
+    /**
+     * Hands out the key and trust managers that the material was built with, rather than building new ones from its
+     * stores. So the trust manager checks CRLs, OCSP and expiration just like {@link EasySslHelper#getSSLContext()}.
+     */
     static class SslManagerBundleImpl implements SslManagerBundle {
-        private final EasySslHelper helper;
+        private final KeyManagerFactory keyManagerFactory;
+        private final TrustManagerFactory trustManagerFactory;
 
-        public SslManagerBundleImpl(EasySslHelper helper) {
-            this.helper = helper;
+        public SslManagerBundleImpl(EasySslMaterial material) {
+            this.keyManagerFactory = new FixedKeyManagerFactory(material.getKeyMaterial().getKeyManager());
+            this.trustManagerFactory = new FixedTrustManagerFactory(material.getTrustMaterial().getTrustManager());
         }
 
         @Override
         public KeyManagerFactory getKeyManagerFactory() {
-            try {
-                KeyManagerFactory factory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-                factory.init(helper.getKeyStore(), EasySslHelper.KEY_PASSWORD.toCharArray());
-                return factory;
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
+            return keyManagerFactory;
         }
 
         @Override
         public TrustManagerFactory getTrustManagerFactory() {
-            try {
-                TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-                factory.init(helper.getTrustStore());
-                return factory;
-            } catch (Exception e) {
-                throw new RuntimeException(e);
-            }
+            return trustManagerFactory;
+        }
+    }
+
+    /**
+     * A {@link KeyManagerFactory} that already has its key manager, and ignores being initialized.
+     */
+    private static final class FixedKeyManagerFactory extends KeyManagerFactory {
+        FixedKeyManagerFactory(KeyManager keyManager) {
+            super(new KeyManagerFactorySpi() {
+                @Override
+                protected void engineInit(KeyStore keyStore, char[] password) {
+                }
+
+                @Override
+                protected void engineInit(ManagerFactoryParameters spec) {
+                }
+
+                @Override
+                protected KeyManager[] engineGetKeyManagers() {
+                    return new KeyManager[]{keyManager};
+                }
+            }, null, KeyManagerFactory.getDefaultAlgorithm());
         }
     }
 
+    /**
+     * A {@link TrustManagerFactory} that already has its trust manager, and ignores being initialized.
+     */
+    private static final class FixedTrustManagerFactory extends TrustManagerFactory {
+        FixedTrustManagerFactory(TrustManager trustManager) {
+            super(new TrustManagerFactorySpi() {
+                @Override
+                protected void engineInit(KeyStore keyStore) {
+                }
+
+                @Override
+                protected void engineInit(ManagerFactoryParameters spec) {
+                }
+
+                @Override
+                protected TrustManager[] engineGetTrustManagers() {
+                    return new TrustManager[]{trustManager};
+                }
+            }, null, TrustManagerFactory.getDefaultAlgorithm());
+        }
+    }
+
+    /**
+     * The bundles handed to the servlet container. They never change: the container's {@link SSLContext} follows
+     * reloads by itself, whereas calling Spring Boot's update handlers would make it rebuild its connectors (dropping
+     * their session caches, and EasySSL's customizations). Other components get the current bundle from
+     * {@link Registrar}'s registry instead.
+     */
     static class SslBundlesImpl implements SslBundles {
         private final SslBundle sslBundle;
 
@@ -166,7 +254,7 @@ final class EasySslBundleImpl {
             if (!BUNDLE_NAME.equals(name)) {
                 throw new UnsupportedOperationException("No such SSL bundle: " + name);
             }
-            // No dynamic updates in this implementation
+            // see above
         }
 
         @Override
@@ -176,7 +264,61 @@ final class EasySslBundleImpl {
         
         @Override
         public void addBundleRegisterHandler(BiConsumer<String, SslBundle> registerHandler) {
-            // No dynamic updates in this implementation
+            // there is only the one bundle, and it is there from the start
+        }
+    }
+
+    /**
+     * Registers the {@value #BUNDLE_NAME} bundle with Spring Boot's {@link SslBundleRegistry}, so that components which
+     * are configured with {@code ssl.bundle: easyssl} (RestClient, WebClient, data store clients and the like) use the
+     * material EasySSL has already loaded. After each reload, the bundle of the new generation replaces the old one,
+     * which calls the update handlers registered with the registry.
+     */
+    static class Registrar implements SslBundleRegistrar, ApplicationListener<SSLContextReinitializedEvent> {
+        private final EasySslHelper helper;
+        private volatile SslBundleImpl bundle;
+        /** Guarded by {@code this} */
+        private SslBundleRegistry registry;
+        /** Guarded by {@code this} */
+        private long registeredGeneration;
+
+        Registrar(EasySslHelper helper) {
+            Assert.notNull(helper, "helper may not be null");
+            this.helper = helper;
+        }
+
+        @Override
+        public synchronized void registerBundles(SslBundleRegistry registry) {
+            SslBundleImpl current = getBundle();
+            registry.registerBundle(BUNDLE_NAME, current);
+            this.registry = registry;
+            this.registeredGeneration = current.getGeneration();
+        }
+
+        @Override
+        public synchronized void onApplicationEvent(SSLContextReinitializedEvent event) {
+            if (event.getHelper() != helper || registry == null) {
+                return;
+            }
+            SslBundleImpl current = getBundle();
+            if (current.getGeneration() != registeredGeneration) {
+                LOG.info("Updating SSL bundle {} to generation {}", BUNDLE_NAME, current.getGeneration());
+                registry.updateBundle(BUNDLE_NAME, current);
+                registeredGeneration = current.getGeneration();
+            }
+        }
+
+        /**
+         * @return The bundle of the current generation, the same one for as long as it is current
+         */
+        SslBundleImpl getBundle() {
+            EasySslMaterial material = helper.getMaterial();
+            SslBundleImpl result = bundle;
+            if (result == null || result.getGeneration() != material.getGeneration()) {
+                result = new SslBundleImpl(material, SslOptions.NONE, helper.getSSLContext());
+                bundle = result;
+            }
+            return result;
         }
     }
 } 
\ No newline at end of file
@@ -0,0 +1,194 @@
+package com.github.dtreskunov.easyssl;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocket;
+
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.DefaultClientTlsStrategy;
+import org.apache.hc.client5.http.ssl.HostnameVerificationPolicy;
+import org.apache.hc.client5.http.ssl.HttpsSupport;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationListener;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.Assert;
+
+import com.github.dtreskunov.easyssl.EasySslHelper.SSLContextReinitializedEvent;
+
+/**
+ * A {@link ClientHttpRequestFactory} for {@code RestClient} and {@code RestTemplate}, backed by a pooled Apache
+ * HttpClient that authenticates with EasySSL's certificate. Connections are kept open for reuse, and new ones resume
+ * the TLS sessions of earlier ones, since they all share {@link EasySslHelper#getSSLContext()}. Handshakes are counted
+ * by {@link EasySslHelper#getClientHandshakeStatistics()}, so that the resumption rate can be monitored.
+ * <p>
+ * Pooled connections were established with the certificate (and checked against the CA certificates and CRLs) that
+ * were current at the time. So when those change, requests move to a new pool, while the old one is drained: its idle
+ * connections are closed straight away, and the others once the requests using them are done, or
+ * {@link EasySslProperties#getHttpClientDrainTimeout() at the latest}.
+ */
+public class EasySslClientHttpRequestFactory implements ClientHttpRequestFactory, ApplicationListener<SSLContextReinitializedEvent>, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(EasySslClientHttpRequestFactory.class);
+    private static final String DRAIN_TASK_NAME = "Drain EasySSL HTTP client connections";
+    /** How often to check whether a pool being drained is done with */
+    private static final long DRAIN_CHECK_MILLIS = 1000;
+
+    /**
+     * A connection pool and the client using it.
+     */
+    private static final class Pool {
+        private final PoolingHttpClientConnectionManager connectionManager;
+        private final CloseableHttpClient httpClient;
+        private final HttpComponentsClientHttpRequestFactory requestFactory;
+        private long drainDeadlineNanos;
+        private ScheduledFuture<?> drainFuture;
+
+        private Pool(PoolingHttpClientConnectionManager connectionManager, CloseableHttpClient httpClient) {
+            this.connectionManager = connectionManager;
+            this.httpClient = httpClient;
+            this.requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
+        }
+    }
+
+    /**
+     * Records the handshake of each connection it upgrades to TLS.
+     */
+    private static final class RecordingTlsStrategy extends DefaultClientTlsStrategy {
+        private final HandshakeStatistics statistics;
+
+        private RecordingTlsStrategy(EasySslHelper helper) {
+            super(helper.getSSLContext(), HostnameVerificationPolicy.BOTH, HttpsSupport.getDefaultHostnameVerifier());
+            this.statistics = helper.getClientHandshakeStatistics();
+        }
+
+        @Override
+        public SSLSocket upgrade(Socket socket, String target, int port, Object attachment, HttpContext context) throws IOException {
+            long opened = System.currentTimeMillis();
+            SSLSocket sslSocket = super.upgrade(socket, target, port, attachment, context);
+            statistics.record(sslSocket.getSession(), opened, false);
+            return sslSocket;
+        }
+    }
+
+    private final EasySslHelper helper;
+    private final EasySslProperties config;
+    private volatile Pool current;
+    private final List<Pool> draining = new CopyOnWriteArrayList<>();
+
+    EasySslClientHttpRequestFactory(EasySslHelper helper, EasySslProperties config) {
+        Assert.notNull(helper, "helper may not be null");
+        Assert.notNull(config, "config may not be null");
+        this.helper = helper;
+        this.config = config;
+        this.current = createPool();
+    }
+
+    private Pool createPool() {
+        PoolingHttpClientConnectionManager connectionManager = PoolingHttpClientConnectionManagerBuilder.create()
+            .setTlsSocketStrategy(new RecordingTlsStrategy(helper))
+            .setMaxConnTotal(config.getHttpClientMaxConnections())
+            .setMaxConnPerRoute(config.getHttpClientMaxConnectionsPerRoute())
+            .build();
+        CloseableHttpClient httpClient = HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .evictIdleConnections(TimeValue.ofMilliseconds(config.getHttpClientIdleTimeout().toMillis()))
+            .evictExpiredConnections()
+            // connections authenticated with a client certificate are otherwise tied to that principal, and only leased to
+            // requests that present it - but every request here has the same one
+            .disableConnectionState()
+            .build();
+        return new Pool(connectionManager, httpClient);
+    }
+
+    @Override
+    public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+        Pool pool = current;
+        Assert.state(pool != null, "The EasySSL HTTP client has been closed");
+        return pool.requestFactory.createRequest(uri, httpMethod);
+    }
+
+    /**
+     * Moves new requests to a new pool, and starts draining the old one.
+     */
+    @Override
+    public synchronized void onApplicationEvent(SSLContextReinitializedEvent event) {
+        if (event.getHelper() != helper || current == null) {
+            return;
+        }
+        Pool previous = current;
+        current = createPool();
+        previous.drainDeadlineNanos = System.nanoTime() + config.getHttpClientDrainTimeout().toNanos();
+        draining.add(previous);
+        previous.connectionManager.closeIdle(TimeValue.ZERO_MILLISECONDS);
+        LOG.info("Draining {} HTTP client connections opened before the reload", previous.connectionManager.getTotalStats().getLeased());
+        previous.drainFuture = Scheduler.schedule(DRAIN_TASK_NAME, DRAIN_CHECK_MILLIS, TimeUnit.MILLISECONDS, () -> drain(previous));
+    }
+
+    private synchronized void drain(Pool pool) {
+        if (!draining.contains(pool)) {
+            return;
+        }
+        // connections returned to the pool since the last check are of no further use
+        pool.connectionManager.closeIdle(TimeValue.ZERO_MILLISECONDS);
+        int leased = pool.connectionManager.getTotalStats().getLeased();
+        if (leased == 0) {
+            close(pool, CloseMode.GRACEFUL);
+        } else if (System.nanoTime() - pool.drainDeadlineNanos >= 0) {
+            LOG.warn("Closing {} HTTP client connections that were still in use {} after the reload", leased, config.getHttpClientDrainTimeout());
+            close(pool, CloseMode.IMMEDIATE);
+        }
+    }
+
+    private void close(Pool pool, CloseMode closeMode) {
+        if (pool.drainFuture != null) {
+            pool.drainFuture.cancel(false);
+        }
+        draining.remove(pool);
+        pool.httpClient.close(closeMode);
+    }
+
+    /**
+     * @return How many pools opened before reloads have connections that are still in use
+     */
+    int getDrainingCount() {
+        return draining.size();
+    }
+
+    /**
+     * Closes all connections, including those that are in use.
+     */
+    @Override
+    public synchronized void close() {
+        for (Pool pool: draining) {
+            close(pool, CloseMode.IMMEDIATE);
+        }
+        if (current != null) {
+            current.httpClient.close(CloseMode.GRACEFUL);
+            current = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        Pool pool = current;
+        return String.format("%s(leased=%d, available=%d, draining=%d)", getClass().getSimpleName(),
+                pool == null ? 0 : pool.connectionManager.getTotalStats().getLeased(),
+                pool == null ? 0 : pool.connectionManager.getTotalStats().getAvailable(),
+                getDrainingCount());
+    }
+}
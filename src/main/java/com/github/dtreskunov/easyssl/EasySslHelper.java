@@ -2,9 +2,9 @@ package com.github.dtreskunov.easyssl;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
 import java.security.KeyException;
 import java.security.KeyPair;
 import java.security.KeyStore;
@@ -12,30 +12,29 @@ import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.PrivateKey;
 import java.security.Provider;
-import java.security.PublicKey;
-import java.security.SecureRandom;
 import java.security.Security;
-import java.security.SignatureException;
 import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateFactory;
+import java.security.cert.CRLException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.Enumeration;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.locks.ReentrantLock;
 
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
+import javax.net.ssl.X509ExtendedKeyManager;
 import javax.net.ssl.X509TrustManager;
 
 import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
@@ -59,15 +58,18 @@ import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.ApplicationEventPublisherAware;
 import org.springframework.core.io.Resource;
 import org.springframework.util.Assert;
-import org.springframework.util.StreamUtils;
 
-public class EasySslHelper implements ApplicationEventPublisherAware {
+public class EasySslHelper implements ApplicationEventPublisherAware, AutoCloseable {
     private static final Logger LOG = LoggerFactory.getLogger(EasySslHelper.class);
 
     /** Java APIs require a password when using a {@link KeyStore}. Hard-coded password is fine since the KeyStore is ephemeral. */
     static final String KEY_PASSWORD = UUID.randomUUID().toString(); // 122 bits of secure random goodness
     static final String KEY_ALIAS = "easyssl-key";
-    private static final Pattern PEM_CERTIFICATE = Pattern.compile("-----BEGIN CERTIFICATE-----.*?-----END CERTIFICATE-----", Pattern.DOTALL);
+    private static final String RELOAD_TASK_NAME = "Load EasySSL resources";
+    /** Read by JSSE whenever an {@link SSLContext} is created */
+    private static final String SESSION_TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+    /** Keeps helpers created concurrently from restoring each other's value of {@link #SESSION_TICKETS_PROPERTY} */
+    private static final Object SESSION_TICKETS_LOCK = new Object();
 
     public static class SSLContextReinitializedEvent extends ApplicationEvent {
         private EasySslHelper helper;
@@ -82,23 +84,34 @@ public class EasySslHelper implements ApplicationEventPublisherAware {
         }
     }
 
-    private final SSLContext sslContext = SSLContext.getInstance("TLS");
-    private KeyStore keyStore;
-    private KeyStore trustStore;
-    private List<X509Certificate> caCertificates;
-    private X509CRL crl;
-    private PrivateKey privateKey;
-    private List<X509Certificate> certificateChain;
-    private X509TrustManager trustManager;
-    private boolean initialized;
-    private ScheduledFuture<?> localCertificateExpirationCheck;
+    /** Initialized once: its key and trust managers pass every call through to the current {@link #material} */
+    private final SSLContext sslContext;
+    /** Like {@link #sslContext}, but leaves revocation checks to {@link ClientCertificateCheckingFilter} */
+    private final SSLContext serverSslContext;
+    /** Held while loading resources. Readers never take it - they read {@link #material} instead. */
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private volatile EasySslMaterial material;
+    /** Null if there are none */
+    private final SniCertificates sniCertificates;
+    /** One for each local certificate chain */
+    private final List<ScheduledFuture<?>> localCertificateExpirationChecks = new ArrayList<>();
+    private ScheduledFuture<?> refreshFuture;
+    private FileWatcher fileWatcher;
     private ApplicationEventPublisher applicationEventPublisher;
     private EasySslProperties config;
+    private final ReloadStatistics reloadStatistics = new ReloadStatistics();
+    /** Recorded by clients that use {@link #sslContext}, where they are able to */
+    private final HandshakeStatistics clientHandshakeStatistics = new HandshakeStatistics();
+    /** Shared by the verdict caches of all trust generations */
+    private final VerdictCachingTrustManager.Statistics verdictCacheStatistics = new VerdictCachingTrustManager.Statistics();
+    private volatile TrustCheckRecorder trustCheckRecorder = TrustCheckRecorder.NONE;
+    /** Handed to trust managers, so that {@link #setTrustCheckRecorder} applies to those already built */
+    private final TrustCheckRecorder trustCheckForwarder = (source, nanos, trusted) -> trustCheckRecorder.record(source, nanos, trusted);
 
     public EasySslHelper(EasySslProperties config) throws Exception {
         Assert.notNull(config, "config is null");
         if (AopUtils.isAopProxy(config)) {
-            // Because initialize() is called outside the "main" thread, there is a possibility that a not-fully live Spring proxy
+            // Because reload() is called outside the "main" thread, there is a possibility that a not-fully live Spring proxy
             // will deadlock due to a lock held in the "main" thread. I've seen an instance where calling getRefreshCommand() triggered
             // the CGLIB proxy to call into Spring's findAutowireCandidates(), which called
             // AbstractAutowireCapableBeanFactory.getSingletonFactoryBeanForTypeCheck(), which deadlocked on the mutex.
@@ -108,16 +121,72 @@ public class EasySslHelper implements ApplicationEventPublisherAware {
         } else {
             this.config = config;
         }
-
-        Scheduler.runAndSchedule(
-                "Load EasySSL resources",
+        Assert.isTrue(this.config.getDeltaCertificateRevocationList() == null || this.config.getCertificateRevocationList() != null,
+                "deltaCertificateRevocationList requires a certificateRevocationList to apply the changes to");
+        sslContext = SSLContext.getInstance("TLS");
+        serverSslContext = withServerSessionTickets(this.config.getServerSessionTickets(), () -> SSLContext.getInstance("TLS"));
+        X509ExtendedKeyManager keyManager = new ReloadingKeyManager(this::getMaterial);
+        if (this.config.getSniCertificates().isEmpty()) {
+            sniCertificates = null;
+        } else {
+            sniCertificates = new SniCertificates(this.config.getSniCertificates(), this.config.getSniCertificateCacheSize(),
+                    getMillis(this.config.getResourceTimeout()));
+            keyManager = new SniKeyManager(keyManager, sniCertificates);
+        }
+        sslContext.init(new KeyManager[]{keyManager},
+                new TrustManager[]{new ReloadingTrustManager(this::getMaterial, EasySslMaterial.TrustMaterial::getTrustManager)}, null);
+        serverSslContext.init(new KeyManager[]{keyManager},
+                new TrustManager[]{new ReloadingTrustManager(this::getMaterial, EasySslMaterial.TrustMaterial::getCaTrustManager)}, null);
+        configureSessionContext(sslContext.getServerSessionContext(), this.config.getServerSessionCacheSize(), this.config.getServerSessionTimeout());
+        configureSessionContext(serverSslContext.getServerSessionContext(), this.config.getServerSessionCacheSize(), this.config.getServerSessionTimeout());
+        configureSessionContext(sslContext.getClientSessionContext(), this.config.getClientSessionCacheSize(), this.config.getClientSessionTimeout());
+
+        refreshFuture = Scheduler.runAndSchedule(
+                RELOAD_TASK_NAME,
                 getMillis(config.getRefreshTimeout()), getMillis(config.getRefreshInterval()), TimeUnit.MILLISECONDS,
-                this::initialize);
+                this::reload);
+
+        Assert.notNull(material, "material was expected to be non-null");
+
+        if (this.config.isRefreshOnFileChange()) {
+            List<Resource> resources = new ArrayList<>(this.config.getCaCertificate());
+            resources.add(this.config.getCertificateRevocationList());
+            resources.add(this.config.getDeltaCertificateRevocationList());
+            resources.add(this.config.getCertificate());
+            resources.add(this.config.getKey());
+            for (EasySslProperties.AdditionalCertificate additional: this.config.getAdditionalCertificates()) {
+                resources.add(additional.getCertificate());
+                resources.add(additional.getKey());
+            }
+            if (sniCertificates != null) {
+                resources.addAll(sniCertificates.getResources());
+            }
+            fileWatcher = FileWatcher.watch(resources, this.config.getRefreshDebounce(), Scheduler.withTimeout(
+                    RELOAD_TASK_NAME, getMillis(this.config.getRefreshTimeout()), TimeUnit.MILLISECONDS, this::reload));
+        }
+    }
 
-        Assert.isTrue(initialized, "initialized was expected to be true");
-        Assert.notNull(keyStore, "keyStore was expected to be non-null");
-        Assert.notNull(trustStore, "trustStore was expected to be non-null");
-        Assert.notNull(trustManager, "trustManager was expected to be non-null");
+    /**
+     * Stops refreshing resources, both periodically and on file changes.
+     */
+    @Override
+    public void close() {
+        if (refreshFuture != null) {
+            refreshFuture.cancel(false);
+        }
+        if (fileWatcher != null) {
+            try {
+                fileWatcher.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to stop watching files", e);
+            }
+        }
+        reloadLock.lock();
+        try {
+            cancelLocalCertificateExpirationChecks();
+        } finally {
+            reloadLock.unlock();
+        }
     }
 
     @Override
@@ -125,46 +194,196 @@ public class EasySslHelper implements ApplicationEventPublisherAware {
         this.applicationEventPublisher = applicationEventPublisher;
     }
 
-    synchronized public void reinitialize() {
-        initialize();
+    /**
+     * Reloads all resources on the calling thread. Callers of the getters are not blocked while this is running: they
+     * keep seeing the previous {@link EasySslMaterial} until the new one is complete.
+     */
+    public void reinitialize() {
+        reloadLock.lock();
+        try {
+            load();
+            refreshSniCertificates();
+        } finally {
+            reloadLock.unlock();
+        }
     }
 
-    synchronized public SSLContext getSSLContext() {
+    /**
+     * @return A context that is never re-initialized. Its engines and sockets use the material that is current when
+     * they handshake, so reloads take effect without discarding cached sessions.
+     */
+    public SSLContext getSSLContext() {
         return sslContext;
     }
 
-    synchronized public KeyStore getKeyStore() {
-        return keyStore;
+    /**
+     * @return The certificates served to clients that ask for particular host names, or null if there are none
+     */
+    SniCertificates getSniCertificates() {
+        return sniCertificates;
     }
 
-    synchronized public KeyStore getTrustStore() {
-        return trustStore;
+    /**
+     * @return Hits and misses of the trust verdict cache since startup, or null if it is disabled
+     */
+    VerdictCachingTrustManager.Statistics getVerdictCacheStatistics() {
+        return config.getTrustVerdictCacheSize() > 0 ? verdictCacheStatistics : null;
+    }
+
+    /**
+     * @return The context the servlet container is configured with once, at startup. Unlike {@link #getSSLContext()},
+     * it only checks that peers' certificates are issued by one of the CAs.
+     */
+    SSLContext getServerSSLContext() {
+        return serverSslContext;
+    }
+
+    /**
+     * @return The most recently loaded TLS material. Use this rather than several of the other getters in a row when
+     * the values must be consistent with each other.
+     */
+    public EasySslMaterial getMaterial() {
+        return material;
+    }
+
+    public KeyStore getKeyStore() {
+        return material.getKeyStore();
+    }
+
+    public KeyStore getTrustStore() {
+        return material.getTrustStore();
+    }
+
+    public List<X509Certificate> getCACertificates() {
+        return material.getCACertificates();
+    }
+
+    /**
+     * @return What the CRL being enforced says about itself, or null if no CRL is configured
+     */
+    public EasySslMaterial.CRLInfo getCRLInfo() {
+        return material.getCRLInfo();
+    }
+
+    /**
+     * @return null if no CRL is configured
+     * @throws UnsupportedOperationException if one is: the CRL is only kept in a compact form used to look up revoked
+     * certificates, and reading it again from its resource could return one that isn't being enforced, whose signature
+     * was never verified
+     * @deprecated Use {@link #getCRLInfo()}
+     */
+    @Deprecated
+    public X509CRL getCRL() {
+        if (material.getCRLInfo() != null) {
+            throw new UnsupportedOperationException("The CRL is no longer kept as an X509CRL - use getCRLInfo() instead");
+        }
+        return null;
+    }
+
+    public List<X509Certificate> getCertificateChain() {
+        return material.getCertificateChain();
+    }
+
+    public PrivateKey getPrivateKey() {
+        return material.getPrivateKey();
     }
 
-    synchronized public List<X509Certificate> getCACertificates() {
-        return Collections.unmodifiableList(caCertificates);
+    public X509TrustManager getTrustManager() {
+        return material.getTrustManager();
     }
 
-    synchronized public X509CRL getCRL() {
-        return crl;
+    ReloadStatistics getReloadStatistics() {
+        return reloadStatistics;
     }
 
-    synchronized public List<X509Certificate> getCertificateChain() {
-        return Collections.unmodifiableList(certificateChain);
+    HandshakeStatistics getClientHandshakeStatistics() {
+        return clientHandshakeStatistics;
     }
 
-    synchronized public PrivateKey getPrivateKey() {
-        return privateKey;
+    /**
+     * @return Passes each trust check on to the {@link #setTrustCheckRecorder recorder} that is current at the time
+     */
+    TrustCheckRecorder getTrustCheckRecorder() {
+        return trustCheckForwarder;
     }
 
-    synchronized public X509TrustManager getTrustManager() {
-        return trustManager;
+    void setTrustCheckRecorder(TrustCheckRecorder trustCheckRecorder) {
+        Assert.notNull(trustCheckRecorder, "trustCheckRecorder may not be null");
+        this.trustCheckRecorder = trustCheckRecorder;
+    }
+
+    /**
+     * Applies the configured server session cache size and timeout (if any) to an {@link SSLContext}'s server sessions.
+     */
+    static void configureSessionContext(SSLSessionContext sessionContext, Integer cacheSize, Duration timeout) {
+        if (sessionContext == null) {
+            return;
+        }
+        if (cacheSize != null) {
+            sessionContext.setSessionCacheSize(cacheSize);
+        }
+        if (timeout != null) {
+            sessionContext.setSessionTimeout(getSeconds(timeout));
+        }
+    }
+
+    /**
+     * Stops client connections from resuming sessions that were established with the previous key, so that servers
+     * see the new certificate. Server sessions are kept: clients that resume them have already authenticated us.
+     */
+    private void invalidateClientSessions() {
+        SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+        if (sessionContext == null) {
+            return;
+        }
+        for (Enumeration<byte[]> ids = sessionContext.getIds(); ids.hasMoreElements();) {
+            SSLSession session = sessionContext.getSession(ids.nextElement());
+            if (session != null) {
+                session.invalidate();
+            }
+        }
+    }
+
+    /**
+     * Something that creates a JSSE {@link SSLContext}, directly or not.
+     */
+    interface ContextFactory<T, E extends Exception> {
+        T create() throws E;
+    }
+
+    /**
+     * Creates a server's context with {@code jdk.tls.server.enableSessionTicketExtension} set to {@code enabled}. JSSE
+     * only reads the property when a context is created, so it is restored straight away, and other servers in the JVM
+     * keep their own setting.
+     *
+     * @param enabled null to leave the property alone
+     */
+    static <T, E extends Exception> T withServerSessionTickets(Boolean enabled, ContextFactory<T, E> factory) throws E {
+        if (enabled == null) {
+            return factory.create();
+        }
+        synchronized (SESSION_TICKETS_LOCK) {
+            String previous = System.setProperty(SESSION_TICKETS_PROPERTY, enabled.toString());
+            try {
+                return factory.create();
+            } finally {
+                if (previous == null) {
+                    System.clearProperty(SESSION_TICKETS_PROPERTY);
+                } else {
+                    System.setProperty(SESSION_TICKETS_PROPERTY, previous);
+                }
+            }
+        }
     }
 
     private static long getMillis(Duration nullable) {
         return nullable == null ? 0 : nullable.toMillis();
     }
 
+    static int getSeconds(Duration duration) {
+        return (int) Math.min(Integer.MAX_VALUE, duration.getSeconds());
+    }
+
     private static void addSecurityProvider(String declaredName, String className) throws Exception {
         Provider provider = Security.getProvider(declaredName);
         if (provider != null) {
@@ -175,7 +394,7 @@ public class EasySslHelper implements ApplicationEventPublisherAware {
         LOG.info("Security Provider added: {}", provider.getInfo());
     }
 
-    private static void addBouncyCastleSecurityProvider() {
+    static void addBouncyCastleSecurityProvider() {
         try {
             addSecurityProvider("BCFIPS", "org.bouncycastle.jcajce.provider.BouncyCastleFipsProvider");
         } catch (Exception e1) {
@@ -189,19 +408,48 @@ public class EasySslHelper implements ApplicationEventPublisherAware {
         }
     }
 
-    private void initialize() {
-        LOG.info("{} EasySSL with command {}, certificate from {}, key from {}, CA from {}, and CRL from {} with timeout {} (disabled if zero). Next update in {} (disabled if zero)",
-                initialized ? "Reinitializing" : "Initializing", config.getRefreshCommand(),
-                config.getCertificate(), config.getKey(), config.getCaCertificate(), config.getCertificateRevocationList(),
-                config.getRefreshTimeout(), config.getRefreshInterval());
+    /**
+     * Reloads all resources unless a reload is already in progress. Used for background reloads: a reload that has timed
+     * out but is stuck (e.g. on a hung network read) holds the lock, and queueing up more reloads behind it would only tie
+     * up more threads.
+     */
+    private void reload() {
+        if (!reloadLock.tryLock()) {
+            LOG.warn("Skipping reload since the previous one is still running ({})", TimedExecutor.getInstance());
+            return;
+        }
         try {
-            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-            kmf.init(keyStore, KEY_PASSWORD.toCharArray());
+            load();
+            refreshSniCertificates();
+        } finally {
+            reloadLock.unlock();
+        }
+    }
 
-            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
-            tmf.init(trustStore);
+    /**
+     * Reloads the SNI certificates that are loaded. Done after every reload, whether or not the main certificate has
+     * changed, since they are loaded from resources of their own.
+     */
+    private void refreshSniCertificates() {
+        if (sniCertificates != null && material != null) {
+            sniCertificates.refresh();
+            LOG.info("Refreshed {}", sniCertificates);
+        }
+    }
 
+    private void load() {
+        final EasySslMaterial previous = material;
+        final boolean initialized = previous != null;
+        LOG.info("{} EasySSL with command {}, certificate from {}, key from {}, {} additional certificates, CA from {}, and CRL from {} with timeout {} (disabled if zero). Next update in {} (disabled if zero)",
+                initialized ? "Reinitializing" : "Initializing", config.getRefreshCommand(),
+                config.getCertificate(), config.getKey(), config.getAdditionalCertificates().size(), config.getCaCertificate(), config.getCertificateRevocationList(),
+                config.getRefreshTimeout(), config.getRefreshInterval());
+        final EasySslMaterial next;
+        final boolean trustChanged;
+        final boolean keyChanged;
+        try {
             addBouncyCastleSecurityProvider();
+            long start = System.nanoTime();
             if (config.getRefreshCommand() != null) {
                 LOG.info("Refresh command: {}", config.getRefreshCommand());
                 Process refreshProcess = Runtime.getRuntime().exec(
@@ -216,32 +464,105 @@ public class EasySslHelper implements ApplicationEventPublisherAware {
                 if (refreshProcessExitCode != 0) {
                     throw new RuntimeException("Refresh command exited with exit code " + refreshProcessExitCode);
                 }
+                reloadStatistics.recordPhase(ReloadStatistics.Phase.COMMAND, start);
             }
-            caCertificates = new ArrayList<>(config.getCaCertificate().size());
-            for (Resource c: config.getCaCertificate()) {
-                caCertificates.addAll(readX509Certificates(c));
+            final List<LoadedResource<List<X509Certificate>>> caResources;
+            final LoadedResource<CompiledCRL> crlResource;
+            final LoadedResource<CompiledCRL> deltaCrlResource;
+            final List<LoadedResource<PrivateKey>> keyResources;
+            final List<LoadedResource<List<X509Certificate>>> certificateResources;
+            // fetch and parse all resources at once - they are independent of each other
+            start = System.nanoTime();
+            try (ResourceLoadBatch batch = new ResourceLoadBatch(getMillis(config.getResourceTimeout()), TimeUnit.MILLISECONDS)) {
+                List<ResourceLoadBatch.Pending<List<X509Certificate>>> pendingCAs = new ArrayList<>(config.getCaCertificate().size());
+                for (int i = 0; i < config.getCaCertificate().size(); i++) {
+                    pendingCAs.add(batch.submit(config.getCaCertificate().get(i),
+                            initialized ? previous.getTrustMaterial().getCaResource(i) : null,
+                            EasySslHelper::readX509Certificates));
+                }
+                ResourceLoadBatch.Pending<CompiledCRL> pendingCRL = null;
+                if (config.getCertificateRevocationList() != null) {
+                    pendingCRL = batch.submitMapped(config.getCertificateRevocationList(),
+                            initialized ? previous.getTrustMaterial().getCrlResource() : null,
+                            CompiledCRL::parse);
+                }
+                ResourceLoadBatch.Pending<CompiledCRL> pendingDeltaCRL = null;
+                if (config.getDeltaCertificateRevocationList() != null) {
+                    pendingDeltaCRL = batch.submitMapped(config.getDeltaCertificateRevocationList(),
+                            initialized ? previous.getTrustMaterial().getDeltaCrlResource() : null,
+                            CompiledCRL::parse);
+                }
+                List<Resource> keys = new ArrayList<>();
+                List<String> keyPasswords = new ArrayList<>();
+                List<Resource> certificates = new ArrayList<>();
+                keys.add(config.getKey());
+                keyPasswords.add(config.getKeyPassword());
+                certificates.add(config.getCertificate());
+                for (EasySslProperties.AdditionalCertificate additional: config.getAdditionalCertificates()) {
+                    keys.add(additional.getKey());
+                    keyPasswords.add(additional.getKeyPassword());
+                    certificates.add(additional.getCertificate());
+                }
+                List<ResourceLoadBatch.Pending<PrivateKey>> pendingKeys = new ArrayList<>(keys.size());
+                List<ResourceLoadBatch.Pending<List<X509Certificate>>> pendingCertificates = new ArrayList<>(certificates.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    String keyPassword = keyPasswords.get(i);
+                    pendingKeys.add(batch.submit(keys.get(i),
+                            initialized ? previous.getKeyMaterial().getKeyResource(i) : null,
+                            bytes -> readPrivateKey(bytes, keyPassword)));
+                    pendingCertificates.add(batch.submit(certificates.get(i),
+                            initialized ? previous.getKeyMaterial().getCertificateResource(i) : null,
+                            EasySslHelper::readX509Certificates));
+                }
+
+                caResources = new ArrayList<>(pendingCAs.size());
+                for (ResourceLoadBatch.Pending<List<X509Certificate>> pendingCA: pendingCAs) {
+                    caResources.add(batch.await(pendingCA));
+                }
+                crlResource = pendingCRL == null ? null : batch.await(pendingCRL);
+                deltaCrlResource = pendingDeltaCRL == null ? null : batch.await(pendingDeltaCRL);
+                keyResources = new ArrayList<>(pendingKeys.size());
+                for (ResourceLoadBatch.Pending<PrivateKey> pendingKey: pendingKeys) {
+                    keyResources.add(batch.await(pendingKey));
+                }
+                certificateResources = new ArrayList<>(pendingCertificates.size());
+                for (ResourceLoadBatch.Pending<List<X509Certificate>> pendingCertificate: pendingCertificates) {
+                    certificateResources.add(batch.await(pendingCertificate));
+                }
             }
-            if (config.getCertificateRevocationList() == null) {
-                crl = null;
+            reloadStatistics.recordPhase(ReloadStatistics.Phase.FETCH, start);
+
+            trustChanged = !initialized || !previous.getTrustMaterial().isBuiltFrom(caResources, crlResource, deltaCrlResource);
+            keyChanged = !initialized || !previous.getKeyMaterial().isBuiltFrom(keyResources, certificateResources);
+            if (!trustChanged && !keyChanged) {
+                LOG.info("EasySSL resources are unchanged - keeping generation {}", previous.getGeneration());
+                reloadStatistics.recordSuccess();
+                return;
+            }
+
+            final EasySslMaterial.TrustMaterial trust;
+            if (trustChanged) {
+                start = System.nanoTime();
+                trust = getTrustMaterial(caResources, crlResource, deltaCrlResource, config, trustCheckForwarder, verdictCacheStatistics);
+                reloadStatistics.recordPhase(ReloadStatistics.Phase.TRUST, start);
             } else {
-                crl = readCRL(config.getCertificateRevocationList(), caCertificates);
+                trust = previous.getTrustMaterial();
             }
-            trustStore = getTrustStore(caCertificates);
-            trustManager = getTrustManager(config.getCertificateExpirationWarningThreshold(), crl, trustStore);
-
-            privateKey = readPrivateKey(config.getKey(), config.getKeyPassword());
-            certificateChain = readX509Certificates(config.getCertificate());
-            keyStore = getKeyStore(certificateChain, privateKey);
-            if (localCertificateExpirationCheck != null) {
-                localCertificateExpirationCheck.cancel(false);
+            final EasySslMaterial.KeyMaterial key;
+            if (keyChanged) {
+                start = System.nanoTime();
+                KeyStore keyStore = getKeyStore(certificateResources, keyResources);
+                key = new EasySslMaterial.KeyMaterial(keyResources, certificateResources,
+                        keyStore, getKeyManagers(keyStore, KEY_PASSWORD.toCharArray()));
+                reloadStatistics.recordPhase(ReloadStatistics.Phase.KEY, start);
+            } else {
+                key = previous.getKeyMaterial();
             }
-            localCertificateExpirationCheck = CertificateExpirationCheck.scheduleCheck(keyStore.getCertificateChain(KEY_ALIAS), "local",
-                    config.getCertificateExpirationWarningThreshold(), config.getCertificateExpirationCheckInterval());
-            sslContext.init(
-                    getKeyManagers(keyStore, KEY_PASSWORD.toCharArray()),
-                    new TrustManager[]{trustManager},
-                    new SecureRandom());
+            next = new EasySslMaterial(initialized ? previous.getGeneration() + 1 : 1, trust, key);
+            LOG.info("Publishing generation {} (CA/CRL changed: {}, key/certificate changed: {})",
+                    next.getGeneration(), trustChanged, keyChanged);
         } catch (Exception e) {
+            reloadStatistics.recordFailure();
             if (initialized) {
                 // ignore the error so that the next Scheduler execution will retry
                 LOG.error("Unable to reinitialize SSLContext", e);
@@ -250,47 +571,122 @@ public class EasySslHelper implements ApplicationEventPublisherAware {
                 throw new RuntimeException(e);
             }
         }
+        material = next;
+        reloadStatistics.recordSuccess();
+        if (keyChanged) {
+            if (initialized) {
+                invalidateClientSessions();
+            }
+            cancelLocalCertificateExpirationChecks();
+            List<List<X509Certificate>> certificateChains = next.getKeyMaterial().getCertificateChains();
+            for (int i = 0; i < certificateChains.size(); i++) {
+                localCertificateExpirationChecks.add(CertificateExpirationCheck.scheduleCheck(
+                        certificateChains.get(i).toArray(new X509Certificate[0]), i == 0 ? "local" : "additional local #" + i,
+                        config.getCertificateExpirationWarningThreshold(), config.getCertificateExpirationCheckInterval()));
+            }
+        }
         if (initialized && applicationEventPublisher != null) {
             applicationEventPublisher.publishEvent(new SSLContextReinitializedEvent(this, this));
         }
-        initialized = true;
     }
 
-    private static List<X509Certificate> readX509Certificates(Resource certificate) throws Exception {
-        CertificateFactory cf = CertificateFactory.getInstance("X.509");
-        // if several certs are concatenated together OpenSSL-style, this will only load the first one!
-        // cf.generateCertificate(certificate.getInputStream());
-        Matcher matcher = PEM_CERTIFICATE.matcher(StreamUtils.copyToString(certificate.getInputStream(), StandardCharsets.UTF_8));
-        ArrayList<X509Certificate> certs = new ArrayList<>(1);
-        while (matcher.find()) {
-            String pem = matcher.group();
-            certs.add((X509Certificate) cf.generateCertificate(new ByteArrayInputStream(pem.getBytes(StandardCharsets.UTF_8))));
+    private void cancelLocalCertificateExpirationChecks() {
+        for (ScheduledFuture<?> check: localCertificateExpirationChecks) {
+            if (check != null) {
+                check.cancel(false);
+            }
         }
-        return certs;
+        localCertificateExpirationChecks.clear();
+    }
+
+    static List<X509Certificate> readX509Certificates(byte[] bytes) throws Exception {
+        return CertificateReader.read(bytes);
+    }
+
+    private static void verifyCRL(LoadedResource<CompiledCRL> crlResource, Collection<X509Certificate> caCertificates) throws Exception {
+        crlResource.getValue().verify(caCertificates);
+        LOG.info("Loaded CRL from {}", crlResource.getResource());
     }
 
-    private static X509CRL readCRL(Resource resource, Collection<X509Certificate> caCertificates) throws Exception {
-        ArrayList<PublicKey> publicKeys = new ArrayList<>(caCertificates.size());
-        for (X509Certificate c: caCertificates) {
-            publicKeys.add(c.getPublicKey());
+    /**
+     * Checks that the delta CRL is a verified delta of the base CRL (RFC 5280, section 5.2.4).
+     *
+     * @return false if the delta CRL is not newer than the base CRL, and so has nothing to add to it
+     */
+    private static boolean verifyDeltaCRL(LoadedResource<CompiledCRL> crlResource, LoadedResource<CompiledCRL> deltaCrlResource,
+                                          Collection<X509Certificate> caCertificates) throws Exception {
+        CompiledCRL base = crlResource.getValue();
+        CompiledCRL delta = deltaCrlResource.getValue();
+        if (delta.getBaseCrlNumber() == null) {
+            throw new CRLException(deltaCrlResource.getResource() + " is not a delta CRL (it has no deltaCRLIndicator extension)");
         }
-        X509CRL crl = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(resource.getInputStream());
-        for (PublicKey publicKey: publicKeys) {
-            try {
-                crl.verify(publicKey);
-                LOG.info("Loaded CRL from {}", resource);
-                return crl;
-            } catch (Exception e) {
-                LOG.debug("Unable to verify CRL from {} against a public key {} due to {}", resource, publicKey, e.toString());
-                continue;
+        if (base.getCrlNumber() == null) {
+            throw new CRLException(crlResource.getResource() + " has no cRLNumber extension, so delta CRLs can't be applied to it");
+        }
+        if (!base.getIssuer().equals(delta.getIssuer())) {
+            throw new CRLException("Delta CRL issuer " + delta.getIssuer() + " differs from base CRL issuer " + base.getIssuer());
+        }
+        if (delta.getCrlNumber() != null && delta.getCrlNumber().compareTo(base.getCrlNumber()) <= 0) {
+            LOG.info("Ignoring delta CRL number {} from {} since base CRL number {} is at least as recent",
+                    delta.getCrlNumber(), deltaCrlResource.getResource(), base.getCrlNumber());
+            return false;
+        }
+        if (base.getCrlNumber().compareTo(delta.getBaseCrlNumber()) < 0) {
+            throw new CRLException("Delta CRL from " + deltaCrlResource.getResource() + " requires base CRL number " + delta.getBaseCrlNumber()
+                    + " or later, but " + crlResource.getResource() + " is number " + base.getCrlNumber());
+        }
+        delta.verify(caCertificates);
+        LOG.info("Loaded delta CRL number {} from {}", delta.getCrlNumber(), deltaCrlResource.getResource());
+        return true;
+    }
+
+    private static EasySslMaterial.TrustMaterial getTrustMaterial(List<LoadedResource<List<X509Certificate>>> caResources,
+                                                                  LoadedResource<CompiledCRL> crlResource,
+                                                                  LoadedResource<CompiledCRL> deltaCrlResource,
+                                                                  EasySslProperties config,
+                                                                  TrustCheckRecorder recorder,
+                                                                  VerdictCachingTrustManager.Statistics verdictCacheStatistics) throws Exception {
+        List<X509Certificate> caCertificates = new ArrayList<>(caResources.size());
+        for (LoadedResource<List<X509Certificate>> caResource: caResources) {
+            caCertificates.addAll(caResource.getValue());
+        }
+        CompiledCRL crl = null;
+        CompiledCRL deltaCrl = null;
+        if (crlResource != null) {
+            verifyCRL(crlResource, caCertificates);
+            crl = crlResource.getValue();
+            if (deltaCrlResource != null && verifyDeltaCRL(crlResource, deltaCrlResource, caCertificates)) {
+                deltaCrl = deltaCrlResource.getValue();
             }
         }
-        throw new SignatureException("Unable to verify CRL against any provided public keys");
+        KeyStore trustStore = getTrustStore(caCertificates);
+        OCSPTrustManager ocsp = null;
+        if (config.isOcspEnabled()) {
+            ocsp = new OCSPTrustManager(caCertificates, config.getOcspResponderUrl(), config.getOcspTimeout(), config.isOcspSoftFail());
+        }
+        X509TrustManager caTrustManager = getCaTrustManager(trustStore);
+        X509TrustManager trustManager = getTrustManager(config.getCertificateExpirationWarningThreshold(), crl, deltaCrl, caTrustManager, ocsp, recorder);
+        if (config.getTrustVerdictCacheSize() > 0) {
+            trustManager = new VerdictCachingTrustManager(trustManager, config.getTrustVerdictCacheSize(), getTrustVerdictCacheTtl(config),
+                    verdictCacheStatistics);
+        }
+        return new EasySslMaterial.TrustMaterial(caResources, crlResource, deltaCrlResource, trustStore, caTrustManager, trustManager);
     }
 
-    private static PrivateKey readPrivateKey(Resource privateKey, String keyPassword) throws Exception {
+    /**
+     * @return The configured {@link EasySslProperties#getTrustVerdictCacheTtl() TTL}, or, if none is and OCSP is enabled,
+     * that of OCSP responses without a nextUpdate - lest a chain revoked at the responder be trusted until it expires
+     */
+    static Duration getTrustVerdictCacheTtl(EasySslProperties config) {
+        if (config.getTrustVerdictCacheTtl() == null && config.isOcspEnabled()) {
+            return OCSPTrustManager.DEFAULT_TTL;
+        }
+        return config.getTrustVerdictCacheTtl();
+    }
+
+    static PrivateKey readPrivateKey(byte[] bytes, String keyPassword) throws Exception {
         final Object pemObject;
-        try (PEMParser pemParser = new PEMParser(new InputStreamReader(privateKey.getInputStream(), Charset.defaultCharset()))) {
+        try (PEMParser pemParser = new PEMParser(new InputStreamReader(new ByteArrayInputStream(bytes), Charset.defaultCharset()))) {
             pemObject = pemParser.readObject();
         }
         if (pemObject == null) {
@@ -324,8 +720,9 @@ public class EasySslHelper implements ApplicationEventPublisherAware {
         return keyPair.getPrivate();
     }
 
-    private static X509TrustManager getTrustManager(Duration certificateExpirationWarningThreshold, X509CRL crl, KeyStore trustStore) throws Exception {
-        List<X509TrustManager> delegates = new ArrayList<>(3);
+    private static X509TrustManager getTrustManager(Duration certificateExpirationWarningThreshold, CompiledCRL crl, CompiledCRL deltaCrl,
+                                                    X509TrustManager caTrustManager, OCSPTrustManager ocsp, TrustCheckRecorder recorder) {
+        List<X509TrustManager> delegates = new ArrayList<>(4);
 
         // 1: log a warning if a certificate is about to expire
         if (certificateExpirationWarningThreshold != null) {
@@ -334,32 +731,48 @@ public class EasySslHelper implements ApplicationEventPublisherAware {
 
         // 2: reject revoked certificates
         if (crl != null) {
-            delegates.add(new CRLTrustManager(crl));
+            delegates.add(new CRLTrustManager(crl.getIndex(), deltaCrl == null ? null : deltaCrl.getIndex()));
         }
 
         // 3: validate that the certificate is signed by a trusted CA
+        delegates.add(caTrustManager);
+
+        // 4: ask the OCSP responder, only about chains that are signed by a trusted CA
+        if (ocsp != null) {
+            delegates.add(ocsp);
+        }
+
+        return new ChainingTrustManager(delegates, recorder);
+    }
+
+    private static X509TrustManager getCaTrustManager(KeyStore trustStore) throws Exception {
         TrustManagerFactory factory = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
         factory.init(trustStore);
-        boolean foundCaTrustManager = false;
         for (TrustManager tm: factory.getTrustManagers()) {
             if (tm instanceof X509TrustManager) {
-                delegates.add((X509TrustManager) tm);
-                foundCaTrustManager = true;
+                return (X509TrustManager) tm;
             }
         }
-
         // this shouldn't happen - fail early if this assumption is incorrect
-        if (!foundCaTrustManager) {
-            throw new RuntimeException("TrustManagerFactory didn't create any X509TrustManager instances");
-        }
+        throw new RuntimeException("TrustManagerFactory didn't create any X509TrustManager instances");
+    }
 
-        return new ChainingTrustManager(delegates);
+    /**
+     * @return The alias of the main key (0) or one of the additional ones
+     */
+    static String getKeyAlias(int index) {
+        return index == 0 ? KEY_ALIAS : KEY_ALIAS + "-" + index;
     }
 
-    private static KeyStore getKeyStore(List<X509Certificate> certificateChain, PrivateKey privateKey) throws Exception {
+    private static KeyStore getKeyStore(List<LoadedResource<List<X509Certificate>>> certificateResources,
+                                        List<LoadedResource<PrivateKey>> keyResources) throws Exception {
         KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
         keyStore.load(null, null);
-        keyStore.setKeyEntry(KEY_ALIAS, privateKey, KEY_PASSWORD.toCharArray(), certificateChain.toArray(new X509Certificate[certificateChain.size()]));
+        for (int i = 0; i < keyResources.size(); i++) {
+            List<X509Certificate> certificateChain = certificateResources.get(i).getValue();
+            keyStore.setKeyEntry(getKeyAlias(i), keyResources.get(i).getValue(), KEY_PASSWORD.toCharArray(),
+                    certificateChain.toArray(new X509Certificate[certificateChain.size()]));
+        }
         return keyStore;
     }
 
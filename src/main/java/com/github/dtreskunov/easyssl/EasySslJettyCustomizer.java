@@ -1,41 +1,32 @@
 package com.github.dtreskunov.easyssl;
 
-import com.github.dtreskunov.easyssl.EasySslHelper.SSLContextReinitializedEvent;
-
+import org.eclipse.jetty.io.ssl.SslHandshakeListener;
 import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.SslConnectionFactory;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 import org.springframework.boot.web.embedded.jetty.ConfigurableJettyWebServerFactory;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
-import org.springframework.context.ApplicationListener;
 
-class EasySslJettyCustomizer implements WebServerFactoryCustomizer<ConfigurableJettyWebServerFactory>, ApplicationListener<EasySslHelper.SSLContextReinitializedEvent> {
-    private static final Logger LOG = LoggerFactory.getLogger(EasySslJettyCustomizer.class);
-    private final SetOnlyOnce<SslContextFactory> contextFactory = new SetOnlyOnce<>();
+/**
+ * Hands Jetty {@link EasySslHelper#getServerSSLContext()}, so that Jetty never creates (or, on reload, re-creates) an
+ * {@link javax.net.ssl.SSLContext} of its own.
+ */
+class EasySslJettyCustomizer implements WebServerFactoryCustomizer<ConfigurableJettyWebServerFactory> {
+    private final EasySslProperties config;
+    private final EasySslHelper helper;
+    private final HandshakeStatistics handshakeStatistics;
 
-    @Override
-    public void customize(ConfigurableJettyWebServerFactory jettyWebServerFactory) {
-        jettyWebServerFactory.addServerCustomizers(this::customizeServer);
+    EasySslJettyCustomizer(EasySslProperties config, EasySslHelper helper, HandshakeStatistics handshakeStatistics) {
+        this.config = config;
+        this.helper = helper;
+        this.handshakeStatistics = handshakeStatistics;
     }
 
     @Override
-    public void onApplicationEvent(SSLContextReinitializedEvent event) {
-        if (!contextFactory.isSet()) {
-            LOG.warn("Jetty hasn't been configured yet - remove it from classpath if not using");
-            return;
-        }
-        LOG.info("Updating Jetty with new SSLContext");
-        contextFactory.get().setKeyStore(event.getHelper().getKeyStore());
-        contextFactory.get().setTrustStore(event.getHelper().getTrustStore());
-        try {
-            contextFactory.get().reload(scf -> {});
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
+    public void customize(ConfigurableJettyWebServerFactory jettyWebServerFactory) {
+        jettyWebServerFactory.addServerCustomizers(this::customizeServer);
     }
 
     private void customizeServer(Server server) {
@@ -48,8 +39,23 @@ class EasySslJettyCustomizer implements WebServerFactoryCustomizer<ConfigurableJ
             if (connectionFactory == null) {
                 continue;
             }
-            contextFactory.set(connectionFactory.getSslContextFactory());
-            contextFactory.get().setEndpointIdentificationAlgorithm(null);
+            SslContextFactory contextFactory = connectionFactory.getSslContextFactory();
+            contextFactory.setSslContext(helper.getServerSSLContext());
+            contextFactory.setEndpointIdentificationAlgorithm(null);
+            // Jetty applies these to the server session context of any SSLContext it is given
+            if (config.getServerSessionCacheSize() != null) {
+                contextFactory.setSslSessionCacheSize(config.getServerSessionCacheSize());
+            }
+            if (config.getServerSessionTimeout() != null) {
+                contextFactory.setSslSessionTimeout(EasySslHelper.getSeconds(config.getServerSessionTimeout()));
+            }
+            // SslConnectionFactory adds the connector's handshake listeners to every connection
+            connector.addBean(new SslHandshakeListener() {
+                @Override
+                public void handshakeSucceeded(Event event) {
+                    handshakeStatistics.record(event.getSSLEngine().getSession(), event.getEndPoint().getCreatedTimeStamp(), false);
+                }
+            });
         }
     }
 }
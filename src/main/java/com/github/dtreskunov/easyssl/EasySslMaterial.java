@@ -0,0 +1,303 @@
+package com.github.dtreskunov.easyssl;
+
+import java.math.BigInteger;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.net.ssl.X509TrustManager;
+import javax.security.auth.x500.X500Principal;
+
+import org.springframework.util.Assert;
+
+/**
+ * An immutable, internally consistent set of TLS material loaded by {@link EasySslHelper}: the CA certificates, CRL and
+ * trust manager built from them, and the private key, certificate chain and key managers of the local identity.
+ * <p>
+ * A new instance is published every time the helper reloads its resources and finds that some of them changed, so
+ * readers never observe a half-updated key/chain/CA/CRL combination. The {@link #getGeneration() generation} grows by one
+ * with every published instance. The {@link KeyStore}s held here are never modified after publication and must not be
+ * modified by callers either.
+ */
+public final class EasySslMaterial {
+
+    /**
+     * The fields of a CRL that describe it as a whole. The CRL itself is only kept in a compact form used to look up
+     * revoked certificates.
+     */
+    public static final class CRLInfo {
+        private final CompiledCRL crl;
+
+        CRLInfo(CompiledCRL crl) {
+            this.crl = crl;
+        }
+
+        public X500Principal getIssuer() {
+            return crl.getIssuer();
+        }
+
+        public Date getThisUpdate() {
+            return new Date(crl.getThisUpdate().getTime());
+        }
+
+        /**
+         * @return When the next CRL will be issued, or null if not specified
+         */
+        public Date getNextUpdate() {
+            return crl.getNextUpdate() == null ? null : new Date(crl.getNextUpdate().getTime());
+        }
+
+        /**
+         * @return The cRLNumber extension, or null if absent
+         */
+        public BigInteger getCrlNumber() {
+            return crl.getCrlNumber();
+        }
+
+        /**
+         * @return Number of revoked certificates the CRL lists
+         */
+        public int getEntryCount() {
+            return crl.getIndex().size();
+        }
+    }
+
+    /**
+     * The trust side: everything built from the CA certificate and CRL resources.
+     */
+    static final class TrustMaterial {
+        private final List<LoadedResource<List<X509Certificate>>> caResources;
+        private final LoadedResource<CompiledCRL> crlResource;
+        private final LoadedResource<CompiledCRL> deltaCrlResource;
+        private final List<X509Certificate> caCertificates;
+        private final KeyStore trustStore;
+        private final X509TrustManager caTrustManager;
+        private final X509TrustManager trustManager;
+
+        TrustMaterial(List<LoadedResource<List<X509Certificate>>> caResources, LoadedResource<CompiledCRL> crlResource,
+                      LoadedResource<CompiledCRL> deltaCrlResource, KeyStore trustStore, X509TrustManager caTrustManager,
+                      X509TrustManager trustManager) {
+            Assert.notNull(caResources, "caResources may not be null");
+            Assert.notNull(trustStore, "trustStore may not be null");
+            Assert.notNull(caTrustManager, "caTrustManager may not be null");
+            Assert.notNull(trustManager, "trustManager may not be null");
+            List<X509Certificate> caCertificates = new ArrayList<>(caResources.size());
+            for (LoadedResource<List<X509Certificate>> caResource: caResources) {
+                caCertificates.addAll(caResource.getValue());
+            }
+            this.caResources = Collections.unmodifiableList(new ArrayList<>(caResources));
+            this.crlResource = crlResource;
+            this.deltaCrlResource = deltaCrlResource;
+            this.caCertificates = Collections.unmodifiableList(caCertificates);
+            this.trustStore = trustStore;
+            this.caTrustManager = caTrustManager;
+            this.trustManager = trustManager;
+        }
+
+        /**
+         * @return Whether the given freshly loaded resources are exactly the ones this material was built from.
+         */
+        boolean isBuiltFrom(List<LoadedResource<List<X509Certificate>>> caResources, LoadedResource<CompiledCRL> crlResource,
+                            LoadedResource<CompiledCRL> deltaCrlResource) {
+            if (this.crlResource != crlResource || this.deltaCrlResource != deltaCrlResource || this.caResources.size() != caResources.size()) {
+                return false;
+            }
+            for (int i = 0; i < caResources.size(); i++) {
+                if (this.caResources.get(i) != caResources.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        LoadedResource<List<X509Certificate>> getCaResource(int index) {
+            return index < caResources.size() ? caResources.get(index) : null;
+        }
+
+        LoadedResource<CompiledCRL> getCrlResource() {
+            return crlResource;
+        }
+
+        LoadedResource<CompiledCRL> getDeltaCrlResource() {
+            return deltaCrlResource;
+        }
+
+        List<X509Certificate> getCACertificates() {
+            return caCertificates;
+        }
+
+        KeyStore getTrustStore() {
+            return trustStore;
+        }
+
+        /**
+         * @return Only checks that certificates are issued by one of the CAs. Used by servlet containers: revocation is
+         * left to {@link ClientCertificateCheckingFilter}, so that revoked clients are refused with a 403 rather than a
+         * failed handshake.
+         */
+        X509TrustManager getCaTrustManager() {
+            return caTrustManager;
+        }
+
+        X509TrustManager getTrustManager() {
+            return trustManager;
+        }
+    }
+
+    /**
+     * The key side: everything built from the private key and certificate resources. The main key and certificate come
+     * first, followed by the {@link EasySslProperties#getAdditionalCertificates() additional} ones.
+     */
+    static final class KeyMaterial {
+        private final List<LoadedResource<PrivateKey>> keyResources;
+        private final List<LoadedResource<List<X509Certificate>>> certificateResources;
+        private final List<List<X509Certificate>> certificateChains;
+        private final KeyStore keyStore;
+        private final KeyManager[] keyManagers;
+        private final X509ExtendedKeyManager keyManager;
+
+        KeyMaterial(List<LoadedResource<PrivateKey>> keyResources, List<LoadedResource<List<X509Certificate>>> certificateResources,
+                    KeyStore keyStore, KeyManager[] keyManagers) {
+            Assert.notEmpty(keyResources, "keyResources may not be empty");
+            Assert.notNull(certificateResources, "certificateResources may not be null");
+            Assert.isTrue(keyResources.size() == certificateResources.size(), "need a certificate for each key");
+            Assert.notNull(keyStore, "keyStore may not be null");
+            Assert.notNull(keyManagers, "keyManagers may not be null");
+            List<List<X509Certificate>> certificateChains = new ArrayList<>(certificateResources.size());
+            for (LoadedResource<List<X509Certificate>> certificateResource: certificateResources) {
+                certificateChains.add(Collections.unmodifiableList(new ArrayList<>(certificateResource.getValue())));
+            }
+            this.keyResources = new ArrayList<>(keyResources);
+            this.certificateResources = new ArrayList<>(certificateResources);
+            this.certificateChains = Collections.unmodifiableList(certificateChains);
+            this.keyStore = keyStore;
+            this.keyManagers = keyManagers.clone();
+            X509ExtendedKeyManager keyManager = getExtendedKeyManager(keyManagers);
+            this.keyManager = certificateChains.size() > 1 ? new KeyTypePreferringKeyManager(keyManager, certificateChains) : keyManager;
+        }
+
+        private static X509ExtendedKeyManager getExtendedKeyManager(KeyManager[] keyManagers) {
+            for (KeyManager keyManager: keyManagers) {
+                if (keyManager instanceof X509ExtendedKeyManager) {
+                    return (X509ExtendedKeyManager) keyManager;
+                }
+            }
+            throw new IllegalArgumentException("keyManagers must include an X509ExtendedKeyManager");
+        }
+
+        /**
+         * @return Whether the given freshly loaded resources are exactly the ones this material was built from.
+         */
+        boolean isBuiltFrom(List<LoadedResource<PrivateKey>> keyResources, List<LoadedResource<List<X509Certificate>>> certificateResources) {
+            if (this.keyResources.size() != keyResources.size() || this.certificateResources.size() != certificateResources.size()) {
+                return false;
+            }
+            for (int i = 0; i < keyResources.size(); i++) {
+                if (this.keyResources.get(i) != keyResources.get(i) || this.certificateResources.get(i) != certificateResources.get(i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        LoadedResource<PrivateKey> getKeyResource(int index) {
+            return index < keyResources.size() ? keyResources.get(index) : null;
+        }
+
+        LoadedResource<List<X509Certificate>> getCertificateResource(int index) {
+            return index < certificateResources.size() ? certificateResources.get(index) : null;
+        }
+
+        PrivateKey getPrivateKey() {
+            return keyResources.get(0).getValue();
+        }
+
+        List<X509Certificate> getCertificateChain() {
+            return certificateChains.get(0);
+        }
+
+        /**
+         * @return The main certificate chain, followed by the additional ones
+         */
+        List<List<X509Certificate>> getCertificateChains() {
+            return certificateChains;
+        }
+
+        KeyStore getKeyStore() {
+            return keyStore;
+        }
+
+        KeyManager[] getKeyManagers() {
+            return keyManagers.clone();
+        }
+
+        X509ExtendedKeyManager getKeyManager() {
+            return keyManager;
+        }
+    }
+
+    private final long generation;
+    private final TrustMaterial trust;
+    private final KeyMaterial key;
+
+    EasySslMaterial(long generation, TrustMaterial trust, KeyMaterial key) {
+        Assert.notNull(trust, "trust may not be null");
+        Assert.notNull(key, "key may not be null");
+        this.generation = generation;
+        this.trust = trust;
+        this.key = key;
+    }
+
+    /**
+     * @return Sequence number of this snapshot, starting at 1 for the material loaded at startup.
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    public List<X509Certificate> getCACertificates() {
+        return trust.getCACertificates();
+    }
+
+    /**
+     * @return What the CRL being enforced says about itself, or null if no CRL is configured
+     */
+    public CRLInfo getCRLInfo() {
+        LoadedResource<CompiledCRL> resource = trust.getCrlResource();
+        return resource == null ? null : new CRLInfo(resource.getValue());
+    }
+
+    public KeyStore getTrustStore() {
+        return trust.getTrustStore();
+    }
+
+    public X509TrustManager getTrustManager() {
+        return trust.getTrustManager();
+    }
+
+    public PrivateKey getPrivateKey() {
+        return key.getPrivateKey();
+    }
+
+    public List<X509Certificate> getCertificateChain() {
+        return key.getCertificateChain();
+    }
+
+    public KeyStore getKeyStore() {
+        return key.getKeyStore();
+    }
+
+    TrustMaterial getTrustMaterial() {
+        return trust;
+    }
+
+    KeyMaterial getKeyMaterial() {
+        return key;
+    }
+}
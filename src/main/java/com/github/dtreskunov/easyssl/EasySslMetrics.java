@@ -0,0 +1,275 @@
+package com.github.dtreskunov.easyssl;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.springframework.context.ApplicationListener;
+import org.springframework.util.Assert;
+
+import com.github.dtreskunov.easyssl.EasySslHelper.SSLContextReinitializedEvent;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.TimeGauge;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/**
+ * Publishes EasySSL's state to Micrometer:
+ * <ul>
+ * <li>{@code easyssl.reload.duration} - time spent in each {@link ReloadStatistics.Phase phase} of reloading, tagged with {@code phase}</li>
+ * <li>{@code easyssl.reloads} - reloads, tagged with {@code result} ({@code success} or {@code failure})</li>
+ * <li>{@code easyssl.reload.last.success} - when the last reload succeeded, since the epoch</li>
+ * <li>{@code easyssl.certificate.expiry} - days until each certificate expires, tagged with {@code type} ({@code local}
+ * for the local certificate chain, {@code ca} for CA certificates) and {@code subject}</li>
+ * <li>{@code easyssl.crl.entries} and {@code easyssl.crl.next.update} - revoked certificates in each CRL, and when it is
+ * next updated, tagged with {@code crl} ({@code base} or {@code delta})</li>
+ * <li>{@code easyssl.trust.check} - latency histogram of certificate chain checks, tagged with {@code source} (see
+ * {@link TrustCheckRecorder}) and {@code result} ({@code trusted} or {@code rejected})</li>
+ * <li>{@code easyssl.handshakes} - TLS handshakes completed by the server, tagged with {@code type} ({@code full} or
+ * {@code resumed})</li>
+ * <li>{@code easyssl.client.handshakes} - TLS handshakes completed by the {@link EasySslClientHttpRequestFactory pooled
+ * HTTP client}, tagged with {@code type} ({@code full} or {@code resumed})</li>
+ * <li>{@code easyssl.sni.loaded} - SNI certificates that are loaded, {@code easyssl.sni.loads} - loads of SNI
+ * certificates, tagged with {@code result} ({@code success} or {@code failure}), and {@code easyssl.sni.evictions} -
+ * SNI certificates dropped to make room for others (only if there are SNI certificates)</li>
+ * <li>{@code easyssl.trust.verdict.cache} - lookups in the {@link VerdictCachingTrustManager trust verdict cache},
+ * tagged with {@code result} ({@code hit} or {@code miss}), counted across reloads (only if the cache is enabled)</li>
+ * <li>{@code easyssl.executor.submitted}, {@code easyssl.executor.timed.out} - tasks submitted to, and given up on
+ * by, a {@link TimedExecutor}, and {@code easyssl.executor.running}, {@code easyssl.executor.stuck},
+ * {@code easyssl.executor.queued} - tasks running, running past their timeout, and waiting for a thread, all tagged
+ * with {@code executor} ({@code shared} for reloads and SNI certificate loads, {@code resource} for the resource loads
+ * within them, or {@code ocsp})</li>
+ * </ul>
+ */
+class EasySslMetrics implements MeterBinder, ApplicationListener<SSLContextReinitializedEvent> {
+    private static final String[] TRUST_CHECK_SOURCES = {"client", "server", "filter"};
+    private static final double MILLIS_PER_DAY = TimeUnit.DAYS.toMillis(1);
+
+    private final EasySslHelper helper;
+    private final HandshakeStatistics handshakeStatistics;
+    private final List<MultiGauge> expiryGauges = new CopyOnWriteArrayList<>();
+    /** One table per registry, indexed by source, then by trusted (0) or rejected (1) */
+    private final List<Timer[][]> trustCheckTimers = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param handshakeStatistics may be null if the server isn't customized
+     */
+    EasySslMetrics(EasySslHelper helper, HandshakeStatistics handshakeStatistics) {
+        Assert.notNull(helper, "helper may not be null");
+        this.helper = helper;
+        this.handshakeStatistics = handshakeStatistics;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        ReloadStatistics reloads = helper.getReloadStatistics();
+        for (ReloadStatistics.Phase phase: ReloadStatistics.Phase.values()) {
+            FunctionTimer.builder("easyssl.reload.duration", reloads,
+                    r -> r.getPhaseCount(phase), r -> r.getPhaseTotalNanos(phase), TimeUnit.NANOSECONDS)
+                .description("Time spent reloading EasySSL resources")
+                .tag("phase", phase.name().toLowerCase(Locale.ROOT))
+                .register(registry);
+        }
+        FunctionCounter.builder("easyssl.reloads", reloads, ReloadStatistics::getSuccessCount)
+            .description("EasySSL reloads")
+            .tag("result", "success")
+            .register(registry);
+        FunctionCounter.builder("easyssl.reloads", reloads, ReloadStatistics::getFailureCount)
+            .description("EasySSL reloads")
+            .tag("result", "failure")
+            .register(registry);
+        TimeGauge.builder("easyssl.reload.last.success", reloads, TimeUnit.MILLISECONDS, ReloadStatistics::getLastSuccessTime)
+            .description("When EasySSL resources were last reloaded successfully")
+            .register(registry);
+
+        registerCrlGauges(registry, "base", EasySslMaterial.TrustMaterial::getCrlResource);
+        registerCrlGauges(registry, "delta", EasySslMaterial.TrustMaterial::getDeltaCrlResource);
+
+        if (handshakeStatistics != null) {
+            FunctionCounter.builder("easyssl.handshakes", handshakeStatistics, HandshakeStatistics::getFullHandshakeCount)
+                .description("TLS handshakes completed by the server")
+                .tag("type", "full")
+                .register(registry);
+            FunctionCounter.builder("easyssl.handshakes", handshakeStatistics, HandshakeStatistics::getResumedHandshakeCount)
+                .description("TLS handshakes completed by the server")
+                .tag("type", "resumed")
+                .register(registry);
+        }
+
+        HandshakeStatistics clientHandshakes = helper.getClientHandshakeStatistics();
+        FunctionCounter.builder("easyssl.client.handshakes", clientHandshakes, HandshakeStatistics::getFullHandshakeCount)
+            .description("TLS handshakes completed by EasySSL clients")
+            .tag("type", "full")
+            .register(registry);
+        FunctionCounter.builder("easyssl.client.handshakes", clientHandshakes, HandshakeStatistics::getResumedHandshakeCount)
+            .description("TLS handshakes completed by EasySSL clients")
+            .tag("type", "resumed")
+            .register(registry);
+
+        SniCertificates sni = helper.getSniCertificates();
+        if (sni != null) {
+            Gauge.builder("easyssl.sni.loaded", sni, SniCertificates::getLoadedCount)
+                .description("SNI certificates that are loaded")
+                .register(registry);
+            FunctionCounter.builder("easyssl.sni.loads", sni, SniCertificates::getLoadCount)
+                .description("Loads of SNI certificates")
+                .tag("result", "success")
+                .register(registry);
+            FunctionCounter.builder("easyssl.sni.loads", sni, SniCertificates::getFailureCount)
+                .description("Loads of SNI certificates")
+                .tag("result", "failure")
+                .register(registry);
+            FunctionCounter.builder("easyssl.sni.evictions", sni, SniCertificates::getEvictionCount)
+                .description("SNI certificates dropped to make room for others")
+                .register(registry);
+        }
+
+        VerdictCachingTrustManager.Statistics verdicts = helper.getVerdictCacheStatistics();
+        if (verdicts != null) {
+            FunctionCounter.builder("easyssl.trust.verdict.cache", verdicts, VerdictCachingTrustManager.Statistics::getHitCount)
+                .description("Lookups in the trust verdict cache")
+                .tag("result", "hit")
+                .register(registry);
+            FunctionCounter.builder("easyssl.trust.verdict.cache", verdicts, VerdictCachingTrustManager.Statistics::getMissCount)
+                .description("Lookups in the trust verdict cache")
+                .tag("result", "miss")
+                .register(registry);
+        }
+
+        registerExecutorMeters(registry, "shared", TimedExecutor.getInstance());
+        registerExecutorMeters(registry, "resource", ResourceLoadBatch.getExecutor());
+        registerExecutorMeters(registry, "ocsp", OCSPTrustManager.getExecutor());
+
+        MultiGauge expiry = MultiGauge.builder("easyssl.certificate.expiry")
+            .description("Time until certificates expire")
+            .baseUnit("days")
+            .register(registry);
+        expiryGauges.add(expiry);
+        updateExpiryGauge(expiry, helper.getMaterial());
+
+        Timer[][] timers = new Timer[TRUST_CHECK_SOURCES.length][2];
+        for (int i = 0; i < TRUST_CHECK_SOURCES.length; i++) {
+            for (int j = 0; j < 2; j++) {
+                timers[i][j] = Timer.builder("easyssl.trust.check")
+                    .description("Time taken to check certificate chains")
+                    .tags("source", TRUST_CHECK_SOURCES[i], "result", j == 0 ? "trusted" : "rejected")
+                    .publishPercentileHistogram()
+                    .register(registry);
+            }
+        }
+        trustCheckTimers.add(timers);
+        helper.setTrustCheckRecorder(this::recordTrustCheck);
+    }
+
+    @Override
+    public void onApplicationEvent(SSLContextReinitializedEvent event) {
+        if (event.getHelper() != helper) {
+            return;
+        }
+        EasySslMaterial material = helper.getMaterial();
+        for (MultiGauge expiry: expiryGauges) {
+            updateExpiryGauge(expiry, material);
+        }
+    }
+
+    private void recordTrustCheck(String source, long nanos, boolean trusted) {
+        int i = 0;
+        while (i < TRUST_CHECK_SOURCES.length && !TRUST_CHECK_SOURCES[i].equals(source)) {
+            i++;
+        }
+        if (i == TRUST_CHECK_SOURCES.length) {
+            return;
+        }
+        for (Timer[][] timers: trustCheckTimers) {
+            timers[i][trusted ? 0 : 1].record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static void registerExecutorMeters(MeterRegistry registry, String name, TimedExecutor executor) {
+        FunctionCounter.builder("easyssl.executor.submitted", executor, TimedExecutor::getSubmittedCount)
+            .description("Tasks submitted to the executor")
+            .tag("executor", name)
+            .register(registry);
+        FunctionCounter.builder("easyssl.executor.timed.out", executor, TimedExecutor::getTimedOutCount)
+            .description("Tasks that someone gave up waiting for")
+            .tag("executor", name)
+            .register(registry);
+        Gauge.builder("easyssl.executor.running", executor, TimedExecutor::getRunningCount)
+            .description("Tasks running right now")
+            .tag("executor", name)
+            .register(registry);
+        Gauge.builder("easyssl.executor.stuck", executor, TimedExecutor::getStuckCount)
+            .description("Tasks running right now even though they have timed out")
+            .tag("executor", name)
+            .register(registry);
+        Gauge.builder("easyssl.executor.queued", executor, TimedExecutor::getQueuedCount)
+            .description("Tasks waiting for a free thread")
+            .tag("executor", name)
+            .register(registry);
+    }
+
+    private void registerCrlGauges(MeterRegistry registry, String crl,
+                                   Function<EasySslMaterial.TrustMaterial, LoadedResource<CompiledCRL>> getResource) {
+        Gauge.builder("easyssl.crl.entries", helper, h -> {
+                CompiledCRL compiled = getCRL(h, getResource);
+                return compiled == null ? Double.NaN : compiled.getIndex().size();
+            })
+            .description("Revoked certificates listed in the CRL")
+            .tag("crl", crl)
+            .register(registry);
+        TimeGauge.builder("easyssl.crl.next.update", helper, TimeUnit.MILLISECONDS, h -> {
+                CompiledCRL compiled = getCRL(h, getResource);
+                return compiled == null || compiled.getNextUpdate() == null ? Double.NaN : compiled.getNextUpdate().getTime();
+            })
+            .description("When the CRL is next updated")
+            .tag("crl", crl)
+            .register(registry);
+    }
+
+    private static CompiledCRL getCRL(EasySslHelper helper, Function<EasySslMaterial.TrustMaterial, LoadedResource<CompiledCRL>> getResource) {
+        EasySslMaterial material = helper.getMaterial();
+        LoadedResource<CompiledCRL> resource = material == null ? null : getResource.apply(material.getTrustMaterial());
+        return resource == null ? null : resource.getValue();
+    }
+
+    private static void updateExpiryGauge(MultiGauge expiry, EasySslMaterial material) {
+        if (material == null) {
+            return;
+        }
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        // the chains of additional certificates may share their CA certificates, or even a subject, with the main one
+        Map<X500Principal, X509Certificate> local = new LinkedHashMap<>();
+        for (List<X509Certificate> chain: material.getKeyMaterial().getCertificateChains()) {
+            for (X509Certificate certificate: chain) {
+                local.merge(certificate.getSubjectX500Principal(), certificate,
+                    (a, b) -> a.getNotAfter().before(b.getNotAfter()) ? a : b);
+            }
+        }
+        for (X509Certificate certificate: local.values()) {
+            rows.add(expiryRow("local", certificate));
+        }
+        for (X509Certificate certificate: material.getCACertificates()) {
+            rows.add(expiryRow("ca", certificate));
+        }
+        expiry.register(rows, true);
+    }
+
+    private static MultiGauge.Row<X509Certificate> expiryRow(String type, X509Certificate certificate) {
+        return MultiGauge.Row.of(Tags.of("type", type, "subject", certificate.getSubjectX500Principal().getName()), certificate,
+            c -> (c.getNotAfter().getTime() - System.currentTimeMillis()) / MILLIS_PER_DAY);
+    }
+}
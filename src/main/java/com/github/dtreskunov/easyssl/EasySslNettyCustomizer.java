@@ -0,0 +1,266 @@
+package com.github.dtreskunov.easyssl;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.boot.web.server.Ssl;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.ApplicationListener;
+
+import com.github.dtreskunov.easyssl.EasySslHelper.SSLContextReinitializedEvent;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiator;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslCachingX509KeyManagerFactory;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.util.KeyManagerFactoryWrapper;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * Secures Reactor Netty (WebFlux) servers with a Netty {@link SslContext} built from EasySSL's material. Netty uses
+ * OpenSSL (through netty-tcnative) if it is on the classpath, unless {@link EasySslProperties#isNettyOpenSslEnabled()}
+ * is turned off, and the JDK's implementation otherwise.
+ * <p>
+ * Netty is handed a context once, at startup, which passes every new connection on to the most recent one. Since
+ * OpenSSL is given the key in its own format, a new one is built whenever a reload changes the certificate or key.
+ * Changes to the CA certificates or CRLs take effect with the next handshake without that, so they keep the cached
+ * sessions.
+ */
+class EasySslNettyCustomizer implements WebServerFactoryCustomizer<NettyReactiveWebServerFactory>, ApplicationListener<SSLContextReinitializedEvent> {
+    private static final Logger LOG = LoggerFactory.getLogger(EasySslNettyCustomizer.class);
+
+    private final EasySslProperties config;
+    private final EasySslHelper helper;
+    private final HandshakeStatistics handshakeStatistics;
+    private final Ssl sslProperties;
+    private final boolean http2;
+    private final SslProvider provider;
+    /** Built by the first server that is customized, since there may never be one */
+    private volatile ReloadingSslContext sslContext;
+
+    /**
+     * @param sslProperties the protocols, ciphers and client authentication to use
+     * @param http2 whether to offer HTTP/2 with ALPN
+     */
+    EasySslNettyCustomizer(EasySslProperties config, EasySslHelper helper, HandshakeStatistics handshakeStatistics, Ssl sslProperties, boolean http2) {
+        this.config = config;
+        this.helper = helper;
+        this.handshakeStatistics = handshakeStatistics;
+        this.sslProperties = sslProperties;
+        this.http2 = http2;
+        this.provider = config.isNettyOpenSslEnabled() && OpenSsl.isAvailable() ? SslProvider.OPENSSL : SslProvider.JDK;
+    }
+
+    @Override
+    public void customize(NettyReactiveWebServerFactory nettyWebServerFactory) {
+        // applied after Spring Boot's own SSL customizer, whose context would never be reloaded
+        nettyWebServerFactory.addServerCustomizers(this::customizeServer);
+    }
+
+    HttpServer customizeServer(HttpServer server) {
+        SslContext context = getSslContext();
+        return server.secure(spec -> spec.sslContext(context).handlerConfigurator(this::recordHandshake));
+    }
+
+    private void recordHandshake(SslHandler handler) {
+        long opened = System.currentTimeMillis();
+        handler.handshakeFuture().addListener(future -> {
+            if (future.isSuccess()) {
+                handshakeStatistics.record(handler.engine().getSession(), opened, provider != SslProvider.JDK);
+            }
+        });
+    }
+
+    /**
+     * @return Whether connections are secured by OpenSSL or by the JDK
+     */
+    SslProvider getProvider() {
+        return provider;
+    }
+
+    synchronized SslContext getSslContext() {
+        if (sslContext == null) {
+            EasySslMaterial material = helper.getMaterial();
+            try {
+                sslContext = new ReloadingSslContext(build(material), material.getKeyMaterial());
+            } catch (SSLException e) {
+                throw new IllegalStateException("Unable to build Netty's " + provider + " context", e);
+            }
+            LOG.info("Securing Netty with {}", provider);
+        }
+        return sslContext;
+    }
+
+    /**
+     * Builds a new context if the certificate or key changed.
+     */
+    @Override
+    public synchronized void onApplicationEvent(SSLContextReinitializedEvent event) {
+        if (event.getHelper() != helper || sslContext == null) {
+            return;
+        }
+        EasySslMaterial material = helper.getMaterial();
+        if (material.getKeyMaterial() == sslContext.keyMaterial) {
+            return;
+        }
+        try {
+            sslContext.update(build(material), material.getKeyMaterial());
+            LOG.info("Rebuilt Netty's {} context for generation {}", provider, material.getGeneration());
+        } catch (SSLException e) {
+            // keep serving the previous certificate rather than none at all
+            LOG.error("Unable to rebuild Netty's {} context", provider, e);
+        }
+    }
+
+    private SslContext build(EasySslMaterial material) throws SSLException {
+        X509ExtendedKeyManager keyManager = material.getKeyMaterial().getKeyManager();
+        SslContextBuilder builder;
+        if (helper.getSniCertificates() == null) {
+            // OpenSSL would otherwise convert the chain and key to its own format on every handshake
+            builder = SslContextBuilder.forServer(provider == SslProvider.OPENSSL
+                    ? new OpenSslCachingX509KeyManagerFactory(new KeyManagerFactoryWrapper(keyManager))
+                    : new KeyManagerFactoryWrapper(keyManager));
+        } else {
+            // SNI certificates are reloaded on their own, so they can't be cached by alias
+            builder = SslContextBuilder.forServer(new SniKeyManager(keyManager, helper.getSniCertificates()));
+        }
+        builder.sslProvider(provider)
+            .trustManager(new ReloadingTrustManager(helper::getMaterial, EasySslMaterial.TrustMaterial::getCaTrustManager))
+            .clientAuth(getClientAuth(sslProperties.getClientAuth()));
+        if (sslProperties.getEnabledProtocols() != null) {
+            builder.protocols(sslProperties.getEnabledProtocols());
+        }
+        if (sslProperties.getCiphers() != null) {
+            builder.ciphers(Arrays.asList(sslProperties.getCiphers()));
+        }
+        if (config.getServerSessionCacheSize() != null) {
+            builder.sessionCacheSize(config.getServerSessionCacheSize());
+        }
+        if (config.getServerSessionTimeout() != null) {
+            builder.sessionTimeout(EasySslHelper.getSeconds(config.getServerSessionTimeout()));
+        }
+        if (http2) {
+            builder.applicationProtocolConfig(new ApplicationProtocolConfig(ApplicationProtocolConfig.Protocol.ALPN,
+                    ApplicationProtocolConfig.SelectorFailureBehavior.NO_ADVERTISE,
+                    ApplicationProtocolConfig.SelectedListenerFailureBehavior.ACCEPT,
+                    ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_1_1));
+        }
+        // only the JDK provider creates a JSSE context, which reads the session tickets setting
+        if (provider == SslProvider.JDK) {
+            return EasySslHelper.withServerSessionTickets(config.getServerSessionTickets(), builder::build);
+        }
+        return builder.build();
+    }
+
+    private static ClientAuth getClientAuth(Ssl.ClientAuth clientAuth) {
+        if (clientAuth == null) {
+            return ClientAuth.NONE;
+        }
+        switch (clientAuth) {
+        case NEED:
+            return ClientAuth.REQUIRE;
+        case WANT:
+            return ClientAuth.OPTIONAL;
+        default:
+            return ClientAuth.NONE;
+        }
+    }
+
+    /**
+     * Creates each connection's engine with the most recently built context. The handlers are created by that context
+     * too, since OpenSSL's own are more efficient than ones wrapping its engines.
+     */
+    private static final class ReloadingSslContext extends SslContext {
+        private volatile SslContext current;
+        /** What {@link #current} was built from */
+        private volatile EasySslMaterial.KeyMaterial keyMaterial;
+
+        ReloadingSslContext(SslContext current, EasySslMaterial.KeyMaterial keyMaterial) {
+            this.current = current;
+            this.keyMaterial = keyMaterial;
+        }
+
+        void update(SslContext current, EasySslMaterial.KeyMaterial keyMaterial) {
+            this.current = current;
+            this.keyMaterial = keyMaterial;
+        }
+
+        @Override
+        public boolean isClient() {
+            return false;
+        }
+
+        @Override
+        public List<String> cipherSuites() {
+            return current.cipherSuites();
+        }
+
+        @Override
+        public long sessionCacheSize() {
+            return current.sessionCacheSize();
+        }
+
+        @Override
+        public long sessionTimeout() {
+            return current.sessionTimeout();
+        }
+
+        @Override
+        @Deprecated
+        @SuppressWarnings("deprecation")
+        public ApplicationProtocolNegotiator applicationProtocolNegotiator() {
+            return current.applicationProtocolNegotiator();
+        }
+
+        @Override
+        public SSLEngine newEngine(ByteBufAllocator alloc) {
+            return current.newEngine(alloc);
+        }
+
+        @Override
+        public SSLEngine newEngine(ByteBufAllocator alloc, String peerHost, int peerPort) {
+            return current.newEngine(alloc, peerHost, peerPort);
+        }
+
+        @Override
+        public SSLSessionContext sessionContext() {
+            return current.sessionContext();
+        }
+
+        @Override
+        protected SslHandler newHandler(ByteBufAllocator alloc, boolean startTls) {
+            return current.newHandler(alloc);
+        }
+
+        @Override
+        protected SslHandler newHandler(ByteBufAllocator alloc, boolean startTls, Executor executor) {
+            return current.newHandler(alloc, executor);
+        }
+
+        @Override
+        protected SslHandler newHandler(ByteBufAllocator alloc, String peerHost, int peerPort, boolean startTls) {
+            return current.newHandler(alloc, peerHost, peerPort);
+        }
+
+        @Override
+        protected SslHandler newHandler(ByteBufAllocator alloc, String peerHost, int peerPort, boolean startTls, Executor executor) {
+            return current.newHandler(alloc, peerHost, peerPort, executor);
+        }
+    }
+}
@@ -1,9 +1,15 @@
 package com.github.dtreskunov.easyssl;
 
+import java.net.URI;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.PositiveOrZero;
 
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -23,8 +29,27 @@ import org.springframework.validation.annotation.Validated;
  *   certificate:               file:cert.pem
  *   key:                       file:key.pem
  *   keyPassword:               secret
+ *   # Also serve an RSA certificate to clients that don't support the (ECDSA) one above:
+ *   # additionalCertificates:
+ *   # - certificate: file:rsa-cert.pem
+ *   #   key:         file:rsa-key.pem
+ *   # Serve other certificates to clients asking for these host names (with SNI):
+ *   # sniCertificates:
+ *   # - hostNames:   [shop.example.com, '*.shop.example.com']
+ *   #   certificate: file:shop-cert.pem
+ *   #   key:         file:shop-key.pem
  *   certificateRevocationList: http://ca/crl.pem
+ *   # Changes since the certificateRevocationList, published more often than it:
+ *   # deltaCertificateRevocationList: http://ca/delta-crl.pem
+ *   # Also check revocation with the CA's OCSP responder:
+ *   # ocspEnabled: true
+ *   # Let clients resume TLS sessions for up to an hour, skipping the certificate exchange:
+ *   # serverSessionTimeout: 1h
  *   refreshInterval: 60s
+ *   # Reload as soon as any of the file: resources above change on disk (refreshInterval is then only a fallback):
+ *   # refreshOnFileChange: true
+ *   # Connections kept open by the easySslClientHttpRequestFactory bean (if Apache HttpClient 5 is present):
+ *   # httpClientMaxConnections: 100
  *   # If the servlet container (if any) should NOT be configured to use SSL:
  *   # serverCustomizationEnabled: false
  *   # If auto-configuration should NOT be enabled:
@@ -45,6 +70,64 @@ public class EasySslProperties {
 
     }
 
+    /**
+     * A certificate and its key, served alongside the main ones.
+     */
+    public static class AdditionalCertificate {
+        @NotNull
+        private Resource m_certificate;
+
+        @NotNull
+        private Resource m_key;
+
+        private String m_keyPassword;
+
+        public Resource getCertificate() {
+            return m_certificate;
+        }
+
+        public Resource getKey() {
+            return m_key;
+        }
+
+        /**
+         * @return Password used to decrypt the private key.
+         */
+        public String getKeyPassword() {
+            return m_keyPassword;
+        }
+
+        public void setCertificate(Resource certificate) {
+            m_certificate = certificate;
+        }
+        public void setKey(Resource key) {
+            m_key = key;
+        }
+        public void setKeyPassword(String keyPassword) {
+            m_keyPassword = keyPassword;
+        }
+    }
+
+    /**
+     * A certificate and its key, served to clients that ask for one of its host names.
+     */
+    public static class SniCertificate extends AdditionalCertificate {
+        @NotEmpty
+        private List<String> m_hostNames;
+
+        /**
+         * @return Host names to serve the certificate for. {@code *.example.com} matches any name with exactly one more
+         * label, such as {@code www.example.com}. Names are matched without regard to case.
+         */
+        public List<String> getHostNames() {
+            return m_hostNames;
+        }
+
+        public void setHostNames(List<String> hostNames) {
+            m_hostNames = hostNames;
+        }
+    }
+
     @NotNull
     private List<Resource> m_caCertificate;
 
@@ -56,21 +139,68 @@ public class EasySslProperties {
     
     private Duration m_refreshTimeout = Duration.ZERO;
 
+    private Duration m_resourceTimeout = Duration.ZERO;
+
     private List<String> m_refreshCommand;
 
+    private boolean m_refreshOnFileChange = false;
+
+    @NotNull
+    private Duration m_refreshDebounce = Duration.ofSeconds(1);
+
     private Resource m_certificateRevocationList;
 
+    private Resource m_deltaCertificateRevocationList;
+
     @NotNull
     private Resource m_key;
 
     private String m_keyPassword;
 
+    @Valid
+    @NotNull
+    private List<AdditionalCertificate> m_additionalCertificates = new ArrayList<>();
+
+    @Valid
+    @NotNull
+    private List<SniCertificate> m_sniCertificates = new ArrayList<>();
+    @Positive
+    private int m_sniCertificateCacheSize = 100;
+
     private boolean m_enabled = true;
     private boolean m_serverCustomizationEnabled = true;
     private ClientAuth m_clientAuth = ClientAuth.NEED;
     private Duration m_certificateExpirationWarningThreshold;
     private Duration m_certificateExpirationCheckInterval;
 
+    private boolean m_ocspEnabled = false;
+    private URI m_ocspResponderUrl;
+    @NotNull
+    private Duration m_ocspTimeout = Duration.ofSeconds(5);
+    private boolean m_ocspSoftFail = false;
+
+    private int m_trustVerdictCacheSize = 0;
+    private Duration m_trustVerdictCacheTtl;
+
+    @PositiveOrZero
+    private Integer m_serverSessionCacheSize;
+    private Duration m_serverSessionTimeout;
+    private Boolean m_serverSessionTickets;
+    @PositiveOrZero
+    private Integer m_clientSessionCacheSize;
+    private Duration m_clientSessionTimeout;
+    private boolean m_nettyOpenSslEnabled = true;
+    private boolean m_tomcatOpenSslEnabled;
+
+    @Positive
+    private int m_httpClientMaxConnections = 100;
+    @Positive
+    private int m_httpClientMaxConnectionsPerRoute = 20;
+    @NotNull
+    private Duration m_httpClientIdleTimeout = Duration.ofMinutes(1);
+    @NotNull
+    private Duration m_httpClientDrainTimeout = Duration.ofMinutes(1);
+
     /**
      * @return Certificate Authority's (CA) certificate(s), used for validating client and server certificates, and the signature on the CRL.
      */
@@ -92,6 +222,15 @@ public class EasySslProperties {
         return m_certificateRevocationList;
     }
 
+    /**
+     * @return Delta CRL listing the changes since the {@link #getCertificateRevocationList() base CRL} (optional). Since the
+     * base CRL is only re-parsed when its bytes change, refreshing a small delta CRL often is cheap even if the base is large.
+     * Setting it without a base CRL is rejected.
+     */
+    public Resource getDeltaCertificateRevocationList() {
+        return m_deltaCertificateRevocationList;
+    }
+
     /**
      * @return How often the {@link Resource} properties should be refreshed (defaults to "once at startup"): key, cert, CA cert, and CRL.
      */
@@ -106,6 +245,14 @@ public class EasySslProperties {
         return m_refreshTimeout;
     }
 
+    /**
+     * @return Timeout on fetching and parsing each individual {@link Resource} property (defaults to "no timeout").
+     * Resources are loaded concurrently, so a refresh takes about as long as the slowest of them.
+     */
+    public Duration getResourceTimeout() {
+        return m_resourceTimeout;
+    }
+
     /**
      * @return Command to run before refreshing resources.
      */
@@ -113,6 +260,22 @@ public class EasySslProperties {
         return m_refreshCommand;
     }
 
+    /**
+     * @return Whether to watch the files behind {@code file:} resources and refresh as soon as they change. Symbolic links
+     * (such as those used by Kubernetes to atomically swap mounted secrets) are followed and watched as well.
+     */
+    public boolean isRefreshOnFileChange() {
+        return m_refreshOnFileChange;
+    }
+
+    /**
+     * @return How long the watched files must stay unchanged before a refresh is triggered (defaults to 1 second), so
+     * that writing several files in a row results in a single refresh.
+     */
+    public Duration getRefreshDebounce() {
+        return m_refreshDebounce;
+    }
+
     /**
      * @return The key associated with the application's SSL certificate, used as a proof of ownership of the certificate.
      */
@@ -127,6 +290,33 @@ public class EasySslProperties {
         return m_keyPassword;
     }
 
+    /**
+     * @return Further certificates (each with its own key) to serve alongside the main one, typically an RSA certificate
+     * for clients that don't support ECDSA. With TLS 1.3, the server uses the cheapest kind of key the client supports
+     * (ECDSA, then RSA). With TLS 1.2, the negotiated cipher suite decides. The main certificate is the one presented
+     * to servers that this application connects to, unless they only accept another kind of key.
+     */
+    public List<AdditionalCertificate> getAdditionalCertificates() {
+        return m_additionalCertificates;
+    }
+
+    /**
+     * @return Certificates to serve (instead of the main one) to clients that ask for particular host names using SNI.
+     * Each is loaded the first time it is asked for, and kept up to date by the regular refreshes from then on. A name
+     * that matches none of them gets the main certificate.
+     */
+    public List<SniCertificate> getSniCertificates() {
+        return m_sniCertificates;
+    }
+
+    /**
+     * @return How many {@link #getSniCertificates() SNI certificates} to keep loaded at most (defaults to 100). When
+     * another one is needed, the one that was used longest ago is dropped, and loaded again if it is asked for.
+     */
+    public int getSniCertificateCacheSize() {
+        return m_sniCertificateCacheSize;
+    }
+
     /**
      * @return Whether any {@code @Bean}s should be injected at all.
      */
@@ -162,6 +352,145 @@ public class EasySslProperties {
         return m_certificateExpirationCheckInterval;
     }
 
+    /**
+     * @return Whether to check certificates presented by client or server against their CA's OCSP responder. Responses
+     * are cached until their {@code nextUpdate}, and refreshed in the background shortly before that.
+     */
+    public boolean isOcspEnabled() {
+        return m_ocspEnabled;
+    }
+
+    /**
+     * @return OCSP responder to use for all certificates, instead of the one named in each certificate's Authority
+     * Information Access extension.
+     */
+    public URI getOcspResponderUrl() {
+        return m_ocspResponderUrl;
+    }
+
+    /**
+     * @return Timeout on each request to an OCSP responder (defaults to 5 seconds).
+     */
+    public Duration getOcspTimeout() {
+        return m_ocspTimeout;
+    }
+
+    /**
+     * @return Whether to accept certificates whose revocation status can't be determined (e.g. because the OCSP responder
+     * is unreachable), logging a warning. By default, such certificates are rejected.
+     */
+    public boolean isOcspSoftFail() {
+        return m_ocspSoftFail;
+    }
+
+    /**
+     * @return How many accepted client/server certificate chains to remember, so that peers reconnecting with the same
+     * chain skip validation (defaults to 0, i.e. disabled). The remembered chains are forgotten whenever the CA
+     * certificates or CRLs change.
+     */
+    public int getTrustVerdictCacheSize() {
+        return m_trustVerdictCacheSize;
+    }
+
+    /**
+     * @return How long to remember an accepted chain for, at most (defaults to "until the chain expires", or, with
+     * {@link #isOcspEnabled() OCSP}, to 5 minutes, since remembered chains are not checked with the responder again)
+     */
+    public Duration getTrustVerdictCacheTtl() {
+        return m_trustVerdictCacheTtl;
+    }
+
+    /**
+     * @return How many TLS sessions the server should remember for resumption (defaults to the JVM's
+     * {@code javax.net.ssl.sessionCacheSize}, or 20480). Resumed handshakes skip the certificate exchange and
+     * validation, as well as the expensive public key operations. 0 means no limit.
+     */
+    public Integer getServerSessionCacheSize() {
+        return m_serverSessionCacheSize;
+    }
+
+    /**
+     * @return How long the server should allow a TLS session to be resumed for (defaults to 24 hours). Clients resuming
+     * a session are not checked against CRLs loaded since the session was established.
+     */
+    public Duration getServerSessionTimeout() {
+        return m_serverSessionTimeout;
+    }
+
+    /**
+     * @return Whether the server should issue stateless session tickets (RFC 5077), so that clients can resume sessions
+     * that no longer fit in its cache (defaults to the JVM's {@code jdk.tls.server.enableSessionTicketExtension}, which
+     * is enabled). Only applies to EasySSL's own JSSE contexts: the system property is left as it was for the rest of
+     * the JVM.
+     */
+    public Boolean getServerSessionTickets() {
+        return m_serverSessionTickets;
+    }
+
+    /**
+     * @return How many TLS sessions {@link EasySslBeans#easySslContext the client} should remember for resumption
+     * (defaults to the JVM's {@code javax.net.ssl.sessionCacheSize}, or 20480). Sessions are remembered per server host
+     * and port, and survive reloads that only change the CA certificates or CRLs. 0 means no limit.
+     */
+    public Integer getClientSessionCacheSize() {
+        return m_clientSessionCacheSize;
+    }
+
+    /**
+     * @return How long the client should resume a TLS session for (defaults to 24 hours). Servers may set shorter limits.
+     */
+    public Duration getClientSessionTimeout() {
+        return m_clientSessionTimeout;
+    }
+
+    /**
+     * @return Whether a Reactor Netty (WebFlux) server should use OpenSSL when netty-tcnative is on the classpath. The
+     * JDK's implementation is used otherwise.
+     */
+    public boolean isNettyOpenSslEnabled() {
+        return m_nettyOpenSslEnabled;
+    }
+
+    /**
+     * @return Whether Tomcat should use OpenSSL, through the Tomcat Native library (or, on Java 22 and later, Tomcat's
+     * FFM bindings) if it can be loaded. Tomcat uses the JDK's implementation otherwise, which is also the default.
+     */
+    public boolean isTomcatOpenSslEnabled() {
+        return m_tomcatOpenSslEnabled;
+    }
+
+    /**
+     * @return How many connections the {@code easySslClientHttpRequestFactory} keeps open at most (defaults to 100).
+     */
+    public int getHttpClientMaxConnections() {
+        return m_httpClientMaxConnections;
+    }
+
+    /**
+     * @return How many connections the {@code easySslClientHttpRequestFactory} keeps open to each host at most (defaults
+     * to 20).
+     */
+    public int getHttpClientMaxConnectionsPerRoute() {
+        return m_httpClientMaxConnectionsPerRoute;
+    }
+
+    /**
+     * @return How long the {@code easySslClientHttpRequestFactory} keeps a connection that isn't used (defaults to 1
+     * minute).
+     */
+    public Duration getHttpClientIdleTimeout() {
+        return m_httpClientIdleTimeout;
+    }
+
+    /**
+     * @return How long requests that are under way when the certificate changes may take to finish on their connections
+     * (defaults to 1 minute). New requests use new connections, with the new certificate, straight away. Connections that
+     * are still in use after this long are closed.
+     */
+    public Duration getHttpClientDrainTimeout() {
+        return m_httpClientDrainTimeout;
+    }
+
     public void setCaCertificate(List<Resource> caCertificate) {
         m_caCertificate = caCertificate;
     }
@@ -171,21 +500,42 @@ public class EasySslProperties {
     public void setCertificateRevocationList(Resource certificateRevocationList) {
         m_certificateRevocationList = certificateRevocationList;
     }
+    public void setDeltaCertificateRevocationList(Resource deltaCertificateRevocationList) {
+        m_deltaCertificateRevocationList = deltaCertificateRevocationList;
+    }
     public void setRefreshInterval(Duration refreshInterval) {
         m_refreshInterval = refreshInterval;
     }
     public void setRefreshTimeout(Duration refreshTimeout) {
         m_refreshTimeout = refreshTimeout;
     }
+    public void setResourceTimeout(Duration resourceTimeout) {
+        m_resourceTimeout = resourceTimeout;
+    }
     public void setRefreshCommand(List<String> refreshCommand) {
         m_refreshCommand = refreshCommand;
     }
+    public void setRefreshOnFileChange(boolean refreshOnFileChange) {
+        m_refreshOnFileChange = refreshOnFileChange;
+    }
+    public void setRefreshDebounce(Duration refreshDebounce) {
+        m_refreshDebounce = refreshDebounce;
+    }
     public void setKey(Resource key) {
         m_key = key;
     }
     public void setKeyPassword(String keyPassword) {
         m_keyPassword = keyPassword;
     }
+    public void setAdditionalCertificates(List<AdditionalCertificate> additionalCertificates) {
+        m_additionalCertificates = additionalCertificates;
+    }
+    public void setSniCertificates(List<SniCertificate> sniCertificates) {
+        m_sniCertificates = sniCertificates;
+    }
+    public void setSniCertificateCacheSize(int sniCertificateCacheSize) {
+        m_sniCertificateCacheSize = sniCertificateCacheSize;
+    }
     public void setEnabled(boolean enabled) {
         m_enabled = enabled;
     }
@@ -201,4 +551,55 @@ public class EasySslProperties {
     public void setCertificateExpirationCheckInterval(Duration certificateExpirationCheckInterval) {
         m_certificateExpirationCheckInterval = certificateExpirationCheckInterval;
     }
+    public void setOcspEnabled(boolean ocspEnabled) {
+        m_ocspEnabled = ocspEnabled;
+    }
+    public void setOcspResponderUrl(URI ocspResponderUrl) {
+        m_ocspResponderUrl = ocspResponderUrl;
+    }
+    public void setOcspTimeout(Duration ocspTimeout) {
+        m_ocspTimeout = ocspTimeout;
+    }
+    public void setOcspSoftFail(boolean ocspSoftFail) {
+        m_ocspSoftFail = ocspSoftFail;
+    }
+    public void setTrustVerdictCacheSize(int trustVerdictCacheSize) {
+        m_trustVerdictCacheSize = trustVerdictCacheSize;
+    }
+    public void setTrustVerdictCacheTtl(Duration trustVerdictCacheTtl) {
+        m_trustVerdictCacheTtl = trustVerdictCacheTtl;
+    }
+    public void setServerSessionCacheSize(Integer serverSessionCacheSize) {
+        m_serverSessionCacheSize = serverSessionCacheSize;
+    }
+    public void setServerSessionTimeout(Duration serverSessionTimeout) {
+        m_serverSessionTimeout = serverSessionTimeout;
+    }
+    public void setServerSessionTickets(Boolean serverSessionTickets) {
+        m_serverSessionTickets = serverSessionTickets;
+    }
+    public void setClientSessionCacheSize(Integer clientSessionCacheSize) {
+        m_clientSessionCacheSize = clientSessionCacheSize;
+    }
+    public void setClientSessionTimeout(Duration clientSessionTimeout) {
+        m_clientSessionTimeout = clientSessionTimeout;
+    }
+    public void setNettyOpenSslEnabled(boolean nettyOpenSslEnabled) {
+        m_nettyOpenSslEnabled = nettyOpenSslEnabled;
+    }
+    public void setTomcatOpenSslEnabled(boolean tomcatOpenSslEnabled) {
+        m_tomcatOpenSslEnabled = tomcatOpenSslEnabled;
+    }
+    public void setHttpClientMaxConnections(int httpClientMaxConnections) {
+        m_httpClientMaxConnections = httpClientMaxConnections;
+    }
+    public void setHttpClientMaxConnectionsPerRoute(int httpClientMaxConnectionsPerRoute) {
+        m_httpClientMaxConnectionsPerRoute = httpClientMaxConnectionsPerRoute;
+    }
+    public void setHttpClientIdleTimeout(Duration httpClientIdleTimeout) {
+        m_httpClientIdleTimeout = httpClientIdleTimeout;
+    }
+    public void setHttpClientDrainTimeout(Duration httpClientDrainTimeout) {
+        m_httpClientDrainTimeout = httpClientDrainTimeout;
+    }
 }
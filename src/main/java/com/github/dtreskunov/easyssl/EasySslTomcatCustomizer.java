@@ -1,59 +1,330 @@
 package com.github.dtreskunov.easyssl;
 
-import java.lang.reflect.Method;
-import java.security.KeyStore;
+import java.security.SecureRandom;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.TrustManager;
 
 import org.apache.catalina.connector.Connector;
+import org.apache.catalina.core.AprLifecycleListener;
 import org.apache.coyote.ProtocolHandler;
+import org.apache.coyote.UpgradeProtocol;
 import org.apache.coyote.http11.AbstractHttp11JsseProtocol;
-import org.apache.tomcat.util.net.AbstractJsseEndpoint;
+import org.apache.tomcat.util.net.SSLContext;
 import org.apache.tomcat.util.net.SSLHostConfig;
 import org.apache.tomcat.util.net.SSLHostConfigCertificate;
+import org.apache.tomcat.util.net.SSLUtil;
+import org.apache.tomcat.util.net.openssl.OpenSSLContext;
+import org.apache.tomcat.util.net.openssl.OpenSSLImplementation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.boot.web.embedded.tomcat.ConfigurableTomcatWebServerFactory;
+import org.springframework.boot.web.embedded.tomcat.TomcatReactiveWebServerFactory;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
 import org.springframework.boot.web.server.WebServerFactoryCustomizer;
 import org.springframework.context.ApplicationListener;
-import org.springframework.util.ReflectionUtils;
 
-class EasySslTomcatCustomizer implements WebServerFactoryCustomizer<ConfigurableTomcatWebServerFactory>, ApplicationListener<EasySslHelper.SSLContextReinitializedEvent> {
+import com.github.dtreskunov.easyssl.EasySslHelper.SSLContextReinitializedEvent;
+
+/**
+ * Hands Tomcat {@link EasySslHelper#getServerSSLContext()}, so that Tomcat never creates (or, on reload, re-creates) an
+ * {@link SSLContext} of its own.
+ * <p>
+ * With {@link EasySslProperties#isTomcatOpenSslEnabled()}, Tomcat is instead handed a context backed by OpenSSL, if the
+ * Tomcat Native library can be loaded. It is built from the helper's
+ * key manager and a trust manager that follows reloads, rather than from key stores, and is rebuilt whenever a reload
+ * changes the certificate or key, since OpenSSL is given the key in its own format.
+ */
+class EasySslTomcatCustomizer implements WebServerFactoryCustomizer<ConfigurableTomcatWebServerFactory>, ApplicationListener<SSLContextReinitializedEvent> {
     private static final Logger LOG = LoggerFactory.getLogger(EasySslTomcatCustomizer.class);
-    private final SetOnlyOnce<AbstractJsseEndpoint<?,?>> endpoint = new SetOnlyOnce<>();
-    private final SetOnlyOnce<SSLHostConfig[]> sslHostConfigs = new SetOnlyOnce<>();
 
-    @Override
-    public void onApplicationEvent(EasySslHelper.SSLContextReinitializedEvent event) {
-        LOG.info("Updating Tomcat with new SSLContext");
-        final EasySslHelper sslStoreProvider = event.getHelper();
-        final KeyStore keyStore;
-        final KeyStore trustStore;
-        try {
-            keyStore = sslStoreProvider.getKeyStore();
-            trustStore = sslStoreProvider.getTrustStore();
-        } catch (Exception e) {
-            throw new RuntimeException(e);
-        }
-        for (SSLHostConfig sslHostConfig: sslHostConfigs.get()) {
-            sslHostConfig.setTrustStore(trustStore);
-            for (SSLHostConfigCertificate certificate: sslHostConfig.getCertificates()) {
-                certificate.setCertificateKeystore(keyStore);
-            }
-            endpoint.get().addSslHostConfig(sslHostConfig, true);
+    /**
+     * The TLS implementations Tomcat may be handed.
+     */
+    enum Implementation {
+        JSSE,
+        /** OpenSSL through the Tomcat Native library (libtcnative) */
+        OPENSSL
+    }
+
+    private final EasySslProperties config;
+    private final EasySslHelper helper;
+    private final HandshakeStatistics handshakeStatistics;
+    private final Implementation implementation;
+    private final List<ReloadingOpenSSLContext> openSslContexts = new CopyOnWriteArrayList<>();
+
+    EasySslTomcatCustomizer(EasySslProperties config, EasySslHelper helper, HandshakeStatistics handshakeStatistics) {
+        this.config = config;
+        this.helper = helper;
+        this.handshakeStatistics = handshakeStatistics;
+        this.implementation = config.isTomcatOpenSslEnabled() ? findOpenSsl(config) : Implementation.JSSE;
+    }
+
+    private static Implementation findOpenSsl(EasySslProperties config) {
+        if (!config.getAdditionalCertificates().isEmpty() || !config.getSniCertificates().isEmpty()) {
+            // Tomcat's OpenSSL context is given one certificate per key type when it is built
+            LOG.warn("Tomcat's OpenSSL implementation does not support additionalCertificates or sniCertificates - using JSSE");
+            return Implementation.JSSE;
+        }
+        // the library is only loaded once a listener exists
+        new AprLifecycleListener();
+        if (AprLifecycleListener.isAprAvailable()) {
+            return Implementation.OPENSSL;
         }
+        LOG.warn("OpenSSL is not available to Tomcat - using JSSE");
+        return Implementation.JSSE;
+    }
+
+    /**
+     * @return Whether connections are secured by OpenSSL or by the JDK
+     */
+    Implementation getImplementation() {
+        return implementation;
     }
 
     @Override
     public void customize(ConfigurableTomcatWebServerFactory tomcatWebServerFactory) {
+        if (implementation == Implementation.OPENSSL) {
+            // the library is loaded, but OpenSSL itself is initialized by the server's APR listener
+            if (tomcatWebServerFactory instanceof TomcatServletWebServerFactory) {
+                ((TomcatServletWebServerFactory) tomcatWebServerFactory).setUseApr(true);
+            } else if (tomcatWebServerFactory instanceof TomcatReactiveWebServerFactory) {
+                ((TomcatReactiveWebServerFactory) tomcatWebServerFactory).setUseApr(true);
+            }
+        }
         tomcatWebServerFactory.addConnectorCustomizers(this::customizeConnector);
     }
-    
+
     private void customizeConnector(Connector connector) {
         ProtocolHandler handler = connector.getProtocolHandler();
         if (handler instanceof AbstractHttp11JsseProtocol) {
-            sslHostConfigs.set(handler.findSslHostConfigs());
-            Method AbstractHttp11JsseProtocol_getEndpoint = ReflectionUtils.findMethod(AbstractHttp11JsseProtocol.class, "getEndpoint");
-            ReflectionUtils.makeAccessible(AbstractHttp11JsseProtocol_getEndpoint);
-            endpoint.set((AbstractJsseEndpoint<?, ?>) ReflectionUtils.invokeMethod(AbstractHttp11JsseProtocol_getEndpoint, (AbstractHttp11JsseProtocol<?>) handler));
+            AbstractHttp11JsseProtocol<?> protocol = (AbstractHttp11JsseProtocol<?>) handler;
+            if (implementation != Implementation.JSSE) {
+                // so that the protocols and ciphers are those OpenSSL knows about
+                protocol.setSslImplementationName(OpenSSLImplementation.class.getName());
+            }
+            for (SSLHostConfig sslHostConfig: handler.findSslHostConfigs()) {
+                if (implementation != Implementation.JSSE && config.getServerSessionTickets() != null) {
+                    sslHostConfig.setDisableSessionTickets(!config.getServerSessionTickets());
+                }
+                for (SSLHostConfigCertificate certificate: sslHostConfig.getCertificates()) {
+                    if (implementation == Implementation.JSSE) {
+                        certificate.setSslContext(new ReloadingSSLContext(helper, handshakeStatistics));
+                    } else {
+                        ReloadingOpenSSLContext context = new ReloadingOpenSSLContext(protocol, certificate);
+                        openSslContexts.add(context);
+                        certificate.setSslContext(context);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Rebuilds the OpenSSL contexts if the certificate or key changed. Changes to the CA certificates or CRLs take
+     * effect with the next handshake without that, so they keep the cached sessions.
+     */
+    @Override
+    public void onApplicationEvent(SSLContextReinitializedEvent event) {
+        if (event.getHelper() != helper) {
+            return;
+        }
+        EasySslMaterial material = helper.getMaterial();
+        for (ReloadingOpenSSLContext context: openSslContexts) {
+            context.update(material);
+        }
+    }
+
+    /**
+     * Adapts {@link EasySslHelper#getServerSSLContext()} to Tomcat, wrapping the engines it creates so that their
+     * handshakes are recorded. The helper's context is already initialized and configured, so Tomcat's calls to
+     * {@link #init} and {@link #destroy} are ignored.
+     */
+    private static class ReloadingSSLContext implements SSLContext {
+        private final EasySslHelper helper;
+        private final HandshakeStatistics handshakeStatistics;
+
+        ReloadingSSLContext(EasySslHelper helper, HandshakeStatistics handshakeStatistics) {
+            this.helper = helper;
+            this.handshakeStatistics = handshakeStatistics;
+        }
+
+        @Override
+        public void init(KeyManager[] kms, TrustManager[] tms, SecureRandom sr) {
+            // already initialized
+        }
+
+        @Override
+        public void destroy() {
+            // owned by the helper
+        }
+
+        @Override
+        public SSLSessionContext getServerSessionContext() {
+            return helper.getServerSSLContext().getServerSessionContext();
+        }
+
+        @Override
+        public SSLEngine createSSLEngine() {
+            return handshakeStatistics.wrap(helper.getServerSSLContext().createSSLEngine());
+        }
+
+        @Override
+        public SSLServerSocketFactory getServerSocketFactory() {
+            return helper.getServerSSLContext().getServerSocketFactory();
+        }
+
+        @Override
+        public SSLParameters getSupportedSSLParameters() {
+            return helper.getServerSSLContext().getSupportedSSLParameters();
+        }
+
+        @Override
+        public X509Certificate[] getCertificateChain(String alias) {
+            return helper.getMaterial().getKeyMaterial().getKeyManager().getCertificateChain(alias);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return helper.getMaterial().getTrustMaterial().getCaTrustManager().getAcceptedIssuers();
+        }
+    }
+
+    /**
+     * Passes everything on to an OpenSSL context built from the helper's material for one of Tomcat's certificates.
+     * It is built when Tomcat first asks for it, since OpenSSL is only initialized once the server starts, and rebuilt by
+     * {@link #update}. Contexts that are replaced free their native memory once they are unreachable, so Tomcat's calls
+     * to {@link #init} and {@link #destroy} are ignored.
+     */
+    private final class ReloadingOpenSSLContext implements SSLContext {
+        private final AbstractHttp11JsseProtocol<?> protocol;
+        private final SSLHostConfigCertificate certificate;
+        private volatile SSLContext current;
+        /** What {@link #current} was built from */
+        private volatile EasySslMaterial.KeyMaterial keyMaterial;
+
+        ReloadingOpenSSLContext(AbstractHttp11JsseProtocol<?> protocol, SSLHostConfigCertificate certificate) {
+            this.protocol = protocol;
+            this.certificate = certificate;
+        }
+
+        private SSLContext current() {
+            SSLContext context = current;
+            if (context == null) {
+                synchronized (this) {
+                    if (current == null) {
+                        EasySslMaterial material = helper.getMaterial();
+                        try {
+                            keyMaterial = material.getKeyMaterial();
+                            current = build(material);
+                        } catch (Exception e) {
+                            throw new IllegalStateException("Unable to build Tomcat's " + implementation + " context", e);
+                        }
+                        LOG.info("Securing Tomcat with {}", implementation);
+                    }
+                    context = current;
+                }
+            }
+            return context;
+        }
+
+        synchronized void update(EasySslMaterial material) {
+            if (current == null || material.getKeyMaterial() == keyMaterial) {
+                return;
+            }
+            try {
+                current = build(material);
+                keyMaterial = material.getKeyMaterial();
+                LOG.info("Rebuilt Tomcat's {} context for generation {}", implementation, material.getGeneration());
+            } catch (Exception e) {
+                // keep serving the previous certificate rather than none at all
+                LOG.error("Unable to rebuild Tomcat's {} context", implementation, e);
+            }
+        }
+
+        private SSLContext build(EasySslMaterial material) throws Exception {
+            List<String> negotiableProtocols = new ArrayList<>();
+            for (UpgradeProtocol upgradeProtocol: protocol.findUpgradeProtocols()) {
+                if (upgradeProtocol.getAlpnName() != null) {
+                    negotiableProtocols.add(upgradeProtocol.getAlpnName());
+                }
+            }
+            SSLContext context = new OpenSSLContext(certificate, negotiableProtocols);
+            context.init(
+                    new KeyManager[] {material.getKeyMaterial().getKeyManager()},
+                    new TrustManager[] {new ReloadingTrustManager(helper::getMaterial, EasySslMaterial.TrustMaterial::getCaTrustManager)},
+                    null);
+            EasySslHelper.configureSessionContext(context.getServerSessionContext(), config.getServerSessionCacheSize(), config.getServerSessionTimeout());
+            return context;
+        }
+
+        @Override
+        public void init(KeyManager[] kms, TrustManager[] tms, SecureRandom sr) {
+            // built from the helper's material
+        }
+
+        @Override
+        public void destroy() {
+            // see above
+        }
+
+        @Override
+        public SSLSessionContext getServerSessionContext() {
+            return current().getServerSessionContext();
+        }
+
+        @Override
+        public SSLEngine createSSLEngine() {
+            SSLEngine engine = current().createSSLEngine();
+            return engine instanceof SSLUtil.ProtocolInfo
+                    ? new ProtocolInfoRecordingSSLEngine(engine, handshakeStatistics)
+                    : new HandshakeRecordingSSLEngine(engine, handshakeStatistics, true);
+        }
+
+        @Override
+        public SSLServerSocketFactory getServerSocketFactory() {
+            return current().getServerSocketFactory();
+        }
+
+        @Override
+        public SSLParameters getSupportedSSLParameters() {
+            return current().getSupportedSSLParameters();
+        }
+
+        @Override
+        public X509Certificate[] getCertificateChain(String alias) {
+            return current().getCertificateChain(alias);
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return current().getAcceptedIssuers();
+        }
+    }
+
+    /**
+     * Tomcat asks OpenSSL's engines for the protocol negotiated with ALPN through {@link SSLUtil.ProtocolInfo}, since
+     * they don't implement {@link SSLEngine#getApplicationProtocol()}.
+     */
+    private static final class ProtocolInfoRecordingSSLEngine extends HandshakeRecordingSSLEngine implements SSLUtil.ProtocolInfo {
+        private final SSLUtil.ProtocolInfo protocolInfo;
+
+        ProtocolInfoRecordingSSLEngine(SSLEngine delegate, HandshakeStatistics statistics) {
+            super(delegate, statistics, true);
+            this.protocolInfo = (SSLUtil.ProtocolInfo) delegate;
+        }
+
+        @Override
+        public String getNegotiatedProtocol() {
+            return protocolInfo.getNegotiatedProtocol();
         }
     }
 }
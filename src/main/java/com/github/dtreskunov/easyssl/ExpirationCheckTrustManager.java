@@ -3,31 +3,62 @@ package com.github.dtreskunov.easyssl;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import javax.net.ssl.X509TrustManager;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.util.Assert;
 
 /**
   * Logs an error or a warning when any certificate in the chain has expired or is close to expiring.
-  * Actually rejecting expired certificates is handled elsewhere. 
+  * Actually rejecting expired certificates is handled elsewhere.
+  * <p>
+  * When each certificate expires is worked out the first time it is seen, so that checking a certificate again
+  * compares the current time with two numbers and does not allocate. A certificate that is expired or close to
+  * expiring is reported at most once per {@code reportInterval}, together with how many times it was seen since the
+  * last report - unless it has expired since, which is reported straight away. At most {@link #MAX_CERTIFICATES}
+  * certificates are remembered.
  */
 class ExpirationCheckTrustManager implements X509TrustManager {
-    private Duration warningThreshold;
+    private static final Logger LOG = LoggerFactory.getLogger(ExpirationCheckTrustManager.class);
+    static final Duration DEFAULT_REPORT_INTERVAL = Duration.ofMinutes(10);
+    static final int MAX_CERTIFICATES = 10_000;
+
+    private final Duration warningThreshold;
+    private final long reportIntervalMillis;
+    private final Map<X509Certificate, Verdict> verdicts = new ConcurrentHashMap<>();
+    private final LongAdder warnings = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder reports = new LongAdder();
 
     public ExpirationCheckTrustManager(Duration warningThreshold) {
+        this(warningThreshold, DEFAULT_REPORT_INTERVAL);
+    }
+
+    /**
+     * @param reportInterval how often to report each certificate that is expired or close to expiring, at most
+     */
+    ExpirationCheckTrustManager(Duration warningThreshold, Duration reportInterval) {
         Assert.notNull(warningThreshold, "warningThreshold may not be null");
+        Assert.isTrue(reportInterval != null && !reportInterval.isNegative(), "reportInterval may not be null or negative");
         this.warningThreshold = warningThreshold;
+        this.reportIntervalMillis = reportInterval.toMillis();
     }
 
     @Override
     public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-        CertificateExpirationCheck.check(chain, "remote client", warningThreshold);
+        check(chain, "remote client");
     }
 
     @Override
     public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
-        CertificateExpirationCheck.check(chain, "remote server", warningThreshold);
+        check(chain, "remote server");
     }
 
     @Override
@@ -35,4 +66,91 @@ class ExpirationCheckTrustManager implements X509TrustManager {
         return null;
     }
 
+    /**
+     * @return How many times a certificate close to expiring was seen
+     */
+    long getWarningCount() {
+        return warnings.sum();
+    }
+
+    /**
+     * @return How many times an expired certificate was seen
+     */
+    long getExpiredCount() {
+        return expirations.sum();
+    }
+
+    /**
+     * @return How many times an expired or close to expiring certificate was logged
+     */
+    long getReportCount() {
+        return reports.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(warnings=%d, expired=%d, reports=%d)", getClass().getSimpleName(),
+            getWarningCount(), getExpiredCount(), getReportCount());
+    }
+
+    private void check(X509Certificate[] chain, String provenance) {
+        if (chain == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < chain.length; i++) {
+            Verdict verdict = verdicts.get(chain[i]);
+            if (verdict == null) {
+                verdict = getVerdict(chain[i]);
+            }
+            if (now >= verdict.warnFrom) {
+                report(verdict, chain[i], i, provenance, now);
+            }
+        }
+    }
+
+    private Verdict getVerdict(X509Certificate certificate) {
+        if (verdicts.size() >= MAX_CERTIFICATES) {
+            verdicts.clear();
+        }
+        return verdicts.computeIfAbsent(certificate, c -> new Verdict(c.getNotAfter().getTime(), warningThreshold));
+    }
+
+    private void report(Verdict verdict, X509Certificate cert, int i, String provenance, long now) {
+        boolean expired = now >= verdict.notAfter;
+        (expired ? expirations : warnings).increment();
+        verdict.occurrences.increment();
+        long lastReported = verdict.lastReported.get();
+        boolean escalated = expired && !verdict.reportedExpired;
+        if ((escalated || now - lastReported >= reportIntervalMillis) && verdict.lastReported.compareAndSet(lastReported, now)) {
+            verdict.reportedExpired = expired;
+            long occurrences = verdict.occurrences.sumThenReset();
+            reports.increment();
+            Instant certExpiration = Instant.ofEpochMilli(verdict.notAfter);
+            if (expired) {
+                LOG.error("{} certificate i={} sub='{}' iss='{}' serial={} has expired on {} ({} ago) - seen {} times since last reported",
+                    provenance, i, cert.getSubjectX500Principal(), cert.getIssuerX500Principal(), cert.getSerialNumber(),
+                    certExpiration, Duration.ofMillis(now - verdict.notAfter), occurrences);
+            } else {
+                LOG.warn("{} certificate i={} sub='{}' iss='{}' serial={} expires on {} (less than {} from now) - seen {} times since last reported",
+                    provenance, i, cert.getSubjectX500Principal(), cert.getIssuerX500Principal(), cert.getSerialNumber(),
+                    certExpiration, warningThreshold, occurrences);
+            }
+        }
+    }
+
+    private static final class Verdict {
+        final long notAfter;
+        /** When to start warning that the certificate is about to expire */
+        final long warnFrom;
+        final LongAdder occurrences = new LongAdder();
+        final AtomicLong lastReported = new AtomicLong();
+        volatile boolean reportedExpired;
+
+        Verdict(long notAfter, Duration warningThreshold) {
+            this.notAfter = notAfter;
+            long threshold = warningThreshold.toMillis();
+            this.warnFrom = notAfter < Long.MIN_VALUE + threshold ? Long.MIN_VALUE : notAfter - threshold;
+        }
+    }
 }
@@ -0,0 +1,200 @@
+package com.github.dtreskunov.easyssl;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * Runs a task whenever any of the given files change, as reported by a {@link WatchService}. Events are debounced: the
+ * task runs once the files have been quiet for the debounce period, so rewriting several files in a row results in a
+ * single run.
+ * <p>
+ * A file is watched through its parent directory, as are all symbolic links that have to be followed to reach it. This
+ * catches atomic swaps of mounted secret directories, e.g. Kubernetes replacing the {@code ..data} link that
+ * {@code /secrets/tls.crt -> ..data/tls.crt} points through. The watched directories are recomputed after every run,
+ * since a swap usually means the real directory has moved.
+ */
+class FileWatcher implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(FileWatcher.class);
+    /** Same limit as Linux uses when following symbolic links */
+    private static final int MAX_SYMLINK_HOPS = 40;
+
+    private final List<Path> files;
+    private final long debounceMillis;
+    private final Runnable task;
+    private final WatchService watchService;
+    /** Names of relevant entries within each watched directory. Only used by the watching thread after construction. */
+    private final Map<WatchKey, Set<Path>> watchedNames = new HashMap<>();
+    private final Thread thread;
+    private volatile boolean closed;
+
+    FileWatcher(Collection<Path> files, Duration debounce, Runnable task) throws IOException {
+        Assert.notEmpty(files, "files may not be empty");
+        Assert.notNull(debounce, "debounce may not be null");
+        Assert.notNull(task, "task may not be null");
+        this.files = new ArrayList<>(files);
+        this.debounceMillis = debounce.toMillis();
+        this.task = task;
+        this.watchService = this.files.get(0).getFileSystem().newWatchService();
+        register();
+        this.thread = ThreadFactoryFactory.createThreadFactory(true, FileWatcher.class.getSimpleName() + " daemon").newThread(this::watch);
+        this.thread.start();
+    }
+
+    /**
+     * Starts watching those of the resources that are files.
+     *
+     * @return the watcher, or null if none of the resources are files
+     */
+    static FileWatcher watch(Collection<Resource> resources, Duration debounce, Runnable task) throws IOException {
+        List<Path> files = new ArrayList<>(resources.size());
+        for (Resource resource: resources) {
+            if (resource != null && resource.isFile()) {
+                files.add(resource.getFile().toPath());
+            } else {
+                LOG.debug("Not watching {} since it isn't a file", resource);
+            }
+        }
+        if (files.isEmpty()) {
+            LOG.warn("None of the resources are files, so there is nothing to watch");
+            return null;
+        }
+        LOG.info("Watching {} for changes (debounce {})", files, debounce);
+        return new FileWatcher(files, debounce, task);
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        watchService.close();
+    }
+
+    private void watch() {
+        try {
+            while (!closed) {
+                boolean relevant = drain(watchService.take());
+                WatchKey key;
+                while ((key = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    relevant |= drain(key);
+                }
+                if (relevant) {
+                    run();
+                    register();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            LOG.debug("Stopped watching {}", files);
+        }
+    }
+
+    /**
+     * @return whether any of the key's events concern the watched files
+     */
+    private boolean drain(WatchKey key) {
+        Set<Path> names = watchedNames.get(key);
+        boolean relevant = false;
+        for (WatchEvent<?> event: key.pollEvents()) {
+            if (event.kind() == OVERFLOW || names == null || names.contains(event.context())) {
+                LOG.trace("{} {} in {}", event.kind(), event.context(), key.watchable());
+                relevant = true;
+            }
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private void run() {
+        LOG.info("Change detected in {}", files);
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            LOG.error("Unable to handle change in " + files, e);
+        }
+    }
+
+    private void register() {
+        Map<Path, Set<Path>> namesByDirectory = new HashMap<>();
+        for (Path file: files) {
+            addWatchTargets(file, namesByDirectory);
+        }
+        Map<WatchKey, Set<Path>> registered = new HashMap<>();
+        for (Map.Entry<Path, Set<Path>> entry: namesByDirectory.entrySet()) {
+            try {
+                WatchKey key = entry.getKey().register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                registered.computeIfAbsent(key, k -> new HashSet<>()).addAll(entry.getValue());
+            } catch (IOException e) {
+                LOG.warn("Unable to watch directory {} due to {}", entry.getKey(), e.toString());
+            }
+        }
+        for (WatchKey key: watchedNames.keySet()) {
+            if (!registered.containsKey(key)) {
+                LOG.debug("No longer watching {}", key.watchable());
+                key.cancel();
+            }
+        }
+        watchedNames.clear();
+        watchedNames.putAll(registered);
+    }
+
+    /**
+     * Adds the directory entries whose change may change the contents of {@code file}: the file itself, every symbolic
+     * link on the way to it, and the file's real location.
+     */
+    static void addWatchTargets(Path file, Map<Path, Set<Path>> namesByDirectory) {
+        Path current = file.toAbsolutePath().normalize();
+        for (int hops = 0; hops < MAX_SYMLINK_HOPS; hops++) {
+            addWatchTarget(current, namesByDirectory);
+            Path linkedTo = null;
+            Path prefix = current.getRoot();
+            for (Path name: current) {
+                prefix = prefix.resolve(name);
+                if (Files.isSymbolicLink(prefix)) {
+                    addWatchTarget(prefix, namesByDirectory);
+                    if (linkedTo == null) {
+                        try {
+                            Path target = prefix.getParent().resolve(Files.readSymbolicLink(prefix));
+                            linkedTo = target.resolve(prefix.relativize(current)).normalize();
+                        } catch (IOException e) {
+                            LOG.debug("Unable to read symbolic link {} due to {}", prefix, e.toString());
+                        }
+                    }
+                }
+            }
+            if (linkedTo == null) {
+                return;
+            }
+            current = linkedTo;
+        }
+        LOG.warn("Too many symbolic links while resolving {}", file);
+    }
+
+    private static void addWatchTarget(Path path, Map<Path, Set<Path>> namesByDirectory) {
+        if (path.getParent() != null && Files.isDirectory(path.getParent())) {
+            namesByDirectory.computeIfAbsent(path.getParent(), k -> new HashSet<>()).add(path.getFileName());
+        }
+    }
+}
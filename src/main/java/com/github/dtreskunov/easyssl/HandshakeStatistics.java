@@ -0,0 +1,166 @@
+package com.github.dtreskunov.easyssl;
+
+import java.security.KeyManagementException;
+import java.security.SecureRandom;
+import java.security.cert.Certificate;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+/**
+ * Counts TLS handshakes, telling full handshakes apart from resumed ones. The server's counts help tune
+ * {@link EasySslProperties#getServerSessionCacheSize()} and {@link EasySslProperties#getServerSessionTimeout()}, and
+ * the client's {@link EasySslProperties#getClientSessionCacheSize()} and {@link EasySslProperties#getClientSessionTimeout()}.
+ * <p>
+ * A handshake is considered resumed if its session was created before the connection was opened: JSSE keeps the
+ * creation time of the original session when resuming it, whether from its cache or from a session ticket. OpenSSL
+ * does the same, but only keeps whole seconds, so for its sessions the second the connection was opened in is used.
+ * Which one made the session is up to the caller to say, since a JSSE session may well be created on a whole second.
+ * <p>
+ * A session created in the same millisecond (or second) as the connection was opened is ambiguous: it was either
+ * created by this handshake, or by one that finished just before and is being resumed already. Such handshakes are
+ * counted as resumed if a session with the same creation time, cipher suite and peer was counted before.
+ */
+final class HandshakeStatistics {
+    private final LongAdder full = new LongAdder();
+    private final LongAdder resumed = new LongAdder();
+    /** Latest session creation time seen, and the sessions created then */
+    private long latestCreated = Long.MIN_VALUE;
+    private final Set<List<Object>> latestSessions = new HashSet<>();
+
+    /**
+     * @param connectionOpened when the connection (or its {@link SSLEngine}) was created, in milliseconds since the epoch
+     * @param openSsl whether {@code session} is OpenSSL's, whose creation time is in whole seconds
+     */
+    void record(SSLSession session, long connectionOpened, boolean openSsl) {
+        long created = session.getCreationTime();
+        if (openSsl) {
+            connectionOpened -= connectionOpened % 1000;
+        }
+        boolean seen = seen(session);
+        if (created < connectionOpened || created == connectionOpened && seen) {
+            resumed.increment();
+        } else {
+            full.increment();
+        }
+    }
+
+    /**
+     * @return Whether a handshake using {@code session} (or another one resumed from the same session) was recorded
+     * before. Only sessions with the latest creation time are remembered, since older ones are rarely ambiguous.
+     */
+    private synchronized boolean seen(SSLSession session) {
+        long created = session.getCreationTime();
+        if (created < latestCreated) {
+            return false;
+        }
+        if (created > latestCreated) {
+            latestCreated = created;
+            latestSessions.clear();
+        }
+        return !latestSessions.add(Arrays.asList(session.getCipherSuite(), getPeerCertificate(session)));
+    }
+
+    private static Certificate getPeerCertificate(SSLSession session) {
+        try {
+            return session.getPeerCertificates()[0];
+        } catch (SSLPeerUnverifiedException e) {
+            return null;
+        }
+    }
+
+    long getFullHandshakeCount() {
+        return full.sum();
+    }
+
+    long getResumedHandshakeCount() {
+        return resumed.sum();
+    }
+
+    /**
+     * @return An {@link SSLEngine} that records its first completed handshake here, if it is in server mode
+     */
+    SSLEngine wrap(SSLEngine engine) {
+        return new HandshakeRecordingSSLEngine(engine, this, false);
+    }
+
+    /**
+     * @return An {@link SSLContext} whose engines record their handshakes here. Everything else, including
+     * {@link SSLContext#init}, is passed through to {@code context}.
+     */
+    SSLContext wrap(SSLContext context) {
+        return new SSLContext(new RecordingSSLContextSpi(context), context.getProvider(), context.getProtocol()) {};
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(full=%d, resumed=%d)", getClass().getSimpleName(), getFullHandshakeCount(), getResumedHandshakeCount());
+    }
+
+    private class RecordingSSLContextSpi extends SSLContextSpi {
+        private final SSLContext delegate;
+
+        RecordingSSLContextSpi(SSLContext delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr) throws KeyManagementException {
+            delegate.init(km, tm, sr);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            return wrap(delegate.createSSLEngine());
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            return wrap(delegate.createSSLEngine(host, port));
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
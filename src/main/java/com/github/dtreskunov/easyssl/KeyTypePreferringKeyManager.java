@@ -0,0 +1,122 @@
+package com.github.dtreskunov.easyssl;
+
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPublicKey;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+import org.springframework.util.Assert;
+
+/**
+ * Steers TLS 1.3 clients to an ECDSA key, when there is one that they accept, rather than to an RSA one. An ECDSA
+ * P-256 signature is several times cheaper for the server to produce than an RSA-2048 one.
+ * <p>
+ * JSSE goes through the signature schemes in the client's order of preference, asking for a key of each type until it
+ * gets one. So this turns down requests for RSA keys from clients that also accept a signature from one of our ECDSA
+ * keys, and JSSE moves on to that. With TLS 1.2, the key type follows from the cipher suite, which may not have an
+ * ECDSA counterpart, so requests are passed through as they are.
+ */
+final class KeyTypePreferringKeyManager extends X509ExtendedKeyManager {
+    private static final Set<String> EXPENSIVE_KEY_TYPES = Set.of("RSA", "RSASSA-PSS");
+    /** TLS 1.3 signature schemes by the field size of their (NIST) curve */
+    private static final Map<Integer, String> ECDSA_SCHEMES = Map.of(
+            256, "ecdsa_secp256r1_sha256",
+            384, "ecdsa_secp384r1_sha384",
+            521, "ecdsa_secp521r1_sha512");
+
+    private final X509ExtendedKeyManager delegate;
+    /** Signature schemes that one of our ECDSA keys can produce */
+    private final Set<String> ecdsaSchemes = new HashSet<>();
+
+    /**
+     * @param certificateChains the chains of the keys that {@code delegate} holds
+     */
+    KeyTypePreferringKeyManager(X509ExtendedKeyManager delegate, List<List<X509Certificate>> certificateChains) {
+        Assert.notNull(delegate, "delegate may not be null");
+        Assert.notNull(certificateChains, "certificateChains may not be null");
+        this.delegate = delegate;
+        for (List<X509Certificate> certificateChain: certificateChains) {
+            PublicKey key = certificateChain.get(0).getPublicKey();
+            if (key instanceof ECPublicKey) {
+                String scheme = ECDSA_SCHEMES.get(((ECPublicKey) key).getParams().getCurve().getField().getFieldSize());
+                if (scheme != null) {
+                    ecdsaSchemes.add(scheme);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Whether the client would rather be served one of our ECDSA keys than one of type {@code keyType}
+     */
+    private boolean prefersCheaperKey(String keyType, SSLSession handshakeSession) {
+        if (ecdsaSchemes.isEmpty() || !EXPENSIVE_KEY_TYPES.contains(keyType)
+                || !(handshakeSession instanceof ExtendedSSLSession) || !"TLSv1.3".equals(handshakeSession.getProtocol())) {
+            return false;
+        }
+        for (String scheme: ((ExtendedSSLSession) handshakeSession).getPeerSupportedSignatureAlgorithms()) {
+            if (ecdsaSchemes.contains(scheme)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+        if (socket instanceof SSLSocket && prefersCheaperKey(keyType, ((SSLSocket) socket).getHandshakeSession())) {
+            return null;
+        }
+        return delegate.chooseServerAlias(keyType, issuers, socket);
+    }
+
+    @Override
+    public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+        if (engine != null && prefersCheaperKey(keyType, engine.getHandshakeSession())) {
+            return null;
+        }
+        return delegate.chooseEngineServerAlias(keyType, issuers, engine);
+    }
+
+    @Override
+    public String[] getServerAliases(String keyType, Principal[] issuers) {
+        return delegate.getServerAliases(keyType, issuers);
+    }
+
+    @Override
+    public String[] getClientAliases(String keyType, Principal[] issuers) {
+        return delegate.getClientAliases(keyType, issuers);
+    }
+
+    @Override
+    public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+        return delegate.chooseClientAlias(keyType, issuers, socket);
+    }
+
+    @Override
+    public String chooseEngineClientAlias(String[] keyType, Principal[] issuers, SSLEngine engine) {
+        return delegate.chooseEngineClientAlias(keyType, issuers, engine);
+    }
+
+    @Override
+    public X509Certificate[] getCertificateChain(String alias) {
+        return delegate.getCertificateChain(alias);
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String alias) {
+        return delegate.getPrivateKey(alias);
+    }
+}
@@ -0,0 +1,101 @@
+package com.github.dtreskunov.easyssl;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Contents of a {@link Resource} parsed into a value of type {@code T}, together with a digest of the bytes it was
+ * parsed from. Refreshes use the digest to skip parsing - and everything built from the parsed value - when a
+ * resource still has the same bytes as last time.
+ */
+final class LoadedResource<T> {
+    private static final Logger LOG = LoggerFactory.getLogger(LoadedResource.class);
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    @FunctionalInterface
+    interface Parser<T> {
+        T parse(byte[] bytes) throws Exception;
+    }
+
+    @FunctionalInterface
+    interface BufferParser<T> {
+        T parse(ByteBuffer buffer) throws Exception;
+    }
+
+    private final Resource resource;
+    private final byte[] digest;
+    private final T value;
+
+    private LoadedResource(Resource resource, byte[] digest, T value) {
+        this.resource = resource;
+        this.digest = digest;
+        this.value = value;
+    }
+
+    /**
+     * Reads and parses the resource, unless its bytes have the same digest as those {@code previous} was parsed from,
+     * in which case {@code previous} itself is returned. Callers can therefore detect changes by comparing references.
+     *
+     * @param previous result of loading the same resource last time (may be null)
+     */
+    static <T> LoadedResource<T> load(Resource resource, LoadedResource<T> previous, Parser<T> parser) throws Exception {
+        Assert.notNull(resource, "resource may not be null");
+        final byte[] bytes;
+        try (InputStream inputStream = resource.getInputStream()) {
+            bytes = StreamUtils.copyToByteArray(inputStream);
+        }
+        byte[] digest = digest(bytes);
+        if (previous != null && MessageDigest.isEqual(digest, previous.digest)) {
+            LOG.debug("{} is unchanged", resource);
+            return previous;
+        }
+        return new LoadedResource<>(resource, digest, parser.parse(bytes));
+    }
+
+    /**
+     * Like {@link #load(Resource, LoadedResource, Parser)}, except that a resource which is a file is memory-mapped
+     * rather than read onto the heap. Meant for large resources, such as CRLs. The parser must not hold on to the buffer
+     * for longer than it needs to, since the mapping lasts until the buffer is garbage collected.
+     */
+    static <T> LoadedResource<T> loadMapped(Resource resource, LoadedResource<T> previous, BufferParser<T> parser) throws Exception {
+        Assert.notNull(resource, "resource may not be null");
+        if (!resource.isFile()) {
+            return load(resource, previous, bytes -> parser.parse(ByteBuffer.wrap(bytes)));
+        }
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(resource.getFile().toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        messageDigest.update(buffer.duplicate());
+        byte[] digest = messageDigest.digest();
+        if (previous != null && MessageDigest.isEqual(digest, previous.digest)) {
+            LOG.debug("{} is unchanged", resource);
+            return previous;
+        }
+        return new LoadedResource<>(resource, digest, parser.parse(buffer));
+    }
+
+    private static byte[] digest(byte[] bytes) throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance(DIGEST_ALGORITHM).digest(bytes);
+    }
+
+    Resource getResource() {
+        return resource;
+    }
+
+    T getValue() {
+        return value;
+    }
+}
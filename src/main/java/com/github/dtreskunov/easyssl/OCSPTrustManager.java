@@ -0,0 +1,359 @@
+package com.github.dtreskunov.easyssl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.security.cert.CRLReason;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateRevokedException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.X509TrustManager;
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.ExtendedKeyUsage;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.KeyPurposeId;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.OCSPResp;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.cert.ocsp.SingleResp;
+import org.bouncycastle.operator.jcajce.JcaContentVerifierProviderBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
+
+/**
+ * Checks that certificates are not revoked by asking an OCSP responder (RFC 6960) - either the one named in each
+ * certificate's Authority Information Access extension, or a configured one.
+ * <p>
+ * Responses are cached, keyed by certificate ID, until their {@code nextUpdate} (or for {@link #DEFAULT_TTL} if the
+ * responder gives none, in which case the response must also have been produced within the last {@link #DEFAULT_TTL},
+ * so that a response recorded before the certificate was revoked can't be replayed). Once a cached response is {@link #REFRESH_AHEAD past most of its validity}, the next lookup
+ * refreshes it in the background while still answering from the cache, so certificates in use are never checked
+ * against the responder while a handshake waits. Concurrent lookups of the same certificate share a single request.
+ * <p>
+ * Requests are only made for chains that earlier delegates of the {@link ChainingTrustManager} have accepted, so this
+ * should come after the trust manager that checks chains against the CA certificates.
+ * <p>
+ * Requests run in a small pool of their own, shared by all instances, so that a slow or unreachable responder can
+ * hold up at most {@link #MAX_CONCURRENT_REQUESTS} threads and never delays reloads.
+ */
+class OCSPTrustManager implements X509TrustManager {
+    private static final Logger LOG = LoggerFactory.getLogger(OCSPTrustManager.class);
+    static final Duration DEFAULT_TTL = Duration.ofMinutes(5);
+    /** Fraction of a response's validity after which it is refreshed in the background */
+    static final double REFRESH_AHEAD = 0.75;
+    private static final long MAX_CLOCK_SKEW_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    private static final int MAX_CACHE_SIZE = 10_000;
+    private static final String OCSP_REQUEST = "application/ocsp-request";
+    static final int MAX_CONCURRENT_REQUESTS = 4;
+    private static final TimedExecutor EXECUTOR = new TimedExecutor(MAX_CONCURRENT_REQUESTS);
+
+    /**
+     * A verified response for a single certificate.
+     */
+    private static final class Status {
+        private final CertificateStatus status;
+        private final long expiresAt;
+        private final long refreshAt;
+
+        Status(CertificateStatus status, long thisUpdate, long expiresAt) {
+            this.status = status;
+            this.expiresAt = expiresAt;
+            this.refreshAt = thisUpdate + (long) ((expiresAt - thisUpdate) * REFRESH_AHEAD);
+        }
+    }
+
+    private final List<X509Certificate> caCertificates;
+    private final URI responderOverride;
+    private final Duration timeout;
+    private final boolean softFail;
+    private final Map<CertificateID, Status> cache = new ConcurrentHashMap<>();
+    private final Map<CertificateID, CompletableFuture<Status>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * @param caCertificates where to look for the issuers of certificates whose chains don't include them
+     * @param responderOverride responder to ask about all certificates (may be null)
+     * @param timeout timeout on each request to the responder
+     * @param softFail whether to accept certificates whose status can't be determined (e.g. the responder is down)
+     */
+    OCSPTrustManager(Collection<X509Certificate> caCertificates, URI responderOverride, Duration timeout, boolean softFail) {
+        Assert.notNull(caCertificates, "caCertificates may not be null");
+        Assert.notNull(timeout, "timeout may not be null");
+        Assert.isTrue(!timeout.isNegative() && !timeout.isZero(), "timeout must be positive");
+        this.caCertificates = new ArrayList<>(caCertificates);
+        this.responderOverride = responderOverride;
+        this.timeout = timeout;
+        this.softFail = softFail;
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        check(chain);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        check(chain);
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return null;
+    }
+
+    /**
+     * @return The pool that requests to responders run in
+     */
+    static TimedExecutor getExecutor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * @return Number of requests made to responders
+     */
+    long getRequestCount() {
+        return requests.sum();
+    }
+
+    private void check(X509Certificate[] chain) throws CertificateException {
+        if (chain == null) {
+            return;
+        }
+        for (int i = 0; i < chain.length; i++) {
+            X509Certificate certificate = chain[i];
+            if (certificate.getIssuerX500Principal().equals(certificate.getSubjectX500Principal())) {
+                continue; // self-issued, i.e. a root CA
+            }
+            X509Certificate issuer = findIssuer(certificate, i + 1 < chain.length ? chain[i + 1] : null);
+            if (issuer == null) {
+                fail(certificate, "its issuer is unknown", null);
+                continue;
+            }
+            final Status status;
+            try {
+                status = getStatus(certificate, issuer);
+            } catch (Exception e) {
+                fail(certificate, "of " + e, e);
+                continue;
+            }
+            if (status.status instanceof RevokedStatus) {
+                RevokedStatus revoked = (RevokedStatus) status.status;
+                CRLReason reason = revoked.hasRevocationReason() && revoked.getRevocationReason() < CRLReason.values().length
+                        ? CRLReason.values()[revoked.getRevocationReason()] : CRLReason.UNSPECIFIED;
+                throw new CertificateRevokedException(revoked.getRevocationTime(), reason, issuer.getSubjectX500Principal(),
+                        Collections.emptyMap());
+            } else if (status.status != CertificateStatus.GOOD) {
+                fail(certificate, "the responder doesn't know the certificate", null);
+            }
+        }
+    }
+
+    private void fail(X509Certificate certificate, String why, Exception cause) throws CertificateException {
+        String message = "Unable to check revocation status of " + certificate.getSubjectX500Principal() + " since " + why;
+        if (softFail) {
+            LOG.warn("{} - accepting it anyway", message);
+        } else {
+            throw new CertificateException(message, cause);
+        }
+    }
+
+    private X509Certificate findIssuer(X509Certificate certificate, X509Certificate next) {
+        X500Principal issuer = certificate.getIssuerX500Principal();
+        if (next != null && issuer.equals(next.getSubjectX500Principal())) {
+            return next;
+        }
+        for (X509Certificate ca: caCertificates) {
+            if (issuer.equals(ca.getSubjectX500Principal())) {
+                return ca;
+            }
+        }
+        return null;
+    }
+
+    private Status getStatus(X509Certificate certificate, X509Certificate issuer) throws Exception {
+        CertificateID id = new CertificateID(
+                new JcaDigestCalculatorProviderBuilder().build().get(CertificateID.HASH_SHA1),
+                new JcaX509CertificateHolder(issuer), certificate.getSerialNumber());
+        long now = System.currentTimeMillis();
+        Status cached = cache.get(id);
+        if (cached != null && now < cached.expiresAt) {
+            if (now >= cached.refreshAt) {
+                fetch(id, certificate, issuer); // in the background
+            }
+            return cached;
+        }
+        try {
+            return fetch(id, certificate, issuer).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } catch (TimeoutException e) {
+            throw new TimeoutException("OCSP request timed out after " + timeout.toMillis() + "ms");
+        }
+    }
+
+    /**
+     * Starts fetching the status from the responder, unless that's already under way.
+     */
+    private CompletableFuture<Status> fetch(CertificateID id, X509Certificate certificate, X509Certificate issuer) {
+        CompletableFuture<Status> result = new CompletableFuture<>();
+        CompletableFuture<Status> existing = inFlight.putIfAbsent(id, result);
+        if (existing != null) {
+            return existing;
+        }
+        EXECUTOR.submit("OCSP " + certificate.getSubjectX500Principal(), () -> {
+            try {
+                Status status = request(id, certificate, issuer);
+                if (cache.size() >= MAX_CACHE_SIZE) {
+                    evict();
+                }
+                cache.put(id, status);
+                result.complete(status);
+            } catch (Exception e) {
+                LOG.debug("OCSP request for {} failed", certificate.getSubjectX500Principal(), e);
+                result.completeExceptionally(e);
+            } finally {
+                inFlight.remove(id, result);
+            }
+            return null;
+        });
+        return result;
+    }
+
+    private void evict() {
+        long now = System.currentTimeMillis();
+        cache.values().removeIf(status -> now >= status.expiresAt);
+        if (cache.size() >= MAX_CACHE_SIZE) {
+            LOG.info("OCSP response cache is full - clearing it");
+            cache.clear();
+        }
+    }
+
+    private Status request(CertificateID id, X509Certificate certificate, X509Certificate issuer) throws Exception {
+        URI responder = responderOverride != null ? responderOverride : getResponder(certificate);
+        if (responder == null) {
+            throw new CertificateException("certificate names no OCSP responder");
+        }
+        byte[] request = new OCSPReqBuilder().addRequest(id).build().getEncoded();
+        requests.increment();
+        HttpURLConnection connection = (HttpURLConnection) responder.toURL().openConnection();
+        final byte[] response;
+        try {
+            int millis = (int) Math.min(Integer.MAX_VALUE, timeout.toMillis());
+            connection.setConnectTimeout(millis);
+            connection.setReadTimeout(millis);
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", OCSP_REQUEST);
+            connection.setFixedLengthStreamingMode(request.length);
+            try (OutputStream out = connection.getOutputStream()) {
+                out.write(request);
+            }
+            if (connection.getResponseCode() != HttpURLConnection.HTTP_OK) {
+                throw new IOException("OCSP responder " + responder + " returned HTTP " + connection.getResponseCode());
+            }
+            try (InputStream in = connection.getInputStream()) {
+                response = StreamUtils.copyToByteArray(in);
+            }
+        } finally {
+            connection.disconnect();
+        }
+        return verify(new OCSPResp(response), id, issuer);
+    }
+
+    private static Status verify(OCSPResp response, CertificateID id, X509Certificate issuer) throws Exception {
+        if (response.getStatus() != OCSPResp.SUCCESSFUL) {
+            throw new CertificateException("OCSP responder returned status " + response.getStatus());
+        }
+        BasicOCSPResp basic = (BasicOCSPResp) response.getResponseObject();
+        if (!isSignedByIssuer(basic, issuer)) {
+            throw new CertificateException("OCSP response is not signed by the issuer or a responder it authorized");
+        }
+        long now = System.currentTimeMillis();
+        for (SingleResp single: basic.getResponses()) {
+            if (!single.getCertID().equals(id)) {
+                continue;
+            }
+            long thisUpdate = single.getThisUpdate().getTime();
+            Date nextUpdate = single.getNextUpdate();
+            long expiresAt = nextUpdate != null ? nextUpdate.getTime() : now + DEFAULT_TTL.toMillis();
+            boolean stale = nextUpdate == null ? thisUpdate < now - DEFAULT_TTL.toMillis() - MAX_CLOCK_SKEW_MILLIS : expiresAt < now - MAX_CLOCK_SKEW_MILLIS;
+            if (thisUpdate > now + MAX_CLOCK_SKEW_MILLIS || stale) {
+                throw new CertificateException("OCSP response is not current (thisUpdate " + single.getThisUpdate() + ", nextUpdate " + nextUpdate + ")");
+            }
+            return new Status(single.getCertStatus(), Math.min(thisUpdate, now), Math.max(expiresAt, now));
+        }
+        throw new CertificateException("OCSP response does not cover the certificate");
+    }
+
+    /**
+     * @return Whether the response is signed by the issuer itself, or by a certificate the issuer signed for that purpose
+     * (RFC 6960, section 4.2.2.2)
+     */
+    private static boolean isSignedByIssuer(BasicOCSPResp basic, X509Certificate issuer) throws Exception {
+        JcaContentVerifierProviderBuilder verifiers = new JcaContentVerifierProviderBuilder();
+        if (basic.isSignatureValid(verifiers.build(issuer.getPublicKey()))) {
+            return true;
+        }
+        Date now = new Date();
+        for (X509CertificateHolder responder: basic.getCerts()) {
+            ExtendedKeyUsage usage = ExtendedKeyUsage.fromExtensions(responder.getExtensions());
+            if (usage != null && usage.hasKeyPurposeId(KeyPurposeId.id_kp_OCSPSigning)
+                    && responder.isValidOn(now)
+                    && responder.isSignatureValid(verifiers.build(issuer.getPublicKey()))
+                    && basic.isSignatureValid(verifiers.build(responder))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static URI getResponder(X509Certificate certificate) throws IOException {
+        byte[] extension = certificate.getExtensionValue(Extension.authorityInfoAccess.getId());
+        if (extension == null) {
+            return null;
+        }
+        AuthorityInformationAccess access = AuthorityInformationAccess.getInstance(
+                ASN1OctetString.getInstance(extension).getOctets());
+        for (AccessDescription description: access.getAccessDescriptions()) {
+            GeneralName location = description.getAccessLocation();
+            if (AccessDescription.id_ad_ocsp.equals(description.getAccessMethod())
+                    && location.getTagNo() == GeneralName.uniformResourceIdentifier) {
+                return URI.create(DERIA5String.getInstance(location.getName()).getString());
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,104 @@
+package com.github.dtreskunov.easyssl;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.server.reactive.SslInfo;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.server.ServerWebExchange;
+import org.springframework.web.server.WebFilter;
+import org.springframework.web.server.WebFilterChain;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * The WebFlux counterpart of {@link ClientCertificateCheckingFilter}: responds with a
+ * {@link HttpStatus#FORBIDDEN 403 Forbidden} when the client certificate in the request's {@link SslInfo} is not trusted
+ * by the helper's current trust manager. Requests without a client certificate are let through.
+ * <p>
+ * Chains that were found trusted are remembered for the rest of their TLS session, so only the first request on each
+ * is checked. With {@code offload} (used when OCSP is enabled, since asking the responder blocks), the checks run on
+ * Reactor's {@link Schedulers#boundedElastic() bounded elastic} scheduler rather than on the event loop. CRL checks
+ * are done in memory, so they are otherwise made in place.
+ */
+class ReactiveClientCertificateCheckingFilter implements WebFilter {
+    private static final Logger LOG = LoggerFactory.getLogger(ReactiveClientCertificateCheckingFilter.class);
+
+    private final EasySslHelper helper;
+    private final boolean offload;
+    private final TrustedSessions sessions = new TrustedSessions();
+
+    /**
+     * @param offload whether checks may block, and so must not be made on the calling thread
+     */
+    ReactiveClientCertificateCheckingFilter(EasySslHelper helper, boolean offload) {
+        Assert.notNull(helper, "helper may not be null");
+        this.helper = helper;
+        this.offload = offload;
+    }
+
+    /**
+     * @return Number of requests whose client certificate was already found trusted earlier in the same TLS session
+     */
+    long getSessionHitCount() {
+        return sessions.getHitCount();
+    }
+
+    /**
+     * @return Number of requests whose client certificate had to be checked
+     */
+    long getSessionMissCount() {
+        return sessions.getMissCount();
+    }
+
+    @Override
+    public Mono<Void> filter(ServerWebExchange exchange, WebFilterChain chain) {
+        SslInfo sslInfo = exchange.getRequest().getSslInfo();
+        X509Certificate[] certChain = sslInfo == null ? null : sslInfo.getPeerCertificates();
+        if (certChain == null || certChain.length == 0) {
+            LOG.trace("No client certificate provided - not checking validity");
+            return chain.filter(exchange);
+        }
+        EasySslMaterial.TrustMaterial trust = helper.getMaterial().getTrustMaterial();
+        // TLS 1.3 sessions may not have an ID
+        String sessionId = StringUtils.hasLength(sslInfo.getSessionId()) ? sslInfo.getSessionId() : null;
+        if (sessions.isTrusted(sessionId, certChain, trust)) {
+            LOG.trace("Request included a client certificate that is trusted in this TLS session");
+            return chain.filter(exchange);
+        }
+        Mono<Boolean> check = Mono.fromCallable(() -> check(certChain, trust, sessionId));
+        if (offload) {
+            check = check.subscribeOn(Schedulers.boundedElastic());
+        }
+        return check.flatMap(trusted -> {
+            if (trusted) {
+                return chain.filter(exchange);
+            }
+            exchange.getResponse().setStatusCode(HttpStatus.FORBIDDEN);
+            return exchange.getResponse().setComplete();
+        });
+    }
+
+    private boolean check(X509Certificate[] certChain, EasySslMaterial.TrustMaterial trust, String sessionId) {
+        String authType = certChain[0].getPublicKey().getAlgorithm();
+        long start = System.nanoTime();
+        boolean trusted = false;
+        try {
+            trust.getTrustManager().checkClientTrusted(certChain, authType);
+            trusted = true;
+        } catch (CertificateException e) {
+            LOG.warn("Request included an untrusted client certificate: " + e.getMessage());
+            return false;
+        } finally {
+            helper.getTrustCheckRecorder().record("filter", System.nanoTime() - start, trusted);
+        }
+        LOG.trace("Request did include a trusted client certificate");
+        sessions.remember(sessionId, certChain, trust);
+        return true;
+    }
+}
@@ -0,0 +1,79 @@
+package com.github.dtreskunov.easyssl;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts {@link EasySslHelper} reloads and how long each of their phases took.
+ */
+final class ReloadStatistics {
+    enum Phase {
+        /** Running {@link EasySslProperties#getRefreshCommand()} */
+        COMMAND,
+        /** Fetching and parsing resources */
+        FETCH,
+        /** Verifying CRLs and building the trust manager */
+        TRUST,
+        /** Building the key store and key managers */
+        KEY
+    }
+
+    private final Map<Phase, LongAdder> counts = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> totalNanos = new EnumMap<>(Phase.class);
+    private final LongAdder successes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private volatile long lastSuccessTime;
+
+    ReloadStatistics() {
+        for (Phase phase: Phase.values()) {
+            counts.put(phase, new LongAdder());
+            totalNanos.put(phase, new LongAdder());
+        }
+    }
+
+    /**
+     * @param start when the phase started, as given by {@link System#nanoTime()}
+     */
+    void recordPhase(Phase phase, long start) {
+        counts.get(phase).increment();
+        totalNanos.get(phase).add(System.nanoTime() - start);
+    }
+
+    void recordSuccess() {
+        successes.increment();
+        lastSuccessTime = System.currentTimeMillis();
+    }
+
+    void recordFailure() {
+        failures.increment();
+    }
+
+    long getPhaseCount(Phase phase) {
+        return counts.get(phase).sum();
+    }
+
+    long getPhaseTotalNanos(Phase phase) {
+        return totalNanos.get(phase).sum();
+    }
+
+    long getSuccessCount() {
+        return successes.sum();
+    }
+
+    long getFailureCount() {
+        return failures.sum();
+    }
+
+    /**
+     * @return When the last reload succeeded (whether or not anything had changed), in milliseconds since the epoch, or 0
+     */
+    long getLastSuccessTime() {
+        return lastSuccessTime;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(successes=%d, failures=%d)", getClass().getSimpleName(), getSuccessCount(), getFailureCount());
+    }
+}
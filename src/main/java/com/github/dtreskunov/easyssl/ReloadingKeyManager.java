@@ -0,0 +1,157 @@
+package com.github.dtreskunov.easyssl;
+
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+import org.springframework.util.Assert;
+
+/**
+ * Passes every call through to the key manager of the {@link EasySslMaterial} that is current at the time, so that an
+ * {@link javax.net.ssl.SSLContext} initialized with it once presents the new certificate as soon as the material is
+ * reloaded. Neither the context nor the servlet container's connectors (and their session caches) need to be touched.
+ * <p>
+ * A handshake chooses an alias first, and asks for its certificate chain and private key afterwards. So that a reload
+ * in between can't pair one generation's chain with the next one's key, the aliases handed out carry the generation
+ * they were chosen from (e.g. {@code easyssl-key@3}), and are resolved against that generation's key manager. The
+ * previous generation stays resolvable after a reload, for the handshakes that were under way.
+ */
+final class ReloadingKeyManager extends X509ExtendedKeyManager {
+    private static final char SEPARATOR = '@';
+
+    /**
+     * The key manager of a generation that aliases were chosen from, and of the one before it.
+     */
+    private static final class Generation {
+        private final long number;
+        private final X509ExtendedKeyManager keyManager;
+        private final Generation previous;
+
+        Generation(long number, X509ExtendedKeyManager keyManager, Generation previous) {
+            this.number = number;
+            this.keyManager = keyManager;
+            this.previous = previous;
+        }
+    }
+
+    private final Supplier<EasySslMaterial> material;
+    private final AtomicReference<Generation> latest = new AtomicReference<>();
+
+    ReloadingKeyManager(Supplier<EasySslMaterial> material) {
+        Assert.notNull(material, "material may not be null");
+        this.material = material;
+    }
+
+    /**
+     * @return The latest generation, which is at least the current material's
+     */
+    private Generation current() {
+        EasySslMaterial current = material.get();
+        while (true) {
+            Generation generation = latest.get();
+            if (generation != null && generation.number >= current.getGeneration()) {
+                return generation;
+            }
+            Generation previous = generation == null ? null : new Generation(generation.number, generation.keyManager, null);
+            Generation next = new Generation(current.getGeneration(), current.getKeyMaterial().getKeyManager(), previous);
+            if (latest.compareAndSet(generation, next)) {
+                return next;
+            }
+        }
+    }
+
+    private static String toAlias(Generation generation, String alias) {
+        return alias == null ? null : alias + SEPARATOR + generation.number;
+    }
+
+    private static String[] toAliases(Generation generation, String[] aliases) {
+        if (aliases == null) {
+            return null;
+        }
+        String[] result = new String[aliases.length];
+        for (int i = 0; i < aliases.length; i++) {
+            result[i] = toAlias(generation, aliases[i]);
+        }
+        return result;
+    }
+
+    /**
+     * @return The key manager of the generation that {@code alias} was chosen from, or null if it is no longer known
+     */
+    private X509ExtendedKeyManager find(String alias) {
+        int separator = alias == null ? -1 : alias.lastIndexOf(SEPARATOR);
+        if (separator < 0) {
+            return null;
+        }
+        long number;
+        try {
+            number = Long.parseLong(alias.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        for (Generation generation = latest.get(); generation != null; generation = generation.previous) {
+            if (generation.number == number) {
+                return generation.keyManager;
+            }
+        }
+        return null;
+    }
+
+    private static String unwrap(String alias) {
+        return alias.substring(0, alias.lastIndexOf(SEPARATOR));
+    }
+
+    @Override
+    public String[] getClientAliases(String keyType, Principal[] issuers) {
+        Generation generation = current();
+        return toAliases(generation, generation.keyManager.getClientAliases(keyType, issuers));
+    }
+
+    @Override
+    public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+        Generation generation = current();
+        return toAlias(generation, generation.keyManager.chooseClientAlias(keyType, issuers, socket));
+    }
+
+    @Override
+    public String chooseEngineClientAlias(String[] keyType, Principal[] issuers, SSLEngine engine) {
+        Generation generation = current();
+        return toAlias(generation, generation.keyManager.chooseEngineClientAlias(keyType, issuers, engine));
+    }
+
+    @Override
+    public String[] getServerAliases(String keyType, Principal[] issuers) {
+        Generation generation = current();
+        return toAliases(generation, generation.keyManager.getServerAliases(keyType, issuers));
+    }
+
+    @Override
+    public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+        Generation generation = current();
+        return toAlias(generation, generation.keyManager.chooseServerAlias(keyType, issuers, socket));
+    }
+
+    @Override
+    public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+        Generation generation = current();
+        return toAlias(generation, generation.keyManager.chooseEngineServerAlias(keyType, issuers, engine));
+    }
+
+    @Override
+    public X509Certificate[] getCertificateChain(String alias) {
+        X509ExtendedKeyManager keyManager = find(alias);
+        return keyManager == null ? null : keyManager.getCertificateChain(unwrap(alias));
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String alias) {
+        X509ExtendedKeyManager keyManager = find(alias);
+        return keyManager == null ? null : keyManager.getPrivateKey(unwrap(alias));
+    }
+}
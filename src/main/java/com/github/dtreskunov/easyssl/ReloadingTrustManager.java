@@ -0,0 +1,52 @@
+package com.github.dtreskunov.easyssl;
+
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import javax.net.ssl.X509TrustManager;
+
+import org.springframework.util.Assert;
+
+/**
+ * Passes every check through to a trust manager of the {@link EasySslMaterial} that is current at the time, so that an
+ * {@link javax.net.ssl.SSLContext} initialized with it once applies new CA certificates and CRLs as soon as they are
+ * reloaded.
+ * <p>
+ * This is deliberately not an {@link javax.net.ssl.X509ExtendedTrustManager}: JSSE wraps plain trust managers with its
+ * own algorithm constraint and endpoint identification checks, which it would otherwise leave to us.
+ */
+final class ReloadingTrustManager implements X509TrustManager {
+    private final Supplier<EasySslMaterial> material;
+    private final Function<EasySslMaterial.TrustMaterial, X509TrustManager> selector;
+
+    /**
+     * @param selector picks the trust manager to delegate to, e.g. {@link EasySslMaterial.TrustMaterial#getTrustManager()}
+     */
+    ReloadingTrustManager(Supplier<EasySslMaterial> material, Function<EasySslMaterial.TrustMaterial, X509TrustManager> selector) {
+        Assert.notNull(material, "material may not be null");
+        Assert.notNull(selector, "selector may not be null");
+        this.material = material;
+        this.selector = selector;
+    }
+
+    private X509TrustManager delegate() {
+        return selector.apply(material.get().getTrustMaterial());
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        delegate().checkClientTrusted(chain, authType);
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        delegate().checkServerTrusted(chain, authType);
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return delegate().getAcceptedIssuers();
+    }
+}
@@ -0,0 +1,112 @@
+package com.github.dtreskunov.easyssl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * Fetches and parses several {@link Resource}s concurrently, so that a reload takes as long as the slowest resource
+ * rather than the sum of all of them. Each resource gets its own timeout, counted from the moment it was submitted.
+ * The work is done by a {@link TimedExecutor} of its own rather than the shared one: the tasks that wait for a batch
+ * usually run in the shared one, and would otherwise be able to take every thread their loads are queued for.
+ * <p>
+ * Not thread-safe: a batch is meant to be filled and awaited by a single reloading thread, then {@link #close() closed}
+ * to cancel whatever is still outstanding (e.g. because another resource failed).
+ */
+class ResourceLoadBatch implements AutoCloseable {
+    /**
+     * A resource being loaded in the background.
+     */
+    static final class Pending<T> {
+        private final Resource resource;
+        private final TimedExecutor.TimedFuture<LoadedResource<T>> future;
+        private final long deadlineNanos;
+
+        private Pending(Resource resource, TimedExecutor.TimedFuture<LoadedResource<T>> future, long deadlineNanos) {
+            this.resource = resource;
+            this.future = future;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+
+    private static final TimedExecutor EXECUTOR = new TimedExecutor(TimedExecutor.MAX_THREADS);
+
+    private final long timeoutNanos;
+    private final List<Pending<?>> pending = new ArrayList<>();
+
+    /**
+     * @param timeout per-resource timeout, or zero for none
+     */
+    ResourceLoadBatch(long timeout, TimeUnit unit) {
+        Assert.isTrue(timeout >= 0, "timeout must be greater than or equal to zero");
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    /**
+     * @return The pool that resources are loaded in
+     */
+    static TimedExecutor getExecutor() {
+        return EXECUTOR;
+    }
+
+    /**
+     * Starts loading the resource in the background. See {@link LoadedResource#load(Resource, LoadedResource, LoadedResource.Parser)}.
+     */
+    <T> Pending<T> submit(Resource resource, LoadedResource<T> previous, LoadedResource.Parser<T> parser) {
+        return submit(resource, () -> LoadedResource.load(resource, previous, parser));
+    }
+
+    /**
+     * Starts loading the resource in the background. See {@link LoadedResource#loadMapped(Resource, LoadedResource, LoadedResource.BufferParser)}.
+     */
+    <T> Pending<T> submitMapped(Resource resource, LoadedResource<T> previous, LoadedResource.BufferParser<T> parser) {
+        return submit(resource, () -> LoadedResource.loadMapped(resource, previous, parser));
+    }
+
+    private <T> Pending<T> submit(Resource resource, Callable<LoadedResource<T>> loader) {
+        Assert.notNull(resource, "resource may not be null");
+        long deadlineNanos = System.nanoTime() + timeoutNanos;
+        Pending<T> result = new Pending<>(resource, EXECUTOR.submit("Load " + resource, loader), deadlineNanos);
+        pending.add(result);
+        return result;
+    }
+
+    /**
+     * Waits for the resource to be loaded.
+     *
+     * @throws TimeoutException if loading took longer than the timeout
+     * @throws Exception whatever loading the resource threw
+     */
+    <T> LoadedResource<T> await(Pending<T> resource) throws Exception {
+        try {
+            if (timeoutNanos > 0) {
+                return resource.future.get(Math.max(0, resource.deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+            }
+            return resource.future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        } catch (TimeoutException e) {
+            resource.future.cancel(true);
+            throw new TimeoutException("Loading " + resource.resource + " timed out after " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms");
+        }
+    }
+
+    /**
+     * Cancels loading the resources that haven't finished yet.
+     */
+    @Override
+    public void close() {
+        for (Pending<?> resource: pending) {
+            resource.future.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,279 @@
+package com.github.dtreskunov.easyssl;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.cert.CRLReason;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.springframework.util.Assert;
+
+/**
+ * The revoked certificates of a CRL, compiled into an open-addressing hash table keyed by issuer and serial number. The
+ * keys are primitive {@code long}s and the serial numbers are packed into a single byte array, so even a CRL with a
+ * million entries takes a few tens of megabytes, rather than the hundreds taken by the provider's {@link X509CRLEntry}
+ * objects.
+ * <p>
+ * {@link #find(X509Certificate)} takes constant time. When a certificate is not revoked - the common case - it does not
+ * allocate anything, provided the index has a single issuer (i.e. the CRL is not an indirect one).
+ */
+final class RevocationIndex {
+    static final int NOT_FOUND = -1;
+    static final long NO_DATE = Long.MIN_VALUE;
+    static final int NO_REASON = -1;
+    private static final CRLReason[] REASONS = CRLReason.values();
+
+    /**
+     * Accumulates revoked certificates. Not thread-safe.
+     */
+    static final class Builder {
+        private final X500Principal defaultIssuer;
+        private final List<X500Principal> issuers = new ArrayList<>(1);
+        private final Map<X500Principal, Integer> issuerIndexes = new HashMap<>();
+        private int size;
+        private long[] keys = new long[16];
+        private long[] dates = new long[16];
+        private byte[] reasons = new byte[16];
+        private int[] serialOffsets = new int[17];
+        private byte[] serials = new byte[256];
+
+        /**
+         * @param defaultIssuer issuer of the CRL, which is also the issuer of revoked certificates unless an entry says otherwise
+         */
+        Builder(X500Principal defaultIssuer) {
+            Assert.notNull(defaultIssuer, "defaultIssuer may not be null");
+            this.defaultIssuer = defaultIssuer;
+            getIssuerIndex(defaultIssuer);
+        }
+
+        private int getIssuerIndex(X500Principal issuer) {
+            return issuerIndexes.computeIfAbsent(issuer, i -> {
+                issuers.add(i);
+                return issuers.size() - 1;
+            });
+        }
+
+        /**
+         * @param issuer issuer of the revoked certificate, or null for the CRL's issuer
+         * @param serialNumber serial number of the revoked certificate
+         * @param revocationDate may be null
+         * @param reason may be null
+         */
+        Builder add(X500Principal issuer, BigInteger serialNumber, Date revocationDate, CRLReason reason) {
+            Assert.notNull(serialNumber, "serialNumber may not be null");
+            byte[] serial = serialNumber.toByteArray();
+            return add(issuer, ByteBuffer.wrap(serial), 0, serial.length, serialNumber.hashCode(),
+                revocationDate == null ? NO_DATE : revocationDate.getTime(), reason == null ? NO_REASON : reason.ordinal());
+        }
+
+        /**
+         * Adds a revoked certificate whose serial number is still DER-encoded, without creating a {@link BigInteger}.
+         *
+         * @param issuer issuer of the revoked certificate, or null for the CRL's issuer
+         * @param serial buffer holding the content octets of the serial number's DER INTEGER
+         * @param revocationDate milliseconds since the epoch, or {@link #NO_DATE} if unknown
+         * @param reasonCode RFC 5280 reason code, or {@link #NO_REASON} if unknown
+         */
+        Builder add(X500Principal issuer, ByteBuffer serial, int offset, int length, long revocationDate, int reasonCode) {
+            return add(issuer, serial, offset, length, hashCode(serial, offset, length), revocationDate, reasonCode);
+        }
+
+        private Builder add(X500Principal issuer, ByteBuffer serial, int offset, int length, int serialHash, long revocationDate, int reasonCode) {
+            Assert.isTrue(length > 0, "serial may not be empty");
+            Assert.isTrue(reasonCode >= NO_REASON && reasonCode < REASONS.length, () -> "invalid reasonCode " + reasonCode);
+            if (size == keys.length) {
+                int capacity = size * 2;
+                keys = Arrays.copyOf(keys, capacity);
+                dates = Arrays.copyOf(dates, capacity);
+                reasons = Arrays.copyOf(reasons, capacity);
+                serialOffsets = Arrays.copyOf(serialOffsets, capacity + 1);
+            }
+            int serialOffset = serialOffsets[size];
+            if (serialOffset + length > serials.length) {
+                serials = Arrays.copyOf(serials, Math.max(serials.length * 2, serialOffset + length));
+            }
+            serial.get(offset, serials, serialOffset, length);
+            serialOffsets[size + 1] = serialOffset + length;
+            keys[size] = key(getIssuerIndex(issuer == null ? defaultIssuer : issuer), serialHash);
+            dates[size] = revocationDate;
+            reasons[size] = (byte) reasonCode;
+            size++;
+            return this;
+        }
+
+        /**
+         * @return The same as {@link BigInteger#hashCode()} of the two's complement integer
+         */
+        private static int hashCode(ByteBuffer serial, int offset, int length) {
+            if (serial.get(offset) < 0) {
+                // negative serial numbers are not allowed by RFC 5280, but are out there - no need to make them fast
+                byte[] bytes = new byte[length];
+                serial.get(offset, bytes);
+                return new BigInteger(bytes).hashCode();
+            }
+            int end = offset + length;
+            while (offset < end && serial.get(offset) == 0) {
+                offset++;
+            }
+            // BigInteger hashes its magnitude as big-endian ints, the first of which may be partial
+            int hash = 0;
+            int word = 0;
+            for (int i = offset; i < end; i++) {
+                word = (word << 8) | (serial.get(i) & 0xff);
+                if ((end - i - 1) % 4 == 0) {
+                    hash = 31 * hash + word;
+                    word = 0;
+                }
+            }
+            return hash;
+        }
+
+        RevocationIndex build() {
+            return new RevocationIndex(this);
+        }
+    }
+
+    private final X500Principal[] issuers;
+    private final Map<X500Principal, Integer> issuerIndexes;
+    private final int size;
+    /** Hash table: a key per slot, and the (one-based, zero meaning empty) index of the entry in that slot */
+    private final long[] slotKeys;
+    private final int[] slotEntries;
+    private final int mask;
+    /** Issuer of each entry, or null if there is only one issuer */
+    private final int[] entryIssuers;
+    private final long[] dates;
+    private final byte[] reasons;
+    private final int[] serialOffsets;
+    private final byte[] serials;
+
+    private RevocationIndex(Builder builder) {
+        issuers = builder.issuers.toArray(new X500Principal[0]);
+        issuerIndexes = new HashMap<>(builder.issuerIndexes);
+        size = builder.size;
+        if (issuers.length == 1) {
+            entryIssuers = null;
+        } else {
+            entryIssuers = new int[size];
+            for (int entry = 0; entry < size; entry++) {
+                entryIssuers[entry] = (int) (builder.keys[entry] >>> 32);
+            }
+        }
+        dates = Arrays.copyOf(builder.dates, size);
+        reasons = Arrays.copyOf(builder.reasons, size);
+        serialOffsets = Arrays.copyOf(builder.serialOffsets, size + 1);
+        serials = Arrays.copyOf(builder.serials, serialOffsets[size]);
+
+        // keep the table at most half full so that probe sequences stay short
+        int capacity = Integer.highestOneBit(Math.max(2, size) * 2 - 1) << 1;
+        slotKeys = new long[capacity];
+        slotEntries = new int[capacity];
+        mask = capacity - 1;
+        for (int entry = 0; entry < size; entry++) {
+            long key = builder.keys[entry];
+            int slot = slot(key);
+            while (slotEntries[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slotKeys[slot] = key;
+            slotEntries[slot] = entry + 1;
+        }
+    }
+
+    static RevocationIndex of(X509CRL crl) {
+        Builder builder = new Builder(crl.getIssuerX500Principal());
+        Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+        if (entries != null) {
+            for (X509CRLEntry entry: entries) {
+                builder.add(entry.getCertificateIssuer(), entry.getSerialNumber(), entry.getRevocationDate(), entry.getRevocationReason());
+            }
+        }
+        return builder.build();
+    }
+
+    private static long key(int issuerIndex, int serialHash) {
+        return ((long) issuerIndex << 32) | (serialHash & 0xffffffffL);
+    }
+
+    private int slot(long key) {
+        // finalizer of MurmurHash3's 64-bit variant, to spread sequential serial numbers around the table
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key & mask;
+    }
+
+    /**
+     * @return Index of the entry revoking the certificate, or {@link #NOT_FOUND}
+     */
+    int find(X509Certificate certificate) {
+        if (size == 0) {
+            return NOT_FOUND;
+        }
+        BigInteger serialNumber = certificate.getSerialNumber();
+        final int issuerIndex;
+        if (issuers.length == 1) {
+            // the issuer is checked only if the serial number matches
+            issuerIndex = 0;
+        } else {
+            Integer index = issuerIndexes.get(certificate.getIssuerX500Principal());
+            if (index == null) {
+                return NOT_FOUND;
+            }
+            issuerIndex = index;
+        }
+        long key = key(issuerIndex, serialNumber.hashCode());
+        byte[] serial = null;
+        for (int slot = slot(key); slotEntries[slot] != 0; slot = (slot + 1) & mask) {
+            if (slotKeys[slot] != key) {
+                continue;
+            }
+            if (serial == null) {
+                if (issuers.length == 1 && !issuers[0].equals(certificate.getIssuerX500Principal())) {
+                    return NOT_FOUND;
+                }
+                serial = serialNumber.toByteArray();
+            }
+            int entry = slotEntries[slot] - 1;
+            if (Arrays.equals(serials, serialOffsets[entry], serialOffsets[entry + 1], serial, 0, serial.length)) {
+                return entry;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * @return Number of revoked certificates
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return Revocation date of the entry, or null if the CRL didn't specify one
+     */
+    Date getRevocationDate(int entry) {
+        return dates[entry] == NO_DATE ? null : new Date(dates[entry]);
+    }
+
+    /**
+     * @return Revocation reason of the entry, or null if the CRL didn't specify one
+     */
+    CRLReason getRevocationReason(int entry) {
+        return reasons[entry] == NO_REASON ? null : REASONS[reasons[entry]];
+    }
+
+    X500Principal getCertificateIssuer(int entry) {
+        return entryIssuers == null ? issuers[0] : issuers[entryIssuers[entry]];
+    }
+}
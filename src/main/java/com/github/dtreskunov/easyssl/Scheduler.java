@@ -2,25 +2,59 @@ package com.github.dtreskunov.easyssl;
 
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 class Scheduler {
+    private static final Logger LOG = LoggerFactory.getLogger(Scheduler.class);
     private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(
         ThreadFactoryFactory.createThreadFactory(true, Scheduler.class.getSimpleName() + " daemon"));
 
-    public static void runAndSchedule(String name, long timeout, long period, TimeUnit unit, Runnable runnable) {
+    /**
+     * @return {@code runnable}, wrapped to fail if it takes longer than {@code timeout} (unless the timeout is zero)
+     */
+    public static Runnable withTimeout(String name, long timeout, TimeUnit unit, Runnable runnable) {
         if (timeout > 0) {
-            runnable = TimeoutUtils
+            return TimeoutUtils
                 .builder()
                 .setName(name)
                 .setTimeout(timeout, unit)
                 .wrap(runnable);
         }
+        return runnable;
+    }
+
+    /**
+     * Runs the task in the current thread, then schedules it to run repeatedly in the background.
+     *
+     * @return future of the scheduled repetitions, or null if {@code period} is zero
+     */
+    public static ScheduledFuture<?> runAndSchedule(String name, long timeout, long period, TimeUnit unit, Runnable runnable) {
+        runnable = withTimeout(name, timeout, unit, runnable);
 
         // ensure any initial exception isn't ignored (as would happen if thrown in the executor thread)
         runnable.run();
         if (period > 0) {
-            SCHEDULER.scheduleAtFixedRate(runnable, period, period, unit);
+            return schedule(name, period, unit, runnable);
         }
+        return null;
+    }
+
+    /**
+     * Runs the task repeatedly in the background, starting after one {@code period}. The task should be quick, since
+     * all scheduled tasks share a single thread.
+     */
+    public static ScheduledFuture<?> schedule(String name, long period, TimeUnit unit, Runnable runnable) {
+        // an exception escaping into the executor would silently cancel all further repetitions
+        return SCHEDULER.scheduleAtFixedRate(() -> {
+            try {
+                runnable.run();
+            } catch (RuntimeException e) {
+                LOG.error(name + " failed, will retry in " + period + " " + unit + " (" + TimedExecutor.getInstance() + ")", e);
+            }
+        }, period, period, unit);
     }
 }
@@ -0,0 +1,409 @@
+package com.github.dtreskunov.easyssl;
+
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+import org.springframework.util.Assert;
+
+/**
+ * The {@link EasySslProperties#getSniCertificates() SNI certificates}, looked up by the host name a client asks for.
+ * <p>
+ * Host names are put into two maps when this is constructed - one of exact names, and one of the parent domains of
+ * wildcards - which are never modified afterwards, so any number of handshakes can look names up without locking.
+ * A certificate starts loading when the first handshake asks for it. Its resources may well be remote, so it is loaded
+ * in the {@link TimedExecutor} rather than on the handshake's thread (which may be an event loop that other connections
+ * are waiting for), and the main certificate is served until it is ready. A load may take at most {@code timeoutMillis},
+ * or {@link #DEFAULT_TIMEOUT_MILLIS} if that is zero, lest a tenant that hangs never get another try. At most
+ * {@code maxLoaded} certificates are kept loaded: loading one more drops the one that was used longest ago. {@link #refresh()} (called
+ * after each of {@link EasySslHelper}'s reloads) only reloads those that are loaded, keeping a certificate as it was if
+ * its resources can't be loaded.
+ * <p>
+ * Each loaded certificate has an alias of its own, made of its tenant's index and a serial number, so that a handshake
+ * which chose an alias before a refresh still gets that certificate's chain and key afterwards. Only the certificate
+ * that the last refresh replaced is kept for this; one that has been dropped can't be resolved.
+ */
+final class SniCertificates {
+    private static final Logger LOG = LoggerFactory.getLogger(SniCertificates.class);
+    private static final String ALIAS_PREFIX = EasySslHelper.KEY_ALIAS + "-sni-";
+    private static final char SERIAL_SEPARATOR = '@';
+    /** How long to wait before trying to load a certificate again after failing to */
+    private static final long RETRY_NANOS = TimeUnit.SECONDS.toNanos(30);
+    /** How long loading a certificate for a handshake may take when no timeout is configured */
+    static final long DEFAULT_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+    /**
+     * A certificate chain and key that have been loaded.
+     */
+    static final class Identity {
+        private final LoadedResource<PrivateKey> keyResource;
+        private final LoadedResource<List<X509Certificate>> certificateResource;
+        private final X509Certificate[] certificateChain;
+        private final PrivateKey privateKey;
+        private final String keyType;
+        private final long serial;
+
+        private Identity(LoadedResource<PrivateKey> keyResource, LoadedResource<List<X509Certificate>> certificateResource,
+                         long serial) throws Exception {
+            Assert.notEmpty(certificateResource.getValue(), () -> "No certificates in " + certificateResource.getResource());
+            this.keyResource = keyResource;
+            this.certificateResource = certificateResource;
+            this.certificateChain = certificateResource.getValue().toArray(new X509Certificate[0]);
+            // like the main key, pass the key through a KeyStore, which gives it back in a form that JSSE recognizes
+            // whichever provider parsed it (BouncyCastle calls EC keys "ECDSA", for one)
+            KeyStore keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+            keyStore.load(null, null);
+            keyStore.setKeyEntry(EasySslHelper.KEY_ALIAS, keyResource.getValue(), EasySslHelper.KEY_PASSWORD.toCharArray(), certificateChain);
+            this.privateKey = (PrivateKey) keyStore.getKey(EasySslHelper.KEY_ALIAS, EasySslHelper.KEY_PASSWORD.toCharArray());
+            String algorithm = certificateChain[0].getPublicKey().getAlgorithm();
+            // JSSE asks for "EC" keys, while some providers call them "ECDSA"
+            this.keyType = "ECDSA".equals(algorithm) ? "EC" : algorithm;
+            this.serial = serial;
+        }
+
+        PrivateKey getPrivateKey() {
+            return privateKey;
+        }
+
+        X509Certificate[] getCertificateChain() {
+            return certificateChain.clone();
+        }
+
+        /**
+         * @return Whether JSSE may use this identity when it asks for a key of type {@code keyType}
+         */
+        boolean hasKeyType(String keyType) {
+            return this.keyType.equals(keyType);
+        }
+    }
+
+    /**
+     * One of the configured certificates, whether or not it is loaded.
+     */
+    final class Tenant {
+        private final String alias;
+        private final EasySslProperties.SniCertificate config;
+        private volatile Identity identity;
+        /** The identity that the last refresh replaced, for handshakes that chose it before */
+        private volatile Identity replacedIdentity;
+        private volatile long lastUsedNanos;
+        /** When loading last failed, as given by {@link System#nanoTime()}, or null */
+        private Long failedNanos;
+        /** Whether the certificate is being loaded in the background */
+        private boolean loading;
+
+        private Tenant(int index, EasySslProperties.SniCertificate config) {
+            this.alias = ALIAS_PREFIX + index;
+            this.config = config;
+        }
+
+        /**
+         * @return The alias of {@code identity}, which must be one of this tenant's
+         */
+        String getAlias(Identity identity) {
+            return alias + SERIAL_SEPARATOR + identity.serial;
+        }
+
+        private Identity findIdentity(long serial) {
+            Identity result = identity;
+            if (result != null && result.serial == serial) {
+                return result;
+            }
+            result = replacedIdentity;
+            return result != null && result.serial == serial ? result : null;
+        }
+
+        /**
+         * @return The certificate and key, or null if they aren't loaded, in which case they start loading in the
+         * background (unless they failed to load a short while ago)
+         */
+        Identity getIdentity() {
+            lastUsedNanos = System.nanoTime();
+            Identity result = identity;
+            if (result == null) {
+                startLoading();
+            }
+            return result;
+        }
+
+        private synchronized void startLoading() {
+            if (identity != null || loading || failedNanos != null && System.nanoTime() - failedNanos < RETRY_NANOS) {
+                return;
+            }
+            loading = true;
+            TimedExecutor.getInstance().submit("Load SNI certificate for " + config.getHostNames(), () -> {
+                loadIdentity();
+                return null;
+            });
+        }
+
+        private void loadIdentity() {
+            Identity loaded;
+            try {
+                loaded = load(config, null, timeoutMillis > 0 ? timeoutMillis : DEFAULT_TIMEOUT_MILLIS);
+            } catch (Exception e) {
+                failures.increment();
+                LOG.error("Unable to load the SNI certificate for {} from {}", config.getHostNames(), config.getCertificate(), e);
+                synchronized (this) {
+                    failedNanos = System.nanoTime();
+                    loading = false;
+                }
+                return;
+            }
+            loads.increment();
+            // make room before serving it, so that handshakes never see more than maxLoaded certificates
+            loadedCount.incrementAndGet();
+            evictLeastRecentlyUsed(this);
+            synchronized (this) {
+                failedNanos = null;
+                identity = loaded;
+                loading = false;
+            }
+            LOG.info("Loaded the SNI certificate for {} from {}", config.getHostNames(), config.getCertificate());
+        }
+
+        private synchronized void evict() {
+            if (identity == null) {
+                return;
+            }
+            identity = null;
+            replacedIdentity = null;
+            loadedCount.decrementAndGet();
+            evictions.increment();
+            LOG.debug("Dropped the SNI certificate for {}", config.getHostNames());
+        }
+    }
+
+    private final List<Tenant> tenants;
+    private final Map<String, Tenant> exactHostNames;
+    /** Keyed by what follows the {@code *.} */
+    private final Map<String, Tenant> wildcardHostNames;
+    private final int maxLoaded;
+    private final long timeoutMillis;
+    private final AtomicInteger loadedCount = new AtomicInteger();
+    private final AtomicLong identitySerials = new AtomicLong();
+    /** Keeps concurrent evictions from dropping more than they need to between them */
+    private final Object evictionLock = new Object();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param maxLoaded how many certificates to keep loaded at most
+     * @param timeoutMillis how long loading a resource may take, or zero for no limit
+     */
+    SniCertificates(List<EasySslProperties.SniCertificate> configs, int maxLoaded, long timeoutMillis) {
+        Assert.notNull(configs, "configs may not be null");
+        Assert.isTrue(maxLoaded > 0, "maxLoaded must be positive");
+        Assert.isTrue(timeoutMillis >= 0, "timeoutMillis must be greater than or equal to zero");
+        this.maxLoaded = maxLoaded;
+        this.timeoutMillis = timeoutMillis;
+        List<Tenant> tenants = new ArrayList<>(configs.size());
+        Map<String, Tenant> exactHostNames = new HashMap<>();
+        Map<String, Tenant> wildcardHostNames = new HashMap<>();
+        for (EasySslProperties.SniCertificate config: configs) {
+            Assert.notEmpty(config.getHostNames(), "hostNames may not be empty");
+            Tenant tenant = new Tenant(tenants.size(), config);
+            tenants.add(tenant);
+            for (String hostName: config.getHostNames()) {
+                Assert.hasText(hostName, "hostNames may not be blank");
+                String normalized = normalize(hostName);
+                final Map<String, Tenant> map;
+                if (normalized.startsWith("*.")) {
+                    normalized = normalized.substring(2);
+                    map = wildcardHostNames;
+                } else {
+                    map = exactHostNames;
+                }
+                Assert.isTrue(!normalized.isEmpty() && normalized.indexOf('*') < 0,
+                        () -> "Wildcards are only allowed as the whole leftmost label of a host name, but got " + hostName);
+                Assert.isTrue(map.put(normalized, tenant) == null, () -> "Host name " + hostName + " is given more than once");
+            }
+        }
+        this.tenants = Collections.unmodifiableList(tenants);
+        this.exactHostNames = exactHostNames;
+        this.wildcardHostNames = wildcardHostNames;
+    }
+
+    private static String normalize(String hostName) {
+        String result = hostName.trim().toLowerCase(Locale.ROOT);
+        return result.endsWith(".") ? result.substring(0, result.length() - 1) : result;
+    }
+
+    /**
+     * @return The certificate to serve for {@code hostName}, or null if none matches
+     */
+    Tenant find(String hostName) {
+        if (hostName == null) {
+            return null;
+        }
+        String normalized = normalize(hostName);
+        Tenant result = exactHostNames.get(normalized);
+        if (result == null) {
+            int dot = normalized.indexOf('.');
+            if (dot > 0) {
+                result = wildcardHostNames.get(normalized.substring(dot + 1));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return Whether {@code alias} looks like one given out by {@link Tenant#getAlias(Identity)}
+     */
+    static boolean isAlias(String alias) {
+        return alias != null && alias.startsWith(ALIAS_PREFIX);
+    }
+
+    /**
+     * @return The certificate whose {@link Tenant#getAlias(Identity) alias} this is, or null if it isn't one of ours or
+     * is no longer loaded
+     */
+    Identity findByAlias(String alias) {
+        int separator = isAlias(alias) ? alias.indexOf(SERIAL_SEPARATOR) : -1;
+        if (separator < 0) {
+            return null;
+        }
+        try {
+            int index = Integer.parseInt(alias.substring(ALIAS_PREFIX.length(), separator));
+            long serial = Long.parseLong(alias.substring(separator + 1));
+            return index >= 0 && index < tenants.size() ? tenants.get(index).findIdentity(serial) : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reloads the certificates that are loaded. A certificate whose resources haven't changed is kept as it is, and so
+     * is one whose resources can't be loaded.
+     */
+    void refresh() {
+        for (Tenant tenant: tenants) {
+            Identity previous = tenant.identity;
+            if (previous == null) {
+                continue;
+            }
+            Identity next;
+            try {
+                next = load(tenant.config, previous, timeoutMillis);
+            } catch (Exception e) {
+                failures.increment();
+                LOG.error("Unable to reload the SNI certificate for {} from {} - keeping the previous one",
+                        tenant.config.getHostNames(), tenant.config.getCertificate(), e);
+                continue;
+            }
+            if (next != previous) {
+                synchronized (tenant) {
+                    // don't bring back one that was dropped while it was being reloaded
+                    if (tenant.identity == previous) {
+                        tenant.replacedIdentity = previous;
+                        tenant.identity = next;
+                        loads.increment();
+                        LOG.info("Reloaded the SNI certificate for {} from {}", tenant.config.getHostNames(), tenant.config.getCertificate());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return All the resources that certificates are loaded from, whether or not they are loaded
+     */
+    List<Resource> getResources() {
+        List<Resource> result = new ArrayList<>(tenants.size() * 2);
+        for (Tenant tenant: tenants) {
+            result.add(tenant.config.getCertificate());
+            result.add(tenant.config.getKey());
+        }
+        return result;
+    }
+
+    /**
+     * @param timeoutMillis how long loading a resource may take, or zero for no limit
+     * @return {@code previous} if neither resource has changed
+     */
+    private Identity load(EasySslProperties.SniCertificate config, Identity previous, long timeoutMillis) throws Exception {
+        final LoadedResource<PrivateKey> keyResource;
+        final LoadedResource<List<X509Certificate>> certificateResource;
+        try (ResourceLoadBatch batch = new ResourceLoadBatch(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            String keyPassword = config.getKeyPassword();
+            ResourceLoadBatch.Pending<PrivateKey> pendingKey = batch.submit(config.getKey(),
+                    previous == null ? null : previous.keyResource,
+                    bytes -> EasySslHelper.readPrivateKey(bytes, keyPassword));
+            ResourceLoadBatch.Pending<List<X509Certificate>> pendingCertificate = batch.submit(config.getCertificate(),
+                    previous == null ? null : previous.certificateResource,
+                    EasySslHelper::readX509Certificates);
+            keyResource = batch.await(pendingKey);
+            certificateResource = batch.await(pendingCertificate);
+        }
+        if (previous != null && keyResource == previous.keyResource && certificateResource == previous.certificateResource) {
+            return previous;
+        }
+        return new Identity(keyResource, certificateResource, identitySerials.incrementAndGet());
+    }
+
+    /**
+     * Takes the lock of each tenant it evicts, so must not be called while holding one (lest two threads wait on each
+     * other's).
+     */
+    private void evictLeastRecentlyUsed(Tenant keep) {
+        synchronized (evictionLock) {
+            evictLeastRecentlyUsedLocked(keep);
+        }
+    }
+
+    private void evictLeastRecentlyUsedLocked(Tenant keep) {
+        while (loadedCount.get() > maxLoaded) {
+            Tenant coldest = null;
+            for (Tenant tenant: tenants) {
+                if (tenant != keep && tenant.identity != null
+                        && (coldest == null || tenant.lastUsedNanos - coldest.lastUsedNanos < 0)) {
+                    coldest = tenant;
+                }
+            }
+            if (coldest == null) {
+                return;
+            }
+            coldest.evict();
+        }
+    }
+
+    int size() {
+        return tenants.size();
+    }
+
+    int getLoadedCount() {
+        return loadedCount.get();
+    }
+
+    long getLoadCount() {
+        return loads.sum();
+    }
+
+    long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    long getFailureCount() {
+        return failures.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(size=%d, loaded=%d, loads=%d, evictions=%d, failures=%d)", getClass().getSimpleName(),
+                size(), getLoadedCount(), getLoadCount(), getEvictionCount(), getFailureCount());
+    }
+}
@@ -0,0 +1,115 @@
+package com.github.dtreskunov.easyssl;
+
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.StandardConstants;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+import org.springframework.util.Assert;
+
+/**
+ * Serves one of the {@link SniCertificates} to clients that ask for its host name with the server name indication
+ * extension, and the certificates of {@code delegate} to all others.
+ * <p>
+ * A client that asks for one of the host names is only ever served that name's certificate: a request for a key of
+ * another type is turned down, so that JSSE moves on to the next type the client accepts. If the certificate isn't
+ * loaded yet, or can't be, the client gets one of {@code delegate}'s instead, which it is unlikely to accept for that name, but which at
+ * least lets the handshake (and the error) happen in the usual way.
+ * <p>
+ * The alias chosen for a certificate names the very chain and key that were loaded at the time (see
+ * {@link SniCertificates}), so a refresh during the handshake can't pair one certificate's chain with another's key.
+ */
+final class SniKeyManager extends X509ExtendedKeyManager {
+    private final X509ExtendedKeyManager delegate;
+    private final SniCertificates certificates;
+
+    SniKeyManager(X509ExtendedKeyManager delegate, SniCertificates certificates) {
+        Assert.notNull(delegate, "delegate may not be null");
+        Assert.notNull(certificates, "certificates may not be null");
+        this.delegate = delegate;
+        this.certificates = certificates;
+    }
+
+    private static String getRequestedHostName(SSLSession handshakeSession) {
+        if (!(handshakeSession instanceof ExtendedSSLSession)) {
+            return null;
+        }
+        for (SNIServerName serverName: ((ExtendedSSLSession) handshakeSession).getRequestedServerNames()) {
+            if (serverName.getType() == StandardConstants.SNI_HOST_NAME) {
+                return serverName instanceof SNIHostName
+                        ? ((SNIHostName) serverName).getAsciiName()
+                        : new SNIHostName(serverName.getEncoded()).getAsciiName();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String chooseServerAlias(String keyType, Principal[] issuers, Socket socket) {
+        SniCertificates.Tenant tenant = socket instanceof SSLSocket
+                ? certificates.find(getRequestedHostName(((SSLSocket) socket).getHandshakeSession()))
+                : null;
+        SniCertificates.Identity identity = tenant == null ? null : tenant.getIdentity();
+        if (identity == null) {
+            return delegate.chooseServerAlias(keyType, issuers, socket);
+        }
+        return identity.hasKeyType(keyType) ? tenant.getAlias(identity) : null;
+    }
+
+    @Override
+    public String chooseEngineServerAlias(String keyType, Principal[] issuers, SSLEngine engine) {
+        SniCertificates.Tenant tenant = engine == null ? null : certificates.find(getRequestedHostName(engine.getHandshakeSession()));
+        SniCertificates.Identity identity = tenant == null ? null : tenant.getIdentity();
+        if (identity == null) {
+            return delegate.chooseEngineServerAlias(keyType, issuers, engine);
+        }
+        return identity.hasKeyType(keyType) ? tenant.getAlias(identity) : null;
+    }
+
+    @Override
+    public String[] getServerAliases(String keyType, Principal[] issuers) {
+        return delegate.getServerAliases(keyType, issuers);
+    }
+
+    @Override
+    public String[] getClientAliases(String keyType, Principal[] issuers) {
+        return delegate.getClientAliases(keyType, issuers);
+    }
+
+    @Override
+    public String chooseClientAlias(String[] keyType, Principal[] issuers, Socket socket) {
+        return delegate.chooseClientAlias(keyType, issuers, socket);
+    }
+
+    @Override
+    public String chooseEngineClientAlias(String[] keyType, Principal[] issuers, SSLEngine engine) {
+        return delegate.chooseEngineClientAlias(keyType, issuers, engine);
+    }
+
+    @Override
+    public X509Certificate[] getCertificateChain(String alias) {
+        if (!SniCertificates.isAlias(alias)) {
+            return delegate.getCertificateChain(alias);
+        }
+        SniCertificates.Identity identity = certificates.findByAlias(alias);
+        return identity == null ? null : identity.getCertificateChain();
+    }
+
+    @Override
+    public PrivateKey getPrivateKey(String alias) {
+        if (!SniCertificates.isAlias(alias)) {
+            return delegate.getPrivateKey(alias);
+        }
+        SniCertificates.Identity identity = certificates.findByAlias(alias);
+        return identity == null ? null : identity.getPrivateKey();
+    }
+}
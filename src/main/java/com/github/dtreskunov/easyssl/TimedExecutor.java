@@ -0,0 +1,186 @@
+package com.github.dtreskunov.easyssl;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.springframework.util.Assert;
+
+/**
+ * Bounded pool of daemon threads that runs EasySSL's background work which is subject to a timeout: reloads (see
+ * {@link TimeoutUtils}) and loads of SNI certificates (see {@link SniCertificates}). Idle threads exit after a while, so
+ * the pool costs nothing between reloads. The resource loads those tasks wait on run in a separate instance (see
+ * {@link ResourceLoadBatch}), so that stuck reloads can't take the threads their own loads would need. OCSP requests
+ * run in another, smaller instance (see {@link OCSPTrustManager}).
+ * <p>
+ * A task that times out but ignores interruption keeps its thread until it finishes on its own. Such tasks are counted
+ * as {@link #getStuckCount() stuck}; if there are ever more of them than the pool has threads, new tasks will queue up
+ * (and time out) instead of leaking yet more threads.
+ */
+final class TimedExecutor {
+    static final int MAX_THREADS = 32;
+    private static final long KEEP_ALIVE_SECONDS = 60;
+    private static final TimedExecutor INSTANCE = new TimedExecutor(MAX_THREADS);
+
+    private static final int STARTED = 1;
+    private static final int FINISHED = 2;
+    private static final int TIMED_OUT = 4;
+
+    /**
+     * Result of a task submitted to a {@link TimedExecutor}. Waiting for it with a timeout that expires marks the task as
+     * timed out.
+     */
+    final class TimedFuture<T> {
+        private final Future<T> future;
+        private final AtomicInteger state;
+
+        private TimedFuture(Future<T> future, AtomicInteger state) {
+            this.future = future;
+            this.state = state;
+        }
+
+        /**
+         * See {@link Future#get()}
+         */
+        T get() throws ExecutionException, InterruptedException {
+            return future.get();
+        }
+
+        /**
+         * See {@link Future#get(long, TimeUnit)}
+         */
+        T get(long timeout, TimeUnit unit) throws ExecutionException, InterruptedException, TimeoutException {
+            try {
+                return future.get(timeout, unit);
+            } catch (TimeoutException e) {
+                onTimeout(state);
+                throw e;
+            }
+        }
+
+        /**
+         * See {@link Future#cancel(boolean)}
+         */
+        boolean cancel(boolean mayInterruptIfRunning) {
+            return future.cancel(mayInterruptIfRunning);
+        }
+    }
+
+    private final ThreadPoolExecutor executor;
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger stuck = new AtomicInteger();
+
+    TimedExecutor(int maxThreads) {
+        Assert.isTrue(maxThreads > 0, "maxThreads must be greater than zero");
+        executor = new ThreadPoolExecutor(maxThreads, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+            ThreadFactoryFactory.createThreadFactory(true, TimedExecutor.class.getSimpleName() + " daemon"));
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * @return The instance shared by all of EasySSL
+     */
+    static TimedExecutor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Runs the task in one of the pool's threads, which is renamed after the task while it runs so that stuck tasks are
+     * easy to spot in a thread dump.
+     */
+    <T> TimedFuture<T> submit(String name, Callable<T> callable) {
+        Assert.notNull(callable, "callable may not be null");
+        AtomicInteger state = new AtomicInteger();
+        Future<T> future = executor.submit(() -> {
+            if ((state.getAndUpdate(s -> s | STARTED) & TIMED_OUT) != 0) {
+                // whoever was waiting has given up already
+                return null;
+            }
+            running.incrementAndGet();
+            Thread thread = Thread.currentThread();
+            String threadName = thread.getName();
+            thread.setName(threadName + " - " + name);
+            try {
+                return callable.call();
+            } finally {
+                thread.setName(threadName);
+                running.decrementAndGet();
+                completed.increment();
+                if ((state.getAndUpdate(s -> s | FINISHED) & TIMED_OUT) != 0) {
+                    stuck.decrementAndGet();
+                }
+            }
+        });
+        submitted.increment();
+        return new TimedFuture<>(future, state);
+    }
+
+    private void onTimeout(AtomicInteger state) {
+        int previous = state.getAndUpdate(s -> s | TIMED_OUT);
+        if ((previous & TIMED_OUT) != 0) {
+            return;
+        }
+        timedOut.increment();
+        if ((previous & (STARTED | FINISHED)) == STARTED) {
+            stuck.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return Number of tasks submitted so far
+     */
+    long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    /**
+     * @return Number of tasks that ran to completion (successfully or not) so far
+     */
+    long getCompletedCount() {
+        return completed.sum();
+    }
+
+    /**
+     * @return Number of tasks that someone gave up waiting for so far
+     */
+    long getTimedOutCount() {
+        return timedOut.sum();
+    }
+
+    /**
+     * @return Number of tasks running right now
+     */
+    int getRunningCount() {
+        return running.get();
+    }
+
+    /**
+     * @return Number of tasks running right now even though they have timed out
+     */
+    int getStuckCount() {
+        return stuck.get();
+    }
+
+    /**
+     * @return Number of tasks waiting for a free thread
+     */
+    int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[submitted=%d, completed=%d, timedOut=%d, running=%d, stuck=%d, queued=%d]",
+            TimedExecutor.class.getSimpleName(), getSubmittedCount(), getCompletedCount(), getTimedOutCount(),
+            getRunningCount(), getStuckCount(), getQueuedCount());
+    }
+}
@@ -2,8 +2,6 @@ package com.github.dtreskunov.easyssl;
 
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -11,13 +9,14 @@ import java.util.concurrent.TimeoutException;
 import org.springframework.util.Assert;
 
 /**
- * Utility class for putting a timeout on execution of arbitrary code
+ * Utility class for putting a timeout on execution of arbitrary code. The code runs in the shared {@link TimedExecutor}
+ * pool rather than in a thread of its own.
  */
 class TimeoutUtils {
 
     public static class Builder {
         private String m_name = TimeoutUtils.class.getSimpleName();
-        private boolean m_daemon = true;
+        private TimedExecutor m_executor = TimedExecutor.getInstance();
         private long m_timeout = 0;
         private TimeUnit m_unit = null;
         private boolean m_cancel = true;
@@ -34,10 +33,19 @@ class TimeoutUtils {
         }
 
         /**
-         * See {@link Thread#setDaemon(boolean)} (default: true)
+         * Has no effect: tasks run in the {@link TimedExecutor}, whose threads are always daemons
          */
+        @Deprecated
         public Builder setDaemon(boolean daemon) {
-            m_daemon = daemon;
+            return this;
+        }
+
+        /**
+         * Where to run the code (default: {@link TimedExecutor#getInstance()})
+         */
+        public Builder setExecutor(TimedExecutor executor) {
+            Assert.notNull(executor, "executor may not be null");
+            m_executor = executor;
             return this;
         }
 
@@ -104,11 +112,7 @@ class TimeoutUtils {
          * @throws TimeoutException if the wait timed out
          */
         public <T> T call(Callable<T> callable) throws ExecutionException, InterruptedException, TimeoutException {
-            ExecutorService executor = Executors.newSingleThreadExecutor(
-                ThreadFactoryFactory.createThreadFactory(m_daemon, m_name + (m_daemon ? " daemon" : " notdaemon")));
-
-            Future<T> future = executor.submit(callable);
-            executor.shutdown();
+            TimedExecutor.TimedFuture<T> future = m_executor.submit(m_name, callable);
 
             try {
                 return m_timeout > 0 ? future.get(m_timeout, m_unit) : future.get();
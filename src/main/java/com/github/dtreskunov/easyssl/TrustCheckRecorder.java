@@ -0,0 +1,18 @@
+package com.github.dtreskunov.easyssl;
+
+/**
+ * Receives the outcome and duration of each certificate chain check, e.g. to publish them as metrics.
+ */
+@FunctionalInterface
+interface TrustCheckRecorder {
+    TrustCheckRecorder NONE = (source, nanos, trusted) -> {};
+
+    /**
+     * @param source what was checked: {@code "client"} or {@code "server"} for the trust manager's checks of TLS peers,
+     * or {@code "filter"} for {@link ClientCertificateCheckingFilter}'s (or {@link ReactiveClientCertificateCheckingFilter}'s)
+     * checks of requests (each of which also makes a {@code "client"} check)
+     * @param nanos how long the check took
+     * @param trusted whether the chain was accepted
+     */
+    void record(String source, long nanos, boolean trusted);
+}
@@ -0,0 +1,85 @@
+package com.github.dtreskunov.easyssl;
+
+import java.security.cert.X509Certificate;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Remembers the TLS sessions whose client certificate was found trusted, for the request filters. Since a session's
+ * client certificate doesn't change, later requests on it (e.g. over a keep-alive connection) needn't be checked again
+ * until the CA certificates or CRL are reloaded, or the certificate expires.
+ */
+final class TrustedSessions {
+    /** Sessions end without notice, so they are forgotten all at once when there are too many */
+    private static final int MAX_SESSIONS = 10_000;
+
+    /**
+     * A client certificate that was found trusted during a TLS session, and the trust material it was checked with.
+     */
+    private static final class TrustedSession {
+        private final X509Certificate certificate;
+        private final long notAfter;
+        private final EasySslMaterial.TrustMaterial trust;
+
+        TrustedSession(X509Certificate[] chain, EasySslMaterial.TrustMaterial trust) {
+            long notAfter = Long.MAX_VALUE;
+            for (X509Certificate certificate: chain) {
+                notAfter = Math.min(notAfter, certificate.getNotAfter().getTime());
+            }
+            this.certificate = chain[0];
+            this.notAfter = notAfter;
+            this.trust = trust;
+        }
+    }
+
+    private final Map<String, TrustedSession> sessions = new ConcurrentHashMap<>();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param sessionId may be null if the request's session is unknown, in which case it is never trusted
+     * @param trust the material the chain would be checked with
+     * @return Whether {@code chain} was already found trusted in this session, with the same trust material
+     */
+    boolean isTrusted(String sessionId, X509Certificate[] chain, EasySslMaterial.TrustMaterial trust) {
+        if (sessionId != null) {
+            TrustedSession session = sessions.get(sessionId);
+            // if the CA certificates or CRL changed since, the session must be checked again
+            if (session != null && session.trust == trust && session.certificate.equals(chain[0])
+                    && System.currentTimeMillis() < session.notAfter) {
+                hits.increment();
+                return true;
+            }
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Remembers that {@code chain} was found trusted with {@code trust}. This is only of use for as long as {@code trust}
+     * remains current: once it is reloaded, {@link #isTrusted} ignores the session.
+     */
+    void remember(String sessionId, X509Certificate[] chain, EasySslMaterial.TrustMaterial trust) {
+        if (sessionId != null) {
+            if (sessions.size() >= MAX_SESSIONS) {
+                sessions.clear();
+            }
+            sessions.put(sessionId, new TrustedSession(chain, trust));
+        }
+    }
+
+    /**
+     * @return Number of requests whose client certificate was already found trusted earlier in the same TLS session
+     */
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return Number of requests whose client certificate had to be checked
+     */
+    long getMissCount() {
+        return misses.sum();
+    }
+}
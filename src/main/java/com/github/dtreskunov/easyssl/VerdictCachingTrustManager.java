@@ -0,0 +1,186 @@
+package com.github.dtreskunov.easyssl;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.X509TrustManager;
+
+import org.springframework.util.Assert;
+
+/**
+ * Remembers which certificate chains a delegate {@link X509TrustManager} has accepted, so that peers which reconnect
+ * with the same chain skip the delegate (path building, revocation checks, etc.) until the chain's earliest
+ * {@code notAfter}, or for at most a given time to live. Rejections are not cached.
+ * <p>
+ * Chains are identified by a SHA-256 digest of their encoding, together with the auth type and whether the peer is a
+ * client or a server. At most {@code maxSize} chains are remembered, evicting the least recently used. A cache belongs
+ * to a single trust generation (see {@link EasySslMaterial}): when the CA certificates or CRLs change, a new trust
+ * manager - with an empty cache - replaces this one. Its hits and misses are counted in {@link Statistics} that may be
+ * shared with the trust managers of other generations, so that the counts don't start over after each reload.
+ */
+class VerdictCachingTrustManager implements X509TrustManager {
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
+    /**
+     * Hits and misses of one or more caches.
+     */
+    static final class Statistics {
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+
+        long getHitCount() {
+            return hits.sum();
+        }
+
+        long getMissCount() {
+            return misses.sum();
+        }
+    }
+
+    private final X509TrustManager delegate;
+    private final long ttlMillis;
+    private final Map<ByteBuffer, Long> expirations;
+    private final Statistics statistics;
+
+    /**
+     * @param maxSize how many chains to remember
+     * @param ttl how long to remember a chain for, at most (null means until the chain expires)
+     */
+    VerdictCachingTrustManager(X509TrustManager delegate, int maxSize, Duration ttl) {
+        this(delegate, maxSize, ttl, new Statistics());
+    }
+
+    /**
+     * @param maxSize how many chains to remember
+     * @param ttl how long to remember a chain for, at most (null means until the chain expires)
+     * @param statistics where to count hits and misses
+     */
+    VerdictCachingTrustManager(X509TrustManager delegate, int maxSize, Duration ttl, Statistics statistics) {
+        Assert.notNull(delegate, "delegate may not be null");
+        Assert.notNull(statistics, "statistics may not be null");
+        Assert.isTrue(maxSize > 0, "maxSize must be positive");
+        Assert.isTrue(ttl == null || !ttl.isNegative(), "ttl may not be negative");
+        this.delegate = delegate;
+        this.ttlMillis = ttl == null ? Long.MAX_VALUE : ttl.toMillis();
+        this.statistics = statistics;
+        this.expirations = new LinkedHashMap<ByteBuffer, Long>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteBuffer, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        ByteBuffer key = getKey(chain, authType, (byte) 'C');
+        if (!isCached(key)) {
+            delegate.checkClientTrusted(chain, authType);
+            put(key, chain);
+        }
+    }
+
+    @Override
+    public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+        ByteBuffer key = getKey(chain, authType, (byte) 'S');
+        if (!isCached(key)) {
+            delegate.checkServerTrusted(chain, authType);
+            put(key, chain);
+        }
+    }
+
+    @Override
+    public X509Certificate[] getAcceptedIssuers() {
+        return delegate.getAcceptedIssuers();
+    }
+
+    long getHitCount() {
+        return statistics.getHitCount();
+    }
+
+    long getMissCount() {
+        return statistics.getMissCount();
+    }
+
+    int size() {
+        synchronized (expirations) {
+            return expirations.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s(size=%d, hits=%d, misses=%d)", getClass().getSimpleName(), size(), getHitCount(), getMissCount());
+    }
+
+    private boolean isCached(ByteBuffer key) {
+        if (key != null) {
+            final Long expiration;
+            synchronized (expirations) {
+                expiration = expirations.get(key);
+            }
+            if (expiration != null) {
+                if (System.currentTimeMillis() < expiration) {
+                    statistics.hits.increment();
+                    return true;
+                }
+                synchronized (expirations) {
+                    expirations.remove(key, expiration);
+                }
+            }
+        }
+        statistics.misses.increment();
+        return false;
+    }
+
+    private void put(ByteBuffer key, X509Certificate[] chain) {
+        if (key == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long expiration = ttlMillis > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttlMillis;
+        for (X509Certificate certificate: chain) {
+            expiration = Math.min(expiration, certificate.getNotAfter().getTime());
+        }
+        if (expiration > now) {
+            synchronized (expirations) {
+                expirations.put(key, expiration);
+            }
+        }
+    }
+
+    /**
+     * @return Digest identifying the chain, or null if it can't be computed (in which case the chain isn't cached)
+     */
+    private static ByteBuffer getKey(X509Certificate[] chain, String authType, byte peer) throws CertificateException {
+        if (chain == null || chain.length == 0) {
+            return null;
+        }
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+        digest.update(peer);
+        if (authType != null) {
+            digest.update(authType.getBytes(StandardCharsets.UTF_8));
+        }
+        digest.update((byte) 0);
+        // DER encodings are self-delimiting, so no separators are needed between certificates
+        for (X509Certificate certificate: chain) {
+            digest.update(certificate.getEncoded());
+        }
+        return ByteBuffer.wrap(digest.digest());
+    }
+}
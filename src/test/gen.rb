@@ -3,7 +3,7 @@
 require 'fileutils'
 require 'erb'
 
-Entity = Struct.new(:name, :dn, :ca_name, :key_pass, :key_pkcs8, :alt_names) do
+Entity = Struct.new(:name, :dn, :ca_name, :key_pass, :key_pkcs8, :alt_names, :key_rsa) do
   def self.initialize(hash)
     e = Entity.new
     hash.each do |k, v|
@@ -80,17 +80,18 @@ EOF
     File.open(cnf, 'w') { |file| file.puts cnf_content }
 
     # Create private key
+    genkey = key_rsa ? 'openssl genrsa 2048 | openssl rsa' : 'openssl ecparam -genkey -name prime256v1 | openssl ec'
     if key_pkcs8
       if key_pass
-        `openssl ecparam -genkey -name prime256v1 | openssl ec | openssl pkcs8 -out #{key} -topk8 -v1 PBE-SHA1-RC4-128 -passout pass:#{key_pass}`
+        `#{genkey} | openssl pkcs8 -out #{key} -topk8 -v1 PBE-SHA1-RC4-128 -passout pass:#{key_pass}`
       else
-        `openssl ecparam -genkey -name prime256v1 | openssl ec | openssl pkcs8 -out #{key} -topk8 -nocrypt`
+        `#{genkey} | openssl pkcs8 -out #{key} -topk8 -nocrypt`
       end
     else
       if key_pass
-        `openssl ecparam -genkey -name prime256v1 | openssl ec -out #{key} -aes128 -passout pass:#{key_pass}`
+        `#{genkey} -out #{key} -aes128 -passout pass:#{key_pass}`
       else
-        `openssl ecparam -genkey -name prime256v1 | openssl ec -out #{key}`
+        `#{genkey} -out #{key}`
       end
     end
 
@@ -139,6 +140,7 @@ entities = {}
   Entity.initialize(name: 'another_ca',         dn: '/CN=EasySSL Another CA'),
   Entity.initialize(name: 'fake_ca',            dn: '/CN=EasySSL Fake CA'),
   Entity.initialize(name: 'localhost1',         dn: '/OU=Localhost1/CN=localhost',        ca_name: 'ca', key_pass: 'localhost-password'),
+  Entity.initialize(name: 'localhost1_rsa',     dn: '/OU=Localhost1 RSA/CN=localhost',    ca_name: 'ca', key_pass: 'localhost-password', key_rsa: true),
   Entity.initialize(name: 'localhost2',         dn: '/OU=Localhost2/CN=localhost',        ca_name: 'ca', key_pass: 'localhost-password', key_pkcs8: true),
   Entity.initialize(name: 'revoked_localhost',  dn: '/OU=Revoked Localhost/CN=localhost', ca_name: 'ca', key_pass: 'localhost-password'),
   Entity.initialize(name: 'fake_localhost1',    dn: '/OU=Fake Localhost1/CN=localhost',   ca_name: 'fake_ca'),
@@ -0,0 +1,123 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+public class CertificateReaderTest {
+    private static final Path SSL = Path.of("src/test/resources/ssl");
+
+    private static byte[] concat(byte[]... parts) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] part: parts) {
+            out.write(part);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] pkcs7(X509Certificate... certificates) throws Exception {
+        return CertificateFactory.getInstance("X.509").generateCertPath(Arrays.asList(certificates)).getEncoded("PKCS7");
+    }
+
+    private static List<X509Certificate> readWithCertificateFactory(Path path) throws Exception {
+        List<X509Certificate> certificates = new ArrayList<>();
+        try (ByteArrayInputStream in = new ByteArrayInputStream(Files.readAllBytes(path))) {
+            CertificateFactory.getInstance("X.509").generateCertificates(in).forEach(c -> certificates.add((X509Certificate) c));
+        }
+        return certificates;
+    }
+
+    @Test
+    public void readsSameCertificatesAsCertificateFactory() throws Exception {
+        for (Path path: Arrays.asList(SSL.resolve("cacerts.pem"), SSL.resolve("localhost1/cert_chain.pem"), SSL.resolve("ca/cert.pem"))) {
+            assertThat(path.toString(), CertificateReader.read(Files.readAllBytes(path)), is(readWithCertificateFactory(path)));
+        }
+    }
+
+    @Test
+    public void skipsTextAndOtherPemBlocks() throws Exception {
+        X509Certificate[] certificates = TestCertificates.generate(2);
+        byte[] bytes = concat(
+            new byte[] {(byte) 0xef, (byte) 0xbb, (byte) 0xbf}, // byte order mark
+            ascii("Bag Attributes\n    friendlyName: test\n"),
+            TestCertificates.toPem(certificates[0]),
+            Files.readAllBytes(SSL.resolve("ECEncryptedOpenSsl/key.pem")),
+            ascii("subject=CN = test-1\n"),
+            TestCertificates.toPem(certificates[1]));
+        assertThat(CertificateReader.read(bytes), contains(certificates));
+    }
+
+    @Test
+    public void readsCrlfAndUnwrappedPem() throws Exception {
+        X509Certificate certificate = TestCertificates.generate(1)[0];
+        byte[] bytes = ascii("-----BEGIN CERTIFICATE-----\r\n"
+            + Base64.getEncoder().encodeToString(certificate.getEncoded())
+            + "\r\n-----END CERTIFICATE-----\r\n");
+        assertThat(CertificateReader.read(bytes), contains(certificate));
+    }
+
+    @Test
+    public void readsConcatenatedDer() throws Exception {
+        X509Certificate[] certificates = TestCertificates.generate(3);
+        byte[] bytes = concat(certificates[0].getEncoded(), certificates[1].getEncoded(), certificates[2].getEncoded());
+        assertThat(CertificateReader.read(bytes), contains(certificates));
+    }
+
+    @Test
+    public void readsPkcs7() throws Exception {
+        X509Certificate[] certificates = TestCertificates.generate(3);
+        byte[] der = pkcs7(certificates);
+        // certificates in PKCS#7 are a SET, so their order isn't preserved
+        assertThat(CertificateReader.read(der), containsInAnyOrder(certificates));
+
+        byte[] pem = concat(
+            ascii("-----BEGIN PKCS7-----\n"),
+            Base64.getMimeEncoder().encode(der),
+            ascii("\n-----END PKCS7-----\n"),
+            TestCertificates.toPem(certificates[0]));
+        List<X509Certificate> read = CertificateReader.read(pem);
+        assertThat(read.subList(0, 3), containsInAnyOrder(certificates));
+        assertThat(read.get(3), is(certificates[0]));
+    }
+
+    @Test
+    public void readsNothingFromEmptyOrTextInput() throws Exception {
+        assertThat(CertificateReader.read(new byte[0]), empty());
+        assertThat(CertificateReader.read(ascii("0 certificates here")), empty());
+    }
+
+    @Test
+    public void rejectsTruncatedPem() throws Exception {
+        byte[] pem = TestCertificates.toPem(TestCertificates.generate(1));
+        byte[] truncated = Arrays.copyOf(pem, pem.length - "-----END CERTIFICATE-----\n".length());
+        assertThrows(CertificateException.class, () -> CertificateReader.read(truncated));
+    }
+
+    @Test
+    public void rejectsGarbageInsidePemBlock() throws Exception {
+        byte[] pem = ascii("-----BEGIN CERTIFICATE-----\nnot*base64\n-----END CERTIFICATE-----\n");
+        assertThrows(CertificateException.class, () -> CertificateReader.read(pem));
+    }
+}
@@ -0,0 +1,124 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+public class ClientCertificateCheckingFilterTest {
+    private static final X500Principal CA = new X500Principal("CN=filter test CA");
+
+    @TempDir
+    Path dir;
+
+    private TestCertificates.TempCA ca;
+    private EasySslHelper helper;
+    private ClientCertificateCheckingFilter filter;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        ca = new TestCertificates.TempCA(dir, CA);
+        ca.writeCRL(1, BigInteger.TEN);
+        helper = new EasySslHelper(ca.properties());
+        filter = new ClientCertificateCheckingFilter(helper);
+    }
+
+    @AfterEach
+    public void teardown() {
+        helper.close();
+    }
+
+    /**
+     * @return the response status, or null if the request reached the filter chain
+     */
+    private Integer doFilter(X509Certificate certificate, String sessionId) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute("jakarta.servlet.request.X509Certificate", new X509Certificate[] {certificate});
+        if (sessionId != null) {
+            request.setAttribute("jakarta.servlet.request.ssl_session_id", sessionId);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, response, chain);
+        return chain.getRequest() == null ? response.getStatus() : null;
+    }
+
+    @Test
+    public void checksOncePerSession() throws Exception {
+        X509Certificate certificate = ca.issue(BigInteger.ONE);
+        assertThat(doFilter(certificate, "1"), nullValue());
+        assertThat(doFilter(certificate, "1"), nullValue());
+        assertThat(doFilter(certificate, "1"), nullValue());
+        assertThat(filter.getSessionMissCount(), is(1L));
+        assertThat(filter.getSessionHitCount(), is(2L));
+
+        // another session, or a request without one, is checked
+        assertThat(doFilter(certificate, "2"), nullValue());
+        assertThat(doFilter(certificate, null), nullValue());
+        assertThat(filter.getSessionMissCount(), is(3L));
+
+        // a session is tied to its certificate
+        assertThat(doFilter(ca.issue(BigInteger.TWO), "1"), nullValue());
+        assertThat(filter.getSessionMissCount(), is(4L));
+    }
+
+    @Test
+    public void rejectionIsNotRemembered() throws Exception {
+        X509Certificate revoked = ca.issue(BigInteger.TEN);
+        assertThat(doFilter(revoked, "1"), is(403));
+        assertThat(doFilter(revoked, "1"), is(403));
+        assertThat(filter.getSessionMissCount(), is(2L));
+        assertThat(filter.getSessionHitCount(), is(0L));
+    }
+
+    @Test
+    public void reloadedCRLAppliesToExistingSessions() throws Exception {
+        X509Certificate certificate = ca.issue(BigInteger.ONE);
+        assertThat(doFilter(certificate, "1"), nullValue());
+        assertThat(doFilter(certificate, "1"), nullValue());
+
+        ca.writeCRL(2, BigInteger.TEN, BigInteger.ONE);
+        helper.reinitialize();
+        assertThat(doFilter(certificate, "1"), is(403));
+        assertThat(filter.getSessionMissCount(), is(2L));
+    }
+
+    @Test
+    public void verdictAgainstOldCRLIsNotRememberedAfterReload() throws Exception {
+        X509Certificate[] chain = {ca.issue(BigInteger.ONE)};
+        EasySslMaterial.TrustMaterial before = helper.getMaterial().getTrustMaterial();
+        ca.writeCRL(2, BigInteger.TEN, BigInteger.ONE);
+        helper.reinitialize();
+        EasySslMaterial.TrustMaterial after = helper.getMaterial().getTrustMaterial();
+
+        // a request checked against the old CRL finishes after one that sees the new one has started
+        TrustedSessions sessions = new TrustedSessions();
+        assertThat(sessions.isTrusted("1", chain, after), is(false));
+        sessions.remember("1", chain, before);
+        assertThat(sessions.isTrusted("1", chain, after), is(false));
+        assertThat(sessions.isTrusted("1", chain, before), is(true));
+    }
+
+    @Test
+    public void noClientCertificate() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockFilterChain chain = new MockFilterChain();
+        filter.doFilter(request, new MockHttpServletResponse(), chain);
+        assertThat(chain.getRequest(), notNullValue());
+        assertThat(filter.getSessionMissCount(), is(0L));
+    }
+}
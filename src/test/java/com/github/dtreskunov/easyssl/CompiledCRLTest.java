@@ -0,0 +1,205 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.SignatureException;
+import java.security.cert.CRLException;
+import java.security.cert.CRLReason;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.ExtensionsGenerator;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CRLConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+
+public class CompiledCRLTest {
+    private static final Path SSL = Path.of("src/test/resources/ssl");
+    private static final X500Principal ISSUER = new X500Principal("CN=issuer");
+    private static final X500Principal OTHER_ISSUER = new X500Principal("CN=other issuer");
+
+    private static X509Certificate readCertificate(String path) throws Exception {
+        return CertificateReader.read(Files.readAllBytes(SSL.resolve(path))).get(0);
+    }
+
+    private static byte[] toPem(X509CRL crl) throws Exception {
+        return ("-----BEGIN X509 CRL-----\n" + Base64.getMimeEncoder().encodeToString(crl.getEncoded()) + "\n-----END X509 CRL-----\n")
+            .getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static void assertSameAs(CompiledCRL compiled, X509CRL crl) {
+        assertThat(compiled.getIssuer(), is(crl.getIssuerX500Principal()));
+        assertThat(compiled.getThisUpdate(), is(crl.getThisUpdate()));
+        assertThat(compiled.getNextUpdate(), is(crl.getNextUpdate()));
+        int size = crl.getRevokedCertificates() == null ? 0 : crl.getRevokedCertificates().size();
+        assertThat(compiled.getIndex().size(), is(size));
+    }
+
+    @Test
+    public void agreesWithCRL() throws Exception {
+        byte[] pem = Files.readAllBytes(SSL.resolve("ca/crl.pem"));
+        X509CRL crl = (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(Files.newInputStream(SSL.resolve("ca/crl.pem")));
+        CompiledCRL compiled = CompiledCRL.parse(pem);
+        assertSameAs(compiled, crl);
+        for (String path: Arrays.asList("localhost1/cert.pem", "localhost2/cert.pem", "revoked_localhost/cert.pem", "fake_localhost1/cert.pem")) {
+            X509Certificate certificate = readCertificate(path);
+            assertThat(path, compiled.getIndex().find(certificate) != RevocationIndex.NOT_FOUND, is(crl.isRevoked(certificate)));
+        }
+        compiled.verify(Collections.singletonList(readCertificate("ca/cert.pem")));
+    }
+
+    @Test
+    public void readsEntries() throws Exception {
+        KeyPair keys = TestCertificates.generateKeyPair();
+        List<BigInteger> serials = Arrays.asList(BigInteger.ONE, BigInteger.valueOf(255), BigInteger.ONE.shiftLeft(100), BigInteger.valueOf(-5));
+        X509CRL crl = TestCertificates.generateCRL(keys, ISSUER, serials);
+        CompiledCRL compiled = CompiledCRL.parse(crl.getEncoded());
+        assertSameAs(compiled, crl);
+        for (BigInteger serial: serials) {
+            X509CRLEntry expected = crl.getRevokedCertificate(serial);
+            int entry = compiled.getIndex().find(TestCertificates.issue(keys, ISSUER, serial));
+            assertThat(serial.toString(), entry, not(RevocationIndex.NOT_FOUND));
+            assertThat(compiled.getIndex().getRevocationDate(entry), is(expected.getRevocationDate()));
+            assertThat(compiled.getIndex().getRevocationReason(entry), is(CRLReason.KEY_COMPROMISE));
+        }
+        assertThat(compiled.getIndex().find(TestCertificates.issue(keys, ISSUER, BigInteger.TWO)), is(RevocationIndex.NOT_FOUND));
+        assertThat(compiled.getCrlNumber(), is(nullValue()));
+        assertThat(compiled.getBaseCrlNumber(), is(nullValue()));
+    }
+
+    @Test
+    public void readsIndirectCRL() throws Exception {
+        KeyPair keys = TestCertificates.generateKeyPair();
+        Date now = new Date(System.currentTimeMillis() / 1000 * 1000);
+        X509v2CRLBuilder builder = new JcaX509v2CRLBuilder(ISSUER, now);
+        builder.addCRLEntry(BigInteger.ONE, now, org.bouncycastle.asn1.x509.CRLReason.superseded);
+        ExtensionsGenerator extensions = new ExtensionsGenerator();
+        extensions.addExtension(Extension.certificateIssuer, true,
+            new GeneralNames(new GeneralName(X500Name.getInstance(OTHER_ISSUER.getEncoded()))));
+        builder.addCRLEntry(BigInteger.TWO, now, extensions.generate());
+        // no certificateIssuer extension, so same issuer as the previous entry
+        builder.addCRLEntry(BigInteger.TEN, now, org.bouncycastle.asn1.x509.CRLReason.unspecified);
+        builder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(7)));
+        builder.addExtension(Extension.deltaCRLIndicator, true, new CRLNumber(BigInteger.valueOf(5)));
+        X509CRL crl = new JcaX509CRLConverter().getCRL(builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(keys.getPrivate())));
+
+        RevocationIndex index = CompiledCRL.parse(crl.getEncoded()).getIndex();
+        assertThat(index.getRevocationReason(index.find(TestCertificates.issue(keys, ISSUER, BigInteger.ONE))), is(CRLReason.SUPERSEDED));
+        assertThat(index.find(TestCertificates.issue(keys, ISSUER, BigInteger.TWO)), is(RevocationIndex.NOT_FOUND));
+        assertThat(index.find(TestCertificates.issue(keys, ISSUER, BigInteger.TEN)), is(RevocationIndex.NOT_FOUND));
+        int entry = index.find(TestCertificates.issue(keys, OTHER_ISSUER, BigInteger.TWO));
+        assertThat(index.getCertificateIssuer(entry), is(OTHER_ISSUER));
+        assertThat(index.getRevocationReason(entry), is(nullValue()));
+        assertThat(index.find(TestCertificates.issue(keys, OTHER_ISSUER, BigInteger.TEN)), not(RevocationIndex.NOT_FOUND));
+
+        CompiledCRL compiled = CompiledCRL.parse(toPem(crl));
+        assertThat(compiled.getCrlNumber(), is(BigInteger.valueOf(7)));
+        assertThat(compiled.getBaseCrlNumber(), is(BigInteger.valueOf(5)));
+    }
+
+    @Test
+    public void mapsFile(@TempDir Path dir) throws Exception {
+        KeyPair keys = TestCertificates.generateKeyPair();
+        X509CRL crl = TestCertificates.generateCRL(keys, ISSUER, Arrays.asList(BigInteger.ONE, BigInteger.TEN));
+        Path file = dir.resolve("crl.der");
+        Files.write(file, crl.getEncoded());
+        FileSystemResource resource = new FileSystemResource(file);
+
+        LoadedResource<CompiledCRL> loaded = LoadedResource.loadMapped(resource, null, CompiledCRL::parse);
+        assertSameAs(loaded.getValue(), crl);
+        loaded.getValue().verify(Collections.singletonList(TestCertificates.issue(keys, ISSUER, BigInteger.TWO)));
+        assertThat(LoadedResource.loadMapped(resource, loaded, CompiledCRL::parse), is(loaded));
+
+        Files.write(file, toPem(crl));
+        assertThat(LoadedResource.loadMapped(resource, loaded, CompiledCRL::parse), not(loaded));
+    }
+
+    @Test
+    public void verifiesSignature() throws Exception {
+        KeyPair keys = TestCertificates.generateKeyPair();
+        KeyPair otherKeys = TestCertificates.generateKeyPair();
+        X509Certificate ca = TestCertificates.issue(keys, ISSUER, BigInteger.ONE);
+        X509Certificate otherCa = TestCertificates.issue(otherKeys, OTHER_ISSUER, BigInteger.ONE);
+        byte[] encoded = TestCertificates.generateCRL(keys, ISSUER, Collections.singletonList(BigInteger.TEN)).getEncoded();
+
+        assertThrows(SignatureException.class, () -> CompiledCRL.parse(encoded).verify(Collections.singletonList(otherCa)));
+
+        // the serial number of the only entry is the first INTEGER 10 in the encoding
+        byte[] tampered = encoded.clone();
+        int serial = indexOf(tampered, new byte[] {0x02, 0x01, 0x0a});
+        tampered[serial + 2] = 0x0b;
+        assertThrows(SignatureException.class, () -> CompiledCRL.parse(tampered).verify(Collections.singletonList(ca)));
+
+        CompiledCRL compiled = CompiledCRL.parse(encoded);
+        compiled.verify(Arrays.asList(otherCa, ca));
+        compiled.verify(Arrays.asList(otherCa, ca));
+        assertThrows(SignatureException.class, () -> compiled.verify(Collections.singletonList(otherCa)));
+    }
+
+    @Test
+    public void verifiesUncommonSignatureAlgorithm() throws Exception {
+        // not one of the algorithms verified incrementally, so the CRL is handed to the provider
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        KeyPair keys = generator.generateKeyPair();
+        X509v2CRLBuilder builder = new JcaX509v2CRLBuilder(ISSUER, new Date());
+        builder.addCRLEntry(BigInteger.ONE, new Date(), org.bouncycastle.asn1.x509.CRLReason.keyCompromise);
+        X509CRL crl = new JcaX509CRLConverter().getCRL(builder.build(new JcaContentSignerBuilder("SHA224withRSA").build(keys.getPrivate())));
+
+        CompiledCRL compiled = CompiledCRL.parse(crl.getEncoded());
+        compiled.verify(Collections.singletonList(selfSigned(keys)));
+        assertThat(compiled.getIndex().size(), is(1));
+    }
+
+    @Test
+    public void rejectsGarbage() {
+        assertThrows(CRLException.class, () -> CompiledCRL.parse("not a CRL".getBytes(StandardCharsets.US_ASCII)));
+        assertThrows(CRLException.class, () -> CompiledCRL.parse(ByteBuffer.wrap(new byte[] {0x30, (byte) 0x82, 0x10, 0x00, 0x30})));
+    }
+
+    private static X509Certificate selfSigned(KeyPair keys) throws Exception {
+        return new JcaX509CertificateConverter().getCertificate(
+            new JcaX509v3CertificateBuilder(ISSUER, BigInteger.ONE, new Date(0), new Date(System.currentTimeMillis() + 1_000_000),
+                ISSUER, keys.getPublic()).build(new JcaContentSignerBuilder("SHA256withRSA").build(keys.getPrivate())));
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle) {
+        for (int i = 0; i + needle.length <= haystack.length; i++) {
+            if (Arrays.equals(haystack, i, i + needle.length, needle, 0, needle.length)) {
+                return i;
+            }
+        }
+        throw new AssertionError("not found");
+    }
+}
@@ -0,0 +1,102 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.boot.ssl.DefaultSslBundleRegistry;
+import org.springframework.boot.ssl.SslBundle;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+import com.github.dtreskunov.easyssl.EasySslHelper.SSLContextReinitializedEvent;
+
+public class EasySslBundleImplTest {
+    private static final Path SSL = Path.of("src/test/resources/ssl");
+
+    @TempDir
+    Path dir;
+
+    private EasySslHelper helper;
+    private EasySslBundleImpl.Registrar registrar;
+    private DefaultSslBundleRegistry registry;
+    private final List<SslBundle> updates = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() throws Exception {
+        copy("localhost1");
+        EasySslProperties config = new EasySslProperties();
+        config.setCaCertificate(Arrays.asList(new ClassPathResource("/ssl/ca/cert.pem")));
+        config.setCertificate(new FileSystemResource(dir.resolve("cert.pem")));
+        config.setKey(new FileSystemResource(dir.resolve("key.pem")));
+        config.setKeyPassword("localhost-password");
+        helper = new EasySslHelper(config);
+        registrar = new EasySslBundleImpl.Registrar(helper);
+        helper.setApplicationEventPublisher(event -> registrar.onApplicationEvent((SSLContextReinitializedEvent) event));
+        registry = new DefaultSslBundleRegistry();
+        registrar.registerBundles(registry);
+        registry.addBundleUpdateHandler(EasySslBundleImpl.BUNDLE_NAME, updates::add);
+    }
+
+    @AfterEach
+    public void teardown() {
+        helper.close();
+    }
+
+    private void copy(String name) throws Exception {
+        Files.copy(SSL.resolve(name + "/cert_chain.pem"), dir.resolve("cert.pem"), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(SSL.resolve(name + "/key.pem"), dir.resolve("key.pem"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Test
+    public void bundleHandsOutTheSameObjectsEveryTime() {
+        SslBundle bundle = registry.getBundle(EasySslBundleImpl.BUNDLE_NAME);
+        assertThat(bundle.getStores(), sameInstance(bundle.getStores()));
+        assertThat(bundle.getManagers(), sameInstance(bundle.getManagers()));
+        assertThat(bundle.getManagers().getKeyManagerFactory(), sameInstance(bundle.getManagers().getKeyManagerFactory()));
+        assertThat(bundle.getManagers().getTrustManagerFactory(), sameInstance(bundle.getManagers().getTrustManagerFactory()));
+        assertThat(bundle.createSslContext(), sameInstance(helper.getSSLContext()));
+    }
+
+    @Test
+    public void bundleHandsOutTheMaterialsManagers() {
+        EasySslMaterial material = helper.getMaterial();
+        SslBundle bundle = registry.getBundle(EasySslBundleImpl.BUNDLE_NAME);
+        assertThat(bundle.getStores().getKeyStore(), sameInstance(material.getKeyStore()));
+        assertThat(bundle.getStores().getTrustStore(), sameInstance(material.getTrustStore()));
+        assertThat(Arrays.asList(bundle.getManagers().getKeyManagers()), contains(sameInstance(material.getKeyMaterial().getKeyManager())));
+        assertThat(Arrays.asList(bundle.getManagers().getTrustManagers()), contains(sameInstance(material.getTrustMaterial().getTrustManager())));
+    }
+
+    @Test
+    public void updatesBundleAfterReload() throws Exception {
+        SslBundle original = registry.getBundle(EasySslBundleImpl.BUNDLE_NAME);
+
+        // nothing changed, so there is no new generation
+        helper.reinitialize();
+        assertThat(updates, is(empty()));
+
+        copy("localhost2");
+        helper.reinitialize();
+        assertThat(updates.size(), is(1));
+        SslBundle updated = registry.getBundle(EasySslBundleImpl.BUNDLE_NAME);
+        assertThat(updates.get(0), sameInstance(updated));
+        assertThat(updated, not(sameInstance(original)));
+        assertThat(updated.getStores().getKeyStore(), sameInstance(helper.getMaterial().getKeyStore()));
+        assertThat(((EasySslBundleImpl.SslBundleImpl) updated).getGeneration(), is(helper.getMaterial().getGeneration()));
+    }
+}
@@ -0,0 +1,148 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.Resource;
+
+public class EasySslHelperConcurrencyTest {
+
+    /**
+     * Delegates to another {@link Resource}, but blocks anyone opening it while the gate is closed.
+     */
+    static class GatedResource extends AbstractResource {
+        private final Resource delegate;
+        private final Semaphore blocked = new Semaphore(0);
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        GatedResource(Resource delegate) {
+            this.delegate = delegate;
+        }
+
+        void close() {
+            gate = new CountDownLatch(1);
+        }
+
+        void open() {
+            gate.countDown();
+        }
+
+        /**
+         * Waits until some thread is stuck in {@link #getInputStream()}.
+         */
+        void awaitBlocked() throws InterruptedException {
+            blocked.acquire();
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            CountDownLatch current = gate;
+            if (current.getCount() > 0) {
+                blocked.release();
+                try {
+                    current.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            return delegate.getInputStream();
+        }
+
+        @Override
+        public String getDescription() {
+            return "gated " + delegate.getDescription();
+        }
+    }
+
+    private static EasySslProperties getProperties(Resource key) {
+        EasySslProperties config = new EasySslProperties();
+        config.setCaCertificate(Arrays.asList(new ClassPathResource("/ssl/ca/cert.pem")));
+        config.setCertificateRevocationList(new ClassPathResource("/ssl/ca/crl.pem"));
+        config.setCertificate(new ClassPathResource("/ssl/localhost1/cert_chain.pem"));
+        config.setKey(key);
+        config.setKeyPassword("localhost-password");
+        return config;
+    }
+
+    private static void readEverything(EasySslHelper helper) {
+        helper.getSSLContext();
+        helper.getKeyStore();
+        helper.getTrustStore();
+        helper.getCACertificates();
+        helper.getCertificateChain();
+        helper.getPrivateKey();
+        helper.getTrustManager();
+    }
+
+    @Test
+    public void gettersDoNotBlockWhileReloading() throws Exception {
+        GatedResource key = new GatedResource(new ClassPathResource("/ssl/localhost1/key.pem"));
+        EasySslHelper helper = new EasySslHelper(getProperties(key));
+        EasySslMaterial before = helper.getMaterial();
+
+        key.close();
+        Thread reloader = new Thread(helper::reinitialize, "reloader");
+        reloader.start();
+        key.awaitBlocked();
+
+        ExecutorService readers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(readers.submit(() -> {
+                    for (int j = 0; j < 1000; j++) {
+                        readEverything(helper);
+                    }
+                }));
+            }
+            for (Future<?> future: futures) {
+                // a reader stuck behind the reload would time out here
+                future.get(10, TimeUnit.SECONDS);
+            }
+            assertThat(helper.getMaterial(), sameInstance(before));
+        } finally {
+            readers.shutdownNow();
+            key.open();
+            reloader.join();
+        }
+        // the key's bytes did not change, so the reload kept the same snapshot
+        assertThat(helper.getMaterial(), sameInstance(before));
+    }
+
+    @Test
+    public void stuckResourceTimesOutAndKeepsPreviousMaterial() throws Exception {
+        GatedResource key = new GatedResource(new ClassPathResource("/ssl/localhost1/key.pem"));
+        EasySslProperties config = getProperties(key);
+        config.setResourceTimeout(Duration.ofSeconds(2));
+        EasySslHelper helper = new EasySslHelper(config);
+        EasySslMaterial before = helper.getMaterial();
+
+        key.close();
+        try {
+            long start = System.nanoTime();
+            helper.reinitialize();
+            assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), lessThan(8000L));
+            assertThat(helper.getMaterial(), sameInstance(before));
+        } finally {
+            key.open();
+        }
+    }
+}
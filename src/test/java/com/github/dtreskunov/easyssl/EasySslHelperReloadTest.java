@@ -0,0 +1,283 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.CertificateRevokedException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.X509ExtendedKeyManager;
+import javax.security.auth.x500.X500Principal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+public class EasySslHelperReloadTest {
+    private static final Path SSL = Path.of("src/test/resources/ssl");
+
+    @TempDir
+    Path dir;
+
+    private final List<Object> events = new ArrayList<>();
+    private EasySslProperties config;
+    private EasySslHelper helper;
+
+    private void copy(String from, String to) throws Exception {
+        Files.copy(SSL.resolve(from), dir.resolve(to), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @BeforeEach
+    public void setup() throws Exception {
+        copy("ca/cert.pem", "ca.pem");
+        copy("ca/crl.pem", "crl.pem");
+        copy("localhost1/cert_chain.pem", "cert.pem");
+        copy("localhost1/key.pem", "key.pem");
+
+        config = new EasySslProperties();
+        config.setCaCertificate(Arrays.asList(new FileSystemResource(dir.resolve("ca.pem"))));
+        config.setCertificateRevocationList(new FileSystemResource(dir.resolve("crl.pem")));
+        config.setCertificate(new FileSystemResource(dir.resolve("cert.pem")));
+        config.setKey(new FileSystemResource(dir.resolve("key.pem")));
+        config.setKeyPassword("localhost-password");
+        helper = new EasySslHelper(config);
+        helper.setApplicationEventPublisher(events::add);
+    }
+
+    @AfterEach
+    public void teardown() {
+        helper.close();
+    }
+
+    @Test
+    public void unchangedResources_keepSnapshotAndSkipEvent() {
+        EasySslMaterial before = helper.getMaterial();
+        helper.reinitialize();
+        assertThat(helper.getMaterial(), sameInstance(before));
+        assertThat(events, empty());
+    }
+
+    @Test
+    public void changedKey_rebuildsKeySideOnly() throws Exception {
+        EasySslMaterial before = helper.getMaterial();
+        copy("localhost2/cert_chain.pem", "cert.pem");
+        copy("localhost2/key.pem", "key.pem");
+        helper.reinitialize();
+
+        EasySslMaterial after = helper.getMaterial();
+        assertThat(after.getGeneration(), is(before.getGeneration() + 1));
+        assertThat(after.getTrustMaterial(), sameInstance(before.getTrustMaterial()));
+        assertThat(after.getKeyMaterial(), not(sameInstance(before.getKeyMaterial())));
+        assertThat(after.getCertificateChain().get(0).getSubjectX500Principal().getName(), is("CN=localhost,OU=Localhost2"));
+        assertThat(events, hasSize(1));
+    }
+
+    @Test
+    public void changedCA_rebuildsTrustSideOnly() throws Exception {
+        EasySslMaterial before = helper.getMaterial();
+        copy("cacerts.pem", "ca.pem");
+        helper.reinitialize();
+
+        EasySslMaterial after = helper.getMaterial();
+        assertThat(after.getGeneration(), is(before.getGeneration() + 1));
+        assertThat(after.getKeyMaterial(), sameInstance(before.getKeyMaterial()));
+        assertThat(after.getTrustManager(), not(sameInstance(before.getTrustManager())));
+        assertThat(after.getCACertificates(), hasSize(2));
+        assertThat(events, hasSize(1));
+    }
+
+    @Test
+    public void refreshOnFileChange() throws Exception {
+        config.setRefreshOnFileChange(true);
+        config.setRefreshDebounce(Duration.ofMillis(100));
+        try (EasySslHelper watchingHelper = new EasySslHelper(config)) {
+            EasySslMaterial before = watchingHelper.getMaterial();
+            copy("localhost2/key.pem", "key.pem");
+            copy("localhost2/cert_chain.pem", "cert.pem");
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (watchingHelper.getMaterial() == before && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertThat(watchingHelper.getMaterial().getCertificateChain().get(0).getSubjectX500Principal().getName(),
+                    is("CN=localhost,OU=Localhost2"));
+        }
+    }
+
+    @Test
+    public void serverSessionSettings() throws Exception {
+        config.setServerSessionCacheSize(100);
+        config.setServerSessionTimeout(Duration.ofMinutes(5));
+        try (EasySslHelper configuredHelper = new EasySslHelper(config)) {
+            SSLSessionContext sessions = configuredHelper.getSSLContext().getServerSessionContext();
+            assertThat(sessions.getSessionCacheSize(), is(100));
+            assertThat(sessions.getSessionTimeout(), is(300));
+        }
+    }
+
+    @Test
+    public void clientSessionSettings() throws Exception {
+        config.setClientSessionCacheSize(100);
+        config.setClientSessionTimeout(Duration.ofMinutes(5));
+        try (EasySslHelper configuredHelper = new EasySslHelper(config)) {
+            SSLSessionContext sessions = configuredHelper.getSSLContext().getClientSessionContext();
+            assertThat(sessions.getSessionCacheSize(), is(100));
+            assertThat(sessions.getSessionTimeout(), is(300));
+        }
+    }
+
+    @Test
+    public void clientSessions_surviveTrustReloadOnly() throws Exception {
+        EasySslProperties serverConfig = new EasySslProperties();
+        serverConfig.setCaCertificate(Arrays.asList(new ClassPathResource("/ssl/ca/cert.pem")));
+        serverConfig.setCertificate(new ClassPathResource("/ssl/localhost2/cert_chain.pem"));
+        serverConfig.setKey(new ClassPathResource("/ssl/localhost2/key.pem"));
+        serverConfig.setKeyPassword("localhost-password");
+        SSLSessionContext sessions = helper.getSSLContext().getClientSessionContext();
+        try (EasySslHelper server = new EasySslHelper(serverConfig)) {
+            SSLSession original = connect(server);
+            assertThat(connect(server).getCreationTime(), is(original.getCreationTime()));
+
+            copy("cacerts.pem", "ca.pem");
+            helper.reinitialize();
+            assertThat(Collections.list(sessions.getIds()), not(empty()));
+            assertThat(connect(server).getCreationTime(), is(original.getCreationTime()));
+
+            // resuming would present the old certificate
+            copy("localhost1_rsa/cert_chain.pem", "cert.pem");
+            copy("localhost1_rsa/key.pem", "key.pem");
+            helper.reinitialize();
+            assertThat(Collections.list(sessions.getIds()), empty());
+        }
+    }
+
+    /**
+     * @return the client's session after a handshake with {@code server}, which always looks like the same host and port
+     */
+    private SSLSession connect(EasySslHelper server) throws Exception {
+        SSLEngine clientEngine = helper.getSSLContext().createSSLEngine("server.example", 443);
+        TestHandshakes.handshake(server.getServerSSLContext(), clientEngine);
+        return clientEngine.getSession();
+    }
+
+    @Test
+    public void changedDeltaCRL_keepsBaseCRL() throws Exception {
+        TestCertificates.TempCA ca = new TestCertificates.TempCA(dir, new X500Principal("CN=delta test CA"));
+        ca.writeCRL(1, BigInteger.TEN);
+        ca.writeDeltaCRL(2, 1, BigInteger.valueOf(11));
+        config.setCertificateRevocationList(new FileSystemResource(dir.resolve("crl.der")));
+        config.setDeltaCertificateRevocationList(new FileSystemResource(dir.resolve("delta.der")));
+        helper.reinitialize();
+        EasySslMaterial before = helper.getMaterial();
+        assertRevoked(before, ca, 10, true);
+        assertRevoked(before, ca, 11, true);
+        assertRevoked(before, ca, 12, false);
+
+        ca.writeDeltaCRL(3, 1, BigInteger.valueOf(11), BigInteger.valueOf(12));
+        helper.reinitialize();
+        EasySslMaterial after = helper.getMaterial();
+        assertThat(after.getGeneration(), is(before.getGeneration() + 1));
+        assertThat(after.getTrustMaterial().getCrlResource(), sameInstance(before.getTrustMaterial().getCrlResource()));
+        assertRevoked(after, ca, 12, true);
+
+        // a delta of a base CRL we don't have yet is rejected, keeping the previous material
+        ca.writeDeltaCRL(6, 5, BigInteger.valueOf(13));
+        helper.reinitialize();
+        assertThat(helper.getMaterial(), sameInstance(after));
+    }
+
+    @Test
+    public void keyManagerAlias_resolvesGenerationItWasChosenFrom() throws Exception {
+        ReloadingKeyManager keyManager = new ReloadingKeyManager(helper::getMaterial);
+        X509ExtendedKeyManager previous = helper.getMaterial().getKeyMaterial().getKeyManager();
+        String before = keyManager.chooseServerAlias("EC", null, null);
+
+        copy("localhost2/cert_chain.pem", "cert.pem");
+        copy("localhost2/key.pem", "key.pem");
+        helper.reinitialize();
+        String after = keyManager.chooseServerAlias("EC", null, null);
+        assertThat(after, not(before));
+        // a handshake that chose its alias before the reload still gets a matching chain and key
+        assertThat(keyManager.getCertificateChain(before), is(previous.getCertificateChain(before.substring(0, before.lastIndexOf('@')))));
+        assertThat(keyManager.getPrivateKey(before), is(previous.getPrivateKey(before.substring(0, before.lastIndexOf('@')))));
+        assertThat(keyManager.getCertificateChain(after)[0].getSubjectX500Principal().getName(), is("CN=localhost,OU=Localhost2"));
+        assertThat(keyManager.getCertificateChain("easyssl-key"), nullValue());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void crlInfo_describesEnforcedCRL() throws Exception {
+        TestCertificates.TempCA ca = new TestCertificates.TempCA(dir, new X500Principal("CN=info test CA"));
+        ca.writeCRL(7, BigInteger.TEN, BigInteger.valueOf(11));
+        config.setCertificateRevocationList(new FileSystemResource(dir.resolve("crl.der")));
+        helper.reinitialize();
+        EasySslMaterial.CRLInfo info = helper.getCRLInfo();
+        assertThat(info.getIssuer(), is(ca.name));
+        assertThat(info.getCrlNumber(), is(BigInteger.valueOf(7)));
+        assertThat(info.getEntryCount(), is(2));
+        assertThrows(UnsupportedOperationException.class, helper::getCRL);
+
+        config.setCertificateRevocationList(null);
+        try (EasySslHelper withoutCRL = new EasySslHelper(config)) {
+            assertThat(withoutCRL.getCRLInfo(), nullValue());
+            assertThat(withoutCRL.getCRL(), nullValue());
+        }
+    }
+
+    @Test
+    public void serverSessionTickets_leaveSystemPropertyAlone() throws Exception {
+        String property = "jdk.tls.server.enableSessionTicketExtension";
+        String previous = System.getProperty(property);
+        config.setServerSessionTickets(false);
+        try (EasySslHelper withoutTickets = new EasySslHelper(config)) {
+            assertThat(System.getProperty(property), is(previous));
+        }
+        System.setProperty(property, "true");
+        try (EasySslHelper withoutTickets = new EasySslHelper(config)) {
+            assertThat(System.getProperty(property), is("true"));
+        } finally {
+            if (previous == null) {
+                System.clearProperty(property);
+            } else {
+                System.setProperty(property, previous);
+            }
+        }
+    }
+
+    @Test
+    public void deltaCRLWithoutBaseCRL_isRejected() {
+        config.setCertificateRevocationList(null);
+        config.setDeltaCertificateRevocationList(new FileSystemResource(dir.resolve("crl.pem")));
+        assertThrows(IllegalArgumentException.class, () -> new EasySslHelper(config));
+    }
+
+    private static void assertRevoked(EasySslMaterial material, TestCertificates.TempCA ca, long serial, boolean revoked) throws Exception {
+        X509Certificate[] chain = {ca.issue(BigInteger.valueOf(serial))};
+        if (revoked) {
+            assertThrows(CertificateRevokedException.class, () -> material.getTrustManager().checkClientTrusted(chain, "EC"));
+        } else {
+            material.getTrustManager().checkClientTrusted(chain, "EC");
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.lang.reflect.Proxy;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.security.auth.x500.X500Principal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.github.dtreskunov.easyssl.EasySslHelper.SSLContextReinitializedEvent;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+public class EasySslMetricsTest {
+    private static final X500Principal CA = new X500Principal("CN=metrics test CA");
+
+    @TempDir
+    Path dir;
+
+    private TestCertificates.TempCA ca;
+    private EasySslProperties config;
+    private EasySslHelper helper;
+    private HandshakeStatistics handshakeStatistics;
+    private EasySslMetrics metrics;
+    private SimpleMeterRegistry registry;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        writeCA(CA);
+        config = ca.properties();
+        helper = new EasySslHelper(config);
+        handshakeStatistics = new HandshakeStatistics();
+        metrics = new EasySslMetrics(helper, handshakeStatistics);
+        registry = new SimpleMeterRegistry();
+        metrics.bindTo(registry);
+    }
+
+    @AfterEach
+    public void teardown() {
+        helper.close();
+    }
+
+    private void writeCA(X500Principal name, BigInteger... revoked) throws Exception {
+        ca = new TestCertificates.TempCA(dir, name);
+        ca.writeCRL(1, revoked);
+    }
+
+    private double expiry(String type, X500Principal subject) {
+        return registry.get("easyssl.certificate.expiry").tags("type", type, "subject", subject.getName()).gauge().value();
+    }
+
+    @Test
+    public void reloads() throws Exception {
+        assertThat(registry.get("easyssl.reloads").tag("result", "success").functionCounter().count(), is(1.0));
+        assertThat(registry.get("easyssl.reloads").tag("result", "failure").functionCounter().count(), is(0.0));
+        assertThat(registry.get("easyssl.reload.duration").tag("phase", "fetch").functionTimer().count(), is(1.0));
+        assertThat(registry.get("easyssl.reload.duration").tag("phase", "key").functionTimer().count(), is(1.0));
+        assertThat(registry.get("easyssl.reload.duration").tag("phase", "command").functionTimer().count(), is(0.0));
+        assertThat(registry.get("easyssl.reload.last.success").timeGauge().value(), greaterThan(0.0));
+
+        // nothing changed - a success that skips building trust and key material
+        helper.reinitialize();
+        assertThat(registry.get("easyssl.reloads").tag("result", "success").functionCounter().count(), is(2.0));
+        assertThat(registry.get("easyssl.reload.duration").tag("phase", "fetch").functionTimer().count(), is(2.0));
+        assertThat(registry.get("easyssl.reload.duration").tag("phase", "trust").functionTimer().count(), is(1.0));
+
+        Files.write(dir.resolve("crl.der"), new byte[] {1, 2, 3});
+        helper.reinitialize();
+        assertThat(registry.get("easyssl.reloads").tag("result", "failure").functionCounter().count(), is(1.0));
+    }
+
+    @Test
+    public void certificatesAndCRL() throws Exception {
+        X509Certificate local = helper.getMaterial().getCertificateChain().get(0);
+        double days = (local.getNotAfter().getTime() - System.currentTimeMillis()) / 86_400_000.0;
+        assertThat(expiry("local", local.getSubjectX500Principal()), closeTo(days, 0.01));
+        assertThat(expiry("ca", CA), greaterThan(0.0));
+        assertThat(registry.get("easyssl.crl.entries").tag("crl", "base").gauge().value(), is(0.0));
+        assertThat(registry.get("easyssl.crl.entries").tag("crl", "delta").gauge().value(), is(Double.NaN));
+        assertThat(registry.get("easyssl.crl.next.update").tag("crl", "base").timeGauge().value(TimeUnit.MILLISECONDS),
+            greaterThan((double) System.currentTimeMillis()));
+
+        // a new CA replaces the old one
+        X500Principal next = new X500Principal("CN=next metrics test CA");
+        writeCA(next, BigInteger.ONE, BigInteger.TEN);
+        helper.reinitialize();
+        metrics.onApplicationEvent(new SSLContextReinitializedEvent(helper, helper));
+        assertThat(expiry("ca", next), greaterThan(0.0));
+        assertThat(registry.find("easyssl.certificate.expiry").tags("subject", CA.getName()).gauge() == null, is(true));
+        assertThat(registry.get("easyssl.crl.entries").tag("crl", "base").gauge().value(), is(2.0));
+    }
+
+    @Test
+    public void trustChecks() throws Exception {
+        writeCA(CA, BigInteger.TEN);
+        helper.reinitialize();
+        helper.getTrustManager().checkClientTrusted(new X509Certificate[] {ca.issue(BigInteger.ONE)}, "EC");
+        X509Certificate[] revoked = {ca.issue(BigInteger.TEN)};
+        assertThrows(CertificateException.class, () -> helper.getTrustManager().checkClientTrusted(revoked, "EC"));
+        assertThat(registry.get("easyssl.trust.check").tags("source", "client", "result", "trusted").timer().count(), is(1L));
+        assertThat(registry.get("easyssl.trust.check").tags("source", "client", "result", "rejected").timer().count(), is(1L));
+
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.setAttribute("jakarta.servlet.request.X509Certificate", revoked);
+        new ClientCertificateCheckingFilter(helper).doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        assertThat(registry.get("easyssl.trust.check").tags("source", "filter", "result", "rejected").timer().count(), is(1L));
+    }
+
+    @Test
+    public void verdictCache() throws Exception {
+        assertThat(registry.find("easyssl.trust.verdict.cache").functionCounter() == null, is(true));
+        helper.close();
+        config.setTrustVerdictCacheSize(10);
+        helper = new EasySslHelper(config);
+        registry = new SimpleMeterRegistry();
+        new EasySslMetrics(helper, null).bindTo(registry);
+
+        X509Certificate[] chain = {ca.issue(BigInteger.ONE)};
+        helper.getTrustManager().checkClientTrusted(chain, "EC");
+        helper.getTrustManager().checkClientTrusted(chain, "EC");
+        // the reloaded CA comes with an empty cache, but the counts go on
+        writeCA(CA);
+        helper.reinitialize();
+        helper.getTrustManager().checkClientTrusted(new X509Certificate[] {ca.issue(BigInteger.ONE)}, "EC");
+        assertThat(registry.get("easyssl.trust.verdict.cache").tag("result", "hit").functionCounter().count(), is(1.0));
+        assertThat(registry.get("easyssl.trust.verdict.cache").tag("result", "miss").functionCounter().count(), is(2.0));
+    }
+
+    @Test
+    public void executors() throws Exception {
+        // the initial load read its resources in the resource executor
+        assertThat(registry.get("easyssl.executor.submitted").tag("executor", "resource").functionCounter().count(), greaterThan(0.0));
+        assertThat(registry.get("easyssl.executor.stuck").tag("executor", "shared").gauge().value(), is(0.0));
+        assertThat(registry.get("easyssl.executor.queued").tag("executor", "ocsp").gauge().value(), is(0.0));
+    }
+
+    @Test
+    public void handshakes() throws Exception {
+        SSLSession session = helper.getSSLContext().createSSLEngine().getSession();
+        handshakeStatistics.record(session, session.getCreationTime() + 1, false);
+        assertThat(registry.get("easyssl.handshakes").tag("type", "resumed").functionCounter().count(), is(1.0));
+        assertThat(registry.get("easyssl.handshakes").tag("type", "full").functionCounter().count(), is(0.0));
+    }
+
+    @Test
+    public void handshakeResumedInTheSameMillisecond() throws Exception {
+        SSLSession session = helper.getSSLContext().createSSLEngine().getSession();
+        handshakeStatistics.record(session, session.getCreationTime(), false);
+        handshakeStatistics.record(session, session.getCreationTime(), false);
+        assertThat(registry.get("easyssl.handshakes").tag("type", "full").functionCounter().count(), is(1.0));
+        assertThat(registry.get("easyssl.handshakes").tag("type", "resumed").functionCounter().count(), is(1.0));
+    }
+
+    @Test
+    public void handshakeResumingSessionCreatedOnAWholeSecond() throws Exception {
+        SSLSession session = (SSLSession) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[] {SSLSession.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "getCreationTime":
+                        return 5000L;
+                    case "getPeerCertificates":
+                        throw new SSLPeerUnverifiedException("none");
+                    default:
+                        return null;
+                    }
+                });
+        // only OpenSSL truncates creation times to whole seconds
+        handshakeStatistics.record(session, 5500, false);
+        assertThat(registry.get("easyssl.handshakes").tag("type", "resumed").functionCounter().count(), is(1.0));
+        assertThat(registry.get("easyssl.handshakes").tag("type", "full").functionCounter().count(), is(0.0));
+    }
+}
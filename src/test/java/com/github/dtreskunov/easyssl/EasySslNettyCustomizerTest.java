@@ -0,0 +1,84 @@
+package com.github.dtreskunov.easyssl;
+
+import static com.github.dtreskunov.easyssl.TestHandshakes.connect;
+import static com.github.dtreskunov.easyssl.TestHandshakes.copy;
+import static com.github.dtreskunov.easyssl.TestHandshakes.subject;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.github.dtreskunov.easyssl.EasySslHelper.SSLContextReinitializedEvent;
+
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.SslProvider;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+public class EasySslNettyCustomizerTest {
+    @TempDir
+    Path dir;
+
+    private final HandshakeStatistics handshakeStatistics = new HandshakeStatistics();
+    private EasySslHelper helper;
+    private EasySslNettyCustomizer customizer;
+    private DisposableServer server;
+
+    @AfterEach
+    public void teardown() {
+        if (server != null) {
+            server.disposeNow();
+        }
+        if (helper != null) {
+            helper.close();
+        }
+    }
+
+    private void startServer(boolean openSsl) throws Exception {
+        assumeTrue(!openSsl || OpenSsl.isAvailable(), "OpenSSL is not available");
+        copy("localhost1", dir);
+        EasySslProperties config = TestHandshakes.properties(dir);
+        config.setNettyOpenSslEnabled(openSsl);
+        helper = new EasySslHelper(config);
+        customizer = new EasySslNettyCustomizer(config, helper, handshakeStatistics, EasySslHelper.getSslProperties(config, null), false);
+        assertThat(customizer.getProvider(), is(openSsl ? SslProvider.OPENSSL : SslProvider.JDK));
+        helper.setApplicationEventPublisher(event -> customizer.onApplicationEvent((SSLContextReinitializedEvent) event));
+        server = customizer.customizeServer(HttpServer.create().host("localhost").port(0))
+            .handle((request, response) -> response.sendString(Mono.just("hello")))
+            .bindNow();
+    }
+
+    @ParameterizedTest(name = "openSsl={0}")
+    @ValueSource(booleans = {false, true})
+    public void serves(boolean openSsl) throws Exception {
+        startServer(openSsl);
+        assertThat(subject(connect(server.port(), "localhost2")), is("CN=localhost,OU=Localhost1"));
+        assertThat(handshakeStatistics.getFullHandshakeCount(), is(1L));
+    }
+
+    @ParameterizedTest(name = "openSsl={0}")
+    @ValueSource(booleans = {false, true})
+    public void servesNewCertificateAfterReload(boolean openSsl) throws Exception {
+        startServer(openSsl);
+        assertThat(subject(connect(server.port(), "localhost2")), is("CN=localhost,OU=Localhost1"));
+        copy("localhost2", dir);
+        helper.reinitialize();
+        assertThat(subject(connect(server.port(), "localhost2")), is("CN=localhost,OU=Localhost2"));
+    }
+
+    @ParameterizedTest(name = "openSsl={0}")
+    @ValueSource(booleans = {false, true})
+    public void rejectsUntrustedClient(boolean openSsl) throws Exception {
+        startServer(openSsl);
+        assertThrows(IOException.class, () -> connect(server.port(), "fake_localhost1"));
+    }
+}
@@ -0,0 +1,133 @@
+package com.github.dtreskunov.easyssl;
+
+import static com.github.dtreskunov.easyssl.TestHandshakes.connect;
+import static com.github.dtreskunov.easyssl.TestHandshakes.copy;
+import static com.github.dtreskunov.easyssl.TestHandshakes.properties;
+import static com.github.dtreskunov.easyssl.TestHandshakes.subject;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.Ssl;
+import org.springframework.boot.web.server.WebServer;
+import org.springframework.util.ClassUtils;
+
+import com.github.dtreskunov.easyssl.EasySslHelper.SSLContextReinitializedEvent;
+
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The OpenSSL cases need the Tomcat Native library (libtcnative) on the {@code java.library.path}, and are skipped
+ * without it.
+ */
+public class EasySslTomcatCustomizerTest {
+    @TempDir
+    Path dir;
+
+    private final HandshakeStatistics handshakeStatistics = new HandshakeStatistics();
+    private EasySslHelper helper;
+    private EasySslTomcatCustomizer customizer;
+    private WebServer server;
+
+    @BeforeEach
+    public void setup() {
+        assumeTrue(ClassUtils.isPresent("org.apache.catalina.startup.Tomcat", null), "Not testing with Tomcat");
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (server != null) {
+            server.stop();
+        }
+        if (helper != null) {
+            helper.close();
+        }
+    }
+
+    private void startServer(boolean openSsl) throws Exception {
+        copy("localhost1", dir);
+        EasySslProperties config = properties(dir);
+        config.setTomcatOpenSslEnabled(openSsl);
+        helper = new EasySslHelper(config);
+        customizer = new EasySslTomcatCustomizer(config, helper, handshakeStatistics);
+        if (openSsl) {
+            assumeTrue(customizer.getImplementation() == EasySslTomcatCustomizer.Implementation.OPENSSL, "OpenSSL is not available to Tomcat");
+        } else {
+            assertThat(customizer.getImplementation(), is(EasySslTomcatCustomizer.Implementation.JSSE));
+        }
+        helper.setApplicationEventPublisher(event -> customizer.onApplicationEvent((SSLContextReinitializedEvent) event));
+        server = startServer(config, helper, customizer, new HttpServlet() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.getWriter().write("hello");
+            }
+        });
+    }
+
+    /**
+     * Starts Tomcat on a random port the way {@link EasySslBeans} configures it, with {@code servlet} mapped to
+     * {@code /}.
+     */
+    static WebServer startServer(EasySslProperties config, EasySslHelper helper, EasySslTomcatCustomizer customizer, HttpServlet servlet) {
+        Ssl ssl = EasySslHelper.getSslProperties(config, null);
+        ssl.setBundle(EasySslBundleImpl.BUNDLE_NAME);
+        TomcatServletWebServerFactory factory = new TomcatServletWebServerFactory(0);
+        factory.setSsl(ssl);
+        factory.setSslBundles(new EasySslBundleImpl.SslBundlesImpl(new EasySslBundleImpl.SslBundleImpl(
+                helper.getMaterial(), new EasySslBundleImpl.SslOptionsImpl(ssl), helper.getServerSSLContext())));
+        customizer.customize(factory);
+        WebServer server = factory.getWebServer(context -> context.addServlet("servlet", servlet).addMapping("/"));
+        server.start();
+        return server;
+    }
+
+    @ParameterizedTest(name = "openSsl={0}")
+    @ValueSource(booleans = {false, true})
+    public void serves(boolean openSsl) throws Exception {
+        startServer(openSsl);
+        assertThat(subject(connect(server.getPort(), "localhost2")), is("CN=localhost,OU=Localhost1"));
+        assertThat(handshakeStatistics.getFullHandshakeCount(), is(1L));
+    }
+
+    @ParameterizedTest(name = "openSsl={0}")
+    @ValueSource(booleans = {false, true})
+    public void servesNewCertificateAfterReload(boolean openSsl) throws Exception {
+        startServer(openSsl);
+        assertThat(subject(connect(server.getPort(), "localhost2")), is("CN=localhost,OU=Localhost1"));
+        copy("localhost2", dir);
+        helper.reinitialize();
+        assertThat(subject(connect(server.getPort(), "localhost2")), is("CN=localhost,OU=Localhost2"));
+    }
+
+    @ParameterizedTest(name = "openSsl={0}")
+    @ValueSource(booleans = {false, true})
+    public void rejectsUntrustedClient(boolean openSsl) throws Exception {
+        startServer(openSsl);
+        assertThrows(IOException.class, () -> connect(server.getPort(), "fake_localhost1"));
+    }
+
+    @Test
+    public void usesJsseForAdditionalCertificates() throws Exception {
+        EasySslProperties config = properties("localhost1");
+        config.setTomcatOpenSslEnabled(true);
+        config.setAdditionalCertificates(Arrays.asList(new EasySslProperties.AdditionalCertificate()));
+        assertThat(new EasySslTomcatCustomizer(config, null, handshakeStatistics).getImplementation(),
+                is(EasySslTomcatCustomizer.Implementation.JSSE));
+    }
+}
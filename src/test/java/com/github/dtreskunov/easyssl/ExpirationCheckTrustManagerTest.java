@@ -0,0 +1,89 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Date;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ExpirationCheckTrustManagerTest {
+    private static final X500Principal ISSUER = new X500Principal("CN=issuer");
+    private static final Duration THRESHOLD = Duration.ofDays(30);
+
+    private KeyPair keys;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        keys = TestCertificates.generateKeyPair();
+    }
+
+    /**
+     * @return a certificate that expires this long from now (negative for an expired one)
+     */
+    private X509Certificate[] expiringIn(Duration duration, long serial) throws Exception {
+        Date now = new Date();
+        return new X509Certificate[] {new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(
+            ISSUER, BigInteger.valueOf(serial), new Date(now.getTime() - Duration.ofDays(365).toMillis()),
+            new Date(now.getTime() + duration.toMillis()), ISSUER, keys.getPublic())
+            .build(new JcaContentSignerBuilder("SHA256withECDSA").build(keys.getPrivate())))};
+    }
+
+    @Test
+    public void validCertificateIsNotReported() throws Exception {
+        ExpirationCheckTrustManager trustManager = new ExpirationCheckTrustManager(THRESHOLD);
+        X509Certificate[] chain = expiringIn(Duration.ofDays(365), 1);
+        for (int i = 0; i < 100; i++) {
+            trustManager.checkClientTrusted(chain, "EC");
+        }
+        assertThat(trustManager.getWarningCount(), is(0L));
+        assertThat(trustManager.getExpiredCount(), is(0L));
+        assertThat(trustManager.getReportCount(), is(0L));
+    }
+
+    @Test
+    public void reportsEachCertificateOncePerInterval() throws Exception {
+        ExpirationCheckTrustManager trustManager = new ExpirationCheckTrustManager(THRESHOLD, Duration.ofMillis(200));
+        X509Certificate[] expiring = expiringIn(Duration.ofDays(1), 1);
+        X509Certificate[] expired = expiringIn(Duration.ofDays(-1), 2);
+        for (int i = 0; i < 100; i++) {
+            // a copy, as a reconnecting peer would present
+            trustManager.checkClientTrusted(expiring.clone(), "EC");
+            trustManager.checkServerTrusted(expired, "EC");
+        }
+        assertThat(trustManager.getWarningCount(), is(100L));
+        assertThat(trustManager.getExpiredCount(), is(100L));
+        assertThat(trustManager.getReportCount(), is(2L));
+
+        Thread.sleep(300);
+        trustManager.checkClientTrusted(expiring, "EC");
+        trustManager.checkClientTrusted(expiring, "EC");
+        assertThat(trustManager.getReportCount(), is(3L));
+    }
+
+    @Test
+    public void reportsExpiryStraightAway() throws Exception {
+        ExpirationCheckTrustManager trustManager = new ExpirationCheckTrustManager(THRESHOLD, Duration.ofDays(1));
+        // notAfter has a resolution of one second
+        X509Certificate[] chain = expiringIn(Duration.ofSeconds(2), 1);
+        trustManager.checkClientTrusted(chain, "EC");
+        trustManager.checkClientTrusted(chain, "EC");
+        assertThat(trustManager.getReportCount(), is(1L));
+
+        Thread.sleep(chain[0].getNotAfter().getTime() - System.currentTimeMillis() + 100);
+        trustManager.checkClientTrusted(chain, "EC");
+        trustManager.checkClientTrusted(chain, "EC");
+        assertThat(trustManager.getExpiredCount(), is(2L));
+        assertThat(trustManager.getReportCount(), is(2L));
+    }
+}
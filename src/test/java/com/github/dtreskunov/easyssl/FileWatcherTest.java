@@ -0,0 +1,99 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.is;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FileWatcherTest {
+    private static final Duration DEBOUNCE = Duration.ofMillis(200);
+
+    @TempDir
+    Path dir;
+
+    private final AtomicInteger runs = new AtomicInteger();
+    private final Semaphore ran = new Semaphore(0);
+
+    private void task() {
+        runs.incrementAndGet();
+        ran.release();
+    }
+
+    private void awaitRun() throws InterruptedException {
+        assertThat("task did not run", ran.tryAcquire(10, TimeUnit.SECONDS), is(true));
+    }
+
+    /**
+     * Lays out a directory the way Kubernetes mounts secrets: {@code cert.pem -> ..data/cert.pem}, {@code ..data -> version}
+     */
+    private void writeVersion(String version, String content) throws Exception {
+        Files.createDirectory(dir.resolve(version));
+        Files.writeString(dir.resolve(version).resolve("cert.pem"), content);
+        Path tmpLink = Files.createSymbolicLink(dir.resolve("..data_tmp"), dir.resolve(version).getFileName());
+        Files.move(tmpLink, dir.resolve("..data"), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    @Test
+    public void rewritingFileTwiceRunsTaskOnce() throws Exception {
+        Path file = Files.writeString(dir.resolve("cert.pem"), "1");
+        try (FileWatcher watcher = new FileWatcher(Collections.singleton(file), DEBOUNCE, this::task)) {
+            Files.writeString(file, "2");
+            Files.writeString(file, "3");
+            awaitRun();
+            Thread.sleep(DEBOUNCE.toMillis() * 3);
+            assertThat(runs.get(), is(1));
+        }
+    }
+
+    @Test
+    public void unrelatedFileIsIgnored() throws Exception {
+        Path file = Files.writeString(dir.resolve("cert.pem"), "1");
+        try (FileWatcher watcher = new FileWatcher(Collections.singleton(file), DEBOUNCE, this::task)) {
+            Files.writeString(dir.resolve("unrelated.txt"), "whatever");
+            Thread.sleep(DEBOUNCE.toMillis() * 3);
+            assertThat(runs.get(), is(0));
+        }
+    }
+
+    @Test
+    public void atomicSymlinkSwapRunsTask() throws Exception {
+        writeVersion("..v1", "1");
+        Path file = Files.createSymbolicLink(dir.resolve("cert.pem"), Path.of("..data/cert.pem"));
+        try (FileWatcher watcher = new FileWatcher(Collections.singleton(file), DEBOUNCE, this::task)) {
+            writeVersion("..v2", "2");
+            awaitRun();
+            assertThat(Files.readString(file), is("2"));
+
+            // the watcher must follow the swap and keep watching the new version
+            writeVersion("..v3", "3");
+            awaitRun();
+        }
+    }
+
+    @Test
+    public void watchTargetsIncludeEverySymlink() throws Exception {
+        writeVersion("..v1", "1");
+        Path file = Files.createSymbolicLink(dir.resolve("cert.pem"), Path.of("..data/cert.pem"));
+        Map<Path, Set<Path>> targets = new HashMap<>();
+        FileWatcher.addWatchTargets(file, targets);
+        Path realDir = dir.toRealPath();
+        assertThat(targets.get(realDir.resolve("..v1")), hasItem(Path.of("cert.pem")));
+        Set<Path> namesInDir = targets.containsKey(dir) ? targets.get(dir) : targets.get(realDir);
+        assertThat(namesInDir, hasItem(Path.of("cert.pem")));
+        assertThat(namesInDir, hasItem(Path.of("..data")));
+    }
+}
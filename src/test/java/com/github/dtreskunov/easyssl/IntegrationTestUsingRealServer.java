@@ -2,7 +2,9 @@ package com.github.dtreskunov.easyssl;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.IOException;
@@ -26,6 +28,8 @@ import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ssl.SslBundle;
+import org.springframework.boot.ssl.SslBundles;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.web.server.LocalServerPort;
@@ -36,6 +40,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestTemplate;
 
 import com.github.dtreskunov.easyssl.server.Server;
@@ -58,6 +63,15 @@ public class IntegrationTestUsingRealServer {
     @Autowired
     EasySslHelper easySslHelper;
 
+    @Autowired
+    HandshakeStatistics handshakeStatistics;
+
+    @Autowired
+    SslBundles sslBundles;
+
+    @Autowired
+    EasySslClientHttpRequestFactory clientHttpRequestFactory;
+
     private RestTemplate restTemplate;
 
     private RestTemplate getRestTemplate(EasySslHelper easySslHelper) throws Exception {
@@ -116,6 +130,13 @@ public class IntegrationTestUsingRealServer {
         }
     }
 
+    @Test
+    public void registersSslBundle() throws Exception {
+        SslBundle bundle = sslBundles.getBundle(EasySslBundleImpl.BUNDLE_NAME);
+        assertThat(bundle.createSslContext(), is(sameInstance(sslContext)));
+        assertThat(bundle.getStores().getKeyStore(), is(sameInstance(easySslHelper.getKeyStore())));
+    }
+
     @Test
     @Disabled
     public void reinitialize_soakTest() throws Exception {
@@ -149,6 +170,104 @@ public class IntegrationTestUsingRealServer {
         assertThat(response.getBody(), is("CN=localhost, OU=iss_by_another_ca"));
     }
 
+    @Test
+    public void resumesSessions() throws Exception {
+        EasySslProperties clientProperties = new EasySslProperties();
+        clientProperties.setCaCertificate(Arrays.asList(new ClassPathResource("/ssl/ca/cert.pem")));
+        clientProperties.setCertificate(new ClassPathResource("/ssl/localhost2/cert.pem"));
+        clientProperties.setKey(new ClassPathResource("/ssl/localhost2/key.pem"));
+        clientProperties.setKeyPassword("localhost-password");
+        try (EasySslHelper clientHelper = new EasySslHelper(clientProperties)) {
+            long full = handshakeStatistics.getFullHandshakeCount();
+            long resumed = handshakeStatistics.getResumedHandshakeCount();
+
+            // each RestTemplate has its own connection pool, but they share the client's session cache
+            assertThat(getRestTemplate(clientHelper).getForEntity("/whoami", String.class).getBody(), is("CN=localhost, OU=Localhost2"));
+            assertThat(getRestTemplate(clientHelper).getForEntity("/whoami", String.class).getBody(), is("CN=localhost, OU=Localhost2"));
+            assertThat(handshakeStatistics.getFullHandshakeCount(), is(full + 1));
+            assertThat(handshakeStatistics.getResumedHandshakeCount(), is(resumed + 1));
+        }
+    }
+
+    @Test
+    public void resumesSessionsAfterReload() throws Exception {
+        EasySslProperties clientProperties = new EasySslProperties();
+        clientProperties.setCaCertificate(Arrays.asList(new ClassPathResource("/ssl/ca/cert.pem")));
+        clientProperties.setCertificate(new ClassPathResource("/ssl/localhost2/cert.pem"));
+        clientProperties.setKey(new ClassPathResource("/ssl/localhost2/key.pem"));
+        clientProperties.setKeyPassword("localhost-password");
+        try (EasySslHelper clientHelper = new EasySslHelper(clientProperties)) {
+            long full = handshakeStatistics.getFullHandshakeCount();
+            long resumed = handshakeStatistics.getResumedHandshakeCount();
+
+            assertThat(getRestTemplate(clientHelper).getForEntity("/whoami", String.class).getBody(), is("CN=localhost, OU=Localhost2"));
+            swapPaths(LOCALHOST1, LOCALHOST2);
+            try {
+                easySslHelper.reinitialize();
+                // the server was not reconfigured, so it still has the session
+                assertThat(getRestTemplate(clientHelper).getForEntity("/whoami", String.class).getBody(), is("CN=localhost, OU=Localhost2"));
+                assertThat(handshakeStatistics.getFullHandshakeCount(), is(full + 1));
+                assertThat(handshakeStatistics.getResumedHandshakeCount(), is(resumed + 1));
+            } finally {
+                swapPaths(LOCALHOST1, LOCALHOST2);
+                easySslHelper.reinitialize();
+            }
+        }
+    }
+
+    @Test
+    public void pooledClientReusesConnectionsUntilReload() throws Exception {
+        RestClient restClient = RestClient.builder()
+                .baseUrl(protocol + "://localhost:" + port)
+                .requestFactory(clientHttpRequestFactory)
+                .build();
+        assertThat(restClient.get().uri("/whoami").retrieve().body(String.class), is("CN=localhost, OU=Localhost1"));
+        long handshakes = handshakeStatistics.getFullHandshakeCount() + handshakeStatistics.getResumedHandshakeCount();
+        assertThat(restClient.get().uri("/whoami").retrieve().body(String.class), is("CN=localhost, OU=Localhost1"));
+        assertThat("connection was not reused", handshakeStatistics.getFullHandshakeCount() + handshakeStatistics.getResumedHandshakeCount(), is(handshakes));
+
+        swapPaths(LOCALHOST1, LOCALHOST2);
+        try {
+            easySslHelper.reinitialize();
+            assertThat("client kept using a connection opened before the reload",
+                    restClient.get().uri("/whoami").retrieve().body(String.class), is("CN=localhost, OU=Localhost2"));
+            for (int i = 0; i < 50 && clientHttpRequestFactory.getDrainingCount() > 0; i++) {
+                Thread.sleep(100);
+            }
+            assertThat("old connections were not closed", clientHttpRequestFactory.getDrainingCount(), is(0));
+        } finally {
+            swapPaths(LOCALHOST1, LOCALHOST2);
+            easySslHelper.reinitialize();
+        }
+    }
+
+    @Test
+    public void clientResumesSessionsOnNewConnections() throws Exception {
+        EasySslProperties clientProperties = new EasySslProperties();
+        clientProperties.setCaCertificate(Arrays.asList(new ClassPathResource("/ssl/ca/cert.pem")));
+        clientProperties.setCertificate(new ClassPathResource("/ssl/localhost2/cert_chain.pem"));
+        clientProperties.setKey(new ClassPathResource("/ssl/localhost2/key.pem"));
+        clientProperties.setKeyPassword("localhost-password");
+        int requests = 20;
+        try (EasySslHelper clientHelper = new EasySslHelper(clientProperties)) {
+            long serverResumed = handshakeStatistics.getResumedHandshakeCount();
+            for (int i = 0; i < requests; i++) {
+                // a new pool each time, so that each request opens a new connection
+                try (EasySslClientHttpRequestFactory requestFactory = new EasySslClientHttpRequestFactory(clientHelper, clientProperties)) {
+                    RestClient restClient = RestClient.builder()
+                            .baseUrl(protocol + "://localhost:" + port)
+                            .requestFactory(requestFactory)
+                            .build();
+                    assertThat(restClient.get().uri("/whoami").retrieve().body(String.class), is("CN=localhost, OU=Localhost2"));
+                }
+            }
+            HandshakeStatistics clientStatistics = clientHelper.getClientHandshakeStatistics();
+            assertThat(clientStatistics.getFullHandshakeCount(), is(1L));
+            assertThat(clientStatistics.getResumedHandshakeCount(), is((long) requests - 1));
+            assertThat(handshakeStatistics.getResumedHandshakeCount() - serverResumed, greaterThanOrEqualTo((long) requests - 1));
+        }
+    }
+
     @Test
     public void serverRejectsRevokedClient() throws Exception {
         EasySslProperties revokedClientProperties = new EasySslProperties();
@@ -0,0 +1,94 @@
+package com.github.dtreskunov.easyssl;
+
+import static com.github.dtreskunov.easyssl.TestHandshakes.properties;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+public class KeyTypePreferringKeyManagerTest {
+    private static final String EC_ALIAS = EasySslHelper.getKeyAlias(0);
+    private static final String RSA_ALIAS = EasySslHelper.getKeyAlias(1);
+
+    private EasySslHelper server;
+    private EasySslHelper client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        EasySslProperties.AdditionalCertificate rsa = new EasySslProperties.AdditionalCertificate();
+        rsa.setCertificate(new ClassPathResource("/ssl/localhost1_rsa/cert_chain.pem"));
+        rsa.setKey(new ClassPathResource("/ssl/localhost1_rsa/key.pem"));
+        rsa.setKeyPassword("localhost-password");
+        EasySslProperties serverProperties = properties("localhost1");
+        serverProperties.setAdditionalCertificates(Arrays.asList(rsa));
+        server = new EasySslHelper(serverProperties);
+        client = new EasySslHelper(properties("localhost2"));
+    }
+
+    @AfterEach
+    public void teardown() {
+        server.close();
+        client.close();
+    }
+
+    private X509ExtendedKeyManager keyManager() {
+        return server.getMaterial().getKeyMaterial().getKeyManager();
+    }
+
+    private static SSLEngine handshaking(String protocol, String... peerSignatureSchemes) {
+        ExtendedSSLSession session = mock(ExtendedSSLSession.class);
+        when(session.getProtocol()).thenReturn(protocol);
+        when(session.getPeerSupportedSignatureAlgorithms()).thenReturn(peerSignatureSchemes);
+        SSLEngine engine = mock(SSLEngine.class);
+        when(engine.getHandshakeSession()).thenReturn(session);
+        return engine;
+    }
+
+    @Test
+    public void tls13_turnsDownRsaIfClientAcceptsEcdsa() {
+        assertThat(keyManager(), instanceOf(KeyTypePreferringKeyManager.class));
+        SSLEngine engine = handshaking("TLSv1.3", "rsa_pss_rsae_sha256", "ecdsa_secp256r1_sha256");
+        assertThat(keyManager().chooseEngineServerAlias("RSA", null, engine), nullValue());
+        assertThat(keyManager().chooseEngineServerAlias("EC", null, engine), is(EC_ALIAS));
+    }
+
+    @Test
+    public void tls13_servesRsaIfClientDoesNotAcceptOurEcdsaKey() {
+        SSLEngine engine = handshaking("TLSv1.3", "rsa_pss_rsae_sha256", "ecdsa_secp384r1_sha384");
+        assertThat(keyManager().chooseEngineServerAlias("RSA", null, engine), is(RSA_ALIAS));
+    }
+
+    @Test
+    public void tls12_leavesChoiceToCipherSuite() {
+        SSLEngine engine = handshaking("TLSv1.2", "rsa_pss_rsae_sha256", "ecdsa_secp256r1_sha256");
+        assertThat(keyManager().chooseEngineServerAlias("RSA", null, engine), is(RSA_ALIAS));
+    }
+
+    @Test
+    public void servesEcdsaToTls13Client() throws Exception {
+        SSLEngine clientEngine = client.getSSLContext().createSSLEngine();
+        clientEngine.setEnabledProtocols(new String[] {"TLSv1.3"});
+        assertThat(TestHandshakes.handshake(server.getServerSSLContext(), clientEngine).getSubjectX500Principal().getName(), is("CN=localhost,OU=Localhost1"));
+    }
+
+    @Test
+    public void servesRsaToClientWithoutEcdsaCipherSuites() throws Exception {
+        SSLEngine clientEngine = client.getSSLContext().createSSLEngine();
+        clientEngine.setEnabledProtocols(new String[] {"TLSv1.2"});
+        clientEngine.setEnabledCipherSuites(new String[] {"TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256"});
+        assertThat(TestHandshakes.handshake(server.getServerSSLContext(), clientEngine).getSubjectX500Principal().getName(), is("CN=localhost,OU=Localhost1 RSA"));
+    }
+}
@@ -0,0 +1,235 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.KeyPair;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateRevokedException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AccessDescription;
+import org.bouncycastle.asn1.x509.AuthorityInformationAccess;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateStatus;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.cert.ocsp.RespID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.StreamUtils;
+
+import com.sun.net.httpserver.HttpServer;
+
+public class OCSPTrustManagerTest {
+    private static final X500Principal CA = new X500Principal("CN=OCSP test CA");
+
+    private KeyPair caKeys;
+    private X509Certificate caCertificate;
+    private HttpServer server;
+    private URI responder;
+    /** Statuses the responder gives, by serial number (good if absent) */
+    private final Map<BigInteger, CertificateStatus> statuses = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile KeyPair signingKeys;
+    /** How long responses are valid for (they have no nextUpdate if null) */
+    private volatile Duration validity = Duration.ofHours(1);
+    /** How long before being sent responses were produced */
+    private volatile Duration age = Duration.ZERO;
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    @BeforeEach
+    public void setup() throws Exception {
+        caKeys = TestCertificates.generateKeyPair();
+        caCertificate = TestCertificates.selfSigned(caKeys, CA);
+        signingKeys = caKeys;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            try (InputStream in = exchange.getRequestBody(); OutputStream out = exchange.getResponseBody()) {
+                requests.incrementAndGet();
+                gate.await();
+                byte[] response = respond(new OCSPReq(StreamUtils.copyToByteArray(in)));
+                exchange.getResponseHeaders().set("Content-Type", "application/ocsp-response");
+                exchange.sendResponseHeaders(200, response.length);
+                out.write(response);
+            } catch (Exception e) {
+                exchange.sendResponseHeaders(500, -1);
+            }
+        });
+        server.start();
+        responder = URI.create("http://" + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getAddress().getPort() + "/");
+    }
+
+    @AfterEach
+    public void teardown() {
+        server.stop(0);
+    }
+
+    private byte[] respond(OCSPReq request) throws Exception {
+        BasicOCSPRespBuilder builder = new BasicOCSPRespBuilder(new RespID(X500Name.getInstance(CA.getEncoded())));
+        Date now = new Date();
+        Date thisUpdate = new Date(now.getTime() - age.toMillis());
+        Date nextUpdate = validity == null ? null : new Date(thisUpdate.getTime() + validity.toMillis());
+        for (Req req: request.getRequestList()) {
+            builder.addResponse(req.getCertID(), statuses.getOrDefault(req.getCertID().getSerialNumber(), CertificateStatus.GOOD),
+                thisUpdate, nextUpdate, null);
+        }
+        return new OCSPRespBuilder().build(OCSPRespBuilder.SUCCESSFUL,
+            builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(signingKeys.getPrivate()), null, now)).getEncoded();
+    }
+
+    private OCSPTrustManager trustManager(boolean softFail) {
+        return new OCSPTrustManager(Collections.singletonList(caCertificate), responder, Duration.ofSeconds(5), softFail);
+    }
+
+    private X509Certificate[] chain(long serial) throws Exception {
+        return new X509Certificate[] {TestCertificates.issue(caKeys, CA, BigInteger.valueOf(serial))};
+    }
+
+    @Test
+    public void cachesGoodStatus() throws Exception {
+        OCSPTrustManager trustManager = trustManager(false);
+        X509Certificate[] chain = chain(1);
+        trustManager.checkClientTrusted(chain, "EC");
+        trustManager.checkClientTrusted(chain, "EC");
+        trustManager.checkServerTrusted(chain, "EC");
+        assertThat(requests.get(), is(1));
+        assertThat(trustManager.getRequestCount(), is(1L));
+
+        trustManager.checkClientTrusted(chain(2), "EC");
+        assertThat(requests.get(), is(2));
+    }
+
+    @Test
+    public void rejectsRevokedCertificate() throws Exception {
+        statuses.put(BigInteger.TEN, new RevokedStatus(new Date(), CRLReason.keyCompromise));
+        OCSPTrustManager trustManager = trustManager(true);
+        trustManager.checkClientTrusted(chain(1), "EC");
+        CertificateRevokedException e = assertThrows(CertificateRevokedException.class, () -> trustManager.checkClientTrusted(chain(10), "EC"));
+        assertThat(e.getRevocationReason(), is(java.security.cert.CRLReason.KEY_COMPROMISE));
+        assertThat(e.getAuthorityName(), is(CA));
+    }
+
+    @Test
+    public void coalescesConcurrentRequests() throws Exception {
+        gate = new CountDownLatch(1);
+        OCSPTrustManager trustManager = trustManager(false);
+        X509Certificate[] chain = chain(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                futures.add(executor.submit(() -> {
+                    trustManager.checkClientTrusted(chain, "EC");
+                    return null;
+                }));
+            }
+            Thread.sleep(200);
+            gate.countDown();
+            for (Future<?> future: futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertThat(requests.get(), is(1));
+    }
+
+    @Test
+    public void refreshesAheadOfNextUpdate() throws Exception {
+        // responses have a resolution of one second
+        validity = Duration.ofSeconds(6);
+        OCSPTrustManager trustManager = trustManager(false);
+        X509Certificate[] chain = chain(1);
+        trustManager.checkClientTrusted(chain, "EC");
+        assertThat(requests.get(), is(1));
+
+        // past REFRESH_AHEAD of the validity: answered from the cache, and refreshed in the background
+        Thread.sleep((long) (validity.toMillis() * OCSPTrustManager.REFRESH_AHEAD) + 100);
+        assertThat(requests.get(), is(1));
+        gate = new CountDownLatch(1);
+        trustManager.checkClientTrusted(chain, "EC");
+        gate.countDown();
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (trustManager.getRequestCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(trustManager.getRequestCount(), is(2L));
+    }
+
+    @Test
+    public void rejectsStaleResponseWithoutNextUpdate() throws Exception {
+        validity = null;
+        trustManager(false).checkClientTrusted(chain(1), "EC");
+
+        // e.g. a response recorded before the certificate was revoked, and replayed
+        age = Duration.ofDays(30);
+        assertThrows(CertificateException.class, () -> trustManager(false).checkClientTrusted(chain(2), "EC"));
+    }
+
+    @Test
+    public void rejectsResponseNotSignedByIssuer() throws Exception {
+        signingKeys = TestCertificates.generateKeyPair();
+        assertThrows(CertificateException.class, () -> trustManager(false).checkClientTrusted(chain(1), "EC"));
+        trustManager(true).checkClientTrusted(chain(1), "EC");
+    }
+
+    @Test
+    public void softFailsWhenResponderIsDown() throws Exception {
+        server.stop(0);
+        CertificateException e = assertThrows(CertificateException.class, () -> trustManager(false).checkClientTrusted(chain(1), "EC"));
+        assertThat(e instanceof CertificateRevokedException, is(false));
+        trustManager(true).checkClientTrusted(chain(1), "EC");
+    }
+
+    @Test
+    public void usesResponderFromCertificate() throws Exception {
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(CA, BigInteger.TEN,
+            new Date(System.currentTimeMillis() - 60_000), new Date(System.currentTimeMillis() + 60_000),
+            new X500Principal("CN=with AIA"), caKeys.getPublic());
+        builder.addExtension(Extension.authorityInfoAccess, false, new AuthorityInformationAccess(
+            AccessDescription.id_ad_ocsp, new GeneralName(GeneralName.uniformResourceIdentifier, responder.toString())));
+        X509Certificate certificate = new JcaX509CertificateConverter().getCertificate(
+            builder.build(new JcaContentSignerBuilder("SHA256withECDSA").build(caKeys.getPrivate())));
+        statuses.put(BigInteger.TEN, new RevokedStatus(new Date(), CRLReason.superseded));
+
+        OCSPTrustManager trustManager = new OCSPTrustManager(Collections.singletonList(caCertificate), null, Duration.ofSeconds(5), false);
+        assertThrows(CertificateRevokedException.class, () -> trustManager.checkClientTrusted(new X509Certificate[] {certificate}, "EC"));
+        // no AIA extension and no configured responder
+        assertThrows(CertificateException.class, () -> trustManager.checkClientTrusted(chain(1), "EC"));
+    }
+}
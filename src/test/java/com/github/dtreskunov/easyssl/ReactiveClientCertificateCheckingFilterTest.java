@@ -0,0 +1,138 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.startsWith;
+
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.server.reactive.SslInfo;
+import org.springframework.mock.http.server.reactive.MockServerHttpRequest;
+import org.springframework.mock.web.server.MockServerWebExchange;
+
+import reactor.core.publisher.Mono;
+
+public class ReactiveClientCertificateCheckingFilterTest {
+    private static final X500Principal CA = new X500Principal("CN=reactive filter test CA");
+
+    @TempDir
+    Path dir;
+
+    private TestCertificates.TempCA ca;
+    private EasySslHelper helper;
+    private ReactiveClientCertificateCheckingFilter filter;
+    private final List<String> checkThreads = new ArrayList<>();
+
+    @BeforeEach
+    public void setup() throws Exception {
+        ca = new TestCertificates.TempCA(dir, CA);
+        ca.writeCRL(1, BigInteger.TEN);
+        helper = new EasySslHelper(ca.properties());
+        helper.setTrustCheckRecorder((source, nanos, trusted) -> {
+            if (source.equals("filter")) {
+                checkThreads.add(Thread.currentThread().getName());
+            }
+        });
+        filter = new ReactiveClientCertificateCheckingFilter(helper, false);
+    }
+
+    @AfterEach
+    public void teardown() {
+        helper.close();
+    }
+
+    /**
+     * @return the response status, or null if the request reached the filter chain
+     */
+    private Integer filter(X509Certificate certificate, String sessionId) {
+        MockServerHttpRequest.BaseBuilder<?> request = MockServerHttpRequest.get("/");
+        if (certificate != null) {
+            request.sslInfo(new SslInfo() {
+                @Override
+                public String getSessionId() {
+                    return sessionId;
+                }
+
+                @Override
+                public X509Certificate[] getPeerCertificates() {
+                    return new X509Certificate[] {certificate};
+                }
+            });
+        }
+        MockServerWebExchange exchange = MockServerWebExchange.from(request);
+        boolean[] reached = {false};
+        filter.filter(exchange, e -> {
+            reached[0] = true;
+            return Mono.empty();
+        }).block();
+        HttpStatusCode status = exchange.getResponse().getStatusCode();
+        return reached[0] ? null : status.value();
+    }
+
+    @Test
+    public void checksOncePerSession() throws Exception {
+        X509Certificate certificate = ca.issue(BigInteger.ONE);
+        assertThat(filter(certificate, "1"), nullValue());
+        assertThat(filter(certificate, "1"), nullValue());
+        assertThat(filter(certificate, "1"), nullValue());
+        assertThat(filter.getSessionMissCount(), is(1L));
+        assertThat(filter.getSessionHitCount(), is(2L));
+
+        // another session, or one without an ID, is checked
+        assertThat(filter(certificate, "2"), nullValue());
+        assertThat(filter(certificate, ""), nullValue());
+        assertThat(filter(certificate, ""), nullValue());
+        assertThat(filter.getSessionMissCount(), is(4L));
+    }
+
+    @Test
+    public void rejectionIsNotRemembered() throws Exception {
+        X509Certificate revoked = ca.issue(BigInteger.TEN);
+        assertThat(filter(revoked, "1"), is(403));
+        assertThat(filter(revoked, "1"), is(403));
+        assertThat(filter.getSessionMissCount(), is(2L));
+        assertThat(filter.getSessionHitCount(), is(0L));
+    }
+
+    @Test
+    public void reloadedCRLAppliesToExistingSessions() throws Exception {
+        X509Certificate certificate = ca.issue(BigInteger.ONE);
+        assertThat(filter(certificate, "1"), nullValue());
+
+        ca.writeCRL(2, BigInteger.TEN, BigInteger.ONE);
+        helper.reinitialize();
+        assertThat(filter(certificate, "1"), is(403));
+    }
+
+    @Test
+    public void noClientCertificate() throws Exception {
+        assertThat(filter(null, null), nullValue());
+        assertThat(filter.getSessionMissCount(), is(0L));
+    }
+
+    @Test
+    public void checksOnCallingThreadUnlessOffloaded() throws Exception {
+        X509Certificate certificate = ca.issue(BigInteger.ONE);
+        assertThat(filter(certificate, "1"), nullValue());
+        assertThat(checkThreads.get(0), is(Thread.currentThread().getName()));
+
+        filter = new ReactiveClientCertificateCheckingFilter(helper, true);
+        assertThat(filter(certificate, "1"), nullValue());
+        assertThat(filter(ca.issue(BigInteger.TEN), "2"), is(403));
+        assertThat(checkThreads.get(1), startsWith("boundedElastic"));
+        assertThat(checkThreads.get(2), not(Thread.currentThread().getName()));
+    }
+}
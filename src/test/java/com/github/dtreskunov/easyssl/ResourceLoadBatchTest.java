@@ -0,0 +1,114 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+public class ResourceLoadBatchTest {
+
+    /**
+     * Can only be read once all other parties to the barrier are reading too.
+     */
+    static class BarrierResource extends AbstractResource {
+        private final CyclicBarrier barrier;
+        private final String content;
+
+        BarrierResource(CyclicBarrier barrier, String content) {
+            this.barrier = barrier;
+            this.content = content;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            try {
+                barrier.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                throw new IOException(e);
+            }
+            return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public String getDescription() {
+            return "barrier " + content;
+        }
+    }
+
+    private static String parse(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void resourcesAreLoadedConcurrently() throws Exception {
+        // sequential loading would never get past the barrier
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        try (ResourceLoadBatch batch = new ResourceLoadBatch(0, TimeUnit.MILLISECONDS)) {
+            ResourceLoadBatch.Pending<String> a = batch.submit(new BarrierResource(barrier, "a"), null, ResourceLoadBatchTest::parse);
+            ResourceLoadBatch.Pending<String> b = batch.submit(new BarrierResource(barrier, "b"), null, ResourceLoadBatchTest::parse);
+            ResourceLoadBatch.Pending<String> c = batch.submit(new BarrierResource(barrier, "c"), null, ResourceLoadBatchTest::parse);
+            assertThat(batch.await(a).getValue(), is("a"));
+            assertThat(batch.await(b).getValue(), is("b"));
+            assertThat(batch.await(c).getValue(), is("c"));
+        }
+    }
+
+    @Test
+    public void stuckResourceTimesOut() throws Exception {
+        EasySslHelperConcurrencyTest.GatedResource stuck = new EasySslHelperConcurrencyTest.GatedResource(new ByteArrayResource(new byte[0]));
+        stuck.close();
+        try (ResourceLoadBatch batch = new ResourceLoadBatch(200, TimeUnit.MILLISECONDS)) {
+            ResourceLoadBatch.Pending<String> fine = batch.submit(new ByteArrayResource("fine".getBytes(StandardCharsets.UTF_8)), null, ResourceLoadBatchTest::parse);
+            ResourceLoadBatch.Pending<String> slow = batch.submit(stuck, null, ResourceLoadBatchTest::parse);
+            assertThat(batch.await(fine).getValue(), is("fine"));
+            TimeoutException e = assertThrows(TimeoutException.class, () -> batch.await(slow));
+            assertThat(e.getMessage(), containsString("gated"));
+        } finally {
+            stuck.open();
+        }
+    }
+
+    @Test
+    public void loadsWhileSharedExecutorIsFull() throws Exception {
+        // reloads stuck in every thread of the shared executor must not starve the loads of the next reload
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < TimedExecutor.MAX_THREADS; i++) {
+                TimedExecutor.getInstance().submit("stuck reload", () -> release.await(10, TimeUnit.SECONDS));
+            }
+            try (ResourceLoadBatch batch = new ResourceLoadBatch(5, TimeUnit.SECONDS)) {
+                ResourceLoadBatch.Pending<String> pending = batch.submit(new ByteArrayResource("fine".getBytes(StandardCharsets.UTF_8)), null, ResourceLoadBatchTest::parse);
+                assertThat(batch.await(pending).getValue(), is("fine"));
+            }
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void parserExceptionIsRethrown() throws Exception {
+        Resource resource = new ByteArrayResource(new byte[0]);
+        try (ResourceLoadBatch batch = new ResourceLoadBatch(0, TimeUnit.MILLISECONDS)) {
+            ResourceLoadBatch.Pending<String> pending = batch.submit(resource, null, bytes -> {
+                throw new IllegalStateException("unparseable");
+            });
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> batch.await(pending));
+            assertThat(e.getMessage(), is("unparseable"));
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.CRLReason;
+import java.security.cert.CertificateFactory;
+import java.security.cert.CertificateRevokedException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.junit.jupiter.api.Test;
+
+public class RevocationIndexTest {
+    private static final Path SSL = Path.of("src/test/resources/ssl");
+    private static final X500Principal ISSUER = new X500Principal("CN=issuer");
+    private static final X500Principal OTHER_ISSUER = new X500Principal("CN=other issuer");
+
+    private static X509Certificate readCertificate(String path) throws Exception {
+        return CertificateReader.read(Files.readAllBytes(SSL.resolve(path))).get(0);
+    }
+
+    private static X509CRL readCRL(String path) throws Exception {
+        return (X509CRL) CertificateFactory.getInstance("X.509").generateCRL(Files.newInputStream(SSL.resolve(path)));
+    }
+
+    @Test
+    public void agreesWithCRL() throws Exception {
+        X509CRL crl = readCRL("ca/crl.pem");
+        RevocationIndex index = RevocationIndex.of(crl);
+        for (String path: Arrays.asList("localhost1/cert.pem", "localhost2/cert.pem", "revoked_localhost/cert.pem", "fake_localhost1/cert.pem")) {
+            X509Certificate certificate = readCertificate(path);
+            assertThat(path, index.find(certificate) != RevocationIndex.NOT_FOUND, is(crl.isRevoked(certificate)));
+        }
+        assertThat(index.find(readCertificate("revoked_localhost/cert.pem")), not(RevocationIndex.NOT_FOUND));
+    }
+
+    @Test
+    public void findsEntriesWithCollidingHashes() throws Exception {
+        // BigInteger hashes its magnitude 31*a+b, so 2^32 (magnitude [1, 0]) collides with 31
+        BigInteger big = BigInteger.ONE.shiftLeft(32);
+        BigInteger small = BigInteger.valueOf(31);
+        assertThat(big.hashCode(), is(small.hashCode()));
+
+        KeyPair keys = TestCertificates.generateKeyPair();
+        Date date = new Date(1_000_000);
+        RevocationIndex index = new RevocationIndex.Builder(ISSUER)
+            .add(null, big, date, CRLReason.KEY_COMPROMISE)
+            .build();
+        assertThat(index.find(TestCertificates.issue(keys, ISSUER, small)), is(RevocationIndex.NOT_FOUND));
+        int entry = index.find(TestCertificates.issue(keys, ISSUER, big));
+        assertThat(entry, is(0));
+        assertThat(index.getRevocationDate(entry), is(date));
+        assertThat(index.getRevocationReason(entry), is(CRLReason.KEY_COMPROMISE));
+        assertThat(index.getCertificateIssuer(entry), is(ISSUER));
+    }
+
+    @Test
+    public void distinguishesIssuers() throws Exception {
+        KeyPair keys = TestCertificates.generateKeyPair();
+        BigInteger serial = BigInteger.valueOf(42);
+
+        RevocationIndex direct = new RevocationIndex.Builder(ISSUER).add(null, serial, null, null).build();
+        assertThat(direct.find(TestCertificates.issue(keys, OTHER_ISSUER, serial)), is(RevocationIndex.NOT_FOUND));
+
+        RevocationIndex indirect = new RevocationIndex.Builder(ISSUER)
+            .add(OTHER_ISSUER, serial, null, null)
+            .add(null, BigInteger.ONE, null, null)
+            .build();
+        assertThat(indirect.find(TestCertificates.issue(keys, ISSUER, serial)), is(RevocationIndex.NOT_FOUND));
+        int entry = indirect.find(TestCertificates.issue(keys, OTHER_ISSUER, serial));
+        assertThat(indirect.getCertificateIssuer(entry), is(OTHER_ISSUER));
+        assertThat(indirect.getRevocationDate(entry), is((Date) null));
+        assertThat(indirect.getRevocationReason(entry), is((CRLReason) null));
+        assertThat(indirect.getCertificateIssuer(indirect.find(TestCertificates.issue(keys, ISSUER, BigInteger.ONE))), is(ISSUER));
+    }
+
+    @Test
+    public void manyEntries() throws Exception {
+        KeyPair keys = TestCertificates.generateKeyPair();
+        List<BigInteger> serials = new ArrayList<>();
+        for (int i = 0; i < 10_000; i++) {
+            serials.add(BigInteger.valueOf(i * 2L));
+        }
+        RevocationIndex index = RevocationIndex.of(TestCertificates.generateCRL(keys, ISSUER, serials));
+        assertThat(index.size(), is(10_000));
+        for (long i = 0; i < 200; i++) {
+            int entry = index.find(TestCertificates.issue(keys, ISSUER, BigInteger.valueOf(i)));
+            assertThat("serial " + i, entry != RevocationIndex.NOT_FOUND, is(i % 2 == 0));
+        }
+    }
+
+    @Test
+    public void trustManagerRejectsRevokedCertificate() throws Exception {
+        CRLTrustManager trustManager = new CRLTrustManager(readCRL("ca/crl.pem"));
+        trustManager.checkClientTrusted(new X509Certificate[] {readCertificate("localhost1/cert.pem")}, "RSA");
+        CertificateRevokedException e = assertThrows(CertificateRevokedException.class, () -> trustManager.checkClientTrusted(
+            new X509Certificate[] {readCertificate("revoked_localhost/cert.pem")}, "RSA"));
+        assertThat(e.getAuthorityName(), is(readCertificate("ca/cert.pem").getSubjectX500Principal()));
+    }
+
+    @Test
+    public void trustManagerConsultsDeltaFirst() throws Exception {
+        KeyPair keys = TestCertificates.generateKeyPair();
+        RevocationIndex base = new RevocationIndex.Builder(ISSUER)
+            .add(null, BigInteger.ONE, null, CRLReason.KEY_COMPROMISE)
+            .add(null, BigInteger.TWO, null, CRLReason.CERTIFICATE_HOLD)
+            .build();
+        RevocationIndex delta = new RevocationIndex.Builder(ISSUER)
+            .add(null, BigInteger.TWO, null, CRLReason.REMOVE_FROM_CRL)
+            .add(null, BigInteger.TEN, null, CRLReason.SUPERSEDED)
+            .build();
+        CRLTrustManager trustManager = new CRLTrustManager(base, delta);
+        assertThrows(CertificateRevokedException.class, () -> trustManager.checkClientTrusted(
+            new X509Certificate[] {TestCertificates.issue(keys, ISSUER, BigInteger.ONE)}, "EC"));
+        trustManager.checkClientTrusted(new X509Certificate[] {TestCertificates.issue(keys, ISSUER, BigInteger.TWO)}, "EC");
+        CertificateRevokedException e = assertThrows(CertificateRevokedException.class, () -> trustManager.checkClientTrusted(
+            new X509Certificate[] {TestCertificates.issue(keys, ISSUER, BigInteger.TEN)}, "EC"));
+        assertThat(e.getRevocationReason(), is(CRLReason.SUPERSEDED));
+        trustManager.checkClientTrusted(new X509Certificate[] {TestCertificates.issue(keys, ISSUER, BigInteger.valueOf(3))}, "EC");
+    }
+}
@@ -0,0 +1,229 @@
+package com.github.dtreskunov.easyssl;
+
+import static com.github.dtreskunov.easyssl.TestHandshakes.copy;
+import static com.github.dtreskunov.easyssl.TestHandshakes.properties;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.FileSystemResource;
+
+public class SniKeyManagerTest {
+    private static final String MAIN = "CN=localhost,OU=Localhost1";
+
+    @TempDir
+    Path dir;
+
+    private final List<EasySslProperties.SniCertificate> sniCertificates = new ArrayList<>();
+    private EasySslHelper server;
+    private EasySslHelper client;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        client = new EasySslHelper(properties("localhost2"));
+    }
+
+    @AfterEach
+    public void teardown() {
+        if (server != null) {
+            server.close();
+        }
+        client.close();
+    }
+
+    /**
+     * Copies the certificate of {@code name} where it can be changed, and serves it for {@code hostNames}.
+     */
+    private void addSniCertificate(String name, String... hostNames) throws Exception {
+        Path tenant = Files.createDirectories(dir.resolve("tenant" + sniCertificates.size()));
+        copy(name, tenant);
+        EasySslProperties.SniCertificate sni = new EasySslProperties.SniCertificate();
+        sni.setHostNames(Arrays.asList(hostNames));
+        sni.setCertificate(new FileSystemResource(tenant.resolve("cert_chain.pem")));
+        sni.setKey(new FileSystemResource(tenant.resolve("key.pem")));
+        sni.setKeyPassword("localhost-password");
+        sniCertificates.add(sni);
+    }
+
+    private void startServer(int cacheSize) throws Exception {
+        EasySslProperties properties = properties("localhost1");
+        properties.setSniCertificates(sniCertificates);
+        properties.setSniCertificateCacheSize(cacheSize);
+        server = new EasySslHelper(properties);
+    }
+
+    /**
+     * @return the subject of the certificate the server presented to a client asking for {@code hostName}
+     */
+    private String connect(String hostName) throws Exception {
+        SSLEngine clientEngine = client.getSSLContext().createSSLEngine();
+        if (hostName != null) {
+            SSLParameters parameters = clientEngine.getSSLParameters();
+            parameters.setServerNames(Arrays.asList(new SNIHostName(hostName)));
+            clientEngine.setSSLParameters(parameters);
+        }
+        return TestHandshakes.handshake(server.getServerSSLContext(), clientEngine).getSubjectX500Principal().getName();
+    }
+
+    /**
+     * Waits for the certificate served for {@code hostName} to be loaded, starting to load it if need be.
+     */
+    private SniCertificates.Identity awaitLoaded(String hostName) throws Exception {
+        SniCertificates.Tenant tenant = server.getSniCertificates().find(hostName);
+        long deadline = System.currentTimeMillis() + 10_000;
+        SniCertificates.Identity identity;
+        while ((identity = tenant.getIdentity()) == null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(identity, not(nullValue()));
+        return identity;
+    }
+
+    @Test
+    public void servesMainCertificateWhileLoading() throws Exception {
+        addSniCertificate("localhost2", "a.example.com");
+        startServer(100);
+        assertThat(connect("a.example.com"), is(MAIN));
+        awaitLoaded("a.example.com");
+        assertThat(connect("a.example.com"), is("CN=localhost,OU=Localhost2"));
+    }
+
+    @Test
+    public void servesCertificateForRequestedHostName() throws Exception {
+        addSniCertificate("localhost2", "shop.example.com", "*.example.org");
+        startServer(100);
+        awaitLoaded("shop.example.com");
+        assertThat(connect("shop.example.com"), is("CN=localhost,OU=Localhost2"));
+        assertThat(connect("SHOP.Example.com"), is("CN=localhost,OU=Localhost2"));
+        assertThat(connect("www.example.org"), is("CN=localhost,OU=Localhost2"));
+        // a wildcard only stands for one label
+        assertThat(connect("a.www.example.org"), is(MAIN));
+        assertThat(connect("example.org"), is(MAIN));
+        assertThat(connect("other.example.com"), is(MAIN));
+        assertThat(connect(null), is(MAIN));
+    }
+
+    @Test
+    public void servesCertificateWhoseKeyTypeIsNotTheClientsFirstChoice() throws Exception {
+        addSniCertificate("localhost1_rsa", "rsa.example.com");
+        startServer(100);
+        awaitLoaded("rsa.example.com");
+        assertThat(connect("rsa.example.com"), is("CN=localhost,OU=Localhost1 RSA"));
+        assertThat(connect("ec.example.com"), is(MAIN));
+    }
+
+    @Test
+    public void loadsCertificatesOnFirstUseAndDropsColdOnes() throws Exception {
+        addSniCertificate("localhost2", "a.example.com");
+        addSniCertificate("localhost1_rsa", "b.example.com");
+        startServer(1);
+        SniCertificates sni = server.getSniCertificates();
+        assertThat(sni.getLoadCount(), is(0L));
+
+        awaitLoaded("a.example.com");
+        assertThat(connect("a.example.com"), is("CN=localhost,OU=Localhost2"));
+        assertThat(connect("a.example.com"), is("CN=localhost,OU=Localhost2"));
+        assertThat(sni.getLoadCount(), is(1L));
+
+        awaitLoaded("b.example.com");
+        assertThat(connect("b.example.com"), is("CN=localhost,OU=Localhost1 RSA"));
+        assertThat(sni.getLoadCount(), is(2L));
+        assertThat(sni.getEvictionCount(), is(1L));
+        assertThat(sni.getLoadedCount(), is(1));
+
+        awaitLoaded("a.example.com");
+        assertThat(connect("a.example.com"), is("CN=localhost,OU=Localhost2"));
+        assertThat(sni.getLoadCount(), is(3L));
+        assertThat(sni.getEvictionCount(), is(2L));
+    }
+
+    @Test
+    public void reloadsLoadedCertificates() throws Exception {
+        addSniCertificate("localhost2", "a.example.com");
+        addSniCertificate("localhost2", "b.example.com");
+        startServer(100);
+        awaitLoaded("a.example.com");
+        assertThat(connect("a.example.com"), is("CN=localhost,OU=Localhost2"));
+
+        copy("localhost1_rsa", dir.resolve("tenant0"));
+        copy("localhost1_rsa", dir.resolve("tenant1"));
+        server.reinitialize();
+        // only the loaded one is reloaded - the other is loaded when it is first asked for
+        assertThat(server.getSniCertificates().getLoadCount(), is(2L));
+        assertThat(connect("a.example.com"), is("CN=localhost,OU=Localhost1 RSA"));
+        awaitLoaded("b.example.com");
+        assertThat(connect("b.example.com"), is("CN=localhost,OU=Localhost1 RSA"));
+        assertThat(server.getSniCertificates().getLoadCount(), is(3L));
+
+        Files.delete(dir.resolve("tenant0/key.pem"));
+        server.reinitialize();
+        assertThat(server.getSniCertificates().getFailureCount(), is(1L));
+        assertThat(connect("a.example.com"), is("CN=localhost,OU=Localhost1 RSA"));
+    }
+
+    @Test
+    public void aliasChosenBeforeReloadStillResolves() throws Exception {
+        addSniCertificate("localhost2", "a.example.com");
+        startServer(100);
+        SniCertificates sni = server.getSniCertificates();
+        SniCertificates.Tenant tenant = sni.find("a.example.com");
+        SniCertificates.Identity before = awaitLoaded("a.example.com");
+        String alias = tenant.getAlias(before);
+
+        copy("localhost1_rsa", dir.resolve("tenant0"));
+        server.reinitialize();
+        SniCertificates.Identity after = tenant.getIdentity();
+        assertThat(tenant.getAlias(after), not(alias));
+        // the handshake that chose the alias gets the chain and key it chose
+        assertThat(sni.findByAlias(alias), sameInstance(before));
+        assertThat(sni.findByAlias(tenant.getAlias(after)), sameInstance(after));
+        assertThat(sni.findByAlias(alias + "0"), nullValue());
+    }
+
+    @Test
+    public void fallsBackToMainCertificateIfCertificateCannotBeLoaded() throws Exception {
+        addSniCertificate("localhost2", "a.example.com");
+        Files.delete(dir.resolve("tenant0/key.pem"));
+        startServer(100);
+        SniCertificates sni = server.getSniCertificates();
+        assertThat(connect("a.example.com"), is(MAIN));
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (sni.getFailureCount() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(connect("a.example.com"), is(MAIN));
+        // not retried straight away
+        Thread.sleep(100);
+        assertThat(sni.getFailureCount(), is(1L));
+    }
+
+    @Test
+    public void rejectsDuplicateHostNames() throws Exception {
+        addSniCertificate("localhost2", "a.example.com");
+        addSniCertificate("localhost2", "A.example.com.");
+        assertThrows(IllegalArgumentException.class, () -> startServer(100));
+    }
+
+    @Test
+    public void rejectsMisplacedWildcards() throws Exception {
+        addSniCertificate("localhost2", "www.*.example.com");
+        assertThrows(IllegalArgumentException.class, () -> startServer(100));
+    }
+}
@@ -0,0 +1,193 @@
+package com.github.dtreskunov.easyssl;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Date;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.asn1.x509.BasicConstraints;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.X509v3CertificateBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CRLConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Generates throwaway certificates for tests that need more of them than {@code gen.rb} provides.
+ */
+class TestCertificates {
+    private static final Path SSL = Path.of("src/test/resources/ssl");
+    private static final long DAY = 24L * 60 * 60 * 1000;
+
+    static KeyPair generateKeyPair() throws Exception {
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(256);
+        return generator.generateKeyPair();
+    }
+
+    /**
+     * @return {@code count} self-signed certificates sharing one key pair, with subjects {@code CN=test-<i>}
+     */
+    static X509Certificate[] generate(int count) throws Exception {
+        KeyPair keyPair = generateKeyPair();
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.getPrivate());
+        JcaX509CertificateConverter converter = new JcaX509CertificateConverter();
+        Date notBefore = new Date(System.currentTimeMillis() - DAY);
+        Date notAfter = new Date(System.currentTimeMillis() + 365 * DAY);
+        X509Certificate[] certificates = new X509Certificate[count];
+        for (int i = 0; i < count; i++) {
+            X500Principal subject = new X500Principal("CN=test-" + i);
+            X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+                subject, BigInteger.valueOf(i + 1), notBefore, notAfter, subject, keyPair.getPublic());
+            certificates[i] = converter.getCertificate(builder.build(signer));
+        }
+        return certificates;
+    }
+
+    /**
+     * @return a certificate with the given issuer and serial number, for the issuer's own public key
+     */
+    static X509Certificate issue(KeyPair issuerKeys, X500Principal issuer, BigInteger serialNumber) throws Exception {
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256withECDSA").build(issuerKeys.getPrivate());
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+            issuer, serialNumber, new Date(System.currentTimeMillis() - DAY), new Date(System.currentTimeMillis() + 365 * DAY),
+            new X500Principal("CN=issued-" + serialNumber), issuerKeys.getPublic());
+        return new JcaX509CertificateConverter().getCertificate(builder.build(signer));
+    }
+
+    /**
+     * @return a self-signed certificate that can serve as the trust anchor for {@link #issue} and {@link #generateCRL}
+     */
+    static X509Certificate selfSigned(KeyPair keys, X500Principal subject) throws Exception {
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256withECDSA").build(keys.getPrivate());
+        X509v3CertificateBuilder builder = new JcaX509v3CertificateBuilder(
+            subject, BigInteger.ONE, new Date(System.currentTimeMillis() - DAY), new Date(System.currentTimeMillis() + 365 * DAY),
+            subject, keys.getPublic());
+        builder.addExtension(Extension.basicConstraints, true, new BasicConstraints(true));
+        return new JcaX509CertificateConverter().getCertificate(builder.build(signer));
+    }
+
+    /**
+     * @return a CRL revoking the given serial numbers (for "key compromise")
+     */
+    static X509CRL generateCRL(KeyPair issuerKeys, X500Principal issuer, Iterable<BigInteger> serialNumbers) throws Exception {
+        return generateCRL(issuerKeys, issuer, serialNumbers, CRLReason.keyCompromise, null, null);
+    }
+
+    /**
+     * @param reason a {@link CRLReason} constant, for all entries
+     * @param crlNumber value of the cRLNumber extension (may be null)
+     * @param baseCrlNumber value of the deltaCRLIndicator extension, making this a delta CRL (may be null)
+     */
+    static X509CRL generateCRL(KeyPair issuerKeys, X500Principal issuer, Iterable<BigInteger> serialNumbers, int reason,
+                               BigInteger crlNumber, BigInteger baseCrlNumber) throws Exception {
+        ContentSigner signer = new JcaContentSignerBuilder("SHA256withECDSA").build(issuerKeys.getPrivate());
+        Date now = new Date();
+        X509v2CRLBuilder builder = new JcaX509v2CRLBuilder(issuer, now);
+        builder.setNextUpdate(new Date(now.getTime() + DAY));
+        for (BigInteger serialNumber: serialNumbers) {
+            builder.addCRLEntry(serialNumber, now, reason);
+        }
+        if (crlNumber != null) {
+            builder.addExtension(Extension.cRLNumber, false, new CRLNumber(crlNumber));
+        }
+        if (baseCrlNumber != null) {
+            builder.addExtension(Extension.deltaCRLIndicator, true, new CRLNumber(baseCrlNumber));
+        }
+        return new JcaX509CRLConverter().getCRL(builder.build(signer));
+    }
+
+    /**
+     * A throwaway CA whose certificate ({@code ca.pem}) and CRLs ({@code crl.der}, {@code delta.der}) live in a
+     * temporary directory, for tests that reissue the CRL or replace the CA between reloads.
+     */
+    static class TempCA {
+        final Path dir;
+        final X500Principal name;
+        final KeyPair keys;
+        final X509Certificate certificate;
+
+        /**
+         * Generates a CA called {@code name} and writes its certificate to {@code dir/ca.pem}, replacing any previous CA.
+         */
+        TempCA(Path dir, X500Principal name) throws Exception {
+            this.dir = dir;
+            this.name = name;
+            this.keys = generateKeyPair();
+            this.certificate = selfSigned(keys, name);
+            Files.write(dir.resolve("ca.pem"), toPem(certificate));
+        }
+
+        /**
+         * @return a certificate issued by this CA
+         */
+        X509Certificate issue(BigInteger serialNumber) throws Exception {
+            return TestCertificates.issue(keys, name, serialNumber);
+        }
+
+        /**
+         * Writes {@code crl.der}, revoking the given serial numbers.
+         */
+        void writeCRL(long crlNumber, BigInteger... revoked) throws Exception {
+            Files.write(dir.resolve("crl.der"), generateCRL(keys, name, Arrays.asList(revoked),
+                    CRLReason.keyCompromise, BigInteger.valueOf(crlNumber), null).getEncoded());
+        }
+
+        /**
+         * Writes {@code delta.der}, a delta of the CRL numbered {@code baseCrlNumber}.
+         */
+        void writeDeltaCRL(long crlNumber, long baseCrlNumber, BigInteger... revoked) throws Exception {
+            Files.write(dir.resolve("delta.der"), generateCRL(keys, name, Arrays.asList(revoked),
+                    CRLReason.keyCompromise, BigInteger.valueOf(crlNumber), BigInteger.valueOf(baseCrlNumber)).getEncoded());
+        }
+
+        /**
+         * Copies the {@code localhost1} certificate and key next to the CA.
+         *
+         * @return properties trusting this CA and enforcing {@code crl.der}, which the caller must have written
+         */
+        EasySslProperties properties() throws Exception {
+            Files.copy(SSL.resolve("localhost1/cert_chain.pem"), dir.resolve("cert.pem"), StandardCopyOption.REPLACE_EXISTING);
+            Files.copy(SSL.resolve("localhost1/key.pem"), dir.resolve("key.pem"), StandardCopyOption.REPLACE_EXISTING);
+            EasySslProperties config = new EasySslProperties();
+            config.setCaCertificate(Arrays.asList(new FileSystemResource(dir.resolve("ca.pem"))));
+            config.setCertificateRevocationList(new FileSystemResource(dir.resolve("crl.der")));
+            config.setCertificate(new FileSystemResource(dir.resolve("cert.pem")));
+            config.setKey(new FileSystemResource(dir.resolve("key.pem")));
+            config.setKeyPassword("localhost-password");
+            return config;
+        }
+    }
+
+    /**
+     * @return the certificates PEM-encoded and concatenated, as in an OpenSSL CA bundle
+     */
+    static byte[] toPem(X509Certificate... certificates) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Base64.Encoder encoder = Base64.getMimeEncoder(64, "\n".getBytes(StandardCharsets.US_ASCII));
+        for (X509Certificate certificate: certificates) {
+            out.write("-----BEGIN CERTIFICATE-----\n".getBytes(StandardCharsets.US_ASCII));
+            out.write(encoder.encode(certificate.getEncoded()));
+            out.write("\n-----END CERTIFICATE-----\n".getBytes(StandardCharsets.US_ASCII));
+        }
+        return out.toByteArray();
+    }
+}
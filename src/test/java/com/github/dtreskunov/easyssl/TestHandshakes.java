@@ -0,0 +1,144 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+
+/**
+ * Runs handshakes between two {@link SSLEngine}s in memory, or against a real server, for tests (and benchmarks) of
+ * what a server presents to its clients. The identities are those generated under {@code src/test/resources/ssl}.
+ */
+final class TestHandshakes {
+    private static final Path SSL = Path.of("src/test/resources/ssl");
+
+    private TestHandshakes() {
+    }
+
+    /**
+     * @return properties for the identity {@code name} (e.g. {@code localhost1}), trusting the test CA
+     */
+    static EasySslProperties properties(String name) {
+        EasySslProperties properties = new EasySslProperties();
+        properties.setCaCertificate(Arrays.asList(new ClassPathResource("/ssl/ca/cert.pem")));
+        properties.setCertificate(new ClassPathResource("/ssl/" + name + "/cert_chain.pem"));
+        properties.setKey(new ClassPathResource("/ssl/" + name + "/key.pem"));
+        properties.setKeyPassword("localhost-password");
+        return properties;
+    }
+
+    /**
+     * @return properties for whichever identity was last {@link #copy(String, Path) copied} to {@code dir}, trusting
+     *         the test CA
+     */
+    static EasySslProperties properties(Path dir) {
+        EasySslProperties properties = properties("localhost1");
+        properties.setCertificate(new FileSystemResource(dir.resolve("cert_chain.pem")));
+        properties.setKey(new FileSystemResource(dir.resolve("key.pem")));
+        return properties;
+    }
+
+    /**
+     * Copies the certificate chain and key of the identity {@code name} to {@code dir}, where they can be changed.
+     */
+    static void copy(String name, Path dir) throws Exception {
+        Files.copy(SSL.resolve(name + "/cert_chain.pem"), dir.resolve("cert_chain.pem"), StandardCopyOption.REPLACE_EXISTING);
+        Files.copy(SSL.resolve(name + "/key.pem"), dir.resolve("key.pem"), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Fetches {@code /} from the server on {@code port} over a connection of its own.
+     *
+     * @return the certificate the server presented to a client authenticating with {@code client}
+     */
+    static X509Certificate connect(int port, String client) throws Exception {
+        try (EasySslHelper clientHelper = new EasySslHelper(properties(client))) {
+            HttpsURLConnection connection = (HttpsURLConnection) new URL("https://localhost:" + port).openConnection();
+            connection.setSSLSocketFactory(clientHelper.getSSLContext().getSocketFactory());
+            // so that the next request needs a new connection
+            connection.setRequestProperty("Connection", "close");
+            assertThat(connection.getResponseCode(), is(200));
+            return (X509Certificate) connection.getServerCertificates()[0];
+        }
+    }
+
+    static String subject(X509Certificate certificate) {
+        return certificate.getSubjectX500Principal().getName();
+    }
+
+    /**
+     * @return the certificate the server presented to the client
+     */
+    static X509Certificate handshake(SSLContext serverContext, SSLEngine clientEngine) throws Exception {
+        SSLEngine serverEngine = serverContext.createSSLEngine();
+        serverEngine.setUseClientMode(false);
+        clientEngine.setUseClientMode(true);
+        return handshake(serverEngine, clientEngine);
+    }
+
+    /**
+     * @param serverEngine and {@code clientEngine} must already be in server and client mode
+     * @return the certificate the server presented to the client
+     */
+    static X509Certificate handshake(SSLEngine serverEngine, SSLEngine clientEngine) throws Exception {
+        int size = clientEngine.getSession().getPacketBufferSize() * 4;
+        ByteBuffer clientToServer = ByteBuffer.allocate(size);
+        ByteBuffer serverToClient = ByteBuffer.allocate(size);
+        ByteBuffer application = ByteBuffer.allocate(size);
+        clientEngine.beginHandshake();
+        serverEngine.beginHandshake();
+        while (step(clientEngine, serverToClient, clientToServer, application) | step(serverEngine, clientToServer, serverToClient, application)) {
+            // keep going until neither side has anything to do
+        }
+        assertThat(clientEngine.getHandshakeStatus(), is(HandshakeStatus.NOT_HANDSHAKING));
+        return (X509Certificate) clientEngine.getSession().getPeerCertificates()[0];
+    }
+
+    private static boolean step(SSLEngine engine, ByteBuffer in, ByteBuffer out, ByteBuffer application) throws Exception {
+        boolean progress = false;
+        while (true) {
+            SSLEngineResult result;
+            application.clear();
+            switch (engine.getHandshakeStatus()) {
+            case NEED_TASK:
+                Runnable task;
+                while ((task = engine.getDelegatedTask()) != null) {
+                    task.run();
+                }
+                progress = true;
+                continue;
+            case NEED_WRAP:
+                result = engine.wrap(application.flip(), out);
+                break;
+            default:
+                if (in.position() == 0) {
+                    return progress;
+                }
+                in.flip();
+                result = engine.unwrap(in, application);
+                in.compact();
+                break;
+            }
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                return progress;
+            }
+            assertThat(result.getStatus(), is(SSLEngineResult.Status.OK));
+            progress = true;
+        }
+    }
+}
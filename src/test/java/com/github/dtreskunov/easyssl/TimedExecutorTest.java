@@ -0,0 +1,107 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.Test;
+
+public class TimedExecutorTest {
+    private final TimedExecutor executor = new TimedExecutor(1);
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitCondition(String description, BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertThat(description, System.currentTimeMillis() < deadline, is(true));
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void threadsAreReused() throws Exception {
+        String first = TimeoutUtils.builder().setExecutor(executor).call(() -> Thread.currentThread().getName());
+        String second = TimeoutUtils.builder().setName("second").setExecutor(executor).call(() -> Thread.currentThread().getName());
+        assertThat(first, is("TimedExecutor daemon - TimeoutUtils"));
+        assertThat(second, is("TimedExecutor daemon - second"));
+        assertThat(executor.getSubmittedCount(), is(2L));
+        awaitCondition("both tasks completed", () -> executor.getCompletedCount() == 2);
+        assertThat(executor.getTimedOutCount(), is(0L));
+    }
+
+    @Test
+    public void taskIgnoringInterruptionIsCountedAsStuck() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        assertThrows(TimeoutException.class, () -> TimeoutUtils.builder()
+            .setExecutor(executor)
+            .setTimeout(100, TimeUnit.MILLISECONDS)
+            .run(() -> awaitUninterruptibly(release)));
+        assertThat(executor.getTimedOutCount(), is(1L));
+        assertThat(executor.getStuckCount(), is(1));
+        assertThat(executor.getRunningCount(), is(1));
+
+        release.countDown();
+        awaitCondition("stuck task finished", () -> executor.getStuckCount() == 0 && executor.getRunningCount() == 0);
+        assertThat(executor.getTimedOutCount(), is(1L));
+    }
+
+    @Test
+    public void queuedTaskThatTimedOutNeverRuns() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean ran = new AtomicBoolean();
+        TimedExecutor.TimedFuture<Object> blocker = executor.submit("blocker", () -> {
+            awaitUninterruptibly(release);
+            return null;
+        });
+        TimedExecutor.TimedFuture<Object> queued = executor.submit("queued", () -> {
+            ran.set(true);
+            return null;
+        });
+        assertThrows(TimeoutException.class, () -> queued.get(100, TimeUnit.MILLISECONDS));
+        assertThat(executor.getQueuedCount(), is(1));
+        // it never started, so it isn't tying up a thread
+        assertThat(executor.getStuckCount(), is(0));
+
+        release.countDown();
+        blocker.get();
+        awaitCondition("queue drained", () -> executor.getQueuedCount() == 0 && executor.getRunningCount() == 0);
+        assertThat(ran.get(), is(false));
+    }
+
+    @Test
+    public void scheduledTaskKeepsRepeatingAfterFailure() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        ScheduledFuture<?> future = Scheduler.runAndSchedule("flaky", 0, 10, TimeUnit.MILLISECONDS, () -> {
+            if (calls.incrementAndGet() == 2) {
+                throw new IllegalStateException("failing once");
+            }
+        });
+        try {
+            awaitCondition("task repeated after failing", () -> calls.get() >= 4);
+        } finally {
+            future.cancel(false);
+        }
+    }
+}
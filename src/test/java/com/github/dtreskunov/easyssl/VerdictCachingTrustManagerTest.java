@@ -0,0 +1,144 @@
+package com.github.dtreskunov.easyssl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.CertificateException;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.X509TrustManager;
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class VerdictCachingTrustManagerTest {
+    private static final X500Principal ISSUER = new X500Principal("CN=issuer");
+
+    private final AtomicInteger checks = new AtomicInteger();
+    private final Set<BigInteger> rejected = new HashSet<>();
+    private KeyPair keys;
+
+    /** Accepts all chains except those whose first certificate has a serial number in {@link #rejected} */
+    private final X509TrustManager delegate = new X509TrustManager() {
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            check(chain);
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) throws CertificateException {
+            check(chain);
+        }
+
+        private void check(X509Certificate[] chain) throws CertificateException {
+            checks.incrementAndGet();
+            if (rejected.contains(chain[0].getSerialNumber())) {
+                throw new CertificateException("rejected");
+            }
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return null;
+        }
+    };
+
+    @BeforeEach
+    public void setup() throws Exception {
+        keys = TestCertificates.generateKeyPair();
+    }
+
+    private X509Certificate[] chain(long serial) throws Exception {
+        return new X509Certificate[] {TestCertificates.issue(keys, ISSUER, BigInteger.valueOf(serial))};
+    }
+
+    @Test
+    public void cachesAcceptedChains() throws Exception {
+        VerdictCachingTrustManager trustManager = new VerdictCachingTrustManager(delegate, 10, null);
+        X509Certificate[] chain = chain(1);
+        trustManager.checkClientTrusted(chain, "EC");
+        trustManager.checkClientTrusted(chain, "EC");
+        trustManager.checkClientTrusted(chain.clone(), "EC");
+        assertThat(checks.get(), is(1));
+        assertThat(trustManager.getHitCount(), is(2L));
+        assertThat(trustManager.getMissCount(), is(1L));
+
+        // a different auth type, or a server rather than a client, is a separate entry
+        trustManager.checkClientTrusted(chain, "RSA");
+        trustManager.checkServerTrusted(chain, "EC");
+        assertThat(checks.get(), is(3));
+        assertThat(trustManager.size(), is(3));
+    }
+
+    @Test
+    public void doesNotCacheRejectedChains() throws Exception {
+        rejected.add(BigInteger.TEN);
+        VerdictCachingTrustManager trustManager = new VerdictCachingTrustManager(delegate, 10, null);
+        X509Certificate[] chain = chain(10);
+        assertThrows(CertificateException.class, () -> trustManager.checkClientTrusted(chain, "EC"));
+        assertThrows(CertificateException.class, () -> trustManager.checkClientTrusted(chain, "EC"));
+        assertThat(checks.get(), is(2));
+        assertThat(trustManager.size(), is(0));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsed() throws Exception {
+        VerdictCachingTrustManager trustManager = new VerdictCachingTrustManager(delegate, 2, null);
+        X509Certificate[] first = chain(1);
+        X509Certificate[] second = chain(2);
+        trustManager.checkClientTrusted(first, "EC");
+        trustManager.checkClientTrusted(second, "EC");
+        trustManager.checkClientTrusted(first, "EC");
+        trustManager.checkClientTrusted(chain(3), "EC");
+        assertThat(trustManager.size(), is(2));
+        assertThat(checks.get(), is(3));
+
+        trustManager.checkClientTrusted(first, "EC");
+        assertThat(checks.get(), is(3));
+        trustManager.checkClientTrusted(second, "EC");
+        assertThat(checks.get(), is(4));
+    }
+
+    @Test
+    public void expiresEntries() throws Exception {
+        VerdictCachingTrustManager trustManager = new VerdictCachingTrustManager(delegate, 10, Duration.ofMillis(100));
+        X509Certificate[] chain = chain(1);
+        trustManager.checkClientTrusted(chain, "EC");
+        trustManager.checkClientTrusted(chain, "EC");
+        assertThat(checks.get(), is(1));
+        Thread.sleep(150);
+        trustManager.checkClientTrusted(chain, "EC");
+        assertThat(checks.get(), is(2));
+
+        // a chain is never remembered past its notAfter
+        VerdictCachingTrustManager untilNotAfter = new VerdictCachingTrustManager(delegate, 10, null);
+        Date now = new Date();
+        X509Certificate[] expired = {new JcaX509CertificateConverter().getCertificate(new JcaX509v3CertificateBuilder(
+            ISSUER, BigInteger.ONE, new Date(now.getTime() - 60_000), new Date(now.getTime() - 1_000), ISSUER, keys.getPublic())
+            .build(new JcaContentSignerBuilder("SHA256withECDSA").build(keys.getPrivate())))};
+        untilNotAfter.checkClientTrusted(expired, "EC");
+        assertThat(untilNotAfter.size(), is(0));
+    }
+
+    @Test
+    public void ttlDefaultsToOcspCacheLifetimeWhenOcspIsEnabled() {
+        EasySslProperties config = new EasySslProperties();
+        assertThat(EasySslHelper.getTrustVerdictCacheTtl(config), is((Duration) null));
+        config.setOcspEnabled(true);
+        assertThat(EasySslHelper.getTrustVerdictCacheTtl(config), is(OCSPTrustManager.DEFAULT_TTL));
+        config.setTrustVerdictCacheTtl(Duration.ofHours(1));
+        assertThat(EasySslHelper.getTrustVerdictCacheTtl(config), is(Duration.ofHours(1)));
+    }
+}